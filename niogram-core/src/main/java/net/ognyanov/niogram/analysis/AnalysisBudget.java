@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+/**
+ * Resource limits for an analysis run. A limit with value 0
+ * is not enforced. The limits are checked periodically inside
+ * the analysis visitors and the set operations. When a limit
+ * is exceeded the calculator stops, keeps the data computed so
+ * far and lists the nonterminal rules with incomplete data in
+ * the grammar (see e.g. {@link net.ognyanov.niogram.ast.Grammar#getIncompleteFFK()}).<p>
+ *
+ * The following limits are supported :
+ * <ul>
+ * <li><strong>deadline</strong>
+ * - A wall-clock time in milliseconds as returned by
+ * {@link System#currentTimeMillis()}.</li>
+ * <li><strong>maxLookaheadStrings</strong>
+ * - The maximum total number of lookahead strings (terminals for
+ * First/Follow sets) in the sets computed for the nodes during a
+ * phase of analysis.</li>
+ * <li><strong>maxHeapGrowth</strong>
+ * - The maximum growth in bytes of the used heap during a run.</li>
+ * </ul>
+ * A budget may be shared by several calculators and runs. Each run
+ * measures the lookahead strings and the heap growth on its own.
+ *
+ * @author Nikolay Ognyanov
+ */
+public final class AnalysisBudget
+{
+    private long deadline            = 0;
+    private long maxLookaheadStrings = 0;
+    private long maxHeapGrowth       = 0;
+
+    public long getDeadline()
+    {
+        return deadline;
+    }
+
+    public void setDeadline(long deadline)
+    {
+        if (deadline < 0) {
+            throw new IllegalArgumentException("negative deadline");
+        }
+        this.deadline = deadline;
+    }
+
+    /**
+     * Sets the deadline to a specified time from now.
+     *
+     * @param millis the time in milliseconds
+     */
+    public void setTimeout(long millis)
+    {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("timeout must be positive");
+        }
+        this.deadline = System.currentTimeMillis() + millis;
+    }
+
+    public long getMaxLookaheadStrings()
+    {
+        return maxLookaheadStrings;
+    }
+
+    public void setMaxLookaheadStrings(long maxLookaheadStrings)
+    {
+        if (maxLookaheadStrings < 0) {
+            throw new IllegalArgumentException("negative limit");
+        }
+        this.maxLookaheadStrings = maxLookaheadStrings;
+    }
+
+    public long getMaxHeapGrowth()
+    {
+        return maxHeapGrowth;
+    }
+
+    public void setMaxHeapGrowth(long maxHeapGrowth)
+    {
+        if (maxHeapGrowth < 0) {
+            throw new IllegalArgumentException("negative limit");
+        }
+        this.maxHeapGrowth = maxHeapGrowth;
+    }
+
+    /**
+     * Starts a run under this budget.
+     *
+     * @return a tracker enforcing the budget for the run
+     */
+    Tracker start()
+    {
+        return new Tracker(this);
+    }
+
+    /**
+     * The tracker enforcing a budget during a run.
+     *
+     * @author Nikolay Ognyanov
+     */
+    static final class Tracker
+    {
+        private final long deadline;
+        private final long maxStrings;
+        private final long maxHeapGrowth;
+        private final long startHeap;
+        private long       strings = 0;
+
+        private Tracker(AnalysisBudget budget)
+        {
+            this.deadline = budget.deadline;
+            this.maxStrings = budget.maxLookaheadStrings;
+            this.maxHeapGrowth = budget.maxHeapGrowth;
+            this.startHeap = maxHeapGrowth > 0 ? usedHeap() : 0;
+        }
+
+        /**
+         * Checks the time and heap limits.
+         *
+         * @throws AnalysisBudgetExceededException if a limit is exceeded
+         */
+        void check()
+        {
+            if (deadline > 0 && System.currentTimeMillis() > deadline) {
+                throw new AnalysisBudgetExceededException(
+                    "deadline exceeded");
+            }
+            if (maxHeapGrowth > 0 && usedHeap() - startHeap > maxHeapGrowth) {
+                throw new AnalysisBudgetExceededException(
+                    "heap growth limit exceeded");
+            }
+        }
+
+        /**
+         * Tests whether lookahead strings are to be counted.
+         *
+         * @return true if strings are counted; false otherwise
+         */
+        boolean countsStrings()
+        {
+            return maxStrings > 0;
+        }
+
+        /**
+         * Resets the count of lookahead strings at the start of a phase.
+         */
+        void startPhase()
+        {
+            strings = 0;
+        }
+
+        /**
+         * Accounts for a change in the number of lookahead strings.
+         *
+         * @param delta the change
+         */
+        void addStrings(long delta)
+        {
+            strings += delta;
+            if (maxStrings > 0 && strings > maxStrings) {
+                throw new AnalysisBudgetExceededException(
+                    "lookahead strings limit exceeded");
+            }
+        }
+
+        private static long usedHeap()
+        {
+            Runtime runtime = Runtime.getRuntime();
+            return runtime.totalMemory() - runtime.freeMemory();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import net.ognyanov.niogram.util.NioGramException;
+
+/**
+ * Thrown when an analysis run exceeds its {@link AnalysisBudget}.
+ *
+ * @author Nikolay Ognyanov
+ */
+public class AnalysisBudgetExceededException
+    extends NioGramException
+{
+    private static final long serialVersionUID = 1L;
+
+    public AnalysisBudgetExceededException(String msg)
+    {
+        super(msg);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import net.ognyanov.niogram.util.Checkpoint;
+import net.ognyanov.niogram.util.Interruptable;
+import net.ognyanov.niogram.util.NioGramException;
+
+/**
+ * The checkpoint installed by the calculators for the duration of
+ * a calculation. Checks the interrupted status of the calculator
+ * and of the currently running visitor as well as the optional
+ * budget of the calculation.
+ *
+ * @author Nikolay Ognyanov
+ */
+final class AnalysisCheckpoint
+    extends Checkpoint
+{
+    private static final int             NODE_CHECK_MASK = 0xf;
+
+    private final Interruptable          owner;
+    private final AnalysisBudget.Tracker tracker;
+    private volatile Interruptable       task            = null;
+    private int                          nodes           = 0;
+
+    /**
+     * Creates a checkpoint for a calculation.
+     *
+     * @param owner the calculator
+     * @param budget the budget of the calculation; may be null
+     */
+    AnalysisCheckpoint(Interruptable owner, AnalysisBudget budget)
+    {
+        this.owner = owner;
+        this.tracker = budget == null ? null : budget.start();
+    }
+
+    /**
+     * Retrieves the budget tracker of the calculation.
+     *
+     * @return the tracker or null if there is no budget
+     */
+    AnalysisBudget.Tracker getTracker()
+    {
+        return tracker;
+    }
+
+    /**
+     * Sets the task whose interrupted status is checked.
+     *
+     * @param task the task
+     */
+    void setTask(Interruptable task)
+    {
+        this.task = task;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NioGramException if the calculator or the task is interrupted
+     * @throws AnalysisBudgetExceededException if the budget is exceeded
+     */
+    @Override
+    public void check()
+    {
+        Interruptable current = task;
+        if (owner.isInterrupted()
+                || (current != null && current.isInterrupted())) {
+            throw new NioGramException("interrupted");
+        }
+        if (tracker != null) {
+            tracker.check();
+        }
+    }
+
+    /**
+     * Performs an amortised check upon a visit of a node.
+     */
+    void nodeVisited()
+    {
+        if ((++nodes & NODE_CHECK_MASK) == 0) {
+            check();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import net.ognyanov.niogram.ast.Grammar;
+import net.ognyanov.niogram.ast.GrammarNode;
+import net.ognyanov.niogram.util.ObjectPool;
+
+/**
+ * A listener for the progress of grammar analysis.<p>
+ *
+ * The calculators notify their listener (if any) at the start
+ * and at the end of each analysis phase, after each iteration
+ * of a fixed-point loop and on each change of a set attribute
+ * of a node. Pool statistics are reported once per phase for
+ * each pool used by the phase.<p>
+ *
+ * The notifications are delivered on the thread which
+ * runs the calculator. A listener which is shared by
+ * calculators running in parallel must be thread safe.
+ *
+ * @author Nikolay Ognyanov
+ */
+public interface AnalysisListener
+{
+    /**
+     * The analysis phases reported to listeners.
+     *
+     * @author Nikolay Ognyanov
+     */
+    public enum Phase
+    {
+        FLAGS,
+        FIRST, FOLLOW, CONFLICTS,
+        FIRST_K, FOLLOW_K, CONFLICTS_K,
+        FIRST_KL, FOLLOW_KL, CONFLICTS_KL,
+        TRACES
+    }
+
+    /**
+     * The kinds of object pools used by the analysis.
+     *
+     * @author Nikolay Ognyanov
+     */
+    public enum PoolType
+    {
+        /** the pool of sets of a phase */
+        SETS,
+        /** the thread pool of FirstK/FollowK strings */
+        STRINGS
+    }
+
+    /**
+     * Called when a phase starts.
+     *
+     * @param phase the phase
+     * @param grammar the grammar being analyzed
+     */
+    public void phaseStarted(Phase phase, Grammar grammar);
+
+    /**
+     * Called when a phase ends, normally or not.
+     *
+     * @param phase the phase
+     * @param grammar the grammar being analyzed
+     * @param nanos the elapsed time in nanoseconds
+     */
+    public void phaseEnded(Phase phase, Grammar grammar, long nanos);
+
+    /**
+     * Called after each iteration of a fixed-point loop.
+     *
+     * @param phase the phase
+     * @param iteration the 1-based number of the iteration
+     * @param changedNodes the number of node attributes
+     * changed by the iteration
+     */
+    public void iterationCompleted(Phase phase, int iteration,
+                                   int changedNodes);
+
+    /**
+     * Called when the set computed by a phase
+     * for a node changes.
+     *
+     * @param phase the phase
+     * @param node the node
+     * @param setSize the size of the new set; for FirstKL/FollowKL
+     * the total number of terminals over all positions
+     */
+    public void nodeChanged(Phase phase, GrammarNode node, int setSize);
+
+    /**
+     * Called at the end of a phase for each pool used by the phase.
+     *
+     * @param phase the phase
+     * @param pool the kind of the pool
+     * @param statistics the statistics of the pool for the phase
+     */
+    public void poolStatistics(Phase phase, PoolType pool,
+                               ObjectPool.Statistics statistics);
+}
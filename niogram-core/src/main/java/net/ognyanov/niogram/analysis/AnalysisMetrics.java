@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.ognyanov.niogram.ast.Grammar;
+import net.ognyanov.niogram.ast.GrammarNode;
+import net.ognyanov.niogram.util.ObjectPool;
+
+/**
+ * An {@link AnalysisListener} which aggregates the
+ * notifications into metrics per phase and per node.
+ * The metrics are available as a text report from
+ * {@link #getReport()}.<p>
+ *
+ * The implementation is thread safe so one instance
+ * may be shared by calculators running in parallel.
+ *
+ * @author Nikolay Ognyanov
+ */
+public final class AnalysisMetrics
+    implements AnalysisListener
+{
+    private static final int DEFAULT_TOP_NODES = 10;
+
+    private final Map<Phase, PhaseMetrics>      phases =
+        new EnumMap<Phase, PhaseMetrics>(Phase.class);
+    private final Map<GrammarNode, NodeMetrics> nodes  =
+        new IdentityHashMap<GrammarNode, NodeMetrics>();
+    private int                                 topNodes = DEFAULT_TOP_NODES;
+
+    /**
+     * Aggregated metrics of a phase.
+     *
+     * @author Nikolay Ognyanov
+     */
+    public static final class PhaseMetrics
+    {
+        private int    runs       = 0;
+        private long   nanos      = 0;
+        private int    iterations = 0;
+        private long   changes    = 0;
+        private int    maxSetSize = 0;
+        private long[] hits       = new long[PoolType.values().length];
+        private long[] misses     = new long[PoolType.values().length];
+        private int    maxPool    = 0;
+
+        private PhaseMetrics()
+        {
+        }
+
+        private PhaseMetrics(PhaseMetrics other)
+        {
+            runs = other.runs;
+            nanos = other.nanos;
+            iterations = other.iterations;
+            changes = other.changes;
+            maxSetSize = other.maxSetSize;
+            hits = other.hits.clone();
+            misses = other.misses.clone();
+            maxPool = other.maxPool;
+        }
+
+        /** @return the number of completed runs of the phase */
+        public int getRuns()
+        {
+            return runs;
+        }
+
+        /** @return the total elapsed time in nanoseconds */
+        public long getNanos()
+        {
+            return nanos;
+        }
+
+        /** @return the total number of fixed-point iterations */
+        public int getIterations()
+        {
+            return iterations;
+        }
+
+        /** @return the total number of node set changes */
+        public long getChanges()
+        {
+            return changes;
+        }
+
+        /** @return the maximum size of a changed set */
+        public int getMaxSetSize()
+        {
+            return maxSetSize;
+        }
+
+        /**
+         * @param pool the kind of the pool
+         * @return the total number of objects served by pools of the kind
+         */
+        public long getHits(PoolType pool)
+        {
+            return hits[pool.ordinal()];
+        }
+
+        /**
+         * @param pool the kind of the pool
+         * @return the total number of objects created by pools of the kind
+         */
+        public long getMisses(PoolType pool)
+        {
+            return misses[pool.ordinal()];
+        }
+
+        /** @return the maximum number of idle sets in a pool */
+        public int getMaxPool()
+        {
+            return maxPool;
+        }
+    }
+
+    private static final class NodeMetrics
+    {
+        private final GrammarNode node;
+        private int               changes    = 0;
+        private int               maxSetSize = 0;
+
+        private NodeMetrics(GrammarNode node)
+        {
+            this.node = node;
+        }
+    }
+
+    /**
+     * Sets the number of nodes with the most set changes
+     * listed in the report.
+     *
+     * @param topNodes the number of nodes
+     */
+    public synchronized void setTopNodes(int topNodes)
+    {
+        if (topNodes < 0) {
+            throw new IllegalArgumentException("negative top nodes");
+        }
+        this.topNodes = topNodes;
+    }
+
+    /**
+     * Gets a snapshot of the metrics of a phase.
+     *
+     * @param phase the phase
+     * @return the metrics; null if the phase has not run
+     */
+    public synchronized PhaseMetrics getPhaseMetrics(Phase phase)
+    {
+        PhaseMetrics metrics = phases.get(phase);
+        return metrics == null ? null : new PhaseMetrics(metrics);
+    }
+
+    /**
+     * Discards all aggregated metrics.
+     */
+    public synchronized void clear()
+    {
+        phases.clear();
+        nodes.clear();
+    }
+
+    @Override
+    public synchronized void phaseStarted(Phase phase, Grammar grammar)
+    {
+        phase(phase);
+    }
+
+    @Override
+    public synchronized void phaseEnded(Phase phase, Grammar grammar,
+                                        long nanos)
+    {
+        PhaseMetrics metrics = phase(phase);
+        metrics.runs++;
+        metrics.nanos += nanos;
+    }
+
+    @Override
+    public synchronized void iterationCompleted(Phase phase, int iteration,
+                                                int changedNodes)
+    {
+        phase(phase).iterations++;
+    }
+
+    @Override
+    public synchronized void nodeChanged(Phase phase, GrammarNode node,
+                                         int setSize)
+    {
+        PhaseMetrics metrics = phase(phase);
+        metrics.changes++;
+        if (setSize > metrics.maxSetSize) {
+            metrics.maxSetSize = setSize;
+        }
+        NodeMetrics nodeMetrics = nodes.get(node);
+        if (nodeMetrics == null) {
+            nodeMetrics = new NodeMetrics(node);
+            nodes.put(node, nodeMetrics);
+        }
+        nodeMetrics.changes++;
+        if (setSize > nodeMetrics.maxSetSize) {
+            nodeMetrics.maxSetSize = setSize;
+        }
+    }
+
+    @Override
+    public synchronized void poolStatistics(Phase phase, PoolType pool,
+                                            ObjectPool.Statistics statistics)
+    {
+        PhaseMetrics metrics = phase(phase);
+        metrics.hits[pool.ordinal()] += statistics.getHits();
+        metrics.misses[pool.ordinal()] += statistics.getMisses();
+        if (pool == PoolType.SETS
+            && statistics.getMaxIdle() > metrics.maxPool) {
+            metrics.maxPool = statistics.getMaxIdle();
+        }
+    }
+
+    /**
+     * Produces a text report of the aggregated metrics.
+     *
+     * @return the report
+     */
+    public synchronized String getReport()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(
+            "%-13s %5s %10s %6s %8s %8s %9s %9s %9s %9s %6s%n",
+            "phase", "runs", "millis", "iters", "changes", "max set",
+            "set hits", "set miss", "str hits", "str miss", "pool"));
+        int sets = PoolType.SETS.ordinal();
+        int strings = PoolType.STRINGS.ordinal();
+        for (Map.Entry<Phase, PhaseMetrics> entry : phases.entrySet()) {
+            PhaseMetrics m = entry.getValue();
+            sb.append(String.format(
+                "%-13s %5d %10.3f %6d %8d %8d %9d %9d %9d %9d %6d%n",
+                entry.getKey(), m.runs, m.nanos / 1e6, m.iterations,
+                m.changes, m.maxSetSize, m.hits[sets], m.misses[sets],
+                m.hits[strings], m.misses[strings], m.maxPool));
+        }
+        if (topNodes > 0 && !nodes.isEmpty()) {
+            List<NodeMetrics> sorted =
+                new ArrayList<NodeMetrics>(nodes.values());
+            Collections.sort(sorted, new Comparator<NodeMetrics>()
+            {
+                @Override
+                public int compare(NodeMetrics m1, NodeMetrics m2)
+                {
+                    if (m1.changes != m2.changes) {
+                        return m2.changes - m1.changes;
+                    }
+                    return m2.maxSetSize - m1.maxSetSize;
+                }
+            });
+            sb.append(String.format("%-40s %8s %8s%n",
+                "node", "changes", "max set"));
+            int count = Math.min(topNodes, sorted.size());
+            for (int i = 0; i < count; i++) {
+                NodeMetrics m = sorted.get(i);
+                sb.append(String.format("%-40s %8d %8d%n",
+                    m.node.getDisplayName(), m.changes, m.maxSetSize));
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString()
+    {
+        return getReport();
+    }
+
+    private PhaseMetrics phase(Phase phase)
+    {
+        PhaseMetrics metrics = phases.get(phase);
+        if (metrics == null) {
+            metrics = new PhaseMetrics();
+            phases.put(phase, metrics);
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ * 
+ * Use of this file is governed by the licensing conditions   
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import net.ognyanov.niogram.ast.Grammar;
+import net.ognyanov.niogram.util.BitSetLLString;
+import net.ognyanov.niogram.util.ObjectPool;
+
+class BitSetLLStringPool
+    extends ObjectPool<BitSetLLString>
+{
+    private Grammar grammar = null;
+    private int     k       = 0;
+
+    public BitSetLLStringPool(Grammar grammar)
+    {
+        this.grammar = grammar;
+        this.k = grammar.getKL();
+    }
+
+    @Override
+    protected BitSetLLString create()
+    {
+        return new BitSetLLString(k, grammar);
+    }
+
+    @Override
+    protected void reset(BitSetLLString object)
+    {
+        object.clear();
+    }
+}
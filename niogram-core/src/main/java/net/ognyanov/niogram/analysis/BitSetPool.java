@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ * 
+ * Use of this file is governed by the licensing conditions   
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import net.ognyanov.niogram.ast.BuiltInTypes;
+import net.ognyanov.niogram.ast.Grammar;
+import net.ognyanov.niogram.util.BiasedBitSet;
+import net.ognyanov.niogram.util.ObjectPool;
+
+class BitSetPool
+    extends ObjectPool<BiasedBitSet>
+{
+    private Grammar grammar = null;
+
+    public BitSetPool(Grammar grammar)
+    {
+        this.grammar = grammar;
+    }
+
+    @Override
+    protected BiasedBitSet create()
+    {
+        return new BiasedBitSet(BuiltInTypes.MIN_TYPE, grammar);
+    }
+
+    @Override
+    protected void reset(BiasedBitSet object)
+    {
+        object.clear();
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.ognyanov.niogram.ast.BuiltInTypes;
+import net.ognyanov.niogram.ast.Multiplex;
+
+/**
+ * The prediction tables of an LL(k) decision.<p>
+ *
+ * The tables are nested jump tables indexed by the types of the
+ * lookahead tokens. Table 0 is looked up with the first token,
+ * the table it refers to with the second token and so on until
+ * an alternative is predicted. A path through the tables is only
+ * as long as it takes to tell the alternatives apart, so most
+ * decisions are made with one or two lookups.<p>
+ *
+ * Each table covers only the range between its smallest and largest
+ * token type. Element 0 of a table is its entry for the end of the
+ * input, element 1 is the smallest type in the range and the entries
+ * for the types in the range follow. An entry is {@link #ERROR} if no
+ * alternative is viable, the index of the predicted alternative plus
+ * one if it is positive and the negated index of the next table if it
+ * is negative. The end of the input, that is the end of the lookahead
+ * or an {@link BuiltInTypes#EOF} token, takes entry 0. It predicts the
+ * alternative whose lookahead strings end at the table if there is
+ * one and is {@link #ERROR} otherwise. No alternative is viable for
+ * the tokens out of the range, so they are errors. Tables with the
+ * same contents are stored only once.
+ *
+ * @author Nikolay Ognyanov
+ */
+public final class DecisionTable
+{
+    /**
+     * The entry for tokens which no alternative is viable for.
+     */
+    public static final int    ERROR = 0;
+
+    private final Multiplex    multiplex;
+    private final List<int[]>  tables;
+    private final int          depth;
+
+    /*
+     * Turns a trie into tables.
+     */
+    private static final class Builder
+    {
+        private final LookaheadTrie             trie;
+        private final List<int[]>               tables  =
+            new ArrayList<int[]>();
+        private final Map<IntArrayKey, Integer> indexes =
+            new HashMap<IntArrayKey, Integer>();
+        private int                             depth   = 0;
+
+        private Builder(LookaheadTrie trie)
+        {
+            this.trie = trie;
+        }
+
+        /*
+         * Builds the table of a node which some alternative is viable
+         * for. Returns null if the node does not tell the alternatives
+         * apart.
+         */
+        private int[] table(int node)
+        {
+            int nodeDepth = trie.getDepth(node);
+            if (nodeDepth == trie.getK()) {
+                return null;
+            }
+            int ending = ERROR;
+            for (int i = trie.nextViable(node, 0); i != LookaheadTrie.NONE;
+                 i = trie.nextViable(node, i + 1)) {
+                if (trie.isEnding(node, i)) {
+                    if (ending != ERROR) {
+                        return null;
+                    }
+                    ending = i + 1;
+                }
+            }
+            // an EOF token ends the input too
+            int count = trie.getSymbolCount(node);
+            int first = 0;
+            if (count > 0 && trie.getSymbol(node, 0) == BuiltInTypes.EOF) {
+                int entry = entry(trie.getChild(node, BuiltInTypes.EOF));
+                if (entry == Integer.MIN_VALUE
+                        || (ending != ERROR && entry != ending)) {
+                    return null;
+                }
+                ending = entry;
+                first = 1;
+            }
+            int min = first == count ? 0 : trie.getSymbol(node, first);
+            int max = first == count ? -1 : trie.getSymbol(node, count - 1);
+            int[] table = new int[max - min + 3];
+            Arrays.fill(table, ERROR);
+            table[0] = ending;
+            table[1] = min;
+            for (int i = first; i < count; i++) {
+                int symbol = trie.getSymbol(node, i);
+                int child = trie.getChild(node, symbol);
+                int entry = entry(child);
+                if (entry == Integer.MIN_VALUE) {
+                    return null;
+                }
+                table[symbol - min + 2] = entry;
+            }
+            depth = Math.max(depth, nodeDepth + 1);
+            return table;
+        }
+
+        /*
+         * Returns the entry for a node or Integer.MIN_VALUE
+         * if the node does not tell the alternatives apart.
+         */
+        private int entry(int node)
+        {
+            int predicted = trie.predict(node);
+            if (predicted != LookaheadTrie.NONE) {
+                return predicted + 1;
+            }
+            int[] table = table(node);
+            if (table == null) {
+                return Integer.MIN_VALUE;
+            }
+            IntArrayKey key = new IntArrayKey(table);
+            Integer index = indexes.get(key);
+            if (index == null) {
+                index = tables.size();
+                tables.add(table);
+                indexes.put(key, index);
+            }
+            return -index;
+        }
+    }
+
+    private DecisionTable(Multiplex multiplex, List<int[]> tables, int depth)
+    {
+        this.multiplex = multiplex;
+        this.tables = tables;
+        this.depth = depth;
+    }
+
+    /**
+     * Builds the tables of a decision.
+     *
+     * @param trie the lookahead trie of the decision
+     * @return the tables or null if the lookahead strings do not
+     * tell the alternatives of the decision apart
+     */
+    public static DecisionTable build(LookaheadTrie trie)
+    {
+        if (trie == null) {
+            throw new IllegalArgumentException("null argument");
+        }
+        Builder builder = new Builder(trie);
+        // table 0 is reserved for the root
+        builder.tables.add(null);
+        if (trie.getViableCount(0) == 0) {
+            return null;
+        }
+        int[] root = builder.table(0);
+        if (root == null) {
+            return null;
+        }
+        builder.tables.set(0, root);
+        return new DecisionTable(trie.getMultiplex(), builder.tables,
+            builder.depth);
+    }
+
+    /**
+     * Retrieves the decision of the tables.
+     *
+     * @return the nonterminal rule or block
+     */
+    public Multiplex getMultiplex()
+    {
+        return multiplex;
+    }
+
+    /**
+     * Retrieves the largest number of tokens
+     * looked at to predict an alternative.
+     *
+     * @return the number of tokens
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * Retrieves the number of distinct tables.
+     *
+     * @return the number of tables
+     */
+    public int getTableCount()
+    {
+        return tables.size();
+    }
+
+    /**
+     * Retrieves a table.
+     *
+     * @param index the index of the table
+     * @return a copy of the table
+     */
+    public int[] getTable(int index)
+    {
+        return tables.get(index).clone();
+    }
+
+    /**
+     * Predicts an alternative for a sequence of tokens.
+     * The end of the sequence and an EOF token take the entry
+     * of a table for the end of the input and the tokens out
+     * of the range of a table are errors.
+     *
+     * @param symbols an array holding the token types
+     * @param offset the start of the sequence in the array
+     * @param length the length of the sequence
+     * @return the index of the alternative or
+     * {@link LookaheadTrie#NONE} if none is viable
+     */
+    public int predict(int[] symbols, int offset, int length)
+    {
+        int[] table = tables.get(0);
+        for (int i = 0;; i++) {
+            int index = 0;
+            if (i < length && symbols[offset + i] != BuiltInTypes.EOF) {
+                index = symbols[offset + i] - table[1] + 2;
+                if (index < 2 || index >= table.length) {
+                    return LookaheadTrie.NONE;
+                }
+            }
+            int entry = table[index];
+            if (entry >= 0) {
+                return entry - 1;
+            }
+            table = tables.get(-entry);
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.ognyanov.niogram.ast.BuiltInTypes;
+import net.ognyanov.niogram.ast.Grammar;
+import net.ognyanov.niogram.ast.GrammarNode;
+import net.ognyanov.niogram.ast.Multiplex;
+import net.ognyanov.niogram.ast.TerminalRule;
+
+/**
+ * Writes the {@link DecisionTable}s of a grammar as Java source.<p>
+ *
+ * The generated class holds an <code>int[][]</code> constant named
+ * after each decision with more than one alternative whose lookahead
+ * strings tell the alternatives apart, together with a
+ * <code>predict</code> method for hand written parsers. The method
+ * takes the lookahead tokens from a <code>Lookahead</code> interface
+ * declared in the class and returns the index of the predicted
+ * alternative or -1. Tokens which no alternative is viable for
+ * predict -1 while <code>EOF</code> predicts the alternative, if any,
+ * which the input may end in. The token types are those of the
+ * grammar and the class declares a constant for each of them, named
+ * after the token, so that a parser can map the types of its own
+ * lexer onto them. Literal tokens are named <code>T_</code> followed by the
+ * literal if it is an identifier and by the type otherwise. The
+ * decisions which can not be predicted with the tables are listed
+ * in a comment at the end of the class.
+ *
+ * @author Nikolay Ognyanov
+ */
+public final class DecisionTableWriter
+{
+    private static final int VALUES_PER_LINE = 12;
+
+    private Appendable       out             = null;
+    private String           packageName     = null;
+    private String           className       = null;
+
+    /**
+     * Creates a decision table writer.
+     *
+     * @param out the target of the source
+     */
+    public DecisionTableWriter(Appendable out)
+    {
+        if (out == null) {
+            throw new IllegalArgumentException("null argument");
+        }
+        this.out = out;
+    }
+
+    /**
+     * Sets the package of the generated class.
+     * By default the class is in the unnamed package.
+     *
+     * @param packageName the package name or null
+     */
+    public void setPackageName(String packageName)
+    {
+        this.packageName = packageName;
+    }
+
+    /**
+     * Sets the name of the generated class. By default it is the
+     * name of the grammar followed by <code>Decisions</code>.
+     *
+     * @param className the class name or null
+     */
+    public void setClassName(String className)
+    {
+        this.className = className;
+    }
+
+    /**
+     * Writes the decision tables of a grammar.
+     *
+     * @param grammar the grammar; its FirstK/FollowK
+     * sets must have been calculated
+     * @throws IOException if writing to the target fails
+     */
+    public void write(Grammar grammar)
+        throws IOException
+    {
+        if (grammar == null) {
+            throw new IllegalArgumentException("null argument");
+        }
+        LookaheadIndex index = new LookaheadIndex(grammar);
+        List<Multiplex> multiplexes = new ArrayList<Multiplex>();
+        multiplexes.addAll(grammar.getNonterminalRules());
+        multiplexes.addAll(grammar.getBlocks());
+
+        String name = className;
+        if (name == null) {
+            name = identifier(grammar.getDisplayName(), false);
+            name = Character.toUpperCase(name.charAt(0)) + name.substring(1)
+                    + "Decisions";
+        }
+        if (packageName != null && !packageName.isEmpty()) {
+            out.append("package ").append(packageName).append(";\n\n");
+        }
+        out.append("/**\n");
+        out.append(" * LL(").append(String.valueOf(grammar.getK()))
+            .append(") decision tables of grammar ")
+            .append(grammar.getDisplayName()).append(".\n");
+        out.append(" * Generated by NioGram.\n");
+        out.append(" */\n");
+        out.append("public final class ").append(name).append("\n{\n");
+        writeLookahead();
+
+        Set<String> names = new HashSet<String>();
+        writeTokens(grammar, names);
+        List<Multiplex> skipped = new ArrayList<Multiplex>();
+        for (Multiplex multiplex : multiplexes) {
+            if (multiplex.getAlternatives().size() < 2) {
+                continue;
+            }
+            DecisionTable table = null;
+            if (multiplex.getConflictsK().isEmpty()) {
+                table = DecisionTable.build(index.getTrie(multiplex));
+            }
+            if (table == null) {
+                skipped.add(multiplex);
+                continue;
+            }
+            String displayName = ((GrammarNode) multiplex).getDisplayName();
+            String field = identifier(displayName, false);
+            while (!names.add(field)) {
+                field = field + "_";
+            }
+            writeTable(table, displayName, field);
+        }
+        writePredict(name);
+        if (!skipped.isEmpty()) {
+            out.append("\n    // Not predictable with LL(")
+                .append(String.valueOf(grammar.getK())).append(") tables:\n");
+            for (Multiplex multiplex : skipped) {
+                out.append("    //   ")
+                    .append(((GrammarNode) multiplex).getDisplayName())
+                    .append('\n');
+            }
+        }
+        out.append("}\n");
+    }
+
+    private void writeLookahead()
+        throws IOException
+    {
+        out.append("    /**\n");
+        out.append("     * The source of the lookahead tokens.\n");
+        out.append("     */\n");
+        out.append("    public interface Lookahead\n    {\n");
+        out.append("        /**\n");
+        out.append("         * Retrieves the type of a lookahead token.\n");
+        out.append("         *\n");
+        out.append("         * @param i the position of the token,");
+        out.append(" starting from 1\n");
+        out.append("         * @return the token type, one of the token");
+        out.append(" constants;\n");
+        out.append("         * EOF at the end of the input\n");
+        out.append("         */\n");
+        out.append("        int LA(int i);\n");
+        out.append("    }\n");
+    }
+
+    private void writeTokens(Grammar grammar, Set<String> names)
+        throws IOException
+    {
+        out.append("\n    // token types\n");
+        names.add("EOF");
+        out.append("    public static final int EOF = ")
+            .append(String.valueOf(BuiltInTypes.EOF)).append(";\n");
+        for (TerminalRule rule : grammar.getTerminalRules()) {
+            int type = rule.getType();
+            if (type <= BuiltInTypes.INVALID) {
+                continue;
+            }
+            String name = grammar.getTypeName(type);
+            String constant = tokenConstant(name, type);
+            while (!names.add(constant)) {
+                constant = constant + "_";
+            }
+            out.append("    public static final int ").append(constant)
+                .append(" = ").append(String.valueOf(type)).append(';');
+            if (!constant.equals(name)) {
+                // no unicode escapes in the comment
+                out.append(" // ").append(name.replace("\\", "\\\\"));
+            }
+            out.append('\n');
+        }
+    }
+
+    private void writeTable(DecisionTable table, String displayName,
+                            String field)
+        throws IOException
+    {
+        Multiplex multiplex = table.getMultiplex();
+        out.append("\n    /**\n");
+        out.append("     * ").append(displayName).append(": ")
+            .append(String.valueOf(multiplex.getAlternatives().size()))
+            .append(" alternatives, minK ")
+            .append(String.valueOf(multiplex.getMinK()))
+            .append(", depth ")
+            .append(String.valueOf(table.getDepth()))
+            .append(".\n");
+        out.append("     */\n");
+        out.append("    public static final int[][] ").append(field)
+            .append(" = {\n");
+        for (int i = 0; i < table.getTableCount(); i++) {
+            int[] values = table.getTable(i);
+            out.append("        {");
+            for (int j = 0; j < values.length; j++) {
+                if (j > 0) {
+                    out.append(',');
+                    if (j % VALUES_PER_LINE == 0) {
+                        out.append("\n         ");
+                    }
+                }
+                out.append(' ').append(String.valueOf(values[j]));
+            }
+            out.append(" },\n");
+        }
+        out.append("    };\n");
+    }
+
+    private void writePredict(String name)
+        throws IOException
+    {
+        out.append("\n    /**\n");
+        out.append("     * Predicts an alternative of a decision.\n");
+        out.append("     *\n");
+        out.append("     * @param decision the tables of the decision\n");
+        out.append("     * @param input the lookahead tokens\n");
+        out.append("     * @return the index of the alternative");
+        out.append(" or -1 if none is viable\n");
+        out.append("     */\n");
+        out.append("    public static int predict(int[][] decision,");
+        out.append(" Lookahead input)\n");
+        out.append("    {\n");
+        out.append("        int[] table = decision[0];\n");
+        out.append("        for (int i = 1;; i++) {\n");
+        out.append("            int type = input.LA(i);\n");
+        out.append("            int index = 0;\n");
+        out.append("            if (type != EOF) {\n");
+        out.append("                index = type - table[1] + 2;\n");
+        out.append("                if (index < 2 || index >= table.length)");
+        out.append(" {\n");
+        out.append("                    return -1;\n");
+        out.append("                }\n");
+        out.append("            }\n");
+        out.append("            int entry = table[index];\n");
+        out.append("            if (entry >= 0) {\n");
+        out.append("                return entry - 1;\n");
+        out.append("            }\n");
+        out.append("            table = decision[-entry];\n");
+        out.append("        }\n");
+        out.append("    }\n\n");
+        out.append("    private ").append(name).append("()\n    {\n    }\n");
+    }
+
+    /*
+     * Returns the name of the constant for a token type.
+     */
+    private static String tokenConstant(String name, int type)
+    {
+        if (name == null) {
+            return "T_" + type;
+        }
+        if (name.length() > 2 && name.charAt(0) == '\''
+                && name.charAt(name.length() - 1) == '\'') {
+            String literal = name.substring(1, name.length() - 1);
+            for (int i = 0; i < literal.length(); i++) {
+                if (!Character.isJavaIdentifierPart(literal.charAt(i))) {
+                    return "T_" + type;
+                }
+            }
+            return "T_" + identifier(literal, true);
+        }
+        return identifier(name, false);
+    }
+
+    /*
+     * Turns a display name into a Java identifier.
+     */
+    private static String identifier(String name, boolean upperCase)
+    {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!Character.isJavaIdentifierPart(c)) {
+                c = '_';
+            }
+            else if (upperCase) {
+                c = Character.toUpperCase(c);
+            }
+            result.append(c);
+        }
+        if (result.length() == 0
+                || !Character.isJavaIdentifierStart(result.charAt(0))) {
+            result.insert(0, '_');
+        }
+        return result.toString();
+    }
+}
@@ -33,6 +33,7 @@ class FFConflictsVisitor
     {
         super.visitNonterminalRule(rule);
         visitMultiplex(rule);
+        ruleCompleted();
     }
 
     @Override
@@ -16,13 +16,17 @@ import net.ognyanov.niogram.ast.GrammarNode;
 import net.ognyanov.niogram.ast.Multiplex;
 import net.ognyanov.niogram.ast.NonterminalRule;
 import net.ognyanov.niogram.util.IntLLStringSet;
+import net.ognyanov.niogram.util.SortedLLStringSet;
 
 class FFKConflictsVisitor
     extends InterruptableGrammarVisitor
 {
-    private int            k        = 0;
-    private IntLLStringSet conflict = null;
-    private int            minK     = 0;
+    private int                 k        = 0;
+    private IntLLStringSet      conflict = null;
+    private int                 minK     = 0;
+    private SortedLLStringSet   first    = null;
+    private SortedLLStringSet   follow   = null;
+    private SortedLLStringSet[] firsts   = null;
 
     @Override
     public void visitGrammar(Grammar grammar)
@@ -36,6 +40,7 @@ class FFKConflictsVisitor
     {
         super.visitNonterminalRule(rule);
         visitMultiplex(rule);
+        ruleCompleted();
     }
 
     @Override
@@ -47,7 +52,8 @@ class FFKConflictsVisitor
 
     private void visitMultiplex(Multiplex multiplex)
     {
-        calculateFfConflict(multiplex, k);
+        prepare(multiplex);
+        calculateFfConflict(k);
         conflict.removeEmpty();
         recordFfConflict(multiplex);
 
@@ -60,31 +66,104 @@ class FFKConflictsVisitor
             Alternative current = currentIt.next();
             otherIt.next(); // skip current
             while (otherIt.hasNext()) {
+                int otherIndex = otherIt.nextIndex();
                 Alternative other = otherIt.next();
-                calculateConflict(current, other, k);
+                calculateConflict(nextIndex, otherIndex, k);
                 recordConflict(multiplex, current, other);
             }
         }
     }
 
-    private void calculateFfConflict(Multiplex multiplex, int currentK)
+    /**
+     * Prepares the FirstK/FollowK sets of a multiplex and the FirstK
+     * sets of its alternatives for the conflict calculations. Each
+     * set is converted once for all of its pairs.
+     *
+     * @param multiplex the multiplex
+     */
+    void prepare(Multiplex multiplex)
+    {
+        GrammarNode node = (GrammarNode) multiplex;
+        first = new SortedLLStringSet(node.getFirstK());
+        follow = new SortedLLStringSet(node.getFollowK());
+        List<Alternative> alternatives = multiplex.getAlternatives();
+        firsts = new SortedLLStringSet[alternatives.size()];
+        for (int i = 0; i < firsts.length; i++) {
+            firsts[i] = new SortedLLStringSet(alternatives.get(i).getFirstK());
+        }
+    }
+
+    /**
+     * Calculates the conflict of the FirstK and
+     * the FollowK sets of the prepared multiplex.
+     *
+     * @param currentK the length of the compared prefixes
+     * @return the conflict set
+     */
+    IntLLStringSet ffConflict(int currentK)
+    {
+        return first.conflict(follow, currentK).toIntLLStringSet();
+    }
+
+    /**
+     * Checks whether the FirstK and the FollowK sets
+     * of the prepared multiplex conflict.
+     *
+     * @param currentK the length of the compared prefixes
+     * @return true if the conflict set is not empty
+     */
+    boolean hasFfConflict(int currentK)
+    {
+        return !first.conflict(follow, currentK).isEmpty();
+    }
+
+    /**
+     * Calculates the conflict of the FirstK sets of two
+     * alternatives of the prepared multiplex.
+     *
+     * @param current the index of the first alternative
+     * @param other the index of the second alternative
+     * @param currentK the length of the compared prefixes
+     * @return the conflict set
+     */
+    IntLLStringSet conflict(int current, int other, int currentK)
+    {
+        return firsts[current].conflict(firsts[other], currentK)
+            .toIntLLStringSet();
+    }
+
+    /**
+     * Checks whether the FirstK sets of two alternatives
+     * of the prepared multiplex conflict.
+     *
+     * @param current the index of the first alternative
+     * @param other the index of the second alternative
+     * @param currentK the length of the compared prefixes
+     * @return true if the conflict set is not empty
+     */
+    boolean hasConflict(int current, int other, int currentK)
+    {
+        return !firsts[current].conflict(firsts[other], currentK).isEmpty();
+    }
+
+    private void calculateFfConflict(int currentK)
     {
         if (currentK < 0) {
             minK = 0;
             return;
         }
-        GrammarNode node = (GrammarNode) multiplex;
-        IntLLStringSet currentFirst = node.getFirstK();
-        IntLLStringSet currentFollow = node.getFollowK();
-        IntLLStringSet currentConflict =
-            currentFirst.conflict(currentFollow, currentK);
+        boolean found;
         if (currentK == k) {
             // the end result for conflict
-            conflict = currentConflict;
+            conflict = ffConflict(currentK);
+            found = !conflict.isEmpty();
+        }
+        else {
+            found = hasFfConflict(currentK);
         }
-        if (currentConflict.isEmpty()) {
+        if (!found) {
             // look for a conflict at smaller k
-            calculateFfConflict(multiplex, currentK - 1);
+            calculateFfConflict(currentK - 1);
         }
         else {
             // the end result for k
@@ -92,23 +171,22 @@ class FFKConflictsVisitor
         }
     }
 
-    private void calculateConflict(Alternative current,
-                                   Alternative other,
-                                   int currentK)
+    private void calculateConflict(int current, int other, int currentK)
     {
         if (currentK < 0) {
             minK = 0;
             return;
         }
-        IntLLStringSet currentFirst = current.getFirstK();
-        IntLLStringSet otherFirst = other.getFirstK();
-        IntLLStringSet currentConflict =
-            currentFirst.conflict(otherFirst, currentK);
+        boolean found;
         if (currentK == k) {
             // the end result for conflict
-            conflict = currentConflict;
+            conflict = conflict(current, other, currentK);
+            found = !conflict.isEmpty();
+        }
+        else {
+            found = hasConflict(current, other, currentK);
         }
-        if (currentConflict.isEmpty()) {
+        if (!found) {
             // look for a conflict at smaller k
             calculateConflict(current, other, currentK - 1);
         }
@@ -36,6 +36,7 @@ class FFKLConflictsVisitor
     {
         super.visitNonterminalRule(rule);
         visitMultiplex(rule);
+        ruleCompleted();
     }
 
     @Override
@@ -6,6 +6,9 @@ package net.ognyanov.niogram.analysis;
  * in the LICENSE.txt file in the root folder of the project.
  */
 
+import java.util.List;
+
+import net.ognyanov.niogram.analysis.AnalysisListener.Phase;
 import net.ognyanov.niogram.ast.Block;
 import net.ognyanov.niogram.ast.BuiltInTypes;
 import net.ognyanov.niogram.ast.Grammar;
@@ -18,6 +21,7 @@ import net.ognyanov.niogram.ast.Terminal;
 import net.ognyanov.niogram.ast.TerminalRule;
 import net.ognyanov.niogram.util.BaseInterruptable;
 import net.ognyanov.niogram.util.BiasedBitSet;
+import net.ognyanov.niogram.util.Checkpoint;
 import net.ognyanov.niogram.util.NioGramException;
 
 /**
@@ -29,10 +33,40 @@ public final class FirstFollowCalculator
     extends BaseInterruptable
     implements AttributeCalculator
 {
+    private AnalysisListener listener = null;
+    private AnalysisBudget   budget   = null;
+
+    /**
+     * Sets a listener to be notified of the progress
+     * of the calculation.
+     *
+     * @param listener the listener; null for none
+     */
+    public void setAnalysisListener(AnalysisListener listener)
+    {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets a budget for the calculation. If the budget is
+     * exceeded the calculation stops, the data computed so far
+     * is kept and the nonterminal rules with incomplete data are
+     * listed in {@link Grammar#getIncompleteFF()}.
+     *
+     * @param budget the budget; null for none
+     */
+    public void setBudget(AnalysisBudget budget)
+    {
+        this.budget = budget;
+    }
+
     /**
      * Calculates the First and Follow sets of a grammar
      * and the related conflicts data. If basic flags
      * data is not available, invokes first {@link FlagsCalculator}.
+     * If the calculation is interrupted, either during the call or
+     * before it, the data is cleared, the interrupted status is reset
+     * and the method returns normally.
      * 
      * @param grammar the grammar to be processed
      */
@@ -42,6 +76,11 @@ public final class FirstFollowCalculator
         if (grammar == null) {
             throw new IllegalArgumentException("null argument");
         }
+        // an interrupt requested before the call cancels it
+        if (interrupted()) {
+            grammar.clearFF();
+            return;
+        }
         if (!grammar.hasFlags()) {
             throw new IllegalArgumentException("grammar has no flags");
         }
@@ -60,19 +99,35 @@ public final class FirstFollowCalculator
         FirstVisitor firstVisitor = new FirstVisitor();
         FollowVisitor followVisitor = new FollowVisitor();
         FFConflictsVisitor conflictsVisitor = new FFConflictsVisitor();
+        AnalysisCheckpoint checkpoint =
+            new AnalysisCheckpoint(this, budget);
+        Checkpoint previous = Checkpoint.install(checkpoint);
         try {
             setRelayTarget(firstVisitor);
-            firstVisitor.visitGrammar(grammar);
+            firstVisitor.run(grammar, listener, checkpoint, Phase.FIRST);
             setRelayTarget(followVisitor);
-            followVisitor.visitGrammar(grammar);
+            followVisitor.run(grammar, listener, checkpoint, Phase.FOLLOW);
             setRelayTarget(conflictsVisitor);
-            conflictsVisitor.visitGrammar(grammar);
+            conflictsVisitor.run(grammar, listener, checkpoint,
+                Phase.CONFLICTS);
+            setRelayTarget(null);
+        }
+        catch (AnalysisBudgetExceededException e) {
+            // keep the partial results
             setRelayTarget(null);
+            List<NonterminalRule> rules = grammar.getNonterminalRules();
+            grammar.getIncompleteFF().addAll(rules.subList(
+                conflictsVisitor.getCompletedRules(), rules.size()));
         }
         catch (NioGramException e) {
+            // the interrupt is consumed
             setRelayTarget(null);
+            interrupted();
             grammar.clearFF();
         }
+        finally {
+            Checkpoint.install(previous);
+        }
     }
 
     private static class PrepareFFVisitor
@@ -6,6 +6,9 @@ package net.ognyanov.niogram.analysis;
  * in the LICENSE.txt file in the root folder of the project.
  */
 
+import java.util.List;
+
+import net.ognyanov.niogram.analysis.AnalysisListener.Phase;
 import net.ognyanov.niogram.ast.Block;
 import net.ognyanov.niogram.ast.Grammar;
 import net.ognyanov.niogram.ast.GrammarNode;
@@ -16,8 +19,10 @@ import net.ognyanov.niogram.ast.Term;
 import net.ognyanov.niogram.ast.Terminal;
 import net.ognyanov.niogram.ast.TerminalRule;
 import net.ognyanov.niogram.util.BaseInterruptable;
+import net.ognyanov.niogram.util.Checkpoint;
 import net.ognyanov.niogram.util.IntLLString;
 import net.ognyanov.niogram.util.IntLLStringSet;
+import net.ognyanov.niogram.util.LLStringZdd;
 import net.ognyanov.niogram.util.NioGramException;
 
 /**
@@ -29,10 +34,60 @@ public final class FirstKFollowKCalculator
     extends BaseInterruptable
     implements AttributeCalculator
 {
+    private AnalysisListener listener = null;
+    private AnalysisBudget   budget   = null;
+    private boolean          symbolic = false;
+
+    /**
+     * Sets a listener to be notified of the progress
+     * of the calculation.
+     *
+     * @param listener the listener; null for none
+     */
+    public void setAnalysisListener(AnalysisListener listener)
+    {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets a budget for the calculation. If the budget is
+     * exceeded the calculation stops, the data computed so far
+     * is kept and the nonterminal rules with incomplete data are
+     * listed in {@link Grammar#getIncompleteFFK()}.
+     *
+     * @param budget the budget; null for none
+     */
+    public void setBudget(AnalysisBudget budget)
+    {
+        this.budget = budget;
+    }
+
+    /**
+     * Selects the symbolic backend for the calculation. With it the
+     * sets are represented during the calculation as zero-suppressed
+     * decision diagrams of one {@link LLStringZdd}, so the products
+     * of large sets are never enumerated. The sets are materialized
+     * into the grammar at the end of the FirstK and of the FollowK
+     * phase and the conflicts are calculated on the diagrams. If the
+     * budget is exceeded only the sets of the completed phases are kept.
+     * The symbolic backend supports K up to {@link LLStringZdd#MAX_LIMIT};
+     * for larger K the explicit sets are used.
+     *
+     * @param symbolic true for the symbolic backend; false (the
+     * default) for explicit sets
+     */
+    public void setSymbolic(boolean symbolic)
+    {
+        this.symbolic = symbolic;
+    }
+
     /**
      * Calculates the FirstK and FollowK sets of a grammar
      * and the related conflicts data. If basic flags
      * data is not available, invokes first {@link FlagsCalculator}.
+     * If the calculation is interrupted, either during the call or
+     * before it, the data is cleared, the interrupted status is reset
+     * and the method returns normally.
      * 
      * @param grammar the grammar to be processed
      */
@@ -42,6 +97,11 @@ public final class FirstKFollowKCalculator
         if (grammar == null) {
             throw new IllegalArgumentException("null argument");
         }
+        // an interrupt requested before the call cancels it
+        if (interrupted()) {
+            grammar.clearFFK();
+            return;
+        }
         if (grammar.getNonterminalRules().size() == 0) {
             grammar.setFFK(true);
             return;
@@ -54,22 +114,49 @@ public final class FirstKFollowKCalculator
         grammar.setFFK(true);
         PrepareFFKVisitor prepareVisitor = new PrepareFFKVisitor();
         prepareVisitor.visitGrammar(grammar);
-        FirstKVisitor firstVisitor = new FirstKVisitor();
-        FollowKVisitor followVisitor = new FollowKVisitor();
-        FFKConflictsVisitor conflictsVisitor = new FFKConflictsVisitor();
+        InterruptableGrammarVisitor firstVisitor;
+        InterruptableGrammarVisitor followVisitor;
+        FFKConflictsVisitor conflictsVisitor;
+        if (symbolic && grammar.getK() <= LLStringZdd.MAX_LIMIT) {
+            ZddLookahead lookahead = new ZddLookahead(grammar);
+            firstVisitor = new ZddFirstKVisitor(lookahead);
+            followVisitor = new ZddFollowKVisitor(lookahead);
+            conflictsVisitor = new ZddFFKConflictsVisitor(lookahead);
+        }
+        else {
+            firstVisitor = new FirstKVisitor();
+            followVisitor = new FollowKVisitor();
+            conflictsVisitor = new FFKConflictsVisitor();
+        }
+        AnalysisCheckpoint checkpoint =
+            new AnalysisCheckpoint(this, budget);
+        Checkpoint previous = Checkpoint.install(checkpoint);
         try {
             setRelayTarget(firstVisitor);
-            firstVisitor.visitGrammar(grammar);
+            firstVisitor.run(grammar, listener, checkpoint, Phase.FIRST_K);
             setRelayTarget(followVisitor);
-            followVisitor.visitGrammar(grammar);
+            followVisitor.run(grammar, listener, checkpoint, Phase.FOLLOW_K);
             setRelayTarget(conflictsVisitor);
-            conflictsVisitor.visitGrammar(grammar);
+            conflictsVisitor.run(grammar, listener, checkpoint,
+                Phase.CONFLICTS_K);
             setRelayTarget(null);
         }
+        catch (AnalysisBudgetExceededException e) {
+            // keep the partial results
+            setRelayTarget(null);
+            List<NonterminalRule> rules = grammar.getNonterminalRules();
+            grammar.getIncompleteFFK().addAll(rules.subList(
+                conflictsVisitor.getCompletedRules(), rules.size()));
+        }
         catch (NioGramException e) {
+            // the interrupt is consumed
             setRelayTarget(null);
+            interrupted();
             grammar.clearFFK();
         }
+        finally {
+            Checkpoint.install(previous);
+        }
     }
 
     private static class PrepareFFKVisitor
@@ -6,6 +6,9 @@ package net.ognyanov.niogram.analysis;
  * in the LICENSE.txt file in the root folder of the project.
  */
 
+import java.util.List;
+
+import net.ognyanov.niogram.analysis.AnalysisListener.Phase;
 import net.ognyanov.niogram.ast.Block;
 import net.ognyanov.niogram.ast.BuiltInTypes;
 import net.ognyanov.niogram.ast.Grammar;
@@ -19,6 +22,7 @@ import net.ognyanov.niogram.ast.TerminalRule;
 import net.ognyanov.niogram.util.BaseInterruptable;
 import net.ognyanov.niogram.util.BiasedBitSet;
 import net.ognyanov.niogram.util.BitSetLLString;
+import net.ognyanov.niogram.util.Checkpoint;
 import net.ognyanov.niogram.util.NioGramException;
 
 /**
@@ -30,10 +34,40 @@ public final class FirstKLFollowKLCalculator
     extends BaseInterruptable
     implements AttributeCalculator
 {
+    private AnalysisListener listener = null;
+    private AnalysisBudget   budget   = null;
+
+    /**
+     * Sets a listener to be notified of the progress
+     * of the calculation.
+     *
+     * @param listener the listener; null for none
+     */
+    public void setAnalysisListener(AnalysisListener listener)
+    {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets a budget for the calculation. If the budget is
+     * exceeded the calculation stops, the data computed so far
+     * is kept and the nonterminal rules with incomplete data are
+     * listed in {@link Grammar#getIncompleteFFKL()}.
+     *
+     * @param budget the budget; null for none
+     */
+    public void setBudget(AnalysisBudget budget)
+    {
+        this.budget = budget;
+    }
+
     /**
      * Calculates the FirstKL and FollowKL sets of a grammar
      * and the related conflicts data. If basic flags
      * data is not available, invokes first {@link FlagsCalculator}.
+     * If the calculation is interrupted, either during the call or
+     * before it, the data is cleared, the interrupted status is reset
+     * and the method returns normally.
      * 
      * @param grammar the grammar to be processed
      */
@@ -43,6 +77,11 @@ public final class FirstKLFollowKLCalculator
         if (grammar == null) {
             throw new IllegalArgumentException("null argument");
         }
+        // an interrupt requested before the call cancels it
+        if (interrupted()) {
+            grammar.clearFFKL();
+            return;
+        }
         if (grammar.getNonterminalRules().size() == 0) {
             grammar.setFFKL(true);
             return;
@@ -58,19 +97,35 @@ public final class FirstKLFollowKLCalculator
         FirstKLVisitor firstVisitor = new FirstKLVisitor();
         FollowKLVisitor followVisitor = new FollowKLVisitor();
         FFKLConflictsVisitor conflictsVisitor = new FFKLConflictsVisitor();
+        AnalysisCheckpoint checkpoint =
+            new AnalysisCheckpoint(this, budget);
+        Checkpoint previous = Checkpoint.install(checkpoint);
         try {
             setRelayTarget(firstVisitor);
-            firstVisitor.visitGrammar(grammar);
+            firstVisitor.run(grammar, listener, checkpoint, Phase.FIRST_KL);
             setRelayTarget(followVisitor);
-            followVisitor.visitGrammar(grammar);
+            followVisitor.run(grammar, listener, checkpoint, Phase.FOLLOW_KL);
             setRelayTarget(conflictsVisitor);
-            conflictsVisitor.visitGrammar(grammar);
+            conflictsVisitor.run(grammar, listener, checkpoint,
+                Phase.CONFLICTS_KL);
+            setRelayTarget(null);
+        }
+        catch (AnalysisBudgetExceededException e) {
+            // keep the partial results
             setRelayTarget(null);
+            List<NonterminalRule> rules = grammar.getNonterminalRules();
+            grammar.getIncompleteFFKL().addAll(rules.subList(
+                conflictsVisitor.getCompletedRules(), rules.size()));
         }
         catch (NioGramException e) {
+            // the interrupt is consumed
             setRelayTarget(null);
+            interrupted();
             grammar.clearFFKL();
         }
+        finally {
+            Checkpoint.install(previous);
+        }
     }
 
     private static class PrepareFFKVisitor
@@ -20,7 +20,7 @@ class FirstKLVisitor
     extends InterruptableGrammarVisitor
 {
     private boolean             modified  = false;
-    private BitSetLLStringCache cache     = null;
+    private BitSetLLStringPool  cache     = null;
     private boolean             debug     = false;
     private boolean             moreDebug = false;
 
@@ -30,16 +30,19 @@ class FirstKLVisitor
         if (debug) {
             System.out.println("Start FirstKL");
         }
-        cache = new BitSetLLStringCache(grammar);
+        cache = new BitSetLLStringPool(grammar);
         do {
             modified = false;
+            iterationStarted();
             super.visitGrammar(grammar);
+            iterationCompleted();
         } while (modified);
         BitSetLLString grammarFirstKL = grammar.getFirstKL();
         grammarFirstKL.clear();
         for (NonterminalRule rule : grammar.getNonterminalRules()) {
             grammarFirstKL.addAll(rule.getFirstKL());
         }
+        poolStatistics(cache.getStatistics());
         cache.clear();
         if (debug) {
             System.out.println("End   FirstKL");
@@ -59,6 +62,7 @@ class FirstKLVisitor
             printDebug(rule, newFirstKL);
             cache.put(ruleFirstKL);
             rule.setFirstKL(newFirstKL);
+            changed(rule, newFirstKL);
             modified = true;
         }
         else {
@@ -81,6 +85,7 @@ class FirstKLVisitor
                 if (blockFirstKL.isEmpty()) {
                     printDebug(block, newFirstKL);
                     blockFirstKL.addAll(newFirstKL);
+                    changed(block, newFirstKL);
                     modified = true;
                 }
                 else {
@@ -100,6 +105,7 @@ class FirstKLVisitor
                         cache.put(blockFirstKL);
                         block.setFirstKL(repeatedFirstKL);
                         blockFirstKL = repeatedFirstKL;
+                        changed(block, repeatedFirstKL);
                         modified = true;
                     }
                 }
@@ -109,6 +115,7 @@ class FirstKLVisitor
                     printDebug(block, newFirstKL);
                     cache.put(blockFirstKL);
                     block.setFirstKL(newFirstKL);
+                    changed(block, newFirstKL);
                     modified = true;
                 }
                 else {
@@ -127,6 +134,7 @@ class FirstKLVisitor
         if (terms.size() == 0) {
             if (!altFirstKL.containsEmpty()) {
                 altFirstKL.addEmpty();
+                changed(alternative, altFirstKL);
                 modified = true;
             }
         }
@@ -148,6 +156,7 @@ class FirstKLVisitor
                     printDebug(alternative, newFirstKL);
                     cache.put(altFirstKL);
                     alternative.setFirstKL(newFirstKL);
+                    changed(alternative, newFirstKL);
                     modified = true;
                 }
                 else {
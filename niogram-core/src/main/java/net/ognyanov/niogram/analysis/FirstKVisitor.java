@@ -14,13 +14,14 @@ import net.ognyanov.niogram.ast.Grammar;
 import net.ognyanov.niogram.ast.GrammarNode;
 import net.ognyanov.niogram.ast.NonterminalRule;
 import net.ognyanov.niogram.ast.Term;
+import net.ognyanov.niogram.util.IntLLStringPool;
 import net.ognyanov.niogram.util.IntLLStringSet;
 
 class FirstKVisitor
     extends InterruptableGrammarVisitor
 {
     private boolean             modified  = false;
-    private IntLLStringSetCache cache     = null;
+    private IntLLStringSetPool  cache     = null;
     private boolean             debug     = false;
     private boolean             moreDebug = false;
 
@@ -30,16 +31,22 @@ class FirstKVisitor
         if (debug) {
             System.out.println("Start FirstK");
         }
-        cache = new IntLLStringSetCache(grammar);
+        cache = new IntLLStringSetPool(grammar);
+        IntLLStringPool strings = IntLLStringPool.current(grammar.getK());
+        strings.resetStatistics();
         do {
             modified = false;
+            iterationStarted();
             super.visitGrammar(grammar);
+            iterationCompleted();
         } while (modified);
         IntLLStringSet grammarFirstK = grammar.getFirstK();
         grammarFirstK.clear();
         for (NonterminalRule rule : grammar.getNonterminalRules()) {
             grammarFirstK.addAll(rule.getFirstK());
         }
+        poolStatistics(cache.getStatistics());
+        stringPoolStatistics(strings.getStatistics());
         cache.clear();
         if (debug) {
             System.out.println("End   FirstK");
@@ -59,6 +66,7 @@ class FirstKVisitor
             printDebug(rule, newFirstK);
             cache.put(ruleFirstK);
             rule.setFirstK(newFirstK);
+            changed(rule, newFirstK);
             modified = true;
         }
         else {
@@ -81,6 +89,7 @@ class FirstKVisitor
                 if (blockFirstK.isEmpty()) {
                     printDebug(block, newFirstK);
                     blockFirstK.addAll(newFirstK);
+                    changed(block, newFirstK);
                     modified = true;
                 }
                 else {
@@ -100,6 +109,7 @@ class FirstKVisitor
                         cache.put(blockFirstK);
                         block.setFirstK(repeatedFirstK);
                         blockFirstK = repeatedFirstK;
+                        changed(block, repeatedFirstK);
                         modified = true;
                     }
                 }
@@ -109,6 +119,7 @@ class FirstKVisitor
                     printDebug(block, newFirstK);
                     cache.put(blockFirstK);
                     block.setFirstK(newFirstK);
+                    changed(block, newFirstK);
                     modified = true;
                 }
                 else {
@@ -127,6 +138,7 @@ class FirstKVisitor
         if (terms.isEmpty()) {
             if (!altFirstk.containsEmpty()) {
                 altFirstk.addEmpty();
+                changed(alternative, altFirstk);
                 modified = true;
             }
         }
@@ -148,6 +160,7 @@ class FirstKVisitor
                     printDebug(alternative, newFirstK);
                     cache.put(altFirstk);
                     alternative.setFirstK(newFirstK);
+                    changed(alternative, newFirstK);
                     modified = true;
                 }
                 else {
@@ -20,7 +20,7 @@ class FirstVisitor
     extends InterruptableGrammarVisitor
 {
     private boolean     modified  = false;
-    private BitSetCache cache     = null;
+    private BitSetPool  cache     = null;
     private boolean     debug     = false;
     private boolean     moreDebug = false;
 
@@ -30,16 +30,19 @@ class FirstVisitor
         if (debug) {
             System.out.println("Start First");
         }
-        cache = new BitSetCache(grammar);
+        cache = new BitSetPool(grammar);
         do {
             modified = false;
+            iterationStarted();
             super.visitGrammar(grammar);
+            iterationCompleted();
         } while (modified);
         BiasedBitSet grammarFirst = grammar.getFirst();
         grammarFirst.clear();
         for (NonterminalRule rule : grammar.getNonterminalRules()) {
             grammarFirst.or(rule.getFirst());
         }
+        poolStatistics(cache.getStatistics());
         cache.clear();
         if (debug) {
             System.out.println("End   First");
@@ -58,6 +61,7 @@ class FirstVisitor
             printDebug(rule, newFirst);
             cache.put(rule.getFirst());
             rule.setFirst(newFirst);
+            changed(rule, newFirst);
             modified = true;
         }
         else {
@@ -82,6 +86,7 @@ class FirstVisitor
                 printDebug(alternative, newFirst);
                 cache.put(alternative.getFirst());
                 alternative.setFirst(newFirst);
+                changed(alternative, newFirst);
                 modified = true;
             }
             else {
@@ -102,6 +107,7 @@ class FirstVisitor
             printDebug(block, newFirst);
             cache.put(block.getFirst());
             block.setFirst(newFirst);
+            changed(block, newFirst);
             modified = true;
         }
         else {
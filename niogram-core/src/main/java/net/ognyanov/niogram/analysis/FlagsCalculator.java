@@ -6,8 +6,10 @@ package net.ognyanov.niogram.analysis;
  * in the LICENSE.txt file in the root folder of the project.
  */
 
+import net.ognyanov.niogram.analysis.AnalysisListener.Phase;
 import net.ognyanov.niogram.ast.Grammar;
 import net.ognyanov.niogram.util.BaseInterruptable;
+import net.ognyanov.niogram.util.FlightRecorder;
 
 /**
  * A calculator for the basic flag attributes of a
@@ -20,6 +22,19 @@ public final class FlagsCalculator
     extends BaseInterruptable
     implements AttributeCalculator
 {
+    private AnalysisListener listener = null;
+
+    /**
+     * Sets a listener to be notified of the progress
+     * of the calculation.
+     *
+     * @param listener the listener; null for none
+     */
+    public void setAnalysisListener(AnalysisListener listener)
+    {
+        this.listener = listener;
+    }
+
     /**
      * Calculates the basic flag attributes of a
      * grammar : the nullability of all nodes and
@@ -40,9 +55,24 @@ public final class FlagsCalculator
         }
         grammar.clearFlags();
         grammar.setFlags(true);
-        new NullableMarker().visitGrammar(grammar);
-        new ProductiveMarker().visitGrammar(grammar);
-        new ReachableMarker().visitGrammar(grammar);
-        new UsedMarker().visitGrammar(grammar);
+        Object event = FlightRecorder.beginPhase();
+        if (listener != null) {
+            listener.phaseStarted(Phase.FLAGS, grammar);
+        }
+        long start = System.nanoTime();
+        try {
+            new NullableMarker().visitGrammar(grammar);
+            new ProductiveMarker().visitGrammar(grammar);
+            new ReachableMarker().visitGrammar(grammar);
+            new UsedMarker().visitGrammar(grammar);
+        }
+        finally {
+            FlightRecorder.endPhase(event, Phase.FLAGS.name(),
+                grammar.getDisplayName(), 0, 0);
+            if (listener != null) {
+                listener.phaseEnded(Phase.FLAGS, grammar,
+                    System.nanoTime() - start);
+            }
+        }
     }
 }
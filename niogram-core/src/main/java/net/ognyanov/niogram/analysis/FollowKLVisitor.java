@@ -22,7 +22,7 @@ import net.ognyanov.niogram.util.BitSetLLString;
 class FollowKLVisitor
     extends InterruptableGrammarVisitor
 {
-    private BitSetLLStringCache cache     = null;
+    private BitSetLLStringPool  cache     = null;
     private boolean             modified  = false;
     private int                 pass      = 0;
     private boolean             debug     = false;
@@ -34,13 +34,15 @@ class FollowKLVisitor
         if (debug) {
             System.out.println("Start FollowKL");
         }
-        cache = new BitSetLLStringCache(grammar);
+        cache = new BitSetLLStringPool(grammar);
         pass = 1;
         super.visitGrammar(grammar);
         pass = 2;
         do {
             modified = false;
+            iterationStarted();
             super.visitGrammar(grammar);
+            iterationCompleted();
         } while (modified);
         pass = 3;
         super.visitGrammar(grammar);
@@ -49,6 +51,7 @@ class FollowKLVisitor
         for (NonterminalRule rule : grammar.getNonterminalRules()) {
             grammarFollowKL.addAll(rule.getFollowKL());
         }
+        poolStatistics(cache.getStatistics());
         if (debug) {
             System.out.println("End   FollowKL");
         }
@@ -78,6 +81,7 @@ class FollowKLVisitor
                 printDebug(rule, newFollowKL);
                 cache.put(rule.getFollowKL());
                 rule.setFollowKL(newFollowKL);
+                changed(rule, newFollowKL);
                 modified = true;
             }
             else {
@@ -104,6 +108,7 @@ class FollowKLVisitor
                 printDebug(block, newFollowKL);
                 cache.put(block.getFollowKL());
                 block.setFollowKL(newFollowKL);
+                changed(block, newFollowKL);
                 modified = true;
             }
             else {
@@ -118,18 +123,16 @@ class FollowKLVisitor
         super.visitAlternative(alternative);
         List<Term> terms = alternative.getTerms();
         if (pass == 1) {
-            ListIterator<Term> termsIt = terms.listIterator();
-            while (termsIt.hasNext()) {
-                Term term = termsIt.next();
+            // right to left : suffix(i) = first(i+1) + suffix(i+1)
+            ListIterator<Term> termsIt = terms.listIterator(terms.size());
+            Term next = null;
+            while (termsIt.hasPrevious()) {
+                Term term = termsIt.previous();
                 BitSetLLString termSuffixFirst = term.getSuffixFirstKL();
                 termSuffixFirst.clear();
-                if (termsIt.hasNext()) {
-                    int position = termsIt.nextIndex();
-                    ListIterator<Term> suffix = terms.listIterator(position);
-                    while (suffix.hasNext()) {
-                        Term other = suffix.next();
-                        termSuffixFirst.append(other.getFirstKL());
-                    }
+                if (next != null) {
+                    termSuffixFirst.addAll(next.getFirstKL());
+                    termSuffixFirst.append(next.getSuffixFirstKL());
                     if (term instanceof Terminal) {
                         ((Terminal) term).getRule().getFollowKL()
                             .addAll(termSuffixFirst);
@@ -143,6 +146,7 @@ class FollowKLVisitor
                         ((Block) term).getFollowKL().addAll(termSuffixFirst);
                     }
                 }
+                next = term;
             }
         }
         else if (pass == 3) {
@@ -17,12 +17,13 @@ import net.ognyanov.niogram.ast.Nonterminal;
 import net.ognyanov.niogram.ast.NonterminalRule;
 import net.ognyanov.niogram.ast.Term;
 import net.ognyanov.niogram.ast.Terminal;
+import net.ognyanov.niogram.util.IntLLStringPool;
 import net.ognyanov.niogram.util.IntLLStringSet;
 
 class FollowKVisitor
     extends InterruptableGrammarVisitor
 {
-    private IntLLStringSetCache cache     = null;
+    private IntLLStringSetPool  cache     = null;
     private boolean             modified  = false;
     private int                 pass      = 0;
     private boolean             debug     = false;
@@ -34,13 +35,17 @@ class FollowKVisitor
         if (debug) {
             System.out.println("Start FollowK");
         }
-        cache = new IntLLStringSetCache(grammar);
+        cache = new IntLLStringSetPool(grammar);
+        IntLLStringPool strings = IntLLStringPool.current(grammar.getK());
+        strings.resetStatistics();
         pass = 1;
         super.visitGrammar(grammar);
         pass = 2;
         do {
             modified = false;
+            iterationStarted();
             super.visitGrammar(grammar);
+            iterationCompleted();
         } while (modified);
         pass = 3;
         super.visitGrammar(grammar);
@@ -49,6 +54,8 @@ class FollowKVisitor
         for (NonterminalRule rule : grammar.getNonterminalRules()) {
             grammarFollowK.addAll(rule.getFollowK());
         }
+        poolStatistics(cache.getStatistics());
+        stringPoolStatistics(strings.getStatistics());
         if (debug) {
             System.out.println("End   FollowK");
         }
@@ -78,6 +85,7 @@ class FollowKVisitor
                 printDebug(rule, newFollowK);
                 cache.put(rule.getFollowK());
                 rule.setFollowK(newFollowK);
+                changed(rule, newFollowK);
                 modified = true;
             }
             else {
@@ -104,6 +112,7 @@ class FollowKVisitor
                 printDebug(block, newFollowK);
                 cache.put(block.getFollowK());
                 block.setFollowK(newFollowK);
+                changed(block, newFollowK);
                 modified = true;
             }
             else {
@@ -118,18 +127,16 @@ class FollowKVisitor
         super.visitAlternative(alternative);
         List<Term> terms = alternative.getTerms();
         if (pass == 1) {
-            ListIterator<Term> termsIt = terms.listIterator();
-            while (termsIt.hasNext()) {
-                Term term = termsIt.next();
+            // right to left : suffix(i) = first(i+1) + suffix(i+1)
+            ListIterator<Term> termsIt = terms.listIterator(terms.size());
+            Term next = null;
+            while (termsIt.hasPrevious()) {
+                Term term = termsIt.previous();
                 IntLLStringSet termSuffixFirst = term.getSuffixFirstK();
                 termSuffixFirst.clear();
-                if (termsIt.hasNext()) {
-                    int position = termsIt.nextIndex();
-                    ListIterator<Term> suffix = terms.listIterator(position);
-                    while (suffix.hasNext()) {
-                        Term other = suffix.next();
-                        termSuffixFirst.append(other.getFirstK());
-                    }
+                if (next != null) {
+                    termSuffixFirst.addAll(next.getFirstK());
+                    termSuffixFirst.append(next.getSuffixFirstK());
                     if (term instanceof Terminal) {
                         ((Terminal) term).getRule().getFollowK()
                             .addAll(termSuffixFirst);
@@ -143,6 +150,7 @@ class FollowKVisitor
                         ((Block) term).getFollowK().addAll(termSuffixFirst);
                     }
                 }
+                next = term;
             }
         }
         else if (pass == 3) {
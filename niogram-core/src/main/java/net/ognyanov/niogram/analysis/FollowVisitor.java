@@ -22,7 +22,7 @@ import net.ognyanov.niogram.util.BiasedBitSet;
 class FollowVisitor
     extends InterruptableGrammarVisitor
 {
-    private BitSetCache cache     = null;
+    private BitSetPool  cache     = null;
     private boolean     modified  = false;
     private int         pass      = 0;
     private boolean     debug     = false;
@@ -34,13 +34,15 @@ class FollowVisitor
         if (debug) {
             System.out.println("Start Follow");
         }
-        cache = new BitSetCache(grammar);
+        cache = new BitSetPool(grammar);
         pass = 1;
         super.visitGrammar(grammar);
         pass = 2;
         do {
             modified = false;
+            iterationStarted();
             super.visitGrammar(grammar);
+            iterationCompleted();
         } while (modified);
         pass = 3;
         super.visitGrammar(grammar);
@@ -49,6 +51,7 @@ class FollowVisitor
         for (NonterminalRule rule : grammar.getNonterminalRules()) {
             grammarFollow.or(rule.getFollow());
         }
+        poolStatistics(cache.getStatistics());
         if (debug) {
             System.out.println("End   Follow");
         }
@@ -75,6 +78,7 @@ class FollowVisitor
                 printDebug(rule, newFollow);
                 cache.put(rule.getFollow());
                 rule.setFollow(newFollow);
+                changed(rule, newFollow);
                 modified = true;
             }
             else {
@@ -100,6 +104,7 @@ class FollowVisitor
             if (!newFollow.equals(block.getFollow())) {
                 cache.put(block.getFollow());
                 block.setFollow(newFollow);
+                changed(block, newFollow);
                 modified = true;
             }
             else {
@@ -114,20 +119,18 @@ class FollowVisitor
         super.visitAlternative(alternative);
         List<Term> terms = alternative.getTerms();
         if (pass == 1) {
-            ListIterator<Term> termsIt = terms.listIterator();
-            while (termsIt.hasNext()) {
-                Term term = termsIt.next();
+            // right to left : suffix(i) = first(i+1) +
+            // (suffix(i+1) if term i+1 is nullable)
+            ListIterator<Term> termsIt = terms.listIterator(terms.size());
+            Term next = null;
+            while (termsIt.hasPrevious()) {
+                Term term = termsIt.previous();
                 BiasedBitSet termSuffixFirst = term.getSuffixFirst();
                 termSuffixFirst.clear();
-                if (termsIt.hasNext()) {
-                    int position = termsIt.nextIndex();
-                    ListIterator<Term> suffix = terms.listIterator(position);
-                    while (suffix.hasNext()) {
-                        Term other = suffix.next();
-                        termSuffixFirst.or(other.getFirst());
-                        if (!other.isNullable()) {
-                            break;
-                        }
+                if (next != null) {
+                    termSuffixFirst.or(next.getFirst());
+                    if (next.isNullable()) {
+                        termSuffixFirst.or(next.getSuffixFirst());
                     }
                     if (term instanceof Terminal) {
                         ((Terminal) term).getRule().getFollow()
@@ -142,6 +145,7 @@ class FollowVisitor
                         ((Block) term).getFollow().or(termSuffixFirst);
                     }
                 }
+                next = term;
             }
         }
         else if (pass == 3) {
@@ -0,0 +1,489 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.ognyanov.niogram.ast.Alternative;
+import net.ognyanov.niogram.ast.Block;
+import net.ognyanov.niogram.ast.Grammar;
+import net.ognyanov.niogram.ast.GrammarNode;
+import net.ognyanov.niogram.ast.Multiplex;
+import net.ognyanov.niogram.ast.Nonterminal;
+import net.ognyanov.niogram.ast.NonterminalRule;
+import net.ognyanov.niogram.util.IntLLString;
+import net.ognyanov.niogram.util.IntLLStringSet;
+
+/**
+ * A full LL(k) check of the decisions which have strong LL(k)
+ * conflicts.<p>
+ *
+ * The FollowK set of a nonterminal rule is the union of what may
+ * follow the rule at all of its call sites, so the strong LL(k)
+ * conflicts of a decision may come from strings which never follow
+ * it in the same context. The analysis selects the decisions with
+ * conflicts reported by {@link FirstKFollowKCalculator} or with
+ * identical lookahead strings for different alternatives. The latter
+ * are looked for with a {@link LookaheadDfa} and only in decisions
+ * with FirstK strings shorter than K, because the conflicts of the
+ * other decisions are all reported by the calculator. For each
+ * of them it walks the call sites outwards and builds the strings
+ * which follow the decision in each chain of calls. A chain ends as
+ * soon as all of its strings are k symbols long, at a rule which is
+ * not referenced or where it would enter a call site again. The
+ * decision is then checked separately in each of the contexts.<p>
+ *
+ * The analysis reuses the FirstK, suffix FirstK and FollowK sets
+ * calculated for the grammar. A multiplex is entered only once with
+ * the same strings from the same call site, so chains which share
+ * their contexts are not walked again. The number of contexts and
+ * of entered multiplexes per decision is limited; past the limits
+ * the strong FollowK sets are used, which may only keep a conflict.
+ *
+ * @author Nikolay Ognyanov
+ */
+public final class FullLLKAnalysis
+{
+    private static final int             MAX_CONTEXTS = 256;
+    private static final int             MAX_VISITS   = 4096;
+
+    private final Grammar                grammar;
+    private final int                    k;
+    private final List<Multiplex>        decisions    =
+        new ArrayList<Multiplex>();
+    private final Map<Multiplex, Result> results      =
+        new HashMap<Multiplex, Result>();
+
+    /**
+     * A conflict of a decision in the contexts of a call site.
+     */
+    public static final class ContextConflict
+    {
+        private final Nonterminal       callSite;
+        private final IntLLString       lookahead;
+        private final List<Alternative> alternatives;
+
+        private ContextConflict(Nonterminal callSite, IntLLString lookahead,
+                                List<Alternative> alternatives)
+        {
+            this.callSite = callSite;
+            this.lookahead = lookahead;
+            this.alternatives = Collections.unmodifiableList(alternatives);
+        }
+
+        /**
+         * Retrieves the call site of the conflict.
+         *
+         * @return the reference to the rule of the decision (or to the
+         * rule which contains the block) or null if the rule is not
+         * referenced
+         */
+        public Nonterminal getCallSite()
+        {
+            return callSite;
+        }
+
+        /**
+         * Retrieves a lookahead string which does not tell
+         * the alternatives apart.
+         *
+         * @return the lookahead string
+         */
+        public IntLLString getLookahead()
+        {
+            return lookahead;
+        }
+
+        /**
+         * Retrieves the alternatives which the lookahead is viable for.
+         *
+         * @return the alternatives
+         */
+        public List<Alternative> getAlternatives()
+        {
+            return alternatives;
+        }
+
+        @Override
+        public String toString()
+        {
+            String site = callSite == null ? "<none>"
+                    : callSite.getDisplayName() + " in "
+                            + callSite.getParent().getDisplayName();
+            return "ContextConflict [callSite=" + site + ", lookahead="
+                    + lookahead + ", alternatives=" + alternatives + "]";
+        }
+    }
+
+    /*
+     * The contexts and the conflicts of a decision.
+     */
+    private static final class Result
+    {
+        private final Map<Nonterminal, Set<IntLLStringSet>> contexts =
+            new LinkedHashMap<Nonterminal, Set<IntLLStringSet>>();
+        private final List<ContextConflict>                 conflicts =
+            new ArrayList<ContextConflict>();
+        private final Set<Visit>                            visits    =
+            new HashSet<Visit>();
+        private int                                         count     = 0;
+    }
+
+    /*
+     * A multiplex entered with given strings from a call site.
+     */
+    private static final class Visit
+    {
+        private final Nonterminal    callSite;
+        private final Multiplex      multiplex;
+        private final IntLLStringSet follow;
+
+        private Visit(Nonterminal callSite, Multiplex multiplex,
+                      IntLLStringSet follow)
+        {
+            this.callSite = callSite;
+            this.multiplex = multiplex;
+            this.follow = follow;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return (System.identityHashCode(callSite) * 31
+                    + System.identityHashCode(multiplex)) * 31
+                    + follow.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            if (!(other instanceof Visit)) {
+                return false;
+            }
+            Visit visit = (Visit) other;
+            return callSite == visit.callSite
+                    && multiplex == visit.multiplex
+                    && follow.equals(visit.follow);
+        }
+    }
+
+    /**
+     * Analyzes a grammar.
+     *
+     * @param grammar the grammar; its FirstK/FollowK
+     * sets must have been calculated
+     */
+    public FullLLKAnalysis(Grammar grammar)
+    {
+        if (grammar == null) {
+            throw new IllegalArgumentException("null argument");
+        }
+        if (!grammar.hasFFK()) {
+            throw new IllegalStateException(
+                "FirstK/FollowK sets have not been calculated");
+        }
+        this.grammar = grammar;
+        this.k = grammar.getK();
+        List<Multiplex> multiplexes = new ArrayList<Multiplex>();
+        multiplexes.addAll(grammar.getNonterminalRules());
+        multiplexes.addAll(grammar.getBlocks());
+        for (Multiplex multiplex : multiplexes) {
+            if (hasStrongConflict(multiplex)) {
+                decisions.add(multiplex);
+                results.put(multiplex, analyze(multiplex));
+            }
+        }
+    }
+
+    /**
+     * Retrieves the grammar of the analysis.
+     *
+     * @return the grammar
+     */
+    public Grammar getGrammar()
+    {
+        return grammar;
+    }
+
+    /**
+     * Retrieves the decisions which have strong LL(k) conflicts.
+     *
+     * @return the decisions in the order of the grammar
+     */
+    public List<Multiplex> getDecisions()
+    {
+        return Collections.unmodifiableList(decisions);
+    }
+
+    /**
+     * Checks whether the strong LL(k) conflicts of a decision
+     * disappear when the decision is checked in each context.
+     *
+     * @param multiplex the decision
+     * @return true if the decision has strong LL(k)
+     * conflicts and no full LL(k) conflicts
+     */
+    public boolean isResolved(Multiplex multiplex)
+    {
+        Result result = results.get(multiplex);
+        return result != null && result.conflicts.isEmpty();
+    }
+
+    /**
+     * Retrieves the full LL(k) conflicts of a decision.
+     *
+     * @param multiplex the decision
+     * @return the conflicts; empty if the decision has no strong
+     * LL(k) conflicts or if they are all resolved
+     */
+    public List<ContextConflict> getConflicts(Multiplex multiplex)
+    {
+        Result result = results.get(multiplex);
+        if (result == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(result.conflicts);
+    }
+
+    /**
+     * Retrieves the number of distinct contexts
+     * a decision has been checked in.
+     *
+     * @param multiplex the decision
+     * @return the number of contexts; 0 if the decision
+     * has no strong LL(k) conflicts
+     */
+    public int getContextCount(Multiplex multiplex)
+    {
+        Result result = results.get(multiplex);
+        return result == null ? 0 : result.count;
+    }
+
+    /**
+     * Retrieves the number of distinct visits of multiplexes made
+     * while collecting the contexts of a decision. This is the work
+     * done for the decision and does not exceed an internal limit.
+     *
+     * @param multiplex the decision
+     * @return the number of visits; 0 if the decision
+     * has no strong LL(k) conflicts
+     */
+    public int getVisitCount(Multiplex multiplex)
+    {
+        Result result = results.get(multiplex);
+        return result == null ? 0 : result.visits.size();
+    }
+
+    /**
+     * Retrieves the call sites of the rule of a decision (or
+     * of the rule which contains the block).
+     *
+     * @param multiplex the decision
+     * @return the call sites; null stands for the contexts of a
+     * rule which is not referenced
+     */
+    public List<Nonterminal> getCallSites(Multiplex multiplex)
+    {
+        Result result = results.get(multiplex);
+        if (result == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<Nonterminal>(result.contexts.keySet());
+    }
+
+    /**
+     * Retrieves the FollowK set of a decision at a call site.
+     *
+     * @param multiplex the decision
+     * @param callSite the call site
+     * @return the strings which may follow the decision
+     * when it is entered through the call site or null
+     * if the decision has not been analyzed
+     */
+    public IntLLStringSet getFollowK(Multiplex multiplex,
+                                     Nonterminal callSite)
+    {
+        Result result = results.get(multiplex);
+        if (result == null || !result.contexts.containsKey(callSite)) {
+            return null;
+        }
+        IntLLStringSet followK = new IntLLStringSet(k, grammar);
+        for (IntLLStringSet context : result.contexts.get(callSite)) {
+            followK.addAll(context);
+        }
+        return followK;
+    }
+
+    private boolean hasStrongConflict(Multiplex multiplex)
+    {
+        if (multiplex.getAlternatives().size() < 2) {
+            return false;
+        }
+        if (!multiplex.getConflictsK().isEmpty()) {
+            return true;
+        }
+        IntLLStringSet ffConflict = multiplex.getFfConflictSetK();
+        if (ffConflict != null && !ffConflict.isEmpty()) {
+            return true;
+        }
+        if (!hasShortFirstK(multiplex)) {
+            // equal full strings are reported as conflicts
+            return false;
+        }
+        LookaheadDfa dfa = LookaheadDfa.build(multiplex, k);
+        for (int state = 0; state < dfa.getStateCount(); state++) {
+            if (dfa.isConflict(state)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasShortFirstK(Multiplex multiplex)
+    {
+        for (Alternative alternative : multiplex.getAlternatives()) {
+            if (!isComplete(alternative.getFirstK())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Result analyze(Multiplex multiplex)
+    {
+        Result result = new Result();
+        IntLLStringSet start = new IntLLStringSet(k, grammar);
+        start.addEmpty();
+        collect(result, multiplex, start, null, new HashSet<Nonterminal>());
+
+        Map<IntLLStringSet, LookaheadDfa> automata =
+            new HashMap<IntLLStringSet, LookaheadDfa>();
+        List<Alternative> alternatives = multiplex.getAlternatives();
+        for (Map.Entry<Nonterminal, Set<IntLLStringSet>> entry
+                : result.contexts.entrySet()) {
+            Set<IntArrayKey> reported = new HashSet<IntArrayKey>();
+            for (IntLLStringSet context : entry.getValue()) {
+                LookaheadDfa dfa = automata.get(context);
+                if (dfa == null) {
+                    dfa = LookaheadDfa.build(multiplex, k, context);
+                    automata.put(context, dfa);
+                }
+                for (int state = 0; state < dfa.getStateCount(); state++) {
+                    if (!dfa.isConflict(state)) {
+                        continue;
+                    }
+                    int[] path = dfa.getPath(state);
+                    if (!reported.add(new IntArrayKey(path))) {
+                        continue;
+                    }
+                    IntLLString lookahead = new IntLLString(k, grammar);
+                    lookahead.add(path);
+                    List<Alternative> viable = new ArrayList<Alternative>();
+                    for (int i = dfa.nextFinal(state, 0);
+                         i != LookaheadDfa.NONE;
+                         i = dfa.nextFinal(state, i + 1)) {
+                        viable.add(alternatives.get(i));
+                    }
+                    result.conflicts.add(new ContextConflict(entry.getKey(),
+                        lookahead, viable));
+                }
+            }
+        }
+        result.count = automata.size();
+        return result;
+    }
+
+    /*
+     * Extends the strings which follow the decision with what follows
+     * a multiplex which contains it, up to the call sites of the
+     * rules, until the strings are complete.
+     */
+    private void collect(Result result, Multiplex multiplex,
+                         IntLLStringSet follow, Nonterminal callSite,
+                         Set<Nonterminal> active)
+    {
+        if (!result.visits.add(new Visit(callSite, multiplex, follow))) {
+            // the same strings have been followed from here
+            return;
+        }
+        if (isComplete(follow)) {
+            add(result, callSite, follow);
+        }
+        else if (multiplex instanceof Block) {
+            Block block = (Block) multiplex;
+            IntLLStringSet next = concatenate(follow,
+                block.getSuffixFirstK());
+            collect(result, (Multiplex) block.getParent().getParent(), next,
+                callSite, active);
+        }
+        else {
+            NonterminalRule rule = (NonterminalRule) multiplex;
+            List<Nonterminal> references = rule.getReferences();
+            if (references.isEmpty()) {
+                add(result, callSite, concatenate(follow, rule.getFollowK()));
+                return;
+            }
+            for (Nonterminal reference : references) {
+                Nonterminal site = callSite == null ? reference : callSite;
+                GrammarNode context = reference.getParent().getParent();
+                IntLLStringSet next = concatenate(follow,
+                    reference.getSuffixFirstK());
+                if (active.contains(reference)
+                        || result.count >= MAX_CONTEXTS
+                        || result.visits.size() >= MAX_VISITS) {
+                    // the strong FollowK of the context is safe
+                    add(result, site,
+                        concatenate(next, context.getFollowK()));
+                    continue;
+                }
+                active.add(reference);
+                collect(result, (Multiplex) context, next, site, active);
+                active.remove(reference);
+            }
+        }
+    }
+
+    private void add(Result result, Nonterminal callSite,
+                     IntLLStringSet follow)
+    {
+        Set<IntLLStringSet> contexts = result.contexts.get(callSite);
+        if (contexts == null) {
+            contexts = new HashSet<IntLLStringSet>();
+            result.contexts.put(callSite, contexts);
+        }
+        if (contexts.add(follow)) {
+            result.count++;
+        }
+    }
+
+    private IntLLStringSet concatenate(IntLLStringSet prefix,
+                                       IntLLStringSet suffix)
+    {
+        IntLLStringSet result = new IntLLStringSet(prefix);
+        if (suffix != null) {
+            result.append(suffix);
+        }
+        return result;
+    }
+
+    private static boolean isComplete(IntLLStringSet follow)
+    {
+        for (IntLLString string : follow) {
+            if (!string.isFull()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
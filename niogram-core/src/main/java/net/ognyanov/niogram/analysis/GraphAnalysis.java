@@ -6,6 +6,8 @@ package net.ognyanov.niogram.analysis;
  * in the LICENSE.txt file in the root folder of the project.
  */
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayDeque;
 import java.util.Collections;
 import java.util.Comparator;
@@ -123,8 +125,29 @@ public final class GraphAnalysis
      */
     public static String toDotString(Graph<NonterminalRule, DefaultEdge> graph)
     {
-        DotEmitter dotEmitter = new DotEmitter();
-        return dotEmitter.toDot(graph);
+        DotEmitter dotEmitter = new DotEmitter(new DotStringBuilder());
+        dotEmitter.emit(graph);
+        return dotEmitter.toString();
+    }
+
+    /**
+     * Write a dot format representation of the graph
+     * to a target as it is generated.
+     * 
+     * @param graph the graph to be processed
+     * @param out the target
+     * @throws IOException if writing to the target fails
+     */
+    public static void writeDot(Graph<NonterminalRule, DefaultEdge> graph,
+                                Appendable out)
+        throws IOException
+    {
+        try {
+            new DotEmitter(new DotStringBuilder(out)).emit(graph);
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
     }
 
     private static void sortCycles(List<List<NonterminalRule>> cycles)
@@ -274,9 +297,14 @@ public final class GraphAnalysis
             new ArrayDeque<NonterminalRule>();
         private Set<NonterminalRule>   visited       =
             new HashSet<NonterminalRule>();
-        private DotStringBuilder       stringBuilder = new DotStringBuilder();
+        private DotStringBuilder       stringBuilder = null;
+
+        public DotEmitter(DotStringBuilder stringBuilder)
+        {
+            this.stringBuilder = stringBuilder;
+        }
 
-        public String toDot(Graph<NonterminalRule, DefaultEdge> graph)
+        public void emit(Graph<NonterminalRule, DefaultEdge> graph)
         {
             Set<NonterminalRule> rules = graph.vertexSet();
             Iterator<NonterminalRule> rulesIt = rules.iterator();
@@ -308,6 +336,11 @@ public final class GraphAnalysis
                 }
             }
             emitDotEnd();
+        }
+
+        @Override
+        public String toString()
+        {
             return stringBuilder.toString();
         }
 
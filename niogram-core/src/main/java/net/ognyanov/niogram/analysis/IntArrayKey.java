@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import java.util.Arrays;
+
+/**
+ * An array of integers as a key of hash maps.
+ * The array must not be modified while it is in use as a key.
+ *
+ * @author Nikolay Ognyanov
+ */
+final class IntArrayKey
+{
+    private final int[] values;
+
+    /**
+     * Creates a key.
+     *
+     * @param values the array
+     */
+    IntArrayKey(int[] values)
+    {
+        this.values = values;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Arrays.hashCode(values);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        return obj instanceof IntArrayKey
+                && Arrays.equals(values, ((IntArrayKey) obj).values);
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ * 
+ * Use of this file is governed by the licensing conditions   
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import net.ognyanov.niogram.ast.Grammar;
+import net.ognyanov.niogram.util.IntLLStringSet;
+import net.ognyanov.niogram.util.ObjectPool;
+
+class IntLLStringSetPool
+    extends ObjectPool<IntLLStringSet>
+{
+    private Grammar grammar = null;
+    private int     k       = 0;
+
+    public IntLLStringSetPool(Grammar grammar)
+    {
+        this.grammar = grammar;
+        this.k = grammar.getK();
+    }
+
+    @Override
+    protected IntLLStringSet create()
+    {
+        return new IntLLStringSet(k, grammar);
+    }
+
+    @Override
+    protected void reset(IntLLStringSet object)
+    {
+        object.clear();
+    }
+}
@@ -6,10 +6,23 @@
  */
 package net.ognyanov.niogram.analysis;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import net.ognyanov.niogram.analysis.AnalysisListener.Phase;
+import net.ognyanov.niogram.analysis.AnalysisListener.PoolType;
 import net.ognyanov.niogram.ast.Grammar;
+import net.ognyanov.niogram.ast.GrammarNode;
 import net.ognyanov.niogram.ast.GrammarVisitor;
+import net.ognyanov.niogram.ast.NonterminalRule;
+import net.ognyanov.niogram.util.BiasedBitSet;
+import net.ognyanov.niogram.util.BitSetLLString;
+import net.ognyanov.niogram.util.FlightRecorder;
+import net.ognyanov.niogram.util.IntLLStringPool;
+import net.ognyanov.niogram.util.IntLLStringSet;
 import net.ognyanov.niogram.util.Interruptable;
 import net.ognyanov.niogram.util.NioGramException;
+import net.ognyanov.niogram.util.ObjectPool;
 
 /**
  * A grammar visitor which tests automatically its
@@ -17,7 +30,16 @@ import net.ognyanov.niogram.util.NioGramException;
  * The test is performed upon each invocation of the
  * {@link #visitGrammar(Grammar)} method. If an
  * interrupt request is pending then an 
- * {@link NioGramException} is thrown.
+ * {@link NioGramException} is thrown.<p>
+ *
+ * The visitor also reports its progress to an optional
+ * {@link AnalysisListener} and as flight recorder events
+ * when it is started by
+ * {@link #run(Grammar, AnalysisListener, AnalysisCheckpoint, Phase)}.
+ * The checkpoint tests the interrupted status (and the optional
+ * {@link AnalysisBudget}) upon the visit of each nonterminal rule,
+ * of every few other nodes and periodically inside the set operations,
+ * so that an interrupt takes effect within a pass.
  *
  * @author Nikolay Ognyanov
  */
@@ -25,7 +47,216 @@ class InterruptableGrammarVisitor
     extends GrammarVisitor
     implements Interruptable
 {
-    private volatile boolean interrupted;
+    private volatile boolean           interrupted;
+    private AnalysisListener           listener       = null;
+    private AnalysisCheckpoint         checkpoint     = null;
+    private AnalysisBudget.Tracker     tracker        = null;
+    private Map<GrammarNode, Integer>  sizes          = null;
+    private Phase                      phase          = null;
+    private int                        changed        = 0;
+    private int                        totalChanged   = 0;
+    private int                        iterations     = 0;
+    private int                        completedRules = 0;
+    private Object                     iterationEvent = null;
+
+    /**
+     * Visits a grammar as a phase of analysis
+     * reported to a listener and checked for
+     * interruption and budget by a checkpoint.
+     *
+     * @param grammar the grammar
+     * @param listener the listener; may be null
+     * @param checkpoint the checkpoint of the calculation; may be null
+     * @param phase the phase to report
+     */
+    final void run(Grammar grammar, AnalysisListener listener,
+                   AnalysisCheckpoint checkpoint, Phase phase)
+    {
+        this.listener = listener;
+        this.checkpoint = checkpoint;
+        this.tracker = checkpoint == null ? null : checkpoint.getTracker();
+        if (checkpoint != null) {
+            checkpoint.setTask(this);
+        }
+        this.phase = phase;
+        changed = 0;
+        totalChanged = 0;
+        iterations = 0;
+        completedRules = 0;
+        if (tracker != null && tracker.countsStrings()) {
+            tracker.startPhase();
+            sizes = new IdentityHashMap<GrammarNode, Integer>();
+        }
+        Object event = FlightRecorder.beginPhase();
+        if (listener != null) {
+            listener.phaseStarted(phase, grammar);
+        }
+        long start = System.nanoTime();
+        try {
+            visitGrammar(grammar);
+        }
+        finally {
+            FlightRecorder.endPhase(event, phase.name(),
+                grammar.getDisplayName(), iterations, totalChanged);
+            if (listener != null) {
+                listener.phaseEnded(phase, grammar,
+                    System.nanoTime() - start);
+            }
+            if (checkpoint != null) {
+                checkpoint.setTask(null);
+            }
+            IntLLStringPool.trimCurrent();
+            this.listener = null;
+            this.checkpoint = null;
+            this.tracker = null;
+            sizes = null;
+        }
+    }
+
+    /**
+     * Checks for interruption and budget upon the visit of
+     * each nonterminal rule and of every few other nodes.
+     */
+    @Override
+    public void preVisit(GrammarNode node)
+    {
+        if (checkpoint != null) {
+            if (node instanceof NonterminalRule) {
+                checkpoint.check();
+            }
+            else {
+                checkpoint.nodeVisited();
+            }
+        }
+    }
+
+    /**
+     * Records a change of the set computed for a node.
+     *
+     * @param node the node
+     * @param set the new set
+     */
+    final void changed(GrammarNode node, BiasedBitSet set)
+    {
+        changed(node,
+            listener != null || sizes != null ? set.cardinality() : 0);
+    }
+
+    /**
+     * Records a change of the set computed for a node.
+     *
+     * @param node the node
+     * @param set the new set
+     */
+    final void changed(GrammarNode node, IntLLStringSet set)
+    {
+        changed(node, set.size());
+    }
+
+    /**
+     * Records a change of the set computed for a node.
+     *
+     * @param node the node
+     * @param set the new set
+     */
+    final void changed(GrammarNode node, BitSetLLString set)
+    {
+        int size = 0;
+        if (listener != null || sizes != null) {
+            for (BiasedBitSet bitSet : set) {
+                size += bitSet.cardinality();
+            }
+        }
+        changed(node, size);
+    }
+
+    /**
+     * Records a change of the set computed for a node.
+     *
+     * @param node the node
+     * @param size the size of the new set
+     */
+    final void changed(GrammarNode node, int size)
+    {
+        changed++;
+        totalChanged++;
+        if (sizes != null) {
+            Integer previous = sizes.put(node, size);
+            tracker.addStrings(previous == null ? size : size - previous);
+        }
+        if (listener != null) {
+            listener.nodeChanged(phase, node, size);
+        }
+    }
+
+    /**
+     * Records the completion of the data of a nonterminal rule
+     * by a visitor which processes the rules one by one.
+     */
+    final void ruleCompleted()
+    {
+        completedRules++;
+    }
+
+    /**
+     * Retrieves the number of nonterminal rules completed in
+     * the order of {@link Grammar#getNonterminalRules()}.
+     *
+     * @return the number of completed rules
+     */
+    final int getCompletedRules()
+    {
+        return completedRules;
+    }
+
+    /**
+     * Records the start of an iteration of a fixed-point loop.
+     */
+    final void iterationStarted()
+    {
+        changed = 0;
+        iterationEvent = FlightRecorder.beginIteration();
+    }
+
+    /**
+     * Records the end of an iteration of a fixed-point loop.
+     */
+    final void iterationCompleted()
+    {
+        iterations++;
+        FlightRecorder.endIteration(iterationEvent, phase.name(),
+            iterations, changed);
+        iterationEvent = null;
+        if (listener != null) {
+            listener.iterationCompleted(phase, iterations, changed);
+        }
+        changed = 0;
+    }
+
+    /**
+     * Reports the statistics of the pool of sets used by the visitor.
+     *
+     * @param statistics the statistics of the pool
+     */
+    final void poolStatistics(ObjectPool.Statistics statistics)
+    {
+        if (listener != null) {
+            listener.poolStatistics(phase, PoolType.SETS, statistics);
+        }
+    }
+
+    /**
+     * Reports the statistics of the pool of strings of the
+     * current thread for the duration of the visit.
+     *
+     * @param statistics the statistics of the pool
+     */
+    final void stringPoolStatistics(ObjectPool.Statistics statistics)
+    {
+        if (listener != null) {
+            listener.poolStatistics(phase, PoolType.STRINGS, statistics);
+        }
+    }
 
     /**
      * {@inheritDoc}
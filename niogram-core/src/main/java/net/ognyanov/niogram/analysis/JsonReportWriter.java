@@ -0,0 +1,735 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.ognyanov.niogram.ast.Alternative;
+import net.ognyanov.niogram.ast.Block;
+import net.ognyanov.niogram.ast.Grammar;
+import net.ognyanov.niogram.ast.GrammarNode;
+import net.ognyanov.niogram.ast.Multiplex;
+import net.ognyanov.niogram.ast.Multiplex.Conflict;
+import net.ognyanov.niogram.ast.Multiplex.ConflictK;
+import net.ognyanov.niogram.ast.Multiplex.ConflictKL;
+import net.ognyanov.niogram.ast.NonterminalRule;
+import net.ognyanov.niogram.util.BiasedBitSet;
+import net.ognyanov.niogram.util.BitSetLLString;
+import net.ognyanov.niogram.util.IntLLString;
+import net.ognyanov.niogram.util.IntLLStringSet;
+import net.ognyanov.niogram.util.JsonStringBuilder;
+
+/**
+ * Writes the analysis results for a grammar as a JSON document.<p>
+ *
+ * The document is streamed to the target as it is generated.
+ * No document model is built. The report consists of the grammar
+ * level information followed by an array of decisions - first
+ * the nonterminal rules and then the blocks of the grammar. Each
+ * decision carries its flags, the sets which have been calculated,
+ * its alternatives, its conflicts with minK/minFfK and optionally
+ * the conflict traces and a summary of its {@link LookaheadDfa}.
+ * The target is flushed once, by {@link #writeEnd()}, if it is
+ * {@link Flushable}.<p>
+ *
+ * {@link #write(Grammar)} writes a complete report. Clients which
+ * want to publish decisions one by one can call
+ * {@link #writeStart(Grammar)}, {@link #writeDecision(Multiplex)}
+ * and {@link #writeEnd()} instead and flush the target when they
+ * need to.
+ *
+ * @author Nikolay Ognyanov
+ */
+public final class JsonReportWriter
+{
+    private static final int   NONE          = Integer.MIN_VALUE;
+
+    private Appendable         out           = null;
+    private JsonStringBuilder  builder       = null;
+    private Grammar            grammar       = null;
+    private boolean            traces        = false;
+    private boolean            automata      = false;
+    private boolean            indexed       = false;
+    private TerminalTraceIndex index         = null;
+    private TerminalTraceIndex indexK        = null;
+    private TerminalTraceIndex indexKL       = null;
+    private boolean            firstDecision = true;
+
+    /**
+     * Creates a report writer.
+     *
+     * @param out the target of the report
+     */
+    public JsonReportWriter(Appendable out)
+    {
+        if (out == null) {
+            throw new IllegalArgumentException("null argument");
+        }
+        this.out = out;
+        this.builder = new JsonStringBuilder(out);
+    }
+
+    /**
+     * Sets whether conflict traces are included in the report.
+     * Only the trace of the first conflicting terminal is
+     * included for each kind of conflict.
+     *
+     * @param traces true if traces are to be included
+     */
+    public void setTraces(boolean traces)
+    {
+        this.traces = traces;
+    }
+
+    /**
+     * Sets whether a summary of the lookahead automaton of each
+     * decision is included in the report. The summary holds the
+     * number of states, the largest number of tokens looked at to
+     * predict each alternative and a shortest token path to each
+     * undecided state with the alternatives which remain viable.
+     * It requires the FirstK/FollowK sets.
+     *
+     * @param automata true if the summaries are to be included
+     */
+    public void setAutomata(boolean automata)
+    {
+        this.automata = automata;
+    }
+
+    /**
+     * Writes a complete report for a grammar.
+     *
+     * @param grammar the grammar
+     * @throws IOException if writing to the target fails
+     */
+    public void write(Grammar grammar)
+        throws IOException
+    {
+        writeStart(grammar);
+        for (NonterminalRule rule : grammar.getNonterminalRules()) {
+            writeDecision(rule);
+        }
+        for (Block block : grammar.getBlocks()) {
+            writeDecision(block);
+        }
+        writeEnd();
+    }
+
+    /**
+     * Writes the grammar level part of the report
+     * and opens the array of decisions.
+     *
+     * @param grammar the grammar
+     * @throws IOException if writing to the target fails
+     */
+    public void writeStart(Grammar grammar)
+        throws IOException
+    {
+        if (grammar == null) {
+            throw new IllegalArgumentException("null grammar");
+        }
+        if (this.grammar != null) {
+            throw new IllegalStateException("report already started");
+        }
+        this.grammar = grammar;
+        try {
+            builder.append('{');
+            name("grammar");
+            string(grammar.getDisplayName());
+            builder.append(',');
+            name("k").append(grammar.getK());
+            builder.append(',');
+            name("kL").append(grammar.getKL());
+            builder.append(',');
+            name("flags").append(grammar.hasFlags());
+            builder.append(',');
+            name("ff").append(grammar.hasFF());
+            builder.append(',');
+            name("ffK").append(grammar.hasFFK());
+            builder.append(',');
+            name("ffKL").append(grammar.hasFFKL());
+            builder.append(',');
+            name("nonProductive");
+            nodes(grammar.getNonProductive());
+            builder.append(',');
+            name("unreachable");
+            nodes(grammar.getUnreachable());
+            builder.append(',');
+            name("unused");
+            nodes(grammar.getUnused());
+            builder.append(',');
+            name("decisions").append('[');
+            firstDecision = true;
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Writes the report entry for a single decision
+     * (a nonterminal rule or a block).
+     *
+     * @param multiplex the decision
+     * @throws IOException if writing to the target fails
+     */
+    public void writeDecision(Multiplex multiplex)
+        throws IOException
+    {
+        if (grammar == null) {
+            throw new IllegalStateException("report not started");
+        }
+        GrammarNode node = (GrammarNode) multiplex;
+        try {
+            if (!firstDecision) {
+                builder.append(',');
+            }
+            firstDecision = false;
+            builder.append('{');
+            name("name");
+            string(node.getDisplayName());
+            builder.append(',');
+            name("kind");
+            string(node instanceof Block ? "block" : "rule");
+            if (grammar.hasFlags()) {
+                builder.append(',');
+                name("nullable").append(node.isNullable());
+                builder.append(',');
+                name("productive").append(node.isProductive());
+                builder.append(',');
+                name("reachable").append(node.isReachable());
+            }
+            writeSets(node, true);
+            builder.append(',');
+            name("alternatives").append('[');
+            boolean first = true;
+            for (Alternative alternative : multiplex.getAlternatives()) {
+                if (!first) {
+                    builder.append(',');
+                }
+                first = false;
+                builder.append('{');
+                name("name");
+                string(alternative.getDisplayName());
+                writeSets(alternative, false);
+                builder.append('}');
+            }
+            builder.append(']');
+            writeConflicts(multiplex);
+            if (automata && grammar.hasFFK()) {
+                writeAutomaton(multiplex);
+            }
+            if (traces) {
+                writeTraces(multiplex);
+            }
+            builder.append('}');
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Closes the array of decisions and the report.
+     *
+     * @throws IOException if writing to the target fails
+     */
+    public void writeEnd()
+        throws IOException
+    {
+        if (grammar == null) {
+            throw new IllegalStateException("report not started");
+        }
+        try {
+            builder.append("]}\n");
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        grammar = null;
+        indexed = false;
+        index = null;
+        indexK = null;
+        indexKL = null;
+        flush();
+    }
+
+    private void flush()
+        throws IOException
+    {
+        if (out instanceof Flushable) {
+            ((Flushable) out).flush();
+        }
+    }
+
+    private void writeSets(GrammarNode node, boolean follow)
+    {
+        if (grammar.hasFF()) {
+            builder.append(',');
+            name("first");
+            bitSet(node.getFirst());
+            if (follow) {
+                builder.append(',');
+                name("follow");
+                bitSet(node.getFollow());
+            }
+        }
+        if (grammar.hasFFK()) {
+            builder.append(',');
+            name("firstK");
+            stringSet(node.getFirstK());
+            if (follow) {
+                builder.append(',');
+                name("followK");
+                stringSet(node.getFollowK());
+            }
+        }
+        if (grammar.hasFFKL()) {
+            builder.append(',');
+            name("firstKL");
+            bitSetString(node.getFirstKL());
+            if (follow) {
+                builder.append(',');
+                name("followKL");
+                bitSetString(node.getFollowKL());
+            }
+        }
+    }
+
+    private void writeConflicts(Multiplex multiplex)
+    {
+        boolean nullable = multiplex.isNullable();
+        if (grammar.hasFFK()) {
+            builder.append(',');
+            name("minK").append(multiplex.getMinK());
+            if (nullable) {
+                builder.append(',');
+                name("minFfK").append(multiplex.getMinFfK());
+            }
+        }
+        if (grammar.hasFFKL()) {
+            builder.append(',');
+            name("minKL").append(multiplex.getMinKL());
+            if (nullable) {
+                builder.append(',');
+                name("minFfKL").append(multiplex.getMinFfKL());
+            }
+        }
+        builder.append(',');
+        name("conflicts").append('[');
+        boolean first = true;
+        for (Conflict conflict : multiplex.getConflicts()) {
+            first = conflict(first, "first", conflict.getSource(),
+                conflict.getTarget());
+            bitSet(conflict.getConflictSet());
+            builder.append('}');
+        }
+        for (ConflictK conflict : multiplex.getConflictsK()) {
+            first = conflict(first, "firstK", conflict.getSource(),
+                conflict.getTarget());
+            stringSet(conflict.getConflictSet());
+            builder.append('}');
+        }
+        for (ConflictKL conflict : multiplex.getConflictsKL()) {
+            first = conflict(first, "firstKL", conflict.getSource(),
+                conflict.getTarget());
+            bitSetString(conflict.getConflictSet());
+            builder.append('}');
+        }
+        builder.append(']');
+        if (nullable) {
+            if (!isEmpty(multiplex.getFfConflictSet())) {
+                builder.append(',');
+                name("ffConflict");
+                bitSet(multiplex.getFfConflictSet());
+            }
+            if (!isEmpty(multiplex.getFfConflictSetK())) {
+                builder.append(',');
+                name("ffConflictK");
+                stringSet(multiplex.getFfConflictSetK());
+            }
+            if (!isEmpty(multiplex.getFfConflictSetKL())) {
+                builder.append(',');
+                name("ffConflictKL");
+                bitSetString(multiplex.getFfConflictSetKL());
+            }
+        }
+    }
+
+    private void writeAutomaton(Multiplex multiplex)
+    {
+        LookaheadDfa dfa = LookaheadDfa.build(multiplex, grammar.getK());
+        List<Alternative> alternatives = multiplex.getAlternatives();
+        builder.append(',');
+        name("lookahead").append('{');
+        name("states").append(dfa.getStateCount());
+        builder.append(',');
+        name("depths").append('[');
+        int[] depths = dfa.getDepths();
+        for (int i = 0; i < depths.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(depths[i]);
+        }
+        builder.append("],");
+        name("undecided").append('[');
+        boolean first = true;
+        for (int state = 0; state < dfa.getStateCount(); state++) {
+            if (!dfa.isConflict(state)) {
+                continue;
+            }
+            if (!first) {
+                builder.append(',');
+            }
+            first = false;
+            builder.append('{');
+            name("path").append('[');
+            int[] path = dfa.getPath(state);
+            for (int i = 0; i < path.length; i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                string(grammar.getTypeName(path[i]));
+            }
+            builder.append("],");
+            name("alternatives").append('[');
+            for (int i = dfa.nextFinal(state, 0); i != LookaheadDfa.NONE;
+                 i = dfa.nextFinal(state, i + 1)) {
+                if (i != dfa.nextFinal(state, 0)) {
+                    builder.append(',');
+                }
+                string(alternatives.get(i).getDisplayName());
+            }
+            builder.append("]}");
+        }
+        builder.append("]}");
+    }
+
+    private boolean conflict(boolean first, String kind, Alternative source,
+                             Alternative target)
+    {
+        if (!first) {
+            builder.append(',');
+        }
+        builder.append('{');
+        name("kind");
+        string(kind);
+        builder.append(',');
+        name("source");
+        string(source.getDisplayName());
+        builder.append(',');
+        name("target");
+        string(target.getDisplayName());
+        builder.append(',');
+        name("set");
+        return false;
+    }
+
+    private void writeTraces(Multiplex multiplex)
+    {
+        GrammarNode node = (GrammarNode) multiplex;
+        if (!indexed) {
+            buildTraceIndexes();
+        }
+        builder.append(',');
+        name("traces").append('[');
+        boolean first = true;
+        BiasedBitSet conflict = null;
+        for (Conflict c : multiplex.getConflicts()) {
+            if (conflict == null) {
+                conflict = new BiasedBitSet(c.getConflictSet());
+            }
+            else {
+                conflict.or(c.getConflictSet());
+            }
+        }
+        int type = firstTerminal(conflict);
+        if (type != NONE) {
+            first = trace(first, "first",
+                index.buildFirstTrace(node, type));
+        }
+        if (multiplex.isNullable()) {
+            BiasedBitSet ffConflict = multiplex.getFfConflictSet();
+            type = firstTerminal(ffConflict);
+            if (type != NONE) {
+                first = trace(first, "ffFirst",
+                    index.buildFirstTrace(node, type));
+                first = trace(first, "ffFollow",
+                    index.buildFollowTrace(node, type));
+            }
+        }
+        for (ConflictK c : multiplex.getConflictsK()) {
+            type = firstTerminal(c.getConflictSet());
+            if (type != NONE) {
+                first = trace(first, "firstK",
+                    indexK.buildFirstTrace(node, type));
+                break;
+            }
+        }
+        if (multiplex.isNullable()) {
+            type = firstTerminal(multiplex.getFfConflictSetK());
+            if (type != NONE) {
+                first = trace(first, "ffFirstK",
+                    indexK.buildFirstTrace(node, type));
+                first = trace(first, "ffFollowK",
+                    indexK.buildFollowTrace(node, type));
+            }
+        }
+        for (ConflictKL c : multiplex.getConflictsKL()) {
+            BitSetLLString set = c.getConflictSet();
+            if (set.length() > 0) {
+                type = firstTerminal(set.get(0));
+                if (type != NONE) {
+                    first = trace(first, "firstKL",
+                        indexKL.buildFirstTrace(node, type));
+                    break;
+                }
+            }
+        }
+        if (multiplex.isNullable()) {
+            BitSetLLString set = multiplex.getFfConflictSetKL();
+            if (set != null && set.length() > 0) {
+                type = firstTerminal(set.get(0));
+                if (type != NONE) {
+                    first = trace(first, "ffFirstKL",
+                        indexKL.buildFirstTrace(node, type));
+                    first = trace(first, "ffFollowKL",
+                        indexKL.buildFollowTrace(node, type));
+                }
+            }
+        }
+        builder.append(']');
+    }
+
+    /*
+     * The indexes are built once per report
+     * and shared by the traces of all decisions.
+     */
+    private void buildTraceIndexes()
+    {
+        indexed = true;
+        if (grammar.hasFF()) {
+            index = TerminalTraceFactory.buildTraceIndex(grammar);
+        }
+        if (grammar.hasFFK()) {
+            indexK = TerminalTraceFactory.buildTraceIndexK(grammar);
+        }
+        if (grammar.hasFFKL()) {
+            indexKL = TerminalTraceFactory.buildTraceIndexKL(grammar);
+        }
+    }
+
+    private static int firstTerminal(BiasedBitSet set)
+    {
+        if (set != null) {
+            int type = set.nextSetBit(set.getStart());
+            if (type != set.getNone()) {
+                return type;
+            }
+        }
+        return NONE;
+    }
+
+    private static int firstTerminal(IntLLStringSet set)
+    {
+        if (set != null) {
+            for (IntLLString string : set) {
+                if (string.length() > 0) {
+                    return string.get(0);
+                }
+            }
+        }
+        return NONE;
+    }
+
+    private boolean trace(boolean first, String kind, TerminalTrace trace)
+    {
+        if (!first) {
+            builder.append(',');
+        }
+        builder.append('{');
+        name("kind");
+        string(kind);
+        builder.append(',');
+        name("trace");
+        trace(trace);
+        builder.append('}');
+        return false;
+    }
+
+    private void trace(TerminalTrace trace)
+    {
+        trace(trace, new HashSet<TerminalTrace>());
+    }
+
+    /*
+     * A trace which is shared by several parents is written
+     * once. The other occurrences refer to it by id.
+     */
+    private void trace(TerminalTrace trace, Set<TerminalTrace> written)
+    {
+        if (!written.add(trace)) {
+            builder.append('{');
+            name("ref").append(trace.getId());
+            builder.append('}');
+            return;
+        }
+        builder.append('{');
+        name("id").append(trace.getId());
+        builder.append(',');
+        name("type");
+        string(trace.getType().toString());
+        builder.append(',');
+        name("terminal");
+        string(grammar.getTypeName(trace.getTerminalType()));
+        builder.append(',');
+        name("node");
+        string(trace.getStart().getDisplayName());
+        builder.append(',');
+        name("children").append('[');
+        boolean first = true;
+        for (TerminalTrace child : trace.getChildren()) {
+            if (!first) {
+                builder.append(',');
+            }
+            first = false;
+            trace(child, written);
+        }
+        builder.append("]}");
+    }
+
+    private JsonStringBuilder name(String name)
+    {
+        string(name);
+        builder.append(':');
+        return builder;
+    }
+
+    private JsonStringBuilder string(String value)
+    {
+        if (value == null) {
+            builder.append("null");
+        }
+        else {
+            builder.append('"');
+            builder.appendEscaped(value);
+            builder.append('"');
+        }
+        return builder;
+    }
+
+    private void nodes(List<? extends GrammarNode> nodes)
+    {
+        builder.append('[');
+        boolean first = true;
+        for (GrammarNode node : nodes) {
+            if (!first) {
+                builder.append(',');
+            }
+            first = false;
+            string(node.getDisplayName());
+        }
+        builder.append(']');
+    }
+
+    private void bitSet(BiasedBitSet set)
+    {
+        if (set == null) {
+            builder.append("null");
+            return;
+        }
+        builder.append('[');
+        boolean first = true;
+        for (int i = set.nextSetBit(set.getStart());
+                i != set.getNone(); i = set.nextSetBit(i + 1)) {
+            if (!first) {
+                builder.append(',');
+            }
+            first = false;
+            string(grammar.getTypeName(i));
+        }
+        builder.append(']');
+    }
+
+    private void stringSet(IntLLStringSet set)
+    {
+        if (set == null) {
+            builder.append("null");
+            return;
+        }
+        // sorted for a stable report
+        List<IntLLString> strings = new ArrayList<IntLLString>(set);
+        Collections.sort(strings);
+        builder.append('[');
+        boolean first = true;
+        for (IntLLString string : strings) {
+            if (!first) {
+                builder.append(',');
+            }
+            first = false;
+            builder.append('[');
+            for (int i = 0; i < string.length(); i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                string(grammar.getTypeName(string.get(i)));
+            }
+            builder.append(']');
+        }
+        builder.append(']');
+    }
+
+    private void bitSetString(BitSetLLString string)
+    {
+        if (string == null) {
+            builder.append("null");
+            return;
+        }
+        builder.append('{');
+        name("sets").append('[');
+        for (int i = 0; i < string.length(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            bitSet(string.get(i));
+        }
+        builder.append("],");
+        name("lengths").append('[');
+        List<Integer> lengths = new ArrayList<Integer>(string.stringLengths());
+        Collections.sort(lengths);
+        for (int i = 0; i < lengths.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(lengths.get(i).intValue());
+        }
+        builder.append("]}");
+    }
+
+    private static boolean isEmpty(BiasedBitSet set)
+    {
+        return set == null || set.isEmpty();
+    }
+
+    private static boolean isEmpty(IntLLStringSet set)
+    {
+        return set == null || set.isEmpty();
+    }
+
+    private static boolean isEmpty(BitSetLLString string)
+    {
+        return string == null || string.isEmpty();
+    }
+}
@@ -0,0 +1,654 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.ognyanov.niogram.ast.Alternative;
+import net.ognyanov.niogram.ast.BuiltInTypes;
+import net.ognyanov.niogram.ast.GrammarNode;
+import net.ognyanov.niogram.ast.Multiplex;
+import net.ognyanov.niogram.util.IntLLString;
+import net.ognyanov.niogram.util.IntLLStringSet;
+import net.ognyanov.niogram.util.NioGramException;
+
+/**
+ * A minimal deterministic automaton which predicts
+ * the alternatives of an LL(k) decision.<p>
+ *
+ * The automaton reads the lookahead tokens one by one. A path stops
+ * as soon as only one alternative is viable, so its length is the
+ * number of tokens which actually tell the alternatives apart rather
+ * than k, except that the first token is always read. Each state
+ * records its final alternatives. A state without transitions decides
+ * for its only final alternative. In a state with transitions the
+ * final alternatives are those whose lookahead strings end there, so
+ * the state decides for the only one of them when the input ends or
+ * the next token is EOF, while a token without a transition is not
+ * viable for any alternative. There is no decision if the state has
+ * no final alternatives and the decision is undecided if it has
+ * several; the latter are the conflicts of the decision.<p>
+ *
+ * The lookahead strings of an alternative are the strings of its
+ * FirstK set completed with the strings of the FollowK set of the
+ * decision. The completion is done only on the paths which need it.
+ * Equivalent states are merged, so the automaton is the minimal one
+ * for the lookahead strings. States are identified by integers and
+ * the start state is 0. The transitions of a state lead to states
+ * with larger numbers. An automaton is not modified after it is
+ * built, can be used by several threads and can be written to and
+ * read from a binary stream.
+ *
+ * @author Nikolay Ognyanov
+ */
+public final class LookaheadDfa
+{
+    /**
+     * The result of queries for a state or an alternative
+     * which does not exist.
+     */
+    public static final int NONE    = -1;
+
+    private static final int MAGIC   = 0x4E474446;   // "NGDF"
+    private static final int VERSION = 1;
+
+    private final Multiplex multiplex;
+    private final int       k;
+    private final int       alternativeCount;
+    private final int       words;
+    private final int[]     firstEdges;
+    private final int[]     edgeCounts;
+    private final int[]     edgeSymbols;
+    private final int[]     edgeTargets;
+    private final long[]    finals;
+
+    /*
+     * A lookahead string of an alternative which
+     * starts at a given depth of the automaton.
+     */
+    private static final class Entry
+    {
+        private final int         alternative;
+        private final IntLLString string;
+        private final int         start;
+        private final boolean     first;
+
+        private Entry(int alternative, IntLLString string, int start,
+                      boolean first)
+        {
+            this.alternative = alternative;
+            this.string = string;
+            this.start = start;
+            this.first = first;
+        }
+    }
+
+    /*
+     * Builds the automaton from the leaves up and merges
+     * each new state with an equivalent existing one.
+     */
+    private static final class Builder
+    {
+        private final int                       k;
+        private final int                       words;
+        private final IntLLStringSet            follow;
+        private final List<int[]>               states   =
+            new ArrayList<int[]>();
+        private final Map<IntArrayKey, Integer> registry =
+            new HashMap<IntArrayKey, Integer>();
+
+        private Builder(int k, int words, IntLLStringSet follow)
+        {
+            this.k = k;
+            this.words = words;
+            this.follow = follow;
+        }
+
+        /*
+         * Returns the state for the strings which share
+         * a prefix of a given length.
+         */
+        private int state(List<Entry> entries, int depth)
+        {
+            List<Entry> current = new ArrayList<Entry>();
+            for (Entry entry : entries) {
+                if (entry.first && entry.string.length() == depth
+                        && depth < k && follow != null
+                        && !follow.isEmpty()) {
+                    for (IntLLString suffix : follow) {
+                        current.add(new Entry(entry.alternative, suffix,
+                            depth, false));
+                    }
+                }
+                else {
+                    current.add(entry);
+                }
+            }
+            BitSet viable = new BitSet();
+            BitSet ending = new BitSet();
+            Map<Integer, List<Entry>> children =
+                new TreeMap<Integer, List<Entry>>();
+            for (Entry entry : current) {
+                viable.set(entry.alternative);
+                int position = depth - entry.start;
+                if (depth == k || position >= entry.string.length()) {
+                    ending.set(entry.alternative);
+                    continue;
+                }
+                int symbol = entry.string.get(position);
+                List<Entry> child = children.get(symbol);
+                if (child == null) {
+                    child = new ArrayList<Entry>();
+                    children.put(symbol, child);
+                }
+                child.add(entry);
+            }
+            if ((viable.cardinality() == 1 && depth > 0) || depth == k) {
+                // the alternatives are told apart or can not be;
+                // the first token is always checked
+                return register(viable, new int[0]);
+            }
+            int[] edges = new int[children.size() * 2];
+            int i = 0;
+            for (Map.Entry<Integer, List<Entry>> child
+                    : children.entrySet()) {
+                edges[i++] = child.getKey();
+                edges[i++] = state(child.getValue(), depth + 1);
+            }
+            return register(ending, edges);
+        }
+
+        private int register(BitSet finals, int[] edges)
+        {
+            int[] state = new int[words * 2 + edges.length];
+            long[] bits = finals.toLongArray();
+            for (int i = 0; i < bits.length; i++) {
+                state[i * 2] = (int) (bits[i] >>> 32);
+                state[i * 2 + 1] = (int) bits[i];
+            }
+            System.arraycopy(edges, 0, state, words * 2, edges.length);
+            IntArrayKey key = new IntArrayKey(state);
+            Integer index = registry.get(key);
+            if (index == null) {
+                index = states.size();
+                states.add(state);
+                registry.put(key, index);
+            }
+            return index;
+        }
+    }
+
+    private LookaheadDfa(Multiplex multiplex, int k, int alternativeCount,
+                         int stateCount, int edgeCount)
+    {
+        this.multiplex = multiplex;
+        this.k = k;
+        this.alternativeCount = alternativeCount;
+        this.words = (alternativeCount + 63) >>> 6;
+        this.firstEdges = new int[stateCount];
+        this.edgeCounts = new int[stateCount];
+        this.edgeSymbols = new int[edgeCount];
+        this.edgeTargets = new int[edgeCount];
+        this.finals = new long[stateCount * words];
+    }
+
+    /**
+     * Builds the automaton of a decision. The FirstK sets of the
+     * alternatives and the FollowK set of the decision must have
+     * been calculated.
+     *
+     * @param multiplex the nonterminal rule or block
+     * @param k the maximum number of lookahead tokens
+     * @return the automaton
+     */
+    public static LookaheadDfa build(Multiplex multiplex, int k)
+    {
+        if (multiplex == null) {
+            throw new IllegalArgumentException("null argument");
+        }
+        return build(multiplex, k, ((GrammarNode) multiplex).getFollowK());
+    }
+
+    /**
+     * Builds the automaton of a decision in a given context.
+     *
+     * @param multiplex the nonterminal rule or block
+     * @param k the maximum number of lookahead tokens
+     * @param follow the strings which may follow
+     * the decision in the context
+     * @return the automaton
+     */
+    static LookaheadDfa build(Multiplex multiplex, int k,
+                              IntLLStringSet follow)
+    {
+        List<Alternative> alternatives = multiplex.getAlternatives();
+        int alternativeCount = alternatives.size();
+        int words = (alternativeCount + 63) >>> 6;
+        List<Entry> entries = new ArrayList<Entry>();
+        for (int i = 0; i < alternativeCount; i++) {
+            IntLLStringSet first = alternatives.get(i).getFirstK();
+            if (first == null) {
+                continue;
+            }
+            for (IntLLString string : first) {
+                entries.add(new Entry(i, string, 0, true));
+            }
+        }
+        Builder builder = new Builder(k, words, follow);
+        builder.state(entries, 0);
+
+        // the states are registered after their targets; numbering
+        // them in reverse puts the root first and the targets of each
+        // state after it
+        int stateCount = builder.states.size();
+        int edgeCount = 0;
+        for (int[] data : builder.states) {
+            edgeCount += (data.length - words * 2) / 2;
+        }
+        LookaheadDfa dfa = new LookaheadDfa(multiplex, k, alternativeCount,
+            stateCount, edgeCount);
+        int edge = 0;
+        for (int i = 0; i < stateCount; i++) {
+            int[] data = builder.states.get(stateCount - 1 - i);
+            for (int j = 0; j < words; j++) {
+                dfa.finals[i * words + j] = ((long) data[j * 2] << 32)
+                        | (data[j * 2 + 1] & 0xFFFFFFFFL);
+            }
+            dfa.firstEdges[i] = edge;
+            dfa.edgeCounts[i] = (data.length - words * 2) / 2;
+            for (int j = words * 2; j < data.length; j += 2) {
+                dfa.edgeSymbols[edge] = data[j];
+                dfa.edgeTargets[edge] = stateCount - 1 - data[j + 1];
+                edge++;
+            }
+        }
+        return dfa;
+    }
+
+    /**
+     * Retrieves the decision of the automaton.
+     *
+     * @return the nonterminal rule or block or null
+     * if the automaton has been read from a stream
+     */
+    public Multiplex getMultiplex()
+    {
+        return multiplex;
+    }
+
+    /**
+     * Retrieves the maximum number of lookahead tokens.
+     *
+     * @return the value of k the automaton has been built for
+     */
+    public int getK()
+    {
+        return k;
+    }
+
+    /**
+     * Retrieves the number of alternatives of the decision.
+     *
+     * @return the number of alternatives
+     */
+    public int getAlternativeCount()
+    {
+        return alternativeCount;
+    }
+
+    /**
+     * Retrieves the number of states of the automaton.
+     *
+     * @return the number of states
+     */
+    public int getStateCount()
+    {
+        return firstEdges.length;
+    }
+
+    /**
+     * Retrieves the number of transitions of a state.
+     *
+     * @param state the state
+     * @return the number of transitions
+     */
+    public int getSymbolCount(int state)
+    {
+        return edgeCounts[state];
+    }
+
+    /**
+     * Retrieves the symbol of a transition of a state.
+     * The transitions of a state are in ascending
+     * order of their symbols.
+     *
+     * @param state the state
+     * @param index the index of the transition
+     * @return the symbol
+     */
+    public int getSymbol(int state, int index)
+    {
+        if (index < 0 || index >= edgeCounts[state]) {
+            throw new IndexOutOfBoundsException("" + index);
+        }
+        return edgeSymbols[firstEdges[state] + index];
+    }
+
+    /**
+     * Retrieves the target of a transition of a state.
+     *
+     * @param state the state
+     * @param index the index of the transition
+     * @return the target state
+     */
+    public int getTarget(int state, int index)
+    {
+        if (index < 0 || index >= edgeCounts[state]) {
+            throw new IndexOutOfBoundsException("" + index);
+        }
+        return edgeTargets[firstEdges[state] + index];
+    }
+
+    /**
+     * Retrieves the target of the transition of a state for a symbol.
+     *
+     * @param state the state
+     * @param symbol the symbol
+     * @return the target state or {@link #NONE}
+     * if the state has no transition for the symbol
+     */
+    public int next(int state, int symbol)
+    {
+        int low = firstEdges[state];
+        int high = low + edgeCounts[state] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int value = edgeSymbols[middle];
+            if (value < symbol) {
+                low = middle + 1;
+            }
+            else if (value > symbol) {
+                high = middle - 1;
+            }
+            else {
+                return edgeTargets[middle];
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Checks whether an alternative is final in a state.
+     *
+     * @param state the state
+     * @param alternative the index of the alternative
+     * @return true if the alternative is final in the state
+     */
+    public boolean isFinal(int state, int alternative)
+    {
+        if (alternative < 0 || alternative >= alternativeCount) {
+            return false;
+        }
+        long word = finals[state * words + (alternative >>> 6)];
+        return (word & (1L << alternative)) != 0;
+    }
+
+    /**
+     * Finds the first final alternative of a state
+     * at or after a given index.
+     *
+     * @param state the state
+     * @param from the index to start from
+     * @return the index of the alternative or {@link #NONE}
+     */
+    public int nextFinal(int state, int from)
+    {
+        if (from < 0) {
+            from = 0;
+        }
+        if (from >= alternativeCount) {
+            return NONE;
+        }
+        int base = state * words;
+        int index = from >>> 6;
+        long word = finals[base + index] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return (index << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++index == words) {
+                return NONE;
+            }
+            word = finals[base + index];
+        }
+    }
+
+    /**
+     * Retrieves the decision of a state at the end
+     * of the input or if the state has no transitions.
+     *
+     * @param state the state
+     * @return the index of the only final alternative of the state
+     * or {@link #NONE} if there is no such alternative or if
+     * there are several
+     */
+    public int getPrediction(int state)
+    {
+        int first = nextFinal(state, 0);
+        if (first == NONE || nextFinal(state, first + 1) != NONE) {
+            return NONE;
+        }
+        return first;
+    }
+
+    /**
+     * Checks whether a state has several final alternatives.
+     *
+     * @param state the state
+     * @return true if the decision is undecided in the state
+     */
+    public boolean isConflict(int state)
+    {
+        int first = nextFinal(state, 0);
+        return first != NONE && nextFinal(state, first + 1) != NONE;
+    }
+
+    /**
+     * Predicts an alternative for a sequence of tokens.
+     * The end of the sequence and an EOF token without
+     * a transition are the end of the input.
+     *
+     * @param symbols an array holding the token types
+     * @param offset the start of the sequence in the array
+     * @param length the length of the sequence
+     * @return the index of the alternative or {@link #NONE}
+     * if none or several are viable
+     */
+    public int predict(int[] symbols, int offset, int length)
+    {
+        int state = 0;
+        for (int i = 0; i < length && edgeCounts[state] > 0; i++) {
+            int symbol = symbols[offset + i];
+            int next = next(state, symbol);
+            if (next == NONE) {
+                if (symbol != BuiltInTypes.EOF) {
+                    return NONE;
+                }
+                break;
+            }
+            state = next;
+        }
+        return getPrediction(state);
+    }
+
+    /**
+     * Retrieves for each alternative the largest number of tokens
+     * which are looked at before it is predicted. The end of
+     * the input counts as a token looked at.
+     *
+     * @return the numbers of tokens indexed by alternative;
+     * {@link #NONE} for alternatives which are never predicted
+     */
+    public int[] getDepths()
+    {
+        // the transitions of a state lead to states with larger numbers
+        int[] longest = new int[getStateCount()];
+        Arrays.fill(longest, NONE);
+        longest[0] = 0;
+        int[] depths = new int[alternativeCount];
+        Arrays.fill(depths, NONE);
+        for (int state = 0; state < longest.length; state++) {
+            int first = firstEdges[state];
+            for (int i = first; i < first + edgeCounts[state]; i++) {
+                longest[edgeTargets[i]] = Math.max(longest[edgeTargets[i]],
+                    longest[state] + 1);
+            }
+            int alternative = getPrediction(state);
+            if (alternative != NONE) {
+                int depth = longest[state] + (edgeCounts[state] > 0 ? 1 : 0);
+                depths[alternative] = Math.max(depths[alternative], depth);
+            }
+        }
+        return depths;
+    }
+
+    /**
+     * Retrieves a shortest sequence of tokens which leads to a state.
+     *
+     * @param state the state
+     * @return the token types
+     */
+    public int[] getPath(int state)
+    {
+        int[] parents = new int[getStateCount()];
+        int[] symbols = new int[getStateCount()];
+        Arrays.fill(parents, NONE);
+        Deque<Integer> queue = new ArrayDeque<Integer>();
+        queue.add(0);
+        while (!queue.isEmpty() && parents[state] == NONE && state != 0) {
+            int current = queue.poll();
+            int first = firstEdges[current];
+            for (int i = first; i < first + edgeCounts[current]; i++) {
+                int target = edgeTargets[i];
+                if (target != 0 && parents[target] == NONE) {
+                    parents[target] = current;
+                    symbols[target] = edgeSymbols[i];
+                    queue.add(target);
+                }
+            }
+        }
+        int length = 0;
+        for (int s = state; s != 0; s = parents[s]) {
+            length++;
+        }
+        int[] path = new int[length];
+        for (int s = state; s != 0; s = parents[s]) {
+            path[--length] = symbols[s];
+        }
+        return path;
+    }
+
+    /**
+     * Writes the automaton to a stream.
+     *
+     * @param out the stream
+     * @throws IOException if writing to the stream fails
+     */
+    public void write(DataOutput out)
+        throws IOException
+    {
+        if (out == null) {
+            throw new IllegalArgumentException("null argument");
+        }
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(k);
+        out.writeInt(alternativeCount);
+        out.writeInt(getStateCount());
+        out.writeInt(edgeSymbols.length);
+        for (int state = 0; state < getStateCount(); state++) {
+            for (int i = 0; i < words; i++) {
+                out.writeLong(finals[state * words + i]);
+            }
+            out.writeInt(edgeCounts[state]);
+            int first = firstEdges[state];
+            for (int i = first; i < first + edgeCounts[state]; i++) {
+                out.writeInt(edgeSymbols[i]);
+                out.writeInt(edgeTargets[i]);
+            }
+        }
+    }
+
+    /**
+     * Reads an automaton which has been written with
+     * {@link #write(DataOutput)}.
+     *
+     * @param in the stream
+     * @return the automaton
+     * @throws IOException if reading from the stream fails
+     */
+    public static LookaheadDfa read(DataInput in)
+        throws IOException
+    {
+        if (in == null) {
+            throw new IllegalArgumentException("null argument");
+        }
+        if (in.readInt() != MAGIC) {
+            throw new NioGramException("not a NioGram lookahead automaton");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new NioGramException("unsupported automaton version "
+                    + version);
+        }
+        int k = in.readInt();
+        int alternativeCount = in.readInt();
+        int stateCount = in.readInt();
+        int edgeCount = in.readInt();
+        if (k < 0 || alternativeCount < 0 || stateCount < 1
+                || edgeCount < 0) {
+            throw new NioGramException("corrupt lookahead automaton");
+        }
+        LookaheadDfa dfa = new LookaheadDfa(null, k, alternativeCount,
+            stateCount, edgeCount);
+        int edge = 0;
+        for (int state = 0; state < stateCount; state++) {
+            for (int i = 0; i < dfa.words; i++) {
+                dfa.finals[state * dfa.words + i] = in.readLong();
+            }
+            int count = in.readInt();
+            if (count < 0 || edge + count > edgeCount) {
+                throw new NioGramException("corrupt lookahead automaton");
+            }
+            dfa.firstEdges[state] = edge;
+            dfa.edgeCounts[state] = count;
+            for (int i = 0; i < count; i++, edge++) {
+                dfa.edgeSymbols[edge] = in.readInt();
+                dfa.edgeTargets[edge] = in.readInt();
+                if (dfa.edgeTargets[edge] <= state
+                        || dfa.edgeTargets[edge] >= stateCount) {
+                    throw new NioGramException("corrupt lookahead automaton");
+                }
+            }
+        }
+        if (edge != edgeCount) {
+            throw new NioGramException("corrupt lookahead automaton");
+        }
+        return dfa;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import net.ognyanov.niogram.ast.Block;
+import net.ognyanov.niogram.ast.Grammar;
+import net.ognyanov.niogram.ast.Multiplex;
+import net.ognyanov.niogram.ast.NonterminalRule;
+
+/**
+ * An index of the LL(k) decisions of a grammar for queries such as
+ * which alternatives of a decision remain viable after a sequence
+ * of tokens or which tokens may come next. It holds a
+ * {@link LookaheadTrie} for each nonterminal rule and block.<p>
+ *
+ * The index reflects the FirstK/FollowK sets of the grammar at the
+ * time it is built. It is not modified after that and can be used
+ * by several threads.
+ *
+ * @author Nikolay Ognyanov
+ */
+public final class LookaheadIndex
+{
+    private final Grammar                        grammar;
+    private final Map<Multiplex, LookaheadTrie> tries =
+        new HashMap<Multiplex, LookaheadTrie>();
+
+    /**
+     * Builds the index of a grammar.
+     *
+     * @param grammar the grammar; its FirstK/FollowK
+     * sets must have been calculated
+     */
+    public LookaheadIndex(Grammar grammar)
+    {
+        if (grammar == null) {
+            throw new IllegalArgumentException("null argument");
+        }
+        if (!grammar.hasFFK()) {
+            throw new IllegalStateException(
+                "FirstK/FollowK sets have not been calculated");
+        }
+        this.grammar = grammar;
+        int k = grammar.getK();
+        for (NonterminalRule rule : grammar.getNonterminalRules()) {
+            tries.put(rule, new LookaheadTrie(rule, k));
+        }
+        for (Block block : grammar.getBlocks()) {
+            tries.put(block, new LookaheadTrie(block, k));
+        }
+    }
+
+    /**
+     * Retrieves the grammar of the index.
+     *
+     * @return the grammar
+     */
+    public Grammar getGrammar()
+    {
+        return grammar;
+    }
+
+    /**
+     * Retrieves the trie of a decision.
+     *
+     * @param multiplex a nonterminal rule or a block of the grammar
+     * @return the trie or null if the multiplex
+     * does not belong to the grammar
+     */
+    public LookaheadTrie getTrie(Multiplex multiplex)
+    {
+        return tries.get(multiplex);
+    }
+}
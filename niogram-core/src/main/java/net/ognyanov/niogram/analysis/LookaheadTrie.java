@@ -0,0 +1,404 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.ognyanov.niogram.ast.Alternative;
+import net.ognyanov.niogram.ast.GrammarNode;
+import net.ognyanov.niogram.ast.Multiplex;
+import net.ognyanov.niogram.util.IntLLString;
+import net.ognyanov.niogram.util.IntLLStringSet;
+
+/**
+ * A trie of the LL(k) lookahead strings of a decision.<p>
+ *
+ * The lookahead strings of an alternative of a {@link Multiplex}
+ * are the strings of its FirstK set completed with the strings of
+ * the FollowK set of the multiplex. Each node of the trie stands
+ * for a prefix of such strings and records the alternatives which
+ * the prefix is viable for. The children of a node are the symbols
+ * which may follow the prefix. A node also records the alternatives
+ * which have a lookahead string ending at it; these are the strings
+ * shorter than k when the input may end after them.<p>
+ *
+ * Nodes are identified by integers and the root, which stands for
+ * the empty prefix, is 0. All queries run in time proportional to
+ * the length of the prefix and do not allocate memory, so they are
+ * suitable for interactive use. A trie is not modified after it is
+ * built and can be used by several threads.
+ *
+ * @author Nikolay Ognyanov
+ */
+public final class LookaheadTrie
+{
+    /**
+     * The result of queries for a node or an alternative
+     * which does not exist.
+     */
+    public static final int NONE = -1;
+
+    private final Multiplex multiplex;
+    private final int       k;
+    private final int       alternativeCount;
+    private final int       words;
+    private final int[]     depths;
+    private final int[]     firstEdges;
+    private final int[]     edgeCounts;
+    private final int[]     edgeSymbols;
+    private final int[]     edgeTargets;
+    private final long[]    viable;
+    private final long[]    ending;
+
+    /*
+     * A node of the trie under construction.
+     */
+    private static final class Builder
+    {
+        private final Map<Integer, Builder> children =
+            new TreeMap<Integer, Builder>();
+        private final BitSet                viable   = new BitSet();
+        private final BitSet                ending   = new BitSet();
+        private final int                   depth;
+
+        private Builder(int depth)
+        {
+            this.depth = depth;
+        }
+
+        private Builder child(int symbol)
+        {
+            Builder child = children.get(symbol);
+            if (child == null) {
+                child = new Builder(depth + 1);
+                children.put(symbol, child);
+            }
+            return child;
+        }
+    }
+
+    /**
+     * Builds the trie of a multiplex. The FirstK sets of the
+     * alternatives and the FollowK set of the multiplex must
+     * have been calculated.
+     *
+     * @param multiplex the multiplex
+     * @param k the length of the lookahead strings
+     */
+    LookaheadTrie(Multiplex multiplex, int k)
+    {
+        this.multiplex = multiplex;
+        this.k = k;
+        List<Alternative> alternatives = multiplex.getAlternatives();
+        this.alternativeCount = alternatives.size();
+        this.words = (alternativeCount + 63) >>> 6;
+
+        Builder root = new Builder(0);
+        IntLLStringSet follow = ((GrammarNode) multiplex).getFollowK();
+        for (int i = 0; i < alternativeCount; i++) {
+            IntLLStringSet first = alternatives.get(i).getFirstK();
+            if (first == null) {
+                continue;
+            }
+            for (IntLLString prefix : first) {
+                Builder node = insert(root, prefix, i);
+                if (prefix.length() < k && follow != null
+                        && !follow.isEmpty()) {
+                    for (IntLLString suffix : follow) {
+                        insert(node, suffix, i).ending.set(i);
+                    }
+                }
+                else {
+                    node.ending.set(i);
+                }
+            }
+        }
+
+        List<Builder> nodes = new ArrayList<Builder>();
+        int edges = 0;
+        Deque<Builder> queue = new ArrayDeque<Builder>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            Builder node = queue.poll();
+            nodes.add(node);
+            edges += node.children.size();
+            queue.addAll(node.children.values());
+        }
+        depths = new int[nodes.size()];
+        firstEdges = new int[nodes.size()];
+        edgeCounts = new int[nodes.size()];
+        edgeSymbols = new int[edges];
+        edgeTargets = new int[edges];
+        viable = new long[nodes.size() * words];
+        ending = new long[nodes.size() * words];
+        // children are numbered in breadth first order
+        int edge = 0;
+        int target = 1;
+        for (int i = 0; i < nodes.size(); i++) {
+            Builder node = nodes.get(i);
+            depths[i] = node.depth;
+            firstEdges[i] = edge;
+            edgeCounts[i] = node.children.size();
+            for (int symbol : node.children.keySet()) {
+                edgeSymbols[edge] = symbol;
+                edgeTargets[edge] = target++;
+                edge++;
+            }
+            long[] bits = node.viable.toLongArray();
+            System.arraycopy(bits, 0, viable, i * words, bits.length);
+            bits = node.ending.toLongArray();
+            System.arraycopy(bits, 0, ending, i * words, bits.length);
+        }
+    }
+
+    /*
+     * Adds the symbols of a string below a node, as many as
+     * fit in k, and marks the nodes on the way as viable for
+     * an alternative. Returns the last node.
+     */
+    private Builder insert(Builder node, IntLLString string, int alternative)
+    {
+        node.viable.set(alternative);
+        int length = Math.min(string.length(), k - node.depth);
+        for (int i = 0; i < length; i++) {
+            node = node.child(string.get(i));
+            node.viable.set(alternative);
+        }
+        return node;
+    }
+
+    /**
+     * Retrieves the multiplex of the trie.
+     *
+     * @return the multiplex
+     */
+    public Multiplex getMultiplex()
+    {
+        return multiplex;
+    }
+
+    /**
+     * Retrieves the maximum length of the lookahead strings.
+     *
+     * @return the value of k the trie has been built for
+     */
+    public int getK()
+    {
+        return k;
+    }
+
+    /**
+     * Retrieves the number of alternatives of the multiplex.
+     *
+     * @return the number of alternatives
+     */
+    public int getAlternativeCount()
+    {
+        return alternativeCount;
+    }
+
+    /**
+     * Retrieves the number of nodes of the trie.
+     *
+     * @return the number of nodes
+     */
+    public int getNodeCount()
+    {
+        return depths.length;
+    }
+
+    /**
+     * Retrieves the length of the prefix of a node.
+     *
+     * @param node the node
+     * @return the length of the prefix
+     */
+    public int getDepth(int node)
+    {
+        return depths[node];
+    }
+
+    /**
+     * Retrieves the node of a prefix. Symbols beyond
+     * the first k ones are not looked at.
+     *
+     * @param symbols an array holding the prefix
+     * @param offset the start of the prefix in the array
+     * @param length the length of the prefix
+     * @return the node or {@link #NONE} if the prefix
+     * is not viable for any alternative
+     */
+    public int find(int[] symbols, int offset, int length)
+    {
+        int node = 0;
+        int end = offset + Math.min(length, k);
+        for (int i = offset; i < end && node != NONE; i++) {
+            node = getChild(node, symbols[i]);
+        }
+        return node;
+    }
+
+    /**
+     * Retrieves the child of a node for a symbol.
+     *
+     * @param node the node
+     * @param symbol the symbol
+     * @return the child or {@link #NONE} if the symbol
+     * can not follow the prefix of the node
+     */
+    public int getChild(int node, int symbol)
+    {
+        int low = firstEdges[node];
+        int high = low + edgeCounts[node] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int value = edgeSymbols[middle];
+            if (value < symbol) {
+                low = middle + 1;
+            }
+            else if (value > symbol) {
+                high = middle - 1;
+            }
+            else {
+                return edgeTargets[middle];
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Retrieves the number of symbols which
+     * may follow the prefix of a node.
+     *
+     * @param node the node
+     * @return the number of symbols
+     */
+    public int getSymbolCount(int node)
+    {
+        return edgeCounts[node];
+    }
+
+    /**
+     * Retrieves a symbol which may follow the prefix of a node.
+     * The symbols of a node are in ascending order.
+     *
+     * @param node the node
+     * @param index the index of the symbol
+     * @return the symbol
+     */
+    public int getSymbol(int node, int index)
+    {
+        if (index < 0 || index >= edgeCounts[node]) {
+            throw new IndexOutOfBoundsException("" + index);
+        }
+        return edgeSymbols[firstEdges[node] + index];
+    }
+
+    /**
+     * Checks whether the prefix of a node is
+     * viable for an alternative.
+     *
+     * @param node the node
+     * @param alternative the index of the alternative
+     * @return true if the prefix is viable for the alternative
+     */
+    public boolean isViable(int node, int alternative)
+    {
+        if (alternative < 0 || alternative >= alternativeCount) {
+            return false;
+        }
+        long word = viable[node * words + (alternative >>> 6)];
+        return (word & (1L << alternative)) != 0;
+    }
+
+    /**
+     * Checks whether a lookahead string of an
+     * alternative ends at the prefix of a node.
+     *
+     * @param node the node
+     * @param alternative the index of the alternative
+     * @return true if a string of the alternative ends at the node
+     */
+    public boolean isEnding(int node, int alternative)
+    {
+        if (alternative < 0 || alternative >= alternativeCount) {
+            return false;
+        }
+        long word = ending[node * words + (alternative >>> 6)];
+        return (word & (1L << alternative)) != 0;
+    }
+
+    /**
+     * Finds the first alternative at or after a given index
+     * which the prefix of a node is viable for.
+     *
+     * @param node the node
+     * @param from the index to start from
+     * @return the index of the alternative or {@link #NONE}
+     */
+    public int nextViable(int node, int from)
+    {
+        if (from < 0) {
+            from = 0;
+        }
+        if (from >= alternativeCount) {
+            return NONE;
+        }
+        int base = node * words;
+        int index = from >>> 6;
+        long word = viable[base + index] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return (index << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++index == words) {
+                return NONE;
+            }
+            word = viable[base + index];
+        }
+    }
+
+    /**
+     * Retrieves the number of alternatives which
+     * the prefix of a node is viable for.
+     *
+     * @param node the node
+     * @return the number of alternatives
+     */
+    public int getViableCount(int node)
+    {
+        int count = 0;
+        int base = node * words;
+        for (int i = 0; i < words; i++) {
+            count += Long.bitCount(viable[base + i]);
+        }
+        return count;
+    }
+
+    /**
+     * Retrieves the alternative predicted by the prefix of a node.
+     *
+     * @param node the node
+     * @return the index of the only alternative which the prefix
+     * is viable for or {@link #NONE} if there is no such alternative
+     * or if there are several
+     */
+    public int predict(int node)
+    {
+        int first = nextViable(node, 0);
+        if (first == NONE || nextViable(node, first + 1) != NONE) {
+            return NONE;
+        }
+        return first;
+    }
+}
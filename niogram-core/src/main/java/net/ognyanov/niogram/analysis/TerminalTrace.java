@@ -8,8 +8,12 @@ package net.ognyanov.niogram.analysis;
 
 import static net.ognyanov.niogram.analysis.TerminalTrace.TraceType.FIRST;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import net.ognyanov.niogram.ast.GrammarNode;
 import net.ognyanov.niogram.ast.Nonterminal;
@@ -38,12 +42,18 @@ import net.ognyanov.niogram.util.DotStringBuilder;
  *<li><strong><code>parent</code></strong>
  * - the parent trace of this object or null
  *   if the current object has no parent.
+ *   A trace which is shared by several parents
+ *   refers to the first of them.
  * </li>
  *<li><strong><code>children</code></strong>
  * - a list of child traces. Possibly empty
  * but never null.
  * </li>
  *</ul>
+ * A trace is a directed acyclic graph. The trace of a
+ * (node, First/Follow) pair appears once in it and is
+ * shared by all parents which lead to it.
+ *
  * @author Nikolay Ognyanov
  */
 public class TerminalTrace
@@ -128,14 +138,51 @@ public class TerminalTrace
         return stringBuilder.toString();
     }
 
+    /**
+     * Writes a DOT language representation of the trace
+     * to a target as it is generated.
+     * 
+     * @param out the target
+     * @throws IOException if writing to the target fails
+     */
+    public void writeDot(Appendable out)
+        throws IOException
+    {
+        DotStringBuilder stringBuilder = new DotStringBuilder(out);
+        try {
+            startDotGraph(stringBuilder, this);
+            defineDotNodes(stringBuilder, this);
+            toDotString(stringBuilder);
+            endDotGraph(stringBuilder);
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
     private void toDotString(DotStringBuilder stringBuilder)
     {
+        Set<TerminalTrace> defined = new HashSet<TerminalTrace>();
+        defined.add(this);
+        toDotString(stringBuilder, defined);
+    }
+
+    /*
+     * Shared traces are defined and expanded only once.
+     */
+    private void toDotString(DotStringBuilder stringBuilder,
+                             Set<TerminalTrace> defined)
+    {
+        List<TerminalTrace> expanded = new ArrayList<TerminalTrace>();
         for (TerminalTrace child : getChildren()) {
-            defineDotNodes(stringBuilder, child);
+            if (defined.add(child)) {
+                defineDotNodes(stringBuilder, child);
+                expanded.add(child);
+            }
             connectDotNodes(stringBuilder, this, child);
         }
-        for (TerminalTrace child : getChildren()) {
-            child.toDotString(stringBuilder);
+        for (TerminalTrace child : expanded) {
+            child.toDotString(stringBuilder, defined);
         }
     }
 
@@ -6,10 +6,16 @@
  */
 package net.ognyanov.niogram.analysis;
 
+import net.ognyanov.niogram.analysis.AnalysisListener.Phase;
+import net.ognyanov.niogram.analysis.TerminalTraceIndex.SetType;
+import net.ognyanov.niogram.ast.Grammar;
 import net.ognyanov.niogram.ast.GrammarNode;
+import net.ognyanov.niogram.util.FlightRecorder;
 
 /**
  * A static method facility for building of terminal occurrence traces.
+ * Clients which build many traces for the same grammar should build
+ * a {@link TerminalTraceIndex} instead.
  *
  * @author Nikolay Ognyanov
  */
@@ -31,8 +37,11 @@ public class TerminalTraceFactory
     public static TerminalTrace buildFirstTrace(GrammarNode start,
                                                 int terminalType)
     {
-        TerminalTrace result =
-            new TerminalTraceBuilder().buildFirstTrace(start, terminalType);
+        Object event = FlightRecorder.beginPhase();
+        TerminalTrace result = new TerminalTraceIndex(SetType.SET)
+            .buildFirstTrace(start, terminalType);
+        FlightRecorder.endPhase(event, Phase.TRACES.name(),
+            start.getDisplayName(), 0, 0);
         return result;
     }
 
@@ -48,8 +57,11 @@ public class TerminalTraceFactory
     public static TerminalTrace buildFirstTraceKL(GrammarNode start,
                                                   int terminalType)
     {
-        TerminalTrace result =
-            new TerminalTraceBuilder().buildFirstTraceKL(start, terminalType);
+        Object event = FlightRecorder.beginPhase();
+        TerminalTrace result = new TerminalTraceIndex(SetType.SETKL)
+            .buildFirstTrace(start, terminalType);
+        FlightRecorder.endPhase(event, Phase.TRACES.name(),
+            start.getDisplayName(), 0, 0);
         return result;
     }
 
@@ -65,8 +77,11 @@ public class TerminalTraceFactory
     public static TerminalTrace buildFirstTraceK(GrammarNode start,
                                                  int terminalType)
     {
-        TerminalTrace result =
-            new TerminalTraceBuilder().buildFirstTraceK(start, terminalType);
+        Object event = FlightRecorder.beginPhase();
+        TerminalTrace result = new TerminalTraceIndex(SetType.SETK)
+            .buildFirstTrace(start, terminalType);
+        FlightRecorder.endPhase(event, Phase.TRACES.name(),
+            start.getDisplayName(), 0, 0);
         return result;
     }
 
@@ -82,8 +97,11 @@ public class TerminalTraceFactory
     public static TerminalTrace buildFollowTrace(GrammarNode start,
                                                  int terminalType)
     {
-        TerminalTrace result =
-            new TerminalTraceBuilder().buildFollowTrace(start, terminalType);
+        Object event = FlightRecorder.beginPhase();
+        TerminalTrace result = new TerminalTraceIndex(SetType.SET)
+            .buildFollowTrace(start, terminalType);
+        FlightRecorder.endPhase(event, Phase.TRACES.name(),
+            start.getDisplayName(), 0, 0);
         return result;
     }
 
@@ -99,8 +117,11 @@ public class TerminalTraceFactory
     public static TerminalTrace buildFollowTraceKL(GrammarNode start,
                                                    int terminalType)
     {
-        TerminalTrace result =
-            new TerminalTraceBuilder().buildFollowTraceKL(start, terminalType);
+        Object event = FlightRecorder.beginPhase();
+        TerminalTrace result = new TerminalTraceIndex(SetType.SETKL)
+            .buildFollowTrace(start, terminalType);
+        FlightRecorder.endPhase(event, Phase.TRACES.name(),
+            start.getDisplayName(), 0, 0);
         return result;
     }
 
@@ -116,8 +137,59 @@ public class TerminalTraceFactory
     public static TerminalTrace buildFollowTraceK(GrammarNode start,
                                                   int terminalType)
     {
-        TerminalTrace result =
-            new TerminalTraceBuilder().buildFollowTraceK(start, terminalType);
+        Object event = FlightRecorder.beginPhase();
+        TerminalTrace result = new TerminalTraceIndex(SetType.SETK)
+            .buildFollowTrace(start, terminalType);
+        FlightRecorder.endPhase(event, Phase.TRACES.name(),
+            start.getDisplayName(), 0, 0);
+        return result;
+    }
+
+    /**
+     * Builds a trace index for the First and Follow sets of a grammar.
+     * 
+     * @param grammar the grammar
+     * @return the index
+     */
+    public static TerminalTraceIndex buildTraceIndex(Grammar grammar)
+    {
+        return buildTraceIndex(grammar, SetType.SET);
+    }
+
+    /**
+     * Builds a trace index for position 0 of
+     * the FirstKL and FollowKL sets of a grammar.
+     * 
+     * @param grammar the grammar
+     * @return the index
+     */
+    public static TerminalTraceIndex buildTraceIndexKL(Grammar grammar)
+    {
+        return buildTraceIndex(grammar, SetType.SETKL);
+    }
+
+    /**
+     * Builds a trace index for position 0 of
+     * the FirstK and FollowK sets of a grammar.
+     * 
+     * @param grammar the grammar
+     * @return the index
+     */
+    public static TerminalTraceIndex buildTraceIndexK(Grammar grammar)
+    {
+        return buildTraceIndex(grammar, SetType.SETK);
+    }
+
+    private static TerminalTraceIndex buildTraceIndex(Grammar grammar,
+                                                      SetType setType)
+    {
+        if (grammar == null) {
+            throw new IllegalArgumentException("null argument");
+        }
+        Object event = FlightRecorder.beginPhase();
+        TerminalTraceIndex result = new TerminalTraceIndex(grammar, setType);
+        FlightRecorder.endPhase(event, Phase.TRACES.name(),
+            grammar.getDisplayName(), 0, 0);
         return result;
     }
 }
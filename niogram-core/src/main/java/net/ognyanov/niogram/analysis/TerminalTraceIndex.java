@@ -0,0 +1,780 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import static net.ognyanov.niogram.analysis.TerminalTrace.TraceType.FIRST;
+import static net.ognyanov.niogram.analysis.TerminalTrace.TraceType.FOLLOW;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import net.ognyanov.niogram.ast.Alternative;
+import net.ognyanov.niogram.ast.Block;
+import net.ognyanov.niogram.ast.BuiltInTypes;
+import net.ognyanov.niogram.ast.Grammar;
+import net.ognyanov.niogram.ast.GrammarNode;
+import net.ognyanov.niogram.ast.GrammarVisitor;
+import net.ognyanov.niogram.ast.Nonterminal;
+import net.ognyanov.niogram.ast.NonterminalRule;
+import net.ognyanov.niogram.ast.Term;
+import net.ognyanov.niogram.ast.Terminal;
+import net.ognyanov.niogram.ast.TerminalRule;
+import net.ognyanov.niogram.util.BiasedBitSet;
+import net.ognyanov.niogram.util.BitSetLLString;
+import net.ognyanov.niogram.util.IntLLString;
+import net.ognyanov.niogram.util.IntLLStringSet;
+
+/**
+ * An index for building of terminal occurrence traces
+ * for all nodes of a grammar.<p>
+ *
+ * The index is built in one traversal of the grammar. For each
+ * node it records the edges through which terminals enter the
+ * First and the Follow set of the node together with the
+ * terminals at position 0 of these sets. The edges through which
+ * a given terminal enters a set are the ones whose source set
+ * contains the terminal. A trace is reconstructed by walking
+ * these edges so neither the grammar is traversed again nor
+ * the lookahead sets are searched for each trace.<p>
+ *
+ * A trace is a directed acyclic graph. The sub-trace of each
+ * (node, First/Follow) pair is built once per trace and is shared
+ * by all traces which lead to it. Cycles in the grammar are broken
+ * as follows : an edge between nodes which are mutually reachable
+ * in the trace is kept only if it leads closer to an occurrence
+ * of the terminal. The size of a trace is thus bounded by the
+ * size of the grammar. The graph is searched without recursion,
+ * so deeply nested grammars do not exhaust the call stack.
+ * Individual derivation paths can also be iterated in order of
+ * increasing length without building the complete trace.<p>
+ *
+ * The index reflects the sets of the grammar at the time it is
+ * built. It is not modified after that and can be used by
+ * several threads.
+ *
+ * @author Nikolay Ognyanov
+ */
+public final class TerminalTraceIndex
+{
+    /**
+     * The kind of sets which an index is built for.
+     */
+    enum SetType
+    {
+        SET, SETKL, SETK
+    }
+
+    private static final GrammarNode[]    NO_NODES = new GrammarNode[0];
+
+    private final Grammar                 grammar;
+    private final SetType                 setType;
+    private final boolean                 lazy;
+    private final Map<GrammarNode, Entry> entries  =
+        new HashMap<GrammarNode, Entry>();
+
+    TerminalTraceIndex(Grammar grammar, SetType setType)
+    {
+        if (grammar == null || setType == null) {
+            throw new IllegalArgumentException("null argument");
+        }
+        this.grammar = grammar;
+        this.setType = setType;
+        this.lazy = false;
+        new IndexVisitor().visitGrammar(grammar);
+    }
+
+    /*
+     * An index which describes the nodes on demand.
+     * Used for building of individual traces.
+     */
+    TerminalTraceIndex(SetType setType)
+    {
+        if (setType == null) {
+            throw new IllegalArgumentException("null argument");
+        }
+        this.grammar = null;
+        this.setType = setType;
+        this.lazy = true;
+    }
+
+    /**
+     * Retrieves the grammar of the index.
+     *
+     * @return the grammar or null if the index has been built
+     * for individual traces
+     */
+    public Grammar getGrammar()
+    {
+        return grammar;
+    }
+
+    /**
+     * Builds an occurrence trace for a terminal type
+     * in the First set of an AST node.
+     *
+     * @param start the start AST node of the trace
+     * @param terminalType the terminal type to be traced
+     * @return the trace or null if the specified terminal
+     * type is not in the First set.
+     */
+    public TerminalTrace buildFirstTrace(GrammarNode start, int terminalType)
+    {
+        checkArguments(start, terminalType);
+        TerminalTrace result = null;
+        if (entryOf(start).inFirst(terminalType)) {
+            result = new TraceBuilder(terminalType).build(start, false);
+        }
+        return result;
+    }
+
+    /**
+     * Builds an occurrence trace for a terminal type
+     * in the Follow set of an AST node.
+     *
+     * @param start the start AST node of the trace
+     * @param terminalType the terminal type to be traced
+     * @return the trace or null if the specified terminal
+     * type is not in the Follow set.
+     */
+    public TerminalTrace buildFollowTrace(GrammarNode start, int terminalType)
+    {
+        checkArguments(start, terminalType);
+        TerminalTrace result = null;
+        if (entryOf(start).inFollow(terminalType)) {
+            result = new TraceBuilder(terminalType).build(start, true);
+        }
+        return result;
+    }
+
+    /**
+     * Iterates over the derivation paths from an AST node to the
+     * occurrences of a terminal type in the First set of the node.
+     * Each path is a trace in which every element has at most one
+     * child. The paths are simple and are produced lazily in order
+     * of increasing length so the first ones are available without
+     * building the complete trace.
+     *
+     * @param start the start AST node of the paths
+     * @param terminalType the terminal type to be traced
+     * @param maxPaths the maximum number of paths or 0 for no limit
+     * @return the iterator; empty if the specified terminal
+     * type is not in the First set.
+     */
+    public Iterator<TerminalTrace> firstPaths(GrammarNode start,
+                                              int terminalType,
+                                              int maxPaths)
+    {
+        checkArguments(start, terminalType);
+        checkMaxPaths(maxPaths);
+        PathIterator result = null;
+        if (entryOf(start).inFirst(terminalType)) {
+            result = new PathIterator(new TraceBuilder(terminalType)
+                .explore(start, false), terminalType, maxPaths);
+        }
+        else {
+            result = new PathIterator(null, terminalType, maxPaths);
+        }
+        return result;
+    }
+
+    /**
+     * Iterates over the derivation paths from an AST node to the
+     * occurrences of a terminal type in the Follow set of the node.
+     * See {@link #firstPaths(GrammarNode, int, int)}.
+     *
+     * @param start the start AST node of the paths
+     * @param terminalType the terminal type to be traced
+     * @param maxPaths the maximum number of paths or 0 for no limit
+     * @return the iterator; empty if the specified terminal
+     * type is not in the Follow set.
+     */
+    public Iterator<TerminalTrace> followPaths(GrammarNode start,
+                                               int terminalType,
+                                               int maxPaths)
+    {
+        checkArguments(start, terminalType);
+        checkMaxPaths(maxPaths);
+        PathIterator result = null;
+        if (entryOf(start).inFollow(terminalType)) {
+            result = new PathIterator(new TraceBuilder(terminalType)
+                .explore(start, true), terminalType, maxPaths);
+        }
+        else {
+            result = new PathIterator(null, terminalType, maxPaths);
+        }
+        return result;
+    }
+
+    private static void checkMaxPaths(int maxPaths)
+    {
+        if (maxPaths < 0) {
+            throw new IllegalArgumentException("negative limit");
+        }
+    }
+
+    private static void checkArguments(GrammarNode node, int terminalType)
+    {
+        if (node == null || terminalType < BuiltInTypes.MIN_TYPE) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    private Entry entryOf(GrammarNode node)
+    {
+        Entry entry = entries.get(node);
+        if (entry == null) {
+            entry = describe(node);
+            if (lazy) {
+                entries.put(node, entry);
+            }
+        }
+        return entry;
+    }
+
+    private Entry describe(GrammarNode node)
+    {
+        Entry entry = new Entry(node);
+        entry.first = project(node, true);
+        entry.follow = project(node, false);
+        if (node instanceof Grammar) {
+            entry.firstEdges = toArray(((Grammar) node).getNonterminalRules());
+            entry.followEdges = entry.firstEdges;
+        }
+        else if (node instanceof NonterminalRule) {
+            NonterminalRule rule = (NonterminalRule) node;
+            entry.firstEdges = toArray(rule.getAlternatives());
+            entry.followEdges = toArray(rule.getReferences());
+        }
+        else if (node instanceof Alternative) {
+            List<Term> terms = ((Alternative) node).getTerms();
+            if (!terms.isEmpty()) {
+                entry.firstEdges = new GrammarNode[] { terms.get(0) };
+            }
+            entry.followEdges = new GrammarNode[] { node.getParent() };
+        }
+        else if (node instanceof Term) {
+            if (node instanceof Block) {
+                entry.firstEdges = toArray(((Block) node).getAlternatives());
+            }
+            else if (node instanceof Nonterminal) {
+                NonterminalRule rule = ((Nonterminal) node).getRule();
+                if (rule != null) {
+                    entry.firstEdges = new GrammarNode[] { rule };
+                }
+            }
+            if (((Term) node).isSuffixNullable()) {
+                entry.followEdges = new GrammarNode[] { node.getParent() };
+            }
+            entry.next = nextTerm((Term) node);
+        }
+        return entry;
+    }
+
+    private static Term nextTerm(Term term)
+    {
+        Term result = null;
+        if (term.getParent() instanceof Alternative) {
+            List<Term> terms = ((Alternative) term.getParent()).getTerms();
+            for (int i = 0; i + 1 < terms.size(); i++) {
+                if (terms.get(i) == term) {
+                    result = terms.get(i + 1);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static GrammarNode[] toArray(List<? extends GrammarNode> nodes)
+    {
+        return nodes.toArray(new GrammarNode[nodes.size()]);
+    }
+
+    /*
+     * The terminals at position 0 of a set.
+     */
+    private BiasedBitSet project(GrammarNode node, boolean first)
+    {
+        BiasedBitSet result = null;
+        switch (setType) {
+            case SET:
+                result = first ? node.getFirst() : node.getFollow();
+                break;
+            case SETK:
+                IntLLStringSet setK =
+                    first ? node.getFirstK() : node.getFollowK();
+                if (setK != null) {
+                    result = new BiasedBitSet(BuiltInTypes.MIN_TYPE);
+                    for (IntLLString string : setK) {
+                        if (string.length() > 0) {
+                            result.set(string.get(0));
+                        }
+                    }
+                }
+                break;
+            case SETKL:
+                BitSetLLString setKL =
+                    first ? node.getFirstKL() : node.getFollowKL();
+                if (setKL != null && setKL.length() > 0) {
+                    result = setKL.get(0);
+                }
+                break;
+        }
+        return result;
+    }
+
+    /**
+     * The indexed data of a node.
+     */
+    private static final class Entry
+    {
+        private final GrammarNode node;
+        /* nodes whose First enters the First of the node */
+        private GrammarNode[]     firstEdges  = NO_NODES;
+        /* nodes whose Follow enters the Follow of the node */
+        private GrammarNode[]     followEdges = NO_NODES;
+        /* the next term in the alternative of a term */
+        private Term              next        = null;
+        private BiasedBitSet      first       = null;
+        private BiasedBitSet      follow      = null;
+
+        private Entry(GrammarNode node)
+        {
+            this.node = node;
+        }
+
+        private boolean inFirst(int terminalType)
+        {
+            return first != null && first.get(terminalType);
+        }
+
+        private boolean inFollow(int terminalType)
+        {
+            return follow != null && follow.get(terminalType);
+        }
+    }
+
+    /**
+     * Builds the index in one traversal of the grammar.
+     */
+    private final class IndexVisitor
+        extends GrammarVisitor
+    {
+        @Override
+        public void preVisit(GrammarNode node)
+        {
+            entries.put(node, describe(node));
+        }
+    }
+
+    /**
+     * A (node, First/Follow) pair in the graph of a trace.
+     */
+    private static final class Vertex
+    {
+        private final Entry   entry;
+        private final boolean follow;
+        private List<Vertex>  children  = new ArrayList<Vertex>();
+        private List<Vertex>  parents   = new ArrayList<Vertex>();
+        /* the distance to the nearest occurrence of the terminal */
+        private int           distance  = Integer.MAX_VALUE;
+        /* the strongly connected component of the vertex */
+        private int           component = -1;
+        private int           order     = -1;
+        private int           lowLink   = 0;
+        private boolean       onStack   = false;
+        /* the next child to visit in a depth first search */
+        private int           edge      = 0;
+        private TerminalTrace trace     = null;
+
+        private Vertex(Entry entry, boolean follow)
+        {
+            this.entry = entry;
+            this.follow = follow;
+        }
+
+        private boolean isProductive()
+        {
+            return distance != Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Builds the trace of a terminal in three steps : collects the
+     * graph of First/Follow edges which carry the terminal, finds
+     * the vertices of the graph which lead to an occurrence of the
+     * terminal together with the strongly connected components and
+     * then creates one trace object for each such vertex.
+     */
+    private final class TraceBuilder
+    {
+        private final int                terminalType;
+        private final Map<Entry, Vertex> firstVertices  =
+            new HashMap<Entry, Vertex>();
+        private final Map<Entry, Vertex> followVertices =
+            new HashMap<Entry, Vertex>();
+        private final List<Vertex>       leaves         =
+            new ArrayList<Vertex>();
+        private final Deque<Vertex>      pending        =
+            new ArrayDeque<Vertex>();
+        private final Deque<Vertex>      stack          =
+            new ArrayDeque<Vertex>();
+        private int                      order          = 0;
+        private int                      components     = 0;
+
+        private TraceBuilder(int terminalType)
+        {
+            this.terminalType = terminalType;
+        }
+
+        private TerminalTrace build(GrammarNode start, boolean follow)
+        {
+            Vertex root = explore(start, follow);
+            TerminalTrace result = null;
+            if (root.isProductive()) {
+                connect(root);
+                result = trace(root);
+            }
+            return result;
+        }
+
+        /*
+         * Collects and measures the graph of the trace.
+         */
+        private Vertex explore(GrammarNode start, boolean follow)
+        {
+            Vertex root = vertex(entryOf(start), follow);
+            while (!pending.isEmpty()) {
+                expand(pending.pop());
+            }
+            measure();
+            return root;
+        }
+
+        private Vertex vertex(Entry entry, boolean follow)
+        {
+            Map<Entry, Vertex> vertices =
+                follow ? followVertices : firstVertices;
+            Vertex vertex = vertices.get(entry);
+            if (vertex == null) {
+                vertex = new Vertex(entry, follow);
+                vertices.put(entry, vertex);
+                pending.push(vertex);
+            }
+            return vertex;
+        }
+
+        private void edge(Vertex source, GrammarNode target, boolean follow)
+        {
+            Vertex vertex = vertex(entryOf(target), follow);
+            source.children.add(vertex);
+            vertex.parents.add(source);
+        }
+
+        private void expand(Vertex vertex)
+        {
+            Entry entry = vertex.entry;
+            GrammarNode node = entry.node;
+            if (node instanceof TerminalRule) {
+                return;
+            }
+            if (!vertex.follow) {
+                if (entry.inFirst(terminalType)) {
+                    if (node instanceof Terminal) {
+                        leaves.add(vertex);
+                    }
+                    for (GrammarNode edge : entry.firstEdges) {
+                        edge(vertex, edge, false);
+                    }
+                }
+                if (entry.next != null && node.isNullable()) {
+                    edge(vertex, entry.next, false);
+                }
+            }
+            else {
+                if (entry.next != null) {
+                    edge(vertex, entry.next, false);
+                }
+                for (GrammarNode edge : entry.followEdges) {
+                    if (entryOf(edge).inFollow(terminalType)) {
+                        edge(vertex, edge, true);
+                    }
+                }
+            }
+        }
+
+        /*
+         * Breadth first search from the occurrences of the terminal.
+         */
+        private void measure()
+        {
+            Deque<Vertex> queue = new ArrayDeque<Vertex>();
+            for (Vertex leaf : leaves) {
+                leaf.distance = 0;
+                queue.add(leaf);
+            }
+            while (!queue.isEmpty()) {
+                Vertex vertex = queue.poll();
+                for (Vertex parent : vertex.parents) {
+                    if (!parent.isProductive()) {
+                        parent.distance = vertex.distance + 1;
+                        queue.add(parent);
+                    }
+                }
+            }
+        }
+
+        /*
+         * Tarjan's algorithm on the productive vertices. The search
+         * keeps its own path so that deeply nested grammars do not
+         * exhaust the call stack.
+         */
+        private void connect(Vertex root)
+        {
+            Deque<Vertex> path = new ArrayDeque<Vertex>();
+            open(root);
+            path.push(root);
+            while (!path.isEmpty()) {
+                Vertex vertex = path.peek();
+                if (vertex.edge < vertex.children.size()) {
+                    Vertex child = vertex.children.get(vertex.edge++);
+                    if (!child.isProductive()) {
+                        continue;
+                    }
+                    if (child.order < 0) {
+                        open(child);
+                        path.push(child);
+                    }
+                    else if (child.onStack) {
+                        vertex.lowLink = Math.min(vertex.lowLink, child.order);
+                    }
+                    continue;
+                }
+                path.pop();
+                if (vertex.lowLink == vertex.order) {
+                    Vertex member = null;
+                    do {
+                        member = stack.pop();
+                        member.onStack = false;
+                        member.component = components;
+                    }
+                    while (member != vertex);
+                    ++components;
+                }
+                Vertex parent = path.peek();
+                if (parent != null) {
+                    parent.lowLink = Math.min(parent.lowLink, vertex.lowLink);
+                }
+            }
+        }
+
+        private void open(Vertex vertex)
+        {
+            vertex.order = vertex.lowLink = order++;
+            vertex.edge = 0;
+            stack.push(vertex);
+            vertex.onStack = true;
+        }
+
+        /*
+         * Creates the traces depth first. The kept edges are
+         * acyclic, so a child is complete when its parent
+         * looks at it again.
+         */
+        private TerminalTrace trace(Vertex root)
+        {
+            Deque<Vertex> path = new ArrayDeque<Vertex>();
+            create(root);
+            path.push(root);
+            while (!path.isEmpty()) {
+                Vertex vertex = path.peek();
+                if (vertex.edge == vertex.children.size()) {
+                    path.pop();
+                    continue;
+                }
+                Vertex child = vertex.children.get(vertex.edge);
+                if (!keep(vertex, child)) {
+                    vertex.edge++;
+                }
+                else if (child.trace == null) {
+                    create(child);
+                    path.push(child);
+                }
+                else {
+                    if (child.trace.getParent() == null) {
+                        child.trace.setParent(vertex.trace);
+                    }
+                    vertex.trace.getChildren().add(child.trace);
+                    vertex.edge++;
+                }
+            }
+            return root.trace;
+        }
+
+        private void create(Vertex vertex)
+        {
+            vertex.trace = new TerminalTrace(vertex.follow ? FOLLOW : FIRST,
+                terminalType, vertex.entry.node);
+            vertex.edge = 0;
+        }
+
+        /*
+         * Edges within a strongly connected component
+         * must lead closer to an occurrence of the terminal.
+         */
+        private boolean keep(Vertex vertex, Vertex child)
+        {
+            return child.isProductive()
+                    && (child.component != vertex.component
+                            || child.distance < vertex.distance);
+        }
+    }
+
+    /**
+     * A partial derivation path. The steps of
+     * different paths share their common prefix.
+     */
+    private static final class PathStep
+    {
+        private final Vertex   vertex;
+        private final PathStep previous;
+        private final int      length;
+        private final long     sequence;
+
+        private PathStep(Vertex vertex, PathStep previous, long sequence)
+        {
+            this.vertex = vertex;
+            this.previous = previous;
+            this.length = previous == null ? 1 : previous.length + 1;
+            this.sequence = sequence;
+        }
+
+        /*
+         * A lower bound of the length of the complete paths
+         * which extend this one. Paths of equal length are
+         * produced in the order in which they are found.
+         */
+        private static int compare(PathStep a, PathStep b)
+        {
+            long aLength = (long) a.length + a.vertex.distance;
+            long bLength = (long) b.length + b.vertex.distance;
+            int result = Long.compare(aLength, bLength);
+            if (result == 0) {
+                result = Long.compare(a.sequence, b.sequence);
+            }
+            return result;
+        }
+
+        private boolean contains(Vertex vertex)
+        {
+            for (PathStep step = this; step != null; step = step.previous) {
+                if (step.vertex == vertex) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Best first search of the simple derivation paths guided
+     * by the distances to the occurrences of the terminal.
+     */
+    private static final class PathIterator
+        implements Iterator<TerminalTrace>
+    {
+        private final int                     terminalType;
+        private final PriorityQueue<PathStep> queue     =
+            new PriorityQueue<PathStep>(PathStep::compare);
+        private int                           remaining = 0;
+        private long                          sequence  = 0;
+        private PathStep                      next      = null;
+
+        private PathIterator(Vertex root, int terminalType, int maxPaths)
+        {
+            this.terminalType = terminalType;
+            this.remaining = maxPaths > 0 ? maxPaths : Integer.MAX_VALUE;
+            if (root != null && root.isProductive()) {
+                queue.add(new PathStep(root, null, sequence++));
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            if (next == null && remaining > 0) {
+                next = advance();
+            }
+            return next != null;
+        }
+
+        @Override
+        public TerminalTrace next()
+        {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            TerminalTrace result = toTrace(next);
+            next = null;
+            --remaining;
+            return result;
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        private PathStep advance()
+        {
+            while (!queue.isEmpty()) {
+                PathStep step = queue.poll();
+                for (Vertex child : step.vertex.children) {
+                    if (child.isProductive() && !step.contains(child)) {
+                        queue.add(new PathStep(child, step, sequence++));
+                    }
+                }
+                if (step.vertex.distance == 0) {
+                    return step;
+                }
+            }
+            return null;
+        }
+
+        private TerminalTrace toTrace(PathStep last)
+        {
+            PathStep[] steps = new PathStep[last.length];
+            for (PathStep step = last; step != null; step = step.previous) {
+                steps[step.length - 1] = step;
+            }
+            TerminalTrace result = null;
+            TerminalTrace parent = null;
+            for (PathStep step : steps) {
+                TerminalTrace trace = new TerminalTrace(
+                    step.vertex.follow ? FOLLOW : FIRST, terminalType,
+                    step.vertex.entry.node);
+                if (parent == null) {
+                    result = trace;
+                }
+                else {
+                    trace.setParent(parent);
+                    parent.getChildren().add(trace);
+                }
+                parent = trace;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import java.util.List;
+
+import net.ognyanov.niogram.ast.Alternative;
+import net.ognyanov.niogram.ast.GrammarNode;
+import net.ognyanov.niogram.ast.Multiplex;
+import net.ognyanov.niogram.util.IntLLStringSet;
+import net.ognyanov.niogram.util.LLStringZdd;
+
+/**
+ * The symbolic counterpart of {@link FFKConflictsVisitor}.
+ * The conflicts are calculated on the diagrams and only
+ * the conflict sets at K are materialized.
+ *
+ * @author Nikolay Ognyanov
+ */
+class ZddFFKConflictsVisitor
+    extends FFKConflictsVisitor
+{
+    private final ZddLookahead lookahead;
+    private int                first  = 0;
+    private int                follow = 0;
+    private int[]              firsts = null;
+
+    ZddFFKConflictsVisitor(ZddLookahead lookahead)
+    {
+        this.lookahead = lookahead;
+    }
+
+    @Override
+    void prepare(Multiplex multiplex)
+    {
+        GrammarNode node = (GrammarNode) multiplex;
+        first = lookahead.getFirstK(node);
+        follow = lookahead.getFollowK(node);
+        List<Alternative> alternatives = multiplex.getAlternatives();
+        firsts = new int[alternatives.size()];
+        for (int i = 0; i < firsts.length; i++) {
+            firsts[i] = lookahead.getFirstK(alternatives.get(i));
+        }
+    }
+
+    @Override
+    IntLLStringSet ffConflict(int currentK)
+    {
+        return lookahead.toSet(
+            lookahead.getZdd().conflict(first, follow, currentK));
+    }
+
+    @Override
+    boolean hasFfConflict(int currentK)
+    {
+        return lookahead.getZdd().conflict(first, follow, currentK)
+                != LLStringZdd.EMPTY;
+    }
+
+    @Override
+    IntLLStringSet conflict(int current, int other, int currentK)
+    {
+        return lookahead.toSet(lookahead.getZdd().conflict(firsts[current],
+            firsts[other], currentK));
+    }
+
+    @Override
+    boolean hasConflict(int current, int other, int currentK)
+    {
+        return lookahead.getZdd().conflict(firsts[current], firsts[other],
+            currentK) != LLStringZdd.EMPTY;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import java.util.List;
+
+import net.ognyanov.niogram.ast.Alternative;
+import net.ognyanov.niogram.ast.Block;
+import net.ognyanov.niogram.ast.Grammar;
+import net.ognyanov.niogram.ast.GrammarNode;
+import net.ognyanov.niogram.ast.NonterminalRule;
+import net.ognyanov.niogram.ast.Term;
+import net.ognyanov.niogram.util.LLStringZdd;
+
+/**
+ * The symbolic counterpart of {@link FirstKVisitor}.
+ *
+ * @author Nikolay Ognyanov
+ */
+class ZddFirstKVisitor
+    extends InterruptableGrammarVisitor
+{
+    private final ZddLookahead lookahead;
+    private LLStringZdd        zdd      = null;
+    private boolean            modified = false;
+
+    ZddFirstKVisitor(ZddLookahead lookahead)
+    {
+        this.lookahead = lookahead;
+    }
+
+    @Override
+    public void visitGrammar(Grammar grammar)
+    {
+        zdd = lookahead.getZdd();
+        do {
+            modified = false;
+            iterationStarted();
+            super.visitGrammar(grammar);
+            iterationCompleted();
+        } while (modified);
+        int grammarFirstK = LLStringZdd.EMPTY;
+        for (NonterminalRule rule : grammar.getNonterminalRules()) {
+            grammarFirstK = zdd.union(grammarFirstK, lookahead.getFirstK(rule));
+        }
+        lookahead.setFirstK(grammar, grammarFirstK);
+        lookahead.materializeFirstK();
+    }
+
+    @Override
+    public void visitNonterminalRule(NonterminalRule rule)
+    {
+        super.visitNonterminalRule(rule);
+        int newFirstK = LLStringZdd.EMPTY;
+        for (Alternative alternative : rule.getAlternatives()) {
+            newFirstK = zdd.union(newFirstK, lookahead.getFirstK(alternative));
+        }
+        update(rule, newFirstK);
+    }
+
+    @Override
+    public void visitBlock(Block block)
+    {
+        super.visitBlock(block);
+        int blockFirstK = lookahead.getFirstK(block);
+        int newFirstK = LLStringZdd.EMPTY;
+        for (Alternative alternative : block.getAlternatives()) {
+            newFirstK = zdd.union(newFirstK, lookahead.getFirstK(alternative));
+        }
+        if (newFirstK != LLStringZdd.EMPTY) {
+            if (block.isRepeatable() && blockFirstK != LLStringZdd.EMPTY) {
+                // c+ is equivalent to b : c b | c;
+                newFirstK = zdd.union(lookahead.append(newFirstK, blockFirstK),
+                    newFirstK);
+            }
+            update(block, newFirstK);
+        }
+    }
+
+    @Override
+    public void visitAlternative(Alternative alternative)
+    {
+        super.visitAlternative(alternative);
+        int altFirstK = lookahead.getFirstK(alternative);
+        List<Term> terms = alternative.getTerms();
+        if (terms.isEmpty()) {
+            update(alternative, zdd.union(altFirstK, LLStringZdd.BASE));
+        }
+        else {
+            for (Term term : terms) {
+                if (lookahead.getFirstK(term) == LLStringZdd.EMPTY) {
+                    return;
+                }
+            }
+            int newFirstK = LLStringZdd.EMPTY;
+            for (Term term : terms) {
+                newFirstK = lookahead.append(newFirstK,
+                    lookahead.getFirstK(term));
+            }
+            update(alternative, newFirstK);
+        }
+    }
+
+    private void update(GrammarNode node, int newFirstK)
+    {
+        if (newFirstK != lookahead.getFirstK(node)) {
+            lookahead.setFirstK(node, newFirstK);
+            changed(node, lookahead.size(newFirstK));
+            modified = true;
+        }
+    }
+}
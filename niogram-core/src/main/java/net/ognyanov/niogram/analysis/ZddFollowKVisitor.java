@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import java.util.List;
+import java.util.ListIterator;
+
+import net.ognyanov.niogram.ast.Alternative;
+import net.ognyanov.niogram.ast.Block;
+import net.ognyanov.niogram.ast.Grammar;
+import net.ognyanov.niogram.ast.GrammarNode;
+import net.ognyanov.niogram.ast.Nonterminal;
+import net.ognyanov.niogram.ast.NonterminalRule;
+import net.ognyanov.niogram.ast.Term;
+import net.ognyanov.niogram.ast.Terminal;
+import net.ognyanov.niogram.util.LLStringZdd;
+
+/**
+ * The symbolic counterpart of {@link FollowKVisitor}.
+ *
+ * @author Nikolay Ognyanov
+ */
+class ZddFollowKVisitor
+    extends InterruptableGrammarVisitor
+{
+    private final ZddLookahead lookahead;
+    private LLStringZdd        zdd      = null;
+    private boolean            modified = false;
+    private int                pass     = 0;
+
+    ZddFollowKVisitor(ZddLookahead lookahead)
+    {
+        this.lookahead = lookahead;
+    }
+
+    @Override
+    public void visitGrammar(Grammar grammar)
+    {
+        zdd = lookahead.getZdd();
+        pass = 1;
+        super.visitGrammar(grammar);
+        pass = 2;
+        do {
+            modified = false;
+            iterationStarted();
+            super.visitGrammar(grammar);
+            iterationCompleted();
+        } while (modified);
+        pass = 3;
+        super.visitGrammar(grammar);
+        int grammarFollowK = LLStringZdd.EMPTY;
+        for (NonterminalRule rule : grammar.getNonterminalRules()) {
+            grammarFollowK =
+                zdd.union(grammarFollowK, lookahead.getFollowK(rule));
+        }
+        lookahead.setFollowK(grammar, grammarFollowK);
+        lookahead.materializeFollowK();
+    }
+
+    @Override
+    public void visitNonterminalRule(NonterminalRule rule)
+    {
+        super.visitNonterminalRule(rule);
+        if (pass == 2) {
+            int newFollowK = lookahead.getFollowK(rule);
+            for (Nonterminal reference : rule.getReferences()) {
+                GrammarNode context = reference.getParent().getParent();
+                newFollowK = zdd.union(newFollowK,
+                    lookahead.append(lookahead.getSuffixFirstK(reference),
+                        lookahead.getFollowK(context)));
+            }
+            update(rule, newFollowK);
+        }
+    }
+
+    @Override
+    public void visitBlock(Block block)
+    {
+        super.visitBlock(block);
+        if (pass == 2) {
+            GrammarNode context = block.getParent().getParent();
+            int newFollowK = zdd.union(
+                lookahead.append(lookahead.getSuffixFirstK(block),
+                    lookahead.getFollowK(context)),
+                lookahead.getFollowK(block));
+            update(block, newFollowK);
+        }
+    }
+
+    @Override
+    public void visitAlternative(Alternative alternative)
+    {
+        super.visitAlternative(alternative);
+        List<Term> terms = alternative.getTerms();
+        if (pass == 1) {
+            // right to left : suffix(i) = first(i+1) + suffix(i+1)
+            ListIterator<Term> termsIt = terms.listIterator(terms.size());
+            Term next = null;
+            while (termsIt.hasPrevious()) {
+                Term term = termsIt.previous();
+                int termSuffixFirstK = LLStringZdd.EMPTY;
+                if (next != null) {
+                    termSuffixFirstK = lookahead.append(
+                        lookahead.getFirstK(next),
+                        lookahead.getSuffixFirstK(next));
+                    GrammarNode target = term;
+                    if (term instanceof Terminal) {
+                        target = ((Terminal) term).getRule();
+                    }
+                    else if (term instanceof Nonterminal) {
+                        target = ((Nonterminal) term).getRule();
+                    }
+                    lookahead.setFollowK(target, zdd.union(
+                        lookahead.getFollowK(target), termSuffixFirstK));
+                }
+                lookahead.setSuffixFirstK(term, termSuffixFirstK);
+                next = term;
+            }
+        }
+        else if (pass == 3) {
+            int parentFollowK =
+                lookahead.getFollowK(alternative.getParent());
+            lookahead.setFollowK(alternative, parentFollowK);
+            for (Term term : terms) {
+                if (!(term instanceof Block)) {
+                    lookahead.setFollowK(term, zdd.union(
+                        lookahead.append(lookahead.getSuffixFirstK(term),
+                            parentFollowK),
+                        parentFollowK));
+                }
+            }
+        }
+    }
+
+    private void update(GrammarNode node, int newFollowK)
+    {
+        if (newFollowK != lookahead.getFollowK(node)) {
+            lookahead.setFollowK(node, newFollowK);
+            changed(node, lookahead.size(newFollowK));
+            modified = true;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import net.ognyanov.niogram.ast.Grammar;
+import net.ognyanov.niogram.ast.GrammarNode;
+import net.ognyanov.niogram.ast.Nonterminal;
+import net.ognyanov.niogram.ast.Term;
+import net.ognyanov.niogram.ast.Terminal;
+import net.ognyanov.niogram.ast.TerminalRule;
+import net.ognyanov.niogram.util.IntLLString;
+import net.ognyanov.niogram.util.IntLLStringSet;
+import net.ognyanov.niogram.util.LLStringZdd;
+
+/**
+ * The FirstK, FollowK and suffix FirstK sets of the nodes of
+ * a grammar held as diagrams of one {@link LLStringZdd} during
+ * the symbolic calculation. The visitors work on the diagrams
+ * and the sets are materialized into the grammar at the end
+ * of each phase.
+ *
+ * @author Nikolay Ognyanov
+ */
+final class ZddLookahead
+{
+    private final Grammar                   grammar;
+    private final int                       k;
+    private final LLStringZdd               zdd;
+    private final Map<GrammarNode, Integer> firstK       =
+        new IdentityHashMap<GrammarNode, Integer>();
+    private final Map<GrammarNode, Integer> followK      =
+        new IdentityHashMap<GrammarNode, Integer>();
+    private final Map<GrammarNode, Integer> suffixFirstK =
+        new IdentityHashMap<GrammarNode, Integer>();
+
+    ZddLookahead(Grammar grammar)
+    {
+        this.grammar = grammar;
+        this.k = grammar.getK();
+        this.zdd = new LLStringZdd(k);
+    }
+
+    LLStringZdd getZdd()
+    {
+        return zdd;
+    }
+
+    /*
+     * Appends in the sense of IntLLStringSet.append: an
+     * empty operand stands for a set not known yet.
+     */
+    int append(int a, int b)
+    {
+        if (a == LLStringZdd.EMPTY) {
+            return b;
+        }
+        if (b == LLStringZdd.EMPTY) {
+            return a;
+        }
+        return zdd.concat(a, b);
+    }
+
+    int getFirstK(GrammarNode node)
+    {
+        if (node instanceof Terminal) {
+            return getFirstK(((Terminal) node).getRule());
+        }
+        if (node instanceof Nonterminal) {
+            return getFirstK(((Nonterminal) node).getRule());
+        }
+        Integer result = firstK.get(node);
+        if (result == null && node instanceof TerminalRule) {
+            IntLLString string = new IntLLString(k, grammar);
+            string.add(node.getType());
+            result = zdd.string(string);
+            firstK.put(node, result);
+        }
+        return result == null ? LLStringZdd.EMPTY : result;
+    }
+
+    void setFirstK(GrammarNode node, int set)
+    {
+        firstK.put(node, set);
+    }
+
+    int getFollowK(GrammarNode node)
+    {
+        Integer result = followK.get(node);
+        return result == null ? LLStringZdd.EMPTY : result;
+    }
+
+    void setFollowK(GrammarNode node, int set)
+    {
+        followK.put(node, set);
+    }
+
+    int getSuffixFirstK(Term term)
+    {
+        Integer result = suffixFirstK.get(term);
+        return result == null ? LLStringZdd.EMPTY : result;
+    }
+
+    void setSuffixFirstK(Term term, int set)
+    {
+        suffixFirstK.put(term, set);
+    }
+
+    int size(int set)
+    {
+        return (int) Math.min(zdd.count(set), Integer.MAX_VALUE);
+    }
+
+    IntLLStringSet toSet(int set)
+    {
+        IntLLStringSet result = new IntLLStringSet(k, grammar);
+        zdd.toSet(set, result);
+        return result;
+    }
+
+    /**
+     * Writes the FirstK sets into the grammar.
+     */
+    void materializeFirstK()
+    {
+        for (Map.Entry<GrammarNode, Integer> entry : firstK.entrySet()) {
+            entry.getKey().setFirstK(toSet(entry.getValue()));
+        }
+    }
+
+    /**
+     * Writes the FollowK and suffix FirstK sets into the grammar.
+     */
+    void materializeFollowK()
+    {
+        for (Map.Entry<GrammarNode, Integer> entry : followK.entrySet()) {
+            entry.getKey().setFollowK(toSet(entry.getValue()));
+        }
+        for (Map.Entry<GrammarNode, Integer> entry : suffixFirstK
+            .entrySet()) {
+            ((Term) entry.getKey()).setSuffixFirstK(toSet(entry.getValue()));
+        }
+    }
+}
@@ -95,51 +95,60 @@ public final class Block
     @Override
     public List<Conflict> getConflicts()
     {
+        load(GrammarSnapshot.CONFLICTS);
         return conflicts;
     }
 
     @Override
     public List<ConflictK> getConflictsK()
     {
+        load(GrammarSnapshot.CONFLICTS_K);
         return conflictsK;
     }
 
     @Override
     public List<ConflictKL> getConflictsKL()
     {
+        load(GrammarSnapshot.CONFLICTS_KL);
         return conflictsKL;
     }
 
     @Override
     public BiasedBitSet getFfConflictSet()
     {
+        load(GrammarSnapshot.FF_CONFLICT);
         return ffConflict;
     }
 
     public void setFfConflict(BiasedBitSet ffConflict)
     {
+        loaded(GrammarSnapshot.FF_CONFLICT);
         this.ffConflict = ffConflict;
     }
 
     @Override
     public IntLLStringSet getFfConflictSetK()
     {
+        load(GrammarSnapshot.FF_CONFLICT_K);
         return ffConflictK;
     }
 
     public void setFfConflictK(IntLLStringSet ffConflictK)
     {
+        loaded(GrammarSnapshot.FF_CONFLICT_K);
         this.ffConflictK = ffConflictK;
     }
 
     @Override
     public BitSetLLString getFfConflictSetKL()
     {
+        load(GrammarSnapshot.FF_CONFLICT_KL);
         return ffConflictKL;
     }
 
     public void setFfConflictKL(BitSetLLString ffConflictKL)
     {
+        loaded(GrammarSnapshot.FF_CONFLICT_KL);
         this.ffConflictKL = ffConflictKL;
     }
 
@@ -6,10 +6,14 @@
  */
 package net.ognyanov.niogram.ast;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
 
 import net.ognyanov.niogram.util.BidirectionalMap;
+import net.ognyanov.niogram.util.DotStringBuilder;
 import net.ognyanov.niogram.util.TypeNameProvider;
 
 /**
@@ -35,6 +39,9 @@ import net.ognyanov.niogram.util.TypeNameProvider;
  * - A flag marking whether FirstK/FollowK sets have been calculated.</li>
  * <li><strong>FFKL</strong>
  * - A flag marking whether FirstKL/FollowKL sets have been calculated.</li>
+ * <li><strong>incompleteFF, incompleteFFK, incompleteFFKL</strong>
+ * - Lists of nonterminal rules for which the respective analysis data
+ * is incomplete because the calculation exceeded its budget.</li>
  * <li><strong>K</strong>
  * - The value of K for FirstK/FollowK sets.</li>
  * <li><strong>KL</strong>
@@ -61,6 +68,12 @@ public final class Grammar
         new ArrayList<NonterminalRule>();
     private List<NonterminalRule>             unused           =
         new ArrayList<NonterminalRule>();
+    private List<NonterminalRule>             incompleteFF     =
+        new ArrayList<NonterminalRule>();
+    private List<NonterminalRule>             incompleteFFK    =
+        new ArrayList<NonterminalRule>();
+    private List<NonterminalRule>             incompleteFFKL   =
+        new ArrayList<NonterminalRule>();
 
     private boolean                           flags            = false;
     private boolean                           fF               = false;
@@ -107,6 +120,21 @@ public final class Grammar
         return unused;
     }
 
+    public List<NonterminalRule> getIncompleteFF()
+    {
+        return incompleteFF;
+    }
+
+    public List<NonterminalRule> getIncompleteFFK()
+    {
+        return incompleteFFK;
+    }
+
+    public List<NonterminalRule> getIncompleteFFKL()
+    {
+        return incompleteFFKL;
+    }
+
     public void setK(int k)
     {
         if (k < 1) {
@@ -189,6 +217,7 @@ public final class Grammar
     {
         new ClearFFVisitor().visitGrammar(this);
         setFF(false);
+        incompleteFF.clear();
     }
 
     /**
@@ -198,6 +227,7 @@ public final class Grammar
     {
         new ClearFFKVisitor().visitGrammar(this);
         setFFK(false);
+        incompleteFFK.clear();
     }
 
     /**
@@ -207,6 +237,7 @@ public final class Grammar
     {
         new ClearFFKLVisitor().visitGrammar(this);
         setFFKL(false);
+        incompleteFFKL.clear();
     }
 
     /**
@@ -242,6 +273,36 @@ public final class Grammar
         return drawer.draw(this);
     }
 
+    /**
+     * Writes the DOT language representation of the
+     * railroad diagrams to a target as it is generated.
+     * 
+     * @param out the target
+     * @throws IOException if writing to the target fails
+     */
+    public void writeRailRoadDot(Appendable out)
+        throws IOException
+    {
+        try {
+            new RailroadDrawer(new DotStringBuilder(out)).render(this);
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        // streams written before the incomplete lists were introduced
+        if (incompleteFF == null) {
+            incompleteFF = new ArrayList<NonterminalRule>();
+            incompleteFFK = new ArrayList<NonterminalRule>();
+            incompleteFFKL = new ArrayList<NonterminalRule>();
+        }
+    }
+
     private static class ClearFlagsVisitor
         extends GrammarVisitor
     {
@@ -6,7 +6,10 @@
  */
 package net.ognyanov.niogram.ast;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 import net.ognyanov.niogram.util.BiasedBitSet;
@@ -95,6 +98,16 @@ public abstract class GrammarNode
     private transient Object    sourceContext    = null;
     private transient Object    payload          = null;
 
+    /*
+     * Nodes of a grammar restored from a GrammarSnapshot
+     * decode their set valued attributes on first access.
+     * The bits of pending mark the attributes which are
+     * still to be decoded.
+     */
+    private transient GrammarSnapshot snapshot      = null;
+    private transient int             snapshotIndex = 0;
+    private transient int             pending       = 0;
+
     public GrammarNode(int type)
     {
         synchronized (lock) {
@@ -175,61 +188,73 @@ public abstract class GrammarNode
 
     public BiasedBitSet getFirst()
     {
+        load(GrammarSnapshot.FIRST);
         return first;
     }
 
     public void setFirst(BiasedBitSet first)
     {
+        loaded(GrammarSnapshot.FIRST);
         this.first = first;
     }
 
     public BiasedBitSet getFollow()
     {
+        load(GrammarSnapshot.FOLLOW);
         return follow;
     }
 
     public void setFollow(BiasedBitSet follow)
     {
+        loaded(GrammarSnapshot.FOLLOW);
         this.follow = follow;
     }
 
     public IntLLStringSet getFirstK()
     {
+        load(GrammarSnapshot.FIRST_K);
         return firstK;
     }
 
     public void setFirstK(IntLLStringSet firstK)
     {
+        loaded(GrammarSnapshot.FIRST_K);
         this.firstK = firstK;
     }
 
     public IntLLStringSet getFollowK()
     {
+        load(GrammarSnapshot.FOLLOW_K);
         return followK;
     }
 
     public void setFollowK(IntLLStringSet followK)
     {
+        loaded(GrammarSnapshot.FOLLOW_K);
         this.followK = followK;
     }
 
     public BitSetLLString getFirstKL()
     {
+        load(GrammarSnapshot.FIRST_KL);
         return firstKL;
     }
 
     public void setFirstKL(BitSetLLString firstKL)
     {
+        loaded(GrammarSnapshot.FIRST_KL);
         this.firstKL = firstKL;
     }
 
     public BitSetLLString getFollowKL()
     {
+        load(GrammarSnapshot.FOLLOW_KL);
         return followKL;
     }
 
     public void setFollowKL(BitSetLLString followKL)
     {
+        loaded(GrammarSnapshot.FOLLOW_KL);
         this.followKL = followKL;
     }
 
@@ -253,6 +278,38 @@ public abstract class GrammarNode
         this.payload = payload;
     }
 
+    final void setSnapshot(GrammarSnapshot snapshot, int index, int pending)
+    {
+        this.snapshot = snapshot;
+        this.snapshotIndex = index;
+        this.pending = pending;
+    }
+
+    /*
+     * Decodes those of the specified attributes which
+     * have not been decoded or set yet.
+     */
+    final void load(int attributes)
+    {
+        int missing = pending & attributes;
+        if (missing != 0) {
+            pending &= ~missing;
+            snapshot.load(this, snapshotIndex, missing);
+        }
+    }
+
+    final void loaded(int attributes)
+    {
+        pending &= ~attributes;
+    }
+
+    private void writeObject(ObjectOutputStream out)
+        throws IOException
+    {
+        load(GrammarSnapshot.ALL);
+        out.defaultWriteObject();
+    }
+
     /**
      * Generates an XML representation of
      * the node and its descendants.
@@ -261,11 +318,29 @@ public abstract class GrammarNode
      */
     public String toXmlString()
     {
-        XMLVisitor visitor = new XMLVisitor();
+        XMLVisitor visitor = new XMLVisitor(new XmlStringBuilder());
         visitor.visitNode(this);
         return visitor.getXMLString();
     }
 
+    /**
+     * Writes an XML representation of the node and
+     * its descendants to a target as it is generated.
+     * 
+     * @param out the target
+     * @throws IOException if writing to the target fails
+     */
+    public void writeXml(Appendable out)
+        throws IOException
+    {
+        try {
+            new XMLVisitor(new XmlStringBuilder(out)).visitNode(this);
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
     /**
      * Generates a DOT language representation
      * of the node and its descendants.
@@ -274,11 +349,29 @@ public abstract class GrammarNode
      */
     public String toDotString()
     {
-        DotVisitor visitor = new DotVisitor();
+        DotVisitor visitor = new DotVisitor(new DotStringBuilder());
         visitor.visitNode(this);
         return visitor.getDOTString();
     }
 
+    /**
+     * Writes a DOT language representation of the node and
+     * its descendants to a target as it is generated.
+     * 
+     * @param out the target
+     * @throws IOException if writing to the target fails
+     */
+    public void writeDot(Appendable out)
+        throws IOException
+    {
+        try {
+            new DotVisitor(new DotStringBuilder(out)).visitNode(this);
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
     @Override
     public String toString()
     {
@@ -314,9 +407,9 @@ public abstract class GrammarNode
     {
         private DotStringBuilder stringBuider;
 
-        public DotVisitor()
+        public DotVisitor(DotStringBuilder stringBuilder)
         {
-            this.stringBuider = new DotStringBuilder();
+            this.stringBuider = stringBuilder;
         }
 
         public String getDOTString()
@@ -438,9 +531,9 @@ public abstract class GrammarNode
             return stringBuilder.toString();
         }
 
-        public XMLVisitor()
+        public XMLVisitor(XmlStringBuilder stringBuilder)
         {
-            stringBuilder = new XmlStringBuilder();
+            this.stringBuilder = stringBuilder;
         }
 
         @Override
@@ -0,0 +1,977 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.ast;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import net.ognyanov.niogram.ast.Multiplex.Conflict;
+import net.ognyanov.niogram.ast.Multiplex.ConflictK;
+import net.ognyanov.niogram.ast.Multiplex.ConflictKL;
+import net.ognyanov.niogram.util.BiasedBitSet;
+import net.ognyanov.niogram.util.BitSetLLString;
+import net.ognyanov.niogram.util.IntLLString;
+import net.ognyanov.niogram.util.IntLLStringSet;
+import net.ognyanov.niogram.util.NioGramException;
+
+/**
+ * A compact binary snapshot of an analyzed grammar.<p>
+ *
+ * A snapshot is written with {@link #write(Grammar, File)} and
+ * opened with {@link #open(File)}. Opening a snapshot only maps
+ * the file into memory and validates its header. The AST skeleton
+ * (nodes, names, flags and links) is built on the first call
+ * to {@link #getGrammar()}. The set valued attributes of the
+ * nodes (First/Follow sets of all kinds, suffix sets and
+ * conflicts) are decoded from the mapped file only when
+ * their getters are called for the first time. Thus the
+ * memory used by a large analyzed grammar is proportional
+ * to the part of it which is actually inspected. The rules
+ * left incomplete by an analysis budget are recorded too, so
+ * a truncated analysis is restored as truncated.<p>
+ *
+ * The grammar produced by a snapshot is detached from the
+ * file: setting an attribute of a node replaces the value
+ * in memory and the file is never written back. Like the
+ * rest of the AST, such grammars are not thread safe.
+ *
+ * @author Nikolay Ognyanov
+ */
+public final class GrammarSnapshot
+{
+    static final int               FIRST          = 1 << 0;
+    static final int               FOLLOW         = 1 << 1;
+    static final int               FIRST_K        = 1 << 2;
+    static final int               FOLLOW_K       = 1 << 3;
+    static final int               FIRST_KL       = 1 << 4;
+    static final int               FOLLOW_KL      = 1 << 5;
+    static final int               SUFFIX_FIRST   = 1 << 6;
+    static final int               SUFFIX_FIRST_K = 1 << 7;
+    static final int               SUFFIX_FIRSTKL = 1 << 8;
+    static final int               CONFLICTS      = 1 << 9;
+    static final int               CONFLICTS_K    = 1 << 10;
+    static final int               CONFLICTS_KL   = 1 << 11;
+    static final int               FF_CONFLICT    = 1 << 12;
+    static final int               FF_CONFLICT_K  = 1 << 13;
+    static final int               FF_CONFLICT_KL = 1 << 14;
+    static final int               ALL            = (1 << 15) - 1;
+    private static final int       ATTRIBUTES     = 15;
+
+    private static final int       MAGIC          = 0x4E47534E;   // "NGSN"
+    private static final int       VERSION        = 2;
+    private static final int       HEADER_SIZE    = 6 * 4;
+
+    private static final int       KIND_GRAMMAR   = 0;
+    private static final int       KIND_T_RULE    = 1;
+    private static final int       KIND_NT_RULE   = 2;
+    private static final int       KIND_ALT       = 3;
+    private static final int       KIND_BLOCK     = 4;
+    private static final int       KIND_TERMINAL  = 5;
+    private static final int       KIND_NONTERM   = 6;
+
+    private static final int       BIT_NULLABLE   = 1 << 0;
+    private static final int       BIT_PRODUCTIVE = 1 << 1;
+    private static final int       BIT_REACHABLE  = 1 << 2;
+    private static final int       BIT_USED       = 1 << 3;
+    private static final int       BIT_PREFIX_N   = 1 << 4;
+    private static final int       BIT_SUFFIX_N   = 1 << 5;
+    private static final int       BIT_OPTIONAL   = 1 << 6;
+    private static final int       BIT_REPEATABLE = 1 << 7;
+    private static final int       BIT_GREEDY     = 1 << 8;
+
+    private static final int       R_KIND         = 0;
+    private static final int       R_TYPE         = 1;
+    private static final int       R_BITS         = 2;
+    private static final int       R_PARENT       = 3;
+    private static final int       R_SYMBOLIC     = 4;
+    private static final int       R_DISPLAY      = 5;
+    private static final int       R_RULE         = 6;
+    private static final int       R_CHILDREN     = 7;
+    private static final int       R_MIN_K        = 8;
+    private static final int       R_MIN_KL       = 9;
+    private static final int       R_MIN_FF_K     = 10;
+    private static final int       R_MIN_FF_KL    = 11;
+    private static final int       R_ATTRIBUTES   = 12;
+    private static final int       RECORD_SIZE    =
+        (R_ATTRIBUTES + ATTRIBUTES) * 4;
+
+    private static final Charset   UTF8           = Charset.forName("UTF-8");
+
+    private ByteBuffer             buffer         = null;
+    private int                    nodeCount      = 0;
+    private int                    infoOffset     = 0;
+    private int                    nodeTable      = 0;
+    private int                    dataStart      = 0;
+    private GrammarNode[]          nodes          = null;
+    private Grammar                grammar        = null;
+
+    private GrammarSnapshot(ByteBuffer buffer)
+    {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_SIZE
+                || buffer.getInt(0) != MAGIC) {
+            throw new NioGramException("not a NioGram grammar snapshot");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new NioGramException("unsupported snapshot version "
+                    + buffer.getInt(4));
+        }
+        nodeCount = buffer.getInt(8);
+        infoOffset = buffer.getInt(12);
+        nodeTable = buffer.getInt(16);
+        dataStart = buffer.getInt(20);
+        if (nodeCount < 1
+                || nodeTable < HEADER_SIZE
+                || dataStart < nodeTable + nodeCount * RECORD_SIZE
+                || dataStart > buffer.limit()) {
+            throw new NioGramException("corrupt grammar snapshot");
+        }
+    }
+
+    /**
+     * Opens a snapshot file. The file is mapped read-only
+     * into memory and only its header is examined.
+     *
+     * @param file the snapshot file
+     * @return the opened snapshot
+     * @throws IOException if the file can not be mapped
+     */
+    public static GrammarSnapshot open(File file)
+        throws IOException
+    {
+        if (file == null) {
+            throw new IllegalArgumentException("null file");
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return new GrammarSnapshot(
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Creates a snapshot view over a buffer which contains
+     * the content of a snapshot file.
+     *
+     * @param buffer the buffer
+     * @return the snapshot
+     */
+    public static GrammarSnapshot open(ByteBuffer buffer)
+    {
+        if (buffer == null) {
+            throw new IllegalArgumentException("null buffer");
+        }
+        return new GrammarSnapshot(buffer.duplicate());
+    }
+
+    /**
+     * Retrieves the number of AST nodes in the snapshot.
+     *
+     * @return the number of nodes
+     */
+    public int getNodeCount()
+    {
+        return nodeCount;
+    }
+
+    /**
+     * Retrieves the grammar stored in the snapshot. The AST skeleton
+     * is built on the first call. Set valued attributes are
+     * decoded on demand.
+     *
+     * @return the grammar
+     */
+    public Grammar getGrammar()
+    {
+        if (grammar == null) {
+            buildSkeleton();
+        }
+        return grammar;
+    }
+
+    /**
+     * Writes a snapshot of a grammar to a file.
+     *
+     * @param grammar the grammar
+     * @param file the target file
+     * @throws IOException if writing fails
+     */
+    public static void write(Grammar grammar, File file)
+        throws IOException
+    {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            write(grammar, out);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes a snapshot of a grammar to a stream.
+     *
+     * @param grammar the grammar
+     * @param out the target stream
+     * @throws IOException if writing fails
+     */
+    public static void write(Grammar grammar, OutputStream out)
+        throws IOException
+    {
+        if (grammar == null || out == null) {
+            throw new IllegalArgumentException("null argument");
+        }
+        new Writer(grammar).write(out);
+    }
+
+    private int record(int index, int field)
+    {
+        return buffer.getInt(nodeTable + index * RECORD_SIZE + field * 4);
+    }
+
+    private void buildSkeleton()
+    {
+        nodes = new GrammarNode[nodeCount];
+        int info = dataStart + infoOffset;
+        int k = buffer.getInt(info);
+        int kL = buffer.getInt(info + 4);
+        int flags = buffer.getInt(info + 8);
+
+        // rules first, so that terms can be bound to them
+        for (int i = 0; i < nodeCount; i++) {
+            int kind = record(i, R_KIND);
+            int type = record(i, R_TYPE);
+            if (kind == KIND_GRAMMAR) {
+                nodes[i] = new Grammar(type);
+            }
+            else if (kind == KIND_T_RULE) {
+                nodes[i] = new TerminalRule(type);
+            }
+            else if (kind == KIND_NT_RULE) {
+                nodes[i] = new NonterminalRule(type);
+            }
+        }
+        if (!(nodes[0] instanceof Grammar)) {
+            throw new NioGramException("corrupt grammar snapshot");
+        }
+        grammar = (Grammar) nodes[0];
+        for (int i = 0; i < nodeCount; i++) {
+            int kind = record(i, R_KIND);
+            int type = record(i, R_TYPE);
+            int bits = record(i, R_BITS);
+            if (kind == KIND_ALT) {
+                nodes[i] = new Alternative(type);
+            }
+            else if (kind == KIND_BLOCK) {
+                nodes[i] = new Block(type,
+                    (bits & BIT_OPTIONAL) != 0,
+                    (bits & BIT_REPEATABLE) != 0,
+                    (bits & BIT_GREEDY) != 0);
+            }
+            else if (kind == KIND_TERMINAL) {
+                nodes[i] =
+                    new Terminal((TerminalRule) nodes[record(i, R_RULE)]);
+            }
+            else if (kind == KIND_NONTERM) {
+                nodes[i] =
+                    new Nonterminal((NonterminalRule) nodes[record(i, R_RULE)]);
+            }
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            fillNode(i);
+        }
+
+        grammar.setK(k);
+        grammar.setKL(kL);
+        grammar.setFlags((flags & 1) != 0);
+        grammar.setFF((flags & 2) != 0);
+        grammar.setFFK((flags & 4) != 0);
+        grammar.setFFKL((flags & 8) != 0);
+        int position = info + 12;
+        position = readNodes(position, grammar.getNonterminalRules());
+        position = readNodes(position, grammar.getTerminalRules());
+        position = readNodes(position, grammar.getBlocks());
+        position = readNodes(position, grammar.getNonProductive());
+        position = readNodes(position, grammar.getUnreachable());
+        position = readNodes(position, grammar.getUnused());
+        position = readNodes(position, grammar.getIncompleteFF());
+        position = readNodes(position, grammar.getIncompleteFFK());
+        position = readNodes(position, grammar.getIncompleteFFKL());
+        int size = buffer.getInt(position);
+        position += 4;
+        for (int i = 0; i < size; i++) {
+            grammar.getTypeToName().put(buffer.getInt(position),
+                readString(buffer.getInt(position + 4)));
+            position += 8;
+        }
+    }
+
+    private void fillNode(int index)
+    {
+        GrammarNode node = nodes[index];
+        int kind = record(index, R_KIND);
+        int bits = record(index, R_BITS);
+        int parent = record(index, R_PARENT);
+        if (parent >= 0) {
+            node.setParent(nodes[parent]);
+        }
+        if (kind != KIND_TERMINAL && kind != KIND_NONTERM) {
+            node.setSymbolicName(readString(record(index, R_SYMBOLIC)));
+            if (kind != KIND_T_RULE) {
+                node.setNullable((bits & BIT_NULLABLE) != 0);
+                node.setProductive((bits & BIT_PRODUCTIVE) != 0);
+            }
+            node.setReachable((bits & BIT_REACHABLE) != 0);
+        }
+        if (kind != KIND_NONTERM) {
+            node.setDisplayName(readString(record(index, R_DISPLAY)));
+        }
+        if (node instanceof Rule) {
+            ((Rule) node).setUsed((bits & BIT_USED) != 0);
+        }
+        if (node instanceof Term) {
+            ((Term) node).setPrefixNullable((bits & BIT_PREFIX_N) != 0);
+            ((Term) node).setSuffixNullable((bits & BIT_SUFFIX_N) != 0);
+        }
+        int children = record(index, R_CHILDREN);
+        if (kind == KIND_NT_RULE) {
+            NonterminalRule rule = (NonterminalRule) node;
+            readNodes(dataStart + children, rule.getAlternatives());
+            rule.setMinK(record(index, R_MIN_K));
+            rule.setMinKL(record(index, R_MIN_KL));
+            rule.setMinFfK(record(index, R_MIN_FF_K));
+            rule.setMinFfKL(record(index, R_MIN_FF_KL));
+        }
+        else if (kind == KIND_BLOCK) {
+            Block block = (Block) node;
+            readNodes(dataStart + children, block.getAlternatives());
+            block.setMinK(record(index, R_MIN_K));
+            block.setMinKL(record(index, R_MIN_KL));
+            block.setMinFfK(record(index, R_MIN_FF_K));
+            block.setMinFfKL(record(index, R_MIN_FF_KL));
+        }
+        else if (kind == KIND_ALT) {
+            readNodes(dataStart + children, ((Alternative) node).getTerms());
+        }
+        int pending = 0;
+        for (int i = 0; i < ATTRIBUTES; i++) {
+            if (record(index, R_ATTRIBUTES + i) >= 0) {
+                pending |= 1 << i;
+            }
+        }
+        node.setSnapshot(this, index, pending);
+    }
+
+    /*
+     * Called by the nodes when a getter of a pending
+     * attribute is called for the first time.
+     */
+    void load(GrammarNode node, int index, int attributes)
+    {
+        for (int i = 0; i < ATTRIBUTES; i++) {
+            int attribute = 1 << i;
+            if ((attributes & attribute) == 0) {
+                continue;
+            }
+            int position = dataStart + record(index, R_ATTRIBUTES + i);
+            switch (attribute) {
+            case FIRST:
+                node.setFirst(readBitSet(position));
+                break;
+            case FOLLOW:
+                node.setFollow(readBitSet(position));
+                break;
+            case FIRST_K:
+                node.setFirstK(readStringSet(position));
+                break;
+            case FOLLOW_K:
+                node.setFollowK(readStringSet(position));
+                break;
+            case FIRST_KL:
+                node.setFirstKL(readBitSetString(position));
+                break;
+            case FOLLOW_KL:
+                node.setFollowKL(readBitSetString(position));
+                break;
+            case SUFFIX_FIRST:
+                ((Term) node).setSuffixFirst(readBitSet(position));
+                break;
+            case SUFFIX_FIRST_K:
+                ((Term) node).setSuffixFirstK(readStringSet(position));
+                break;
+            case SUFFIX_FIRSTKL:
+                ((Term) node).setSuffixFirstKL(readBitSetString(position));
+                break;
+            case CONFLICTS:
+                readConflicts(position, ((Multiplex) node).getConflicts());
+                break;
+            case CONFLICTS_K:
+                readConflictsK(position, ((Multiplex) node).getConflictsK());
+                break;
+            case CONFLICTS_KL:
+                readConflictsKL(position, ((Multiplex) node).getConflictsKL());
+                break;
+            case FF_CONFLICT:
+                if (node instanceof Block) {
+                    ((Block) node).setFfConflict(readBitSet(position));
+                }
+                else {
+                    ((NonterminalRule) node)
+                        .setFfConflict(readBitSet(position));
+                }
+                break;
+            case FF_CONFLICT_K:
+                if (node instanceof Block) {
+                    ((Block) node).setFfConflictK(readStringSet(position));
+                }
+                else {
+                    ((NonterminalRule) node)
+                        .setFfConflictK(readStringSet(position));
+                }
+                break;
+            case FF_CONFLICT_KL:
+                if (node instanceof Block) {
+                    ((Block) node)
+                        .setFfConflictKL(readBitSetString(position));
+                }
+                else {
+                    ((NonterminalRule) node)
+                        .setFfConflictKL(readBitSetString(position));
+                }
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> int readNodes(int position, List<T> list)
+    {
+        int size = buffer.getInt(position);
+        position += 4;
+        for (int i = 0; i < size; i++) {
+            list.add((T) nodes[buffer.getInt(position)]);
+            position += 4;
+        }
+        return position;
+    }
+
+    private String readString(int offset)
+    {
+        if (offset < 0) {
+            return null;
+        }
+        int position = dataStart + offset;
+        int length = buffer.getInt(position);
+        byte[] bytes = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        // through Buffer so that the class links on Java 8
+        ((Buffer) source).position(position + 4);
+        source.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private BiasedBitSet readBitSet(int position)
+    {
+        int start = buffer.getInt(position);
+        int size = buffer.getInt(position + 4);
+        BiasedBitSet set = new BiasedBitSet(start, grammar);
+        position += 8;
+        for (int i = 0; i < size; i++) {
+            set.set(buffer.getInt(position));
+            position += 4;
+        }
+        return set;
+    }
+
+    private int bitSetSize(int position)
+    {
+        return 8 + buffer.getInt(position + 4) * 4;
+    }
+
+    private IntLLStringSet readStringSet(int position)
+    {
+        int limit = buffer.getInt(position);
+        int size = buffer.getInt(position + 4);
+        IntLLStringSet set = new IntLLStringSet(limit, grammar);
+        position += 8;
+        for (int i = 0; i < size; i++) {
+            int length = buffer.getInt(position);
+            position += 4;
+            if (length == 0) {
+                set.addEmpty();
+                continue;
+            }
+            IntLLString string = new IntLLString(limit, grammar);
+            for (int j = 0; j < length; j++) {
+                string.add(buffer.getInt(position));
+                position += 4;
+            }
+            set.add(string);
+        }
+        return set;
+    }
+
+    private int stringSetSize(int position)
+    {
+        int size = buffer.getInt(position + 4);
+        int result = 8;
+        for (int i = 0; i < size; i++) {
+            result += 4 + buffer.getInt(position + result) * 4;
+        }
+        return result;
+    }
+
+    private BitSetLLString readBitSetString(int position)
+    {
+        int limit = buffer.getInt(position);
+        int length = buffer.getInt(position + 4);
+        position += 8;
+        BiasedBitSet[] bitSets = new BiasedBitSet[length];
+        for (int i = 0; i < length; i++) {
+            bitSets[i] = readBitSet(position);
+            position += bitSetSize(position);
+        }
+        int size = buffer.getInt(position);
+        position += 4;
+        TreeSet<Integer> lengths = new TreeSet<Integer>();
+        for (int i = 0; i < size; i++) {
+            lengths.add(buffer.getInt(position));
+            position += 4;
+        }
+        // adding the longest string first restores the bitsets,
+        // the shorter prefixes only restore the string lengths
+        BitSetLLString string = new BitSetLLString(limit, grammar);
+        for (int stringLength : lengths.descendingSet()) {
+            BiasedBitSet[] prefix = new BiasedBitSet[stringLength];
+            System.arraycopy(bitSets, 0, prefix, 0, stringLength);
+            string.add(prefix);
+        }
+        return string;
+    }
+
+    private int bitSetStringSize(int position)
+    {
+        int length = buffer.getInt(position + 4);
+        int result = 8;
+        for (int i = 0; i < length; i++) {
+            result += bitSetSize(position + result);
+        }
+        return result + 4 + buffer.getInt(position + result) * 4;
+    }
+
+    private void readConflicts(int position, List<Conflict> conflicts)
+    {
+        int size = buffer.getInt(position);
+        position += 4;
+        for (int i = 0; i < size; i++) {
+            Alternative source = (Alternative) nodes[buffer.getInt(position)];
+            Alternative target =
+                (Alternative) nodes[buffer.getInt(position + 4)];
+            position += 8;
+            conflicts.add(new Conflict(source, target, readBitSet(position)));
+            position += bitSetSize(position);
+        }
+    }
+
+    private void readConflictsK(int position, List<ConflictK> conflicts)
+    {
+        int size = buffer.getInt(position);
+        position += 4;
+        for (int i = 0; i < size; i++) {
+            Alternative source = (Alternative) nodes[buffer.getInt(position)];
+            Alternative target =
+                (Alternative) nodes[buffer.getInt(position + 4)];
+            position += 8;
+            conflicts
+                .add(new ConflictK(source, target, readStringSet(position)));
+            position += stringSetSize(position);
+        }
+    }
+
+    private void readConflictsKL(int position, List<ConflictKL> conflicts)
+    {
+        int size = buffer.getInt(position);
+        position += 4;
+        for (int i = 0; i < size; i++) {
+            Alternative source = (Alternative) nodes[buffer.getInt(position)];
+            Alternative target =
+                (Alternative) nodes[buffer.getInt(position + 4)];
+            position += 8;
+            conflicts.add(
+                new ConflictKL(source, target, readBitSetString(position)));
+            position += bitSetStringSize(position);
+        }
+    }
+
+    /*
+     * Lays out the snapshot. The data area is collected in memory
+     * because the node table refers to it by offsets.
+     */
+    private static final class Writer
+        extends GrammarVisitor
+    {
+        private Grammar                   grammar   = null;
+        private List<GrammarNode>         nodes     = new ArrayList<GrammarNode>();
+        private Map<GrammarNode, Integer> indices   =
+            new HashMap<GrammarNode, Integer>();
+        private Map<String, Integer>      strings   =
+            new HashMap<String, Integer>();
+        private ByteArrayOutputStream     dataBytes = new ByteArrayOutputStream();
+        private DataOutputStream          data      =
+            new DataOutputStream(dataBytes);
+
+        public Writer(Grammar grammar)
+        {
+            this.grammar = grammar;
+        }
+
+        @Override
+        public void preVisit(GrammarNode node)
+        {
+            indices.put(node, nodes.size());
+            nodes.add(node);
+        }
+
+        public void write(OutputStream out)
+            throws IOException
+        {
+            visitGrammar(grammar);
+            int[][] records = new int[nodes.size()][];
+            for (int i = 0; i < records.length; i++) {
+                records[i] = writeNode(nodes.get(i));
+            }
+            int infoOffset = writeInfo();
+            data.flush();
+
+            int nodeTable = HEADER_SIZE;
+            int dataStart = nodeTable + records.length * RECORD_SIZE;
+            DataOutputStream file = new DataOutputStream(out);
+            file.writeInt(MAGIC);
+            file.writeInt(VERSION);
+            file.writeInt(records.length);
+            file.writeInt(infoOffset);
+            file.writeInt(nodeTable);
+            file.writeInt(dataStart);
+            for (int[] record : records) {
+                for (int field : record) {
+                    file.writeInt(field);
+                }
+            }
+            dataBytes.writeTo(file);
+            file.flush();
+        }
+
+        private int writeInfo()
+            throws IOException
+        {
+            int offset = data.size();
+            data.writeInt(grammar.getK());
+            data.writeInt(grammar.getKL());
+            data.writeInt((grammar.hasFlags() ? 1 : 0)
+                    | (grammar.hasFF() ? 2 : 0)
+                    | (grammar.hasFFK() ? 4 : 0)
+                    | (grammar.hasFFKL() ? 8 : 0));
+            writeNodes(grammar.getNonterminalRules());
+            writeNodes(grammar.getTerminalRules());
+            writeNodes(grammar.getBlocks());
+            writeNodes(grammar.getNonProductive());
+            writeNodes(grammar.getUnreachable());
+            writeNodes(grammar.getUnused());
+            writeNodes(grammar.getIncompleteFF());
+            writeNodes(grammar.getIncompleteFFK());
+            writeNodes(grammar.getIncompleteFFKL());
+            List<Integer> types = new ArrayList<Integer>();
+            for (Integer type : grammar.getTypeToName().firstSet()) {
+                types.add(type);
+            }
+            int[] names = new int[types.size()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] =
+                    string(grammar.getTypeToName().getSecond(types.get(i)));
+            }
+            data.writeInt(types.size());
+            for (int i = 0; i < names.length; i++) {
+                data.writeInt(types.get(i));
+                data.writeInt(names[i]);
+            }
+            return offset;
+        }
+
+        private int[] writeNode(GrammarNode node)
+            throws IOException
+        {
+            int[] record = new int[R_ATTRIBUTES + ATTRIBUTES];
+            int bits = 0;
+            bits |= node.isNullable() ? BIT_NULLABLE : 0;
+            bits |= node.isProductive() ? BIT_PRODUCTIVE : 0;
+            bits |= node.isReachable() ? BIT_REACHABLE : 0;
+            record[R_PARENT] = index(node.getParent());
+            record[R_SYMBOLIC] = -1;
+            record[R_DISPLAY] = -1;
+            record[R_RULE] = -1;
+            record[R_CHILDREN] = -1;
+            for (int i = 0; i < ATTRIBUTES; i++) {
+                record[R_ATTRIBUTES + i] = -1;
+            }
+            if (node instanceof Terminal) {
+                record[R_KIND] = KIND_TERMINAL;
+                record[R_RULE] = index(((Terminal) node).getRule());
+            }
+            else if (node instanceof Nonterminal) {
+                record[R_KIND] = KIND_NONTERM;
+                record[R_RULE] = index(((Nonterminal) node).getRule());
+            }
+            else {
+                record[R_SYMBOLIC] = string(node.getSymbolicName());
+                record[R_ATTRIBUTES + 0] = bitSet(node.getFirst());
+                record[R_ATTRIBUTES + 2] = stringSet(node.getFirstK());
+                record[R_ATTRIBUTES + 4] = bitSetString(node.getFirstKL());
+            }
+            if (!(node instanceof Nonterminal)) {
+                record[R_DISPLAY] = string(node.getDisplayName());
+            }
+            record[R_ATTRIBUTES + 1] = bitSet(node.getFollow());
+            record[R_ATTRIBUTES + 3] = stringSet(node.getFollowK());
+            record[R_ATTRIBUTES + 5] = bitSetString(node.getFollowKL());
+            if (node instanceof Grammar) {
+                record[R_KIND] = KIND_GRAMMAR;
+            }
+            else if (node instanceof TerminalRule) {
+                record[R_KIND] = KIND_T_RULE;
+            }
+            else if (node instanceof Alternative) {
+                record[R_KIND] = KIND_ALT;
+                record[R_CHILDREN] = writeNodes(((Alternative) node).getTerms());
+            }
+            if (node instanceof Rule) {
+                bits |= ((Rule) node).isUsed() ? BIT_USED : 0;
+            }
+            if (node instanceof Term) {
+                Term term = (Term) node;
+                bits |= term.isPrefixNullable() ? BIT_PREFIX_N : 0;
+                bits |= term.isSuffixNullable() ? BIT_SUFFIX_N : 0;
+                record[R_ATTRIBUTES + 6] = bitSet(term.getSuffixFirst());
+                record[R_ATTRIBUTES + 7] = stringSet(term.getSuffixFirstK());
+                record[R_ATTRIBUTES + 8] =
+                    bitSetString(term.getSuffixFirstKL());
+            }
+            if (node instanceof Block) {
+                Block block = (Block) node;
+                record[R_KIND] = KIND_BLOCK;
+                bits |= block.isOptional() ? BIT_OPTIONAL : 0;
+                bits |= block.isRepeatable() ? BIT_REPEATABLE : 0;
+                bits |= block.isGreedy() ? BIT_GREEDY : 0;
+            }
+            else if (node instanceof NonterminalRule) {
+                record[R_KIND] = KIND_NT_RULE;
+            }
+            if (node instanceof Multiplex) {
+                Multiplex multiplex = (Multiplex) node;
+                record[R_CHILDREN] = writeNodes(multiplex.getAlternatives());
+                record[R_MIN_K] = multiplex.getMinK();
+                record[R_MIN_KL] = multiplex.getMinKL();
+                record[R_MIN_FF_K] = multiplex.getMinFfK();
+                record[R_MIN_FF_KL] = multiplex.getMinFfKL();
+                record[R_ATTRIBUTES + 9] =
+                    conflicts(multiplex.getConflicts());
+                record[R_ATTRIBUTES + 10] =
+                    conflictsK(multiplex.getConflictsK());
+                record[R_ATTRIBUTES + 11] =
+                    conflictsKL(multiplex.getConflictsKL());
+                record[R_ATTRIBUTES + 12] =
+                    bitSet(multiplex.getFfConflictSet());
+                record[R_ATTRIBUTES + 13] =
+                    stringSet(multiplex.getFfConflictSetK());
+                record[R_ATTRIBUTES + 14] =
+                    bitSetString(multiplex.getFfConflictSetKL());
+            }
+            record[R_TYPE] = node.getType();
+            record[R_BITS] = bits;
+            return record;
+        }
+
+        private int index(GrammarNode node)
+        {
+            if (node == null) {
+                return -1;
+            }
+            Integer index = indices.get(node);
+            if (index == null) {
+                throw new NioGramException("node " + node.getDisplayName()
+                        + " is not reachable from the grammar");
+            }
+            return index;
+        }
+
+        private int writeNodes(List<? extends GrammarNode> list)
+            throws IOException
+        {
+            int offset = data.size();
+            data.writeInt(list.size());
+            for (GrammarNode node : list) {
+                data.writeInt(index(node));
+            }
+            return offset;
+        }
+
+        private int string(String value)
+            throws IOException
+        {
+            if (value == null) {
+                return -1;
+            }
+            Integer offset = strings.get(value);
+            if (offset == null) {
+                offset = data.size();
+                byte[] bytes = value.getBytes(UTF8);
+                data.writeInt(bytes.length);
+                data.write(bytes);
+                strings.put(value, offset);
+            }
+            return offset;
+        }
+
+        private int bitSet(BiasedBitSet set)
+            throws IOException
+        {
+            if (set == null) {
+                return -1;
+            }
+            int offset = data.size();
+            writeBitSet(set);
+            return offset;
+        }
+
+        private void writeBitSet(BiasedBitSet set)
+            throws IOException
+        {
+            data.writeInt(set.getStart());
+            data.writeInt(set.cardinality());
+            for (int i = set.nextSetBit(set.getStart());
+                    i != set.getNone(); i = set.nextSetBit(i + 1)) {
+                data.writeInt(i);
+            }
+        }
+
+        private int stringSet(IntLLStringSet set)
+            throws IOException
+        {
+            if (set == null) {
+                return -1;
+            }
+            int offset = data.size();
+            writeStringSet(set);
+            return offset;
+        }
+
+        private void writeStringSet(IntLLStringSet set)
+            throws IOException
+        {
+            data.writeInt(set.limit());
+            data.writeInt(set.size());
+            for (IntLLString string : set) {
+                data.writeInt(string.length());
+                for (int i = 0; i < string.length(); i++) {
+                    data.writeInt(string.get(i));
+                }
+            }
+        }
+
+        private int bitSetString(BitSetLLString string)
+            throws IOException
+        {
+            if (string == null) {
+                return -1;
+            }
+            int offset = data.size();
+            writeBitSetString(string);
+            return offset;
+        }
+
+        private void writeBitSetString(BitSetLLString string)
+            throws IOException
+        {
+            data.writeInt(string.limit());
+            data.writeInt(string.length());
+            for (int i = 0; i < string.length(); i++) {
+                writeBitSet(string.get(i));
+            }
+            data.writeInt(string.stringLengths().size());
+            for (int length : string.stringLengths()) {
+                data.writeInt(length);
+            }
+        }
+
+        private int conflicts(List<Conflict> conflicts)
+            throws IOException
+        {
+            if (conflicts.isEmpty()) {
+                return -1;
+            }
+            int offset = data.size();
+            data.writeInt(conflicts.size());
+            for (Conflict conflict : conflicts) {
+                data.writeInt(index(conflict.getSource()));
+                data.writeInt(index(conflict.getTarget()));
+                writeBitSet(conflict.getConflictSet());
+            }
+            return offset;
+        }
+
+        private int conflictsK(List<ConflictK> conflicts)
+            throws IOException
+        {
+            if (conflicts.isEmpty()) {
+                return -1;
+            }
+            int offset = data.size();
+            data.writeInt(conflicts.size());
+            for (ConflictK conflict : conflicts) {
+                data.writeInt(index(conflict.getSource()));
+                data.writeInt(index(conflict.getTarget()));
+                writeStringSet(conflict.getConflictSet());
+            }
+            return offset;
+        }
+
+        private int conflictsKL(List<ConflictKL> conflicts)
+            throws IOException
+        {
+            if (conflicts.isEmpty()) {
+                return -1;
+            }
+            int offset = data.size();
+            data.writeInt(conflicts.size());
+            for (ConflictKL conflict : conflicts) {
+                data.writeInt(index(conflict.getSource()));
+                data.writeInt(index(conflict.getTarget()));
+                writeBitSetString(conflict.getConflictSet());
+            }
+            return offset;
+        }
+    }
+}
@@ -20,9 +20,25 @@ class RailroadDrawer
             "center=true;\n" +
             "node [color=black shape=box style=\"solid\"];\n";
 
-    private DotStringBuilder    stringBuilder = new DotStringBuilder();
+    private DotStringBuilder    stringBuilder = null;
+
+    public RailroadDrawer()
+    {
+        this(new DotStringBuilder());
+    }
+
+    public RailroadDrawer(DotStringBuilder stringBuilder)
+    {
+        this.stringBuilder = stringBuilder;
+    }
 
     public String draw(Grammar grammar)
+    {
+        render(grammar);
+        return stringBuilder.toString();
+    }
+
+    public void render(Grammar grammar)
     {
         stringBuilder.append("digraph ").append(grammar.getDisplayName())
             .append(HEADER);
@@ -33,7 +49,6 @@ class RailroadDrawer
             renderRule(rule);
         }
         stringBuilder.append("}\n");
-        return stringBuilder.toString();
     }
 
     private void renderRule(NonterminalRule rule)
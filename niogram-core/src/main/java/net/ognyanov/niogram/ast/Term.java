@@ -68,31 +68,37 @@ public abstract class Term
 
     public BiasedBitSet getSuffixFirst()
     {
+        load(GrammarSnapshot.SUFFIX_FIRST);
         return suffixFirst;
     }
 
     public void setSuffixFirst(BiasedBitSet suffixFirst)
     {
+        loaded(GrammarSnapshot.SUFFIX_FIRST);
         this.suffixFirst = suffixFirst;
     }
 
     public IntLLStringSet getSuffixFirstK()
     {
+        load(GrammarSnapshot.SUFFIX_FIRST_K);
         return suffixFirstK;
     }
 
     public void setSuffixFirstK(IntLLStringSet suffixFirstK)
     {
+        loaded(GrammarSnapshot.SUFFIX_FIRST_K);
         this.suffixFirstK = suffixFirstK;
     }
 
     public BitSetLLString getSuffixFirstKL()
     {
+        load(GrammarSnapshot.SUFFIX_FIRSTKL);
         return suffixFirstKL;
     }
 
     public void setSuffixFirstKL(BitSetLLString suffixFirstKL)
     {
+        loaded(GrammarSnapshot.SUFFIX_FIRSTKL);
         this.suffixFirstKL = suffixFirstKL;
     }
 }
@@ -6,20 +6,37 @@
  */
 package net.ognyanov.niogram.util;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 /**
  * An abstract base class for string builders which
  * support different types of character and string
- * escaping.
+ * escaping.<p>
+ * 
+ * A builder either accumulates its content in memory
+ * or writes it through to an {@link Appendable} target
+ * as it is produced. In the latter case I/O failures
+ * are reported as {@link UncheckedIOException}s.
  *
  * @author Nikolay Ognyanov
  */
 public abstract class BaseStringBuilder
 {
-    private StringBuilder         stringBuilder = new StringBuilder();
+    private Appendable            out           = null;
     protected static final String NULL          = "null";
 
     protected BaseStringBuilder()
     {
+        this(new StringBuilder());
+    }
+
+    protected BaseStringBuilder(Appendable out)
+    {
+        if (out == null) {
+            throw new IllegalArgumentException("null argument");
+        }
+        this.out = out;
     }
 
     public BaseStringBuilder append(boolean b)
@@ -29,7 +46,12 @@ public abstract class BaseStringBuilder
 
     public BaseStringBuilder append(char c)
     {
-        stringBuilder.append(c);
+        try {
+            out.append(c);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
         return this;
     }
 
@@ -55,7 +77,12 @@ public abstract class BaseStringBuilder
 
     public BaseStringBuilder append(CharSequence string)
     {
-        stringBuilder.append(string);
+        try {
+            out.append(string);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
         return this;
     }
 
@@ -93,8 +120,15 @@ public abstract class BaseStringBuilder
         return appendEscaped(string);
     }
 
+    /**
+     * Retrieves the content built so far. Meaningful
+     * only for builders which do not write through
+     * to an external target.
+     * 
+     * @return the content
+     */
     public String toString()
     {
-        return stringBuilder.toString();
+        return out.toString();
     }
 }
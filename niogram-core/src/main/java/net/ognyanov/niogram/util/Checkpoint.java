@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.util;
+
+/**
+ * A check which long running computations perform periodically
+ * in order to allow for their termination. A checkpoint is
+ * installed for the current thread and is invoked from inner
+ * loops of set operations as well as from the analysis visitors.
+ * The check terminates the computation by throwing a
+ * {@link NioGramException}.<p>
+ *
+ * The inner loops invoke {@link #checkCurrent()} once per
+ * {@link #CHECK_INTERVAL} steps so the cost of the checks
+ * is negligible.
+ *
+ * @author Nikolay Ognyanov
+ */
+public abstract class Checkpoint
+{
+    /**
+     * The number of loop steps between two checks. A power of 2.
+     */
+    public static final int                      CHECK_INTERVAL = 1 << 10;
+    /**
+     * A mask for amortised checks :
+     * {@code if ((++steps & CHECK_MASK) == 0) Checkpoint.checkCurrent();}
+     */
+    public static final int                      CHECK_MASK     =
+        CHECK_INTERVAL - 1;
+
+    private static final ThreadLocal<Checkpoint> current        =
+        new ThreadLocal<Checkpoint>();
+
+    /**
+     * Performs the check.
+     *
+     * @throws NioGramException if the computation is to be terminated
+     */
+    public abstract void check();
+
+    /**
+     * Installs a checkpoint for the current thread.
+     *
+     * @param checkpoint the checkpoint; may be null
+     * @return the previously installed checkpoint which
+     * should be restored when the computation ends
+     */
+    public static Checkpoint install(Checkpoint checkpoint)
+    {
+        Checkpoint previous = current.get();
+        if (checkpoint == null) {
+            current.remove();
+        }
+        else {
+            current.set(checkpoint);
+        }
+        return previous;
+    }
+
+    /**
+     * Retrieves the checkpoint installed for the current thread.
+     *
+     * @return the checkpoint or null if none is installed
+     */
+    public static Checkpoint getCurrent()
+    {
+        return current.get();
+    }
+
+    /**
+     * Performs the check of the checkpoint installed
+     * for the current thread if any.
+     *
+     * @throws NioGramException if the computation is to be terminated
+     */
+    public static void checkCurrent()
+    {
+        Checkpoint checkpoint = current.get();
+        if (checkpoint != null) {
+            checkpoint.check();
+        }
+    }
+}
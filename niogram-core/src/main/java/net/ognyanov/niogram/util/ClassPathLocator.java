@@ -11,24 +11,104 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Enumeration;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 
 /**
- * A locator for resources residing on the claspath.
+ * A locator for resources residing on the claspath.<p>
+ * The names of the resources in each classpath entry are kept in
+ * a tree of directories. The entries are indexed concurrently on
+ * first use. The index of a JAR file is rebuilt when the file
+ * changes; directories are indexed only once. A lookup descends
+ * the tree along the literal prefix of the pattern and matches
+ * the pattern only against the resources below that point.
  *
  * @author Nikolay Ognyanov
  */
 public final class ClassPathLocator
     implements ResourceLocator
 {
-    private static final Object lock         = new Object();
-    private static Set<String>  allResources = null;
+    private static final String              METACHARACTERS = ".[](){}*+?^$|";
+
+    private static final Object              lock           = new Object();
+    private static final Map<String, Index>  indexes        =
+        new ConcurrentHashMap<String, Index>();
+
+    /*
+     * A directory in the tree of resource names.
+     */
+    private static final class Node
+    {
+        private final Map<String, Node> children  =
+            new TreeMap<String, Node>();
+        private final List<String>      resources = new ArrayList<String>();
+
+        private void add(String resource)
+        {
+            Node node = this;
+            String[] segments = segments(resource);
+            for (int i = 0; i < segments.length - 1; i++) {
+                Node child = node.children.get(segments[i]);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(segments[i], child);
+                }
+                node = child;
+            }
+            node.resources.add(resource);
+        }
+
+        private void collect(String prefix, Pattern regex, Set<String> result)
+        {
+            for (String resource : resources) {
+                if (resource.startsWith(prefix)
+                        && regex.matcher(resource).matches()) {
+                    result.add(resource);
+                }
+            }
+            for (Node child : children.values()) {
+                child.collect(prefix, regex, result);
+            }
+        }
+    }
+
+    /*
+     * The resources of one classpath entry.
+     */
+    private static final class Index
+    {
+        private final boolean isFile;
+        private final long    lastModified;
+        private final long    length;
+        private final Node    root = new Node();
+
+        private Index(File file)
+        {
+            isFile = file.isFile();
+            lastModified = file.lastModified();
+            length = file.length();
+        }
+
+        private boolean isCurrent(File file)
+        {
+            return !isFile || (file.lastModified() == lastModified
+                    && file.length() == length);
+        }
+    }
 
     /**
      * {@inheritDoc}
@@ -48,21 +128,22 @@ public final class ClassPathLocator
         return retrieveResourceAsStream(resourceName);
     }
 
-    private static void findFileResources(File root, String startPath)
+    private static void findFileResources(Node root, File directory,
+                                          String startPath)
     {
-        File[] fileList = root.listFiles();
+        File[] fileList = directory.listFiles();
         if (fileList == null) {
             return;
         }
         try {
             for (File f : fileList) {
                 if (f.isDirectory()) {
-                    findFileResources(f, startPath);
+                    findFileResources(root, f, startPath);
                 }
                 else {
                     String entry =
                         f.getCanonicalPath().substring(startPath.length());
-                    allResources.add(entry);
+                    root.add(entry);
                 }
             }
         }
@@ -73,35 +154,33 @@ public final class ClassPathLocator
 
     /**
      * Find resources residing on the classpath.
-     * 
+     *
      * @param pattern a regular expression for the name
      *        of resources to be retrieved.
      * @return a list of resource paths
      */
     private static List<String> lookForResources(String pattern)
     {
-        List<String> resources = new ArrayList<String>();
-        if (allResources == null) {
-            synchronized (lock) {
-                if (allResources == null) {
-                    findAllResources();
-                }
-            }
-        }
         Pattern regex = Pattern.compile(pattern);
-        for (String item : allResources) {
-            if (regex.matcher(item).matches()) {
-                resources.add(item);
+        String prefix = literalPrefix(pattern);
+        String[] segments = segments(prefix);
+        Set<String> resources = new LinkedHashSet<String>();
+        for (Index index : findAllResources()) {
+            Node node = index.root;
+            for (int i = 0; node != null && i < segments.length - 1; i++) {
+                node = node.children.get(segments[i]);
+            }
+            if (node != null) {
+                node.collect(prefix, regex, resources);
             }
         }
-
-        return resources;
+        return new ArrayList<String>(resources);
     }
 
     /**
      * Retrieve by name a resource residing on the classpath
      * and return it as a stream.
-     * 
+     *
      * @param resourceName the name of the resource
      * @return the stream or null if the resource is not found
      */
@@ -111,34 +190,101 @@ public final class ClassPathLocator
 
     }
 
-    private static void findAllResources()
+    /*
+     * Brings the indexes of the classpath entries up to date
+     * and returns them in classpath order.
+     */
+    private static List<Index> findAllResources()
     {
-        allResources = new HashSet<String>();
         String classpath = System.getProperty("java.class.path");
         String[] classpathEntries = classpath.split(File.pathSeparator);
-
+        synchronized (lock) {
+            List<String> stale = new ArrayList<String>();
+            for (String entry : classpathEntries) {
+                Index index = indexes.get(entry);
+                if (index == null || !index.isCurrent(new File(entry))) {
+                    stale.add(entry);
+                }
+            }
+            if (stale.size() == 1) {
+                indexes.put(stale.get(0), index(new File(stale.get(0))));
+            }
+            else if (stale.size() > 1) {
+                index(stale);
+            }
+        }
+        List<Index> result = new ArrayList<Index>();
         for (String entry : classpathEntries) {
-            File file = new File(entry);
-            if (file.exists() && file.canRead()) {
-                if (file.isFile()) {
-                    findJarResources(file);
+            result.add(indexes.get(entry));
+        }
+        return result;
+    }
+
+    private static void index(List<String> entries)
+    {
+        int threads = Math.min(entries.size(),
+            Runtime.getRuntime().availableProcessors());
+        ExecutorService executor =
+            Executors.newFixedThreadPool(threads, new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "niogram-classpath");
+                    thread.setDaemon(true);
+                    return thread;
                 }
-                else if (file.isDirectory()) {
-                    String startPath;
-                    try {
-                        startPath = file.getCanonicalPath();
-                        findFileResources(file, startPath);
-                    }
-                    catch (IOException e) {
-                        e.printStackTrace();
+            });
+        try {
+            List<Future<Index>> futures = new ArrayList<Future<Index>>();
+            for (final String entry : entries) {
+                futures.add(executor.submit(new Callable<Index>()
+                {
+                    @Override
+                    public Index call()
+                    {
+                        return index(new File(entry));
                     }
-                }
+                }));
             }
+            for (int i = 0; i < entries.size(); i++) {
+                indexes.put(entries.get(i), futures.get(i).get());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NioGramException("interrupted", e);
         }
+        catch (ExecutionException e) {
+            throw new NioGramException(e.getCause());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
 
+    private static Index index(File file)
+    {
+        Index index = new Index(file);
+        if (file.exists() && file.canRead()) {
+            if (file.isFile()) {
+                findJarResources(index.root, file);
+            }
+            else if (file.isDirectory()) {
+                String startPath;
+                try {
+                    startPath = file.getCanonicalPath();
+                    findFileResources(index.root, file, startPath);
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return index;
     }
 
-    private static void findJarResources(File file)
+    private static void findJarResources(Node root, File file)
     {
         ZipFile zf;
         try {
@@ -155,7 +301,7 @@ public final class ClassPathLocator
             final ZipEntry ze = (ZipEntry) e.nextElement();
             final String fileName = ze.getName();
             if (!ze.isDirectory()) {
-                allResources.add(File.separator + fileName);
+                root.add(File.separator + fileName);
             }
         }
         try {
@@ -164,4 +310,73 @@ public final class ClassPathLocator
         catch (final IOException e1) {
         }
     }
+
+    /**
+     * Retrieves the literal text which every string matching
+     * a regular expression starts with. The result may be
+     * shorter than the longest such text.
+     *
+     * @param pattern the regular expression
+     * @return the literal prefix
+     */
+    static String literalPrefix(String pattern)
+    {
+        if (hasTopLevelAlternatives(pattern)) {
+            return "";
+        }
+        StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\\') {
+                if (i + 1 == pattern.length()
+                        || Character.isLetterOrDigit(pattern.charAt(i + 1))) {
+                    break;
+                }
+                c = pattern.charAt(++i);
+            }
+            else if (METACHARACTERS.indexOf(c) >= 0) {
+                // the preceding character may occur zero times
+                if ((c == '?' || c == '*' || c == '{')
+                        && prefix.length() > 0) {
+                    prefix.setLength(prefix.length() - 1);
+                }
+                break;
+            }
+            prefix.append(c);
+        }
+        return prefix.toString();
+    }
+
+    private static boolean hasTopLevelAlternatives(String pattern)
+    {
+        int depth = 0;
+        boolean inClass = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\\') {
+                i++;
+            }
+            else if (inClass) {
+                inClass = c != ']';
+            }
+            else if (c == '[') {
+                inClass = true;
+            }
+            else if (c == '(') {
+                depth++;
+            }
+            else if (c == ')') {
+                depth--;
+            }
+            else if (c == '|' && depth == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String[] segments(String path)
+    {
+        return path.split(Pattern.quote(File.separator), -1);
+    }
 }
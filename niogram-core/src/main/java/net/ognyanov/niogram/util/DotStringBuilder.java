@@ -18,6 +18,21 @@ package net.ognyanov.niogram.util;
 public final class DotStringBuilder
     extends BaseStringBuilder
 {
+    public DotStringBuilder()
+    {
+        super();
+    }
+
+    /**
+     * Creates a builder which writes through to a target.
+     * 
+     * @param out the target
+     */
+    public DotStringBuilder(Appendable out)
+    {
+        super(out);
+    }
+
     @Override
     public BaseStringBuilder appendEscaped(char c)
     {
@@ -8,7 +8,11 @@ package net.ognyanov.niogram.util;
 
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 import java.util.List;
 
 /**
@@ -43,4 +47,24 @@ public final class FileSystemLocator
         }
         return is;
     }
+
+    /**
+     * Locate resource by name and read its whole content.
+     * 
+     * @param resourceName the name of the resource to be located.
+     * @return the content of the resource or null if the
+     *         resource is not found.
+     */
+    public byte[] getResourceAsBytes(String resourceName)
+    {
+        try {
+            return Files.readAllBytes(Paths.get(resourceName));
+        }
+        catch (IOException e) {
+            return null;
+        }
+        catch (InvalidPathException e) {
+            return null;
+        }
+    }
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.util;
+
+/**
+ * A static method facility for emission of Java Flight Recorder
+ * events for analysis phases, fixed-point iterations and parses.<p>
+ *
+ * This is the Java 8 implementation which does nothing. On Java 11
+ * and later the multi-release jar provides an implementation which
+ * emits the events when a recording is in progress. The begin
+ * methods return an opaque event handle (null if no event is to
+ * be recorded) which must be passed to the matching end method.
+ *
+ * @author Nikolay Ognyanov
+ */
+public final class FlightRecorder
+{
+    private FlightRecorder()
+    {
+    }
+
+    /**
+     * Tests whether flight recorder events are supported.
+     *
+     * @return true if events are supported; false otherwise
+     */
+    public static boolean isSupported()
+    {
+        return false;
+    }
+
+    /**
+     * Begins an analysis phase event.
+     *
+     * @return the event handle or null
+     */
+    public static Object beginPhase()
+    {
+        return null;
+    }
+
+    /**
+     * Ends and commits an analysis phase event.
+     *
+     * @param event the event handle returned by {@link #beginPhase()}
+     * @param phase the phase name
+     * @param target the name of the grammar or node analyzed
+     * @param iterations the number of fixed-point iterations
+     * @param changedNodes the number of node set changes
+     */
+    public static void endPhase(Object event, String phase, String target,
+                                int iterations, int changedNodes)
+    {
+    }
+
+    /**
+     * Begins a fixed-point iteration event.
+     *
+     * @return the event handle or null
+     */
+    public static Object beginIteration()
+    {
+        return null;
+    }
+
+    /**
+     * Ends and commits a fixed-point iteration event.
+     *
+     * @param event the event handle returned by {@link #beginIteration()}
+     * @param phase the phase name
+     * @param iteration the 1-based number of the iteration
+     * @param changedNodes the number of node set changes
+     */
+    public static void endIteration(Object event, String phase,
+                                    int iteration, int changedNodes)
+    {
+    }
+
+    /**
+     * Begins a grammar parse event.
+     *
+     * @return the event handle or null
+     */
+    public static Object beginParse()
+    {
+        return null;
+    }
+
+    /**
+     * Ends and commits a grammar parse event.
+     *
+     * @param event the event handle returned by {@link #beginParse()}
+     * @param source the grammar source name; may be null
+     * @param grammar the grammar name; may be null
+     * @param rules the number of nonterminal rules
+     * @param errors whether the parse had errors
+     */
+    public static void endParse(Object event, String source, String grammar,
+                                int rules, boolean errors)
+    {
+    }
+}
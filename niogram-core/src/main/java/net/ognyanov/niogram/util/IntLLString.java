@@ -75,6 +75,19 @@ public final class IntLLString
         nameProvider = other.nameProvider;
     }
 
+    /*
+     * Makes this object a copy of another one with the same limit.
+     */
+    void assign(IntLLString other)
+    {
+        if (other.limit != limit) {
+            throw new IllegalArgumentException("argument has different limit");
+        }
+        System.arraycopy(other.string, 0, string, 0, other.length);
+        length = other.length;
+        nameProvider = other.nameProvider;
+    }
+
     /**
      * Retrieves the limit to the length of the sting.
      * 
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.util;
+
+/**
+ * A pool of {@link IntLLString}s with a given limit. Each thread
+ * has its own pools which are obtained from {@link #current(int)}.<p>
+ *
+ * Strings are shared freely between sets, so only strings which
+ * are known not to be referenced from anywhere else may be
+ * returned to a pool.
+ *
+ * @author Nikolay Ognyanov
+ */
+public final class IntLLStringPool
+    extends ObjectPool<IntLLString>
+{
+    private static final ThreadLocal<IntLLStringPool[]> pools =
+        new ThreadLocal<IntLLStringPool[]>();
+
+    private final int                                   limit;
+
+    private IntLLStringPool(int limit)
+    {
+        this.limit = limit;
+    }
+
+    /**
+     * Retrieves the pool of the current thread for strings
+     * with a given limit.
+     *
+     * @param limit the limit of the strings
+     * @return the pool
+     */
+    public static IntLLStringPool current(int limit)
+    {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("K must be positive");
+        }
+        IntLLStringPool[] threadPools = pools.get();
+        if (threadPools == null || threadPools.length <= limit) {
+            IntLLStringPool[] newPools = new IntLLStringPool[limit + 1];
+            if (threadPools != null) {
+                System.arraycopy(threadPools, 0, newPools, 0,
+                    threadPools.length);
+            }
+            threadPools = newPools;
+            pools.set(threadPools);
+        }
+        IntLLStringPool result = threadPools[limit];
+        if (result == null) {
+            result = new IntLLStringPool(limit);
+            threadPools[limit] = result;
+        }
+        return result;
+    }
+
+    /**
+     * Trims the pools of the current thread. Called
+     * when a phase of analysis ends.
+     */
+    public static void trimCurrent()
+    {
+        IntLLStringPool[] threadPools = pools.get();
+        if (threadPools == null) {
+            return;
+        }
+        for (IntLLStringPool pool : threadPools) {
+            if (pool != null) {
+                pool.trim();
+            }
+        }
+    }
+
+    /**
+     * Retrieves from the pool a copy of a string.
+     *
+     * @param other the string to be copied
+     * @return the copy
+     */
+    public IntLLString copyOf(IntLLString other)
+    {
+        IntLLString result = get();
+        result.assign(other);
+        return result;
+    }
+
+    @Override
+    protected IntLLString create()
+    {
+        return new IntLLString(limit);
+    }
+
+    @Override
+    protected void reset(IntLLString string)
+    {
+        string.clear();
+    }
+}
@@ -151,12 +151,21 @@ public final class IntLLStringSet
                 addAll(other);
             }
             else {
+                // the new strings are referenced only from newContent
+                // so duplicates and an unchanged product are recycled
+                IntLLStringPool pool = IntLLStringPool.current(limit);
                 IntLLStringSet newContent = new IntLLStringSet(limit);
+                int steps = 0;
                 for (IntLLString s1 : this) {
                     for (IntLLString s2 : other) {
-                        IntLLString newString = new IntLLString(s1);
+                        if ((++steps & Checkpoint.CHECK_MASK) == 0) {
+                            Checkpoint.checkCurrent();
+                        }
+                        IntLLString newString = pool.copyOf(s1);
                         newString.append(s2);
-                        newContent.add(newString);
+                        if (!newContent.add(newString)) {
+                            pool.put(newString);
+                        }
                     }
                 }
                 if (!newContent.equals(this)) {
@@ -164,6 +173,11 @@ public final class IntLLStringSet
                     super.addAll(newContent);
                     result = true;
                 }
+                else {
+                    for (IntLLString newString : newContent) {
+                        pool.put(newString);
+                    }
+                }
                 newContent.clear();
             }
         }
@@ -179,8 +193,10 @@ public final class IntLLStringSet
 
     private void clear(int k)
     {
-        this.limit = k;
-        this.empty = new IntLLString(k);
+        if (k != limit) {
+            this.limit = k;
+            this.empty = new IntLLString(k);
+        }
         super.clear();
     }
 
@@ -292,8 +308,12 @@ public final class IntLLStringSet
         }
 
         IntLLStringSet result = new IntLLStringSet(limit, nameProvider);
+        int steps = 0;
         for (IntLLString s1 : this) {
             for (IntLLString s2 : other) {
+                if ((++steps & Checkpoint.CHECK_MASK) == 0) {
+                    Checkpoint.checkCurrent();
+                }
                 if (s1.equalsTo(s2, k)) {
                     result.add(s1);
                     result.add(s2);
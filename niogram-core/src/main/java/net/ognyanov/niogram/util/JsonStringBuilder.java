@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.util;
+
+/**
+ * A string builder which supports the JSON string escaping.
+ * The escaping does not add the enclosing quotes.
+ *
+ * @author Nikolay Ognyanov
+ */
+public final class JsonStringBuilder
+    extends BaseStringBuilder
+{
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    public JsonStringBuilder()
+    {
+        super();
+    }
+
+    /**
+     * Creates a builder which writes through to a target.
+     *
+     * @param out the target
+     */
+    public JsonStringBuilder(Appendable out)
+    {
+        super(out);
+    }
+
+    @Override
+    public JsonStringBuilder appendEscaped(char c)
+    {
+        switch (c) {
+        case '"':
+            append("\\\"");
+            break;
+        case '\\':
+            append("\\\\");
+            break;
+        case '\n':
+            append("\\n");
+            break;
+        case '\r':
+            append("\\r");
+            break;
+        case '\t':
+            append("\\t");
+            break;
+        default:
+            if (c < 0x20) {
+                append("\\u00");
+                append(HEX[c >> 4]);
+                append(HEX[c & 0xf]);
+            }
+            else {
+                append(c);
+            }
+        }
+        return this;
+    }
+}
@@ -0,0 +1,582 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.util;
+
+import java.util.Arrays;
+
+/**
+ * A manager of zero-suppressed decision diagrams (ZDDs) which
+ * represent sets of limited length strings symbolically.<p>
+ *
+ * A string t<sub>1</sub>..t<sub>n</sub> is encoded as the set of
+ * variables (1, t<sub>1</sub>)..(n, t<sub>n</sub>) and a set of
+ * strings as the family of such variable sets. The variables are
+ * ordered by position and then by type. Sets which are products
+ * of per-position alternatives share most of their structure, so
+ * their diagrams stay small when the explicit sets explode.<p>
+ *
+ * A set is identified by an int handle. All diagrams of a manager
+ * share one unique table, so two handles are equal if and only if
+ * the sets are equal. {@link #EMPTY} is the empty set and
+ * {@link #BASE} is the set containing only the empty string.
+ * Nodes are never freed; a manager is meant to live for one
+ * analysis. The long running operations are checked periodically
+ * by the {@link Checkpoint} of the current thread. A manager is
+ * not thread safe.
+ *
+ * @author Nikolay Ognyanov
+ */
+public final class LLStringZdd
+{
+    /**
+     * The handle of the empty set.
+     */
+    public static final int  EMPTY         = 0;
+    /**
+     * The handle of the set containing only the empty string.
+     */
+    public static final int  BASE          = 1;
+
+    /**
+     * The maximum length limit of the strings.
+     */
+    public static final int  MAX_LIMIT     = 30;
+
+    private static final int INITIAL_NODES = 1 << 10;
+    private static final int CACHE_SIZE    = 1 << 16;
+
+    private static final int UNION         = 1;
+    private static final int CONCAT        = 2;
+    private static final int SHIFT         = 3;
+    private static final int CONFLICT      = 4;
+    private static final int FILTER        = 5;
+
+    private final int        limit;
+    private int[]            position      = null;
+    private int[]            type          = null;
+    private int[]            lo            = null;
+    private int[]            hi            = null;
+    private int[]            next          = null;
+    private int[]            lengths       = null;
+    private long[]           counts        = null;
+    private int[]            buckets       = null;
+    private int              nodes         = 0;
+
+    private final int[]      cacheOp       = new int[CACHE_SIZE];
+    private final int[]      cacheA        = new int[CACHE_SIZE];
+    private final int[]      cacheB        = new int[CACHE_SIZE];
+    private final int[]      cacheC        = new int[CACHE_SIZE];
+    private final int[]      cacheResult   = new int[CACHE_SIZE];
+    private int              steps         = 0;
+
+    /**
+     * Creates a manager.
+     *
+     * @param limit the length limit of the strings
+     */
+    public LLStringZdd(int limit)
+    {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("K must be positive");
+        }
+        if (limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("K too large");
+        }
+        this.limit = limit;
+        position = new int[INITIAL_NODES];
+        type = new int[INITIAL_NODES];
+        lo = new int[INITIAL_NODES];
+        hi = new int[INITIAL_NODES];
+        next = new int[INITIAL_NODES];
+        lengths = new int[INITIAL_NODES];
+        counts = new long[INITIAL_NODES];
+        buckets = new int[INITIAL_NODES];
+        Arrays.fill(buckets, -1);
+        Arrays.fill(lengths, -1);
+        Arrays.fill(counts, -1);
+        // the terminals sort after all variables
+        position[EMPTY] = Integer.MAX_VALUE;
+        position[BASE] = Integer.MAX_VALUE;
+        lengths[EMPTY] = 0;
+        lengths[BASE] = 1;
+        counts[EMPTY] = 0;
+        counts[BASE] = 1;
+        nodes = 2;
+    }
+
+    /**
+     * Retrieves the length limit of the strings.
+     *
+     * @return the limit
+     */
+    public int limit()
+    {
+        return limit;
+    }
+
+    /**
+     * Retrieves the number of nodes of all diagrams
+     * including the two terminals.
+     *
+     * @return the number of nodes
+     */
+    public int nodeCount()
+    {
+        return nodes;
+    }
+
+    /**
+     * Creates the set containing a single string.
+     *
+     * @param string the string
+     * @return the handle of the set
+     */
+    public int string(IntLLString string)
+    {
+        if (string == null) {
+            throw new IllegalArgumentException("null argument");
+        }
+        if (string.limit() != limit) {
+            throw new IllegalArgumentException("limits do not match");
+        }
+        int result = BASE;
+        for (int i = string.length() - 1; i >= 0; i--) {
+            result = node(i + 1, string.get(i), EMPTY, result);
+        }
+        return result;
+    }
+
+    /**
+     * Creates the set of strings of an {@link IntLLStringSet}.
+     *
+     * @param set the set
+     * @return the handle of the set
+     */
+    public int fromSet(IntLLStringSet set)
+    {
+        if (set == null) {
+            throw new IllegalArgumentException("null argument");
+        }
+        int result = EMPTY;
+        for (IntLLString string : set) {
+            result = union(result, string(string));
+        }
+        return result;
+    }
+
+    /**
+     * Adds the strings of a set to an {@link IntLLStringSet}.
+     *
+     * @param set the handle of the set
+     * @param target the set to which the strings are added
+     */
+    public void toSet(int set, IntLLStringSet target)
+    {
+        if (target == null) {
+            throw new IllegalArgumentException("null argument");
+        }
+        if (target.limit() != limit) {
+            throw new IllegalArgumentException("limits do not match");
+        }
+        checkHandle(set);
+        collect(set, new int[limit], 0, target);
+    }
+
+    /**
+     * Calculates the union of two sets.
+     *
+     * @param a the first set
+     * @param b the second set
+     * @return the handle of the union
+     */
+    public int union(int a, int b)
+    {
+        checkHandle(a);
+        checkHandle(b);
+        return doUnion(a, b);
+    }
+
+    /**
+     * Appends all strings of a set to all strings of another one
+     * and truncates the results to the limit.
+     *
+     * @param a the set of the heads
+     * @param b the set of the tails
+     * @return the handle of the concatenation
+     */
+    public int concat(int a, int b)
+    {
+        checkHandle(a);
+        checkHandle(b);
+        return doConcat(a, b, 1);
+    }
+
+    /**
+     * Calculates the conflict set of two sets in the sense of
+     * {@link IntLLStringSet#conflict(IntLLStringSet, int)}. That is -
+     * the set of strings belonging to one of the two sets for which a
+     * string of the same length exists in the other set which
+     * coincides with it up to position k-1.
+     *
+     * @param a the first set
+     * @param b the second set
+     * @param k the length of the compared prefixes
+     * @return the handle of the conflict set
+     */
+    public int conflict(int a, int b, int k)
+    {
+        checkHandle(a);
+        checkHandle(b);
+        int prefix = Math.max(k, 0);
+        return doUnion(doConflict(a, b, prefix), doConflict(b, a, prefix));
+    }
+
+    /**
+     * Tests whether a set contains the empty string.
+     *
+     * @param set the handle of the set
+     * @return true if the set contains the empty string; false otherwise
+     */
+    public boolean containsEmpty(int set)
+    {
+        checkHandle(set);
+        int node = set;
+        while (node > BASE) {
+            node = lo[node];
+        }
+        return node == BASE;
+    }
+
+    /**
+     * Removes the empty string from a set.
+     *
+     * @param set the handle of the set
+     * @return the handle of the set without the empty string
+     */
+    public int removeEmpty(int set)
+    {
+        checkHandle(set);
+        return doRemoveEmpty(set);
+    }
+
+    /**
+     * Counts the strings of a set.
+     *
+     * @param set the handle of the set
+     * @return the number of strings; Long.MAX_VALUE if the
+     * number does not fit in a long
+     */
+    public long count(int set)
+    {
+        checkHandle(set);
+        return doCount(set);
+    }
+
+    private int doUnion(int a, int b)
+    {
+        if (a == b || b == EMPTY) {
+            return a;
+        }
+        if (a == EMPTY) {
+            return b;
+        }
+        if (a > b) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        int slot = lookup(UNION, a, b, 0);
+        if (slot < 0) {
+            return cacheResult[-slot - 1];
+        }
+        int result;
+        int c = compare(a, b);
+        if (c < 0) {
+            result = node(position[a], type[a], doUnion(lo[a], b), hi[a]);
+        }
+        else if (c > 0) {
+            result = node(position[b], type[b], doUnion(a, lo[b]), hi[b]);
+        }
+        else {
+            result = node(position[a], type[a], doUnion(lo[a], lo[b]),
+                doUnion(hi[a], hi[b]));
+        }
+        return store(slot, UNION, a, b, 0, result);
+    }
+
+    /*
+     * The strings of a start at the position of its top variable,
+     * so at is needed only when a is BASE.
+     */
+    private int doConcat(int a, int b, int at)
+    {
+        if (a == EMPTY || b == EMPTY) {
+            return EMPTY;
+        }
+        if (a == BASE) {
+            return doShift(b, at - 1);
+        }
+        int slot = lookup(CONCAT, a, b, 0);
+        if (slot < 0) {
+            return cacheResult[-slot - 1];
+        }
+        int p = position[a];
+        int withVariable = doConcat(hi[a], b, p + 1);
+        int result = doUnion(doConcat(lo[a], b, p),
+            node(p, type[a], EMPTY, withVariable));
+        return store(slot, CONCAT, a, b, 0, result);
+    }
+
+    /*
+     * Shifts the strings of a set by a number of positions
+     * and truncates them to the limit.
+     */
+    private int doShift(int set, int shift)
+    {
+        if (set <= BASE || shift == 0) {
+            return set;
+        }
+        if (position[set] + shift > limit) {
+            return BASE;
+        }
+        int slot = lookup(SHIFT, set, shift, 0);
+        if (slot < 0) {
+            return cacheResult[-slot - 1];
+        }
+        int result = node(position[set] + shift, type[set],
+            doShift(lo[set], shift), doShift(hi[set], shift));
+        return store(slot, SHIFT, set, shift, 0, result);
+    }
+
+    /*
+     * The strings of a which conflict with some string of b. Both
+     * sets start at the same position: it is the position of the
+     * top variable of each set which is not a terminal.
+     */
+    private int doConflict(int a, int b, int k)
+    {
+        if (a == EMPTY || b == EMPTY) {
+            return EMPTY;
+        }
+        if (a == BASE) {
+            return containsEmpty(b) ? BASE : EMPTY;
+        }
+        if (b == BASE) {
+            return containsEmpty(a) ? BASE : EMPTY;
+        }
+        if (position[a] > k) {
+            // past the prefix only the lengths have to match
+            return doFilter(a, doLengths(b));
+        }
+        int slot = lookup(CONFLICT, a, b, k);
+        if (slot < 0) {
+            return cacheResult[-slot - 1];
+        }
+        int result;
+        if (type[a] < type[b]) {
+            result = doConflict(lo[a], b, k);
+        }
+        else if (type[a] > type[b]) {
+            result = doConflict(a, lo[b], k);
+        }
+        else {
+            result = node(position[a], type[a], doConflict(lo[a], lo[b], k),
+                doConflict(hi[a], hi[b], k));
+        }
+        return store(slot, CONFLICT, a, b, k, result);
+    }
+
+    /*
+     * The mask of the lengths of the strings of a set
+     * counted from the position of the set.
+     */
+    private int doLengths(int set)
+    {
+        int result = lengths[set];
+        if (result < 0) {
+            result = doLengths(lo[set]) | (doLengths(hi[set]) << 1);
+            lengths[set] = result;
+        }
+        return result;
+    }
+
+    /*
+     * The strings of a set with lengths in a mask.
+     */
+    private int doFilter(int set, int mask)
+    {
+        if (set == EMPTY || mask == 0) {
+            return EMPTY;
+        }
+        if (set == BASE) {
+            return (mask & 1) != 0 ? BASE : EMPTY;
+        }
+        int slot = lookup(FILTER, set, mask, 0);
+        if (slot < 0) {
+            return cacheResult[-slot - 1];
+        }
+        int result = node(position[set], type[set], doFilter(lo[set], mask),
+            doFilter(hi[set], mask >>> 1));
+        return store(slot, FILTER, set, mask, 0, result);
+    }
+
+    private int doRemoveEmpty(int set)
+    {
+        if (set <= BASE) {
+            return EMPTY;
+        }
+        return node(position[set], type[set], doRemoveEmpty(lo[set]),
+            hi[set]);
+    }
+
+    private long doCount(int set)
+    {
+        long result = counts[set];
+        if (result < 0) {
+            long loCount = doCount(lo[set]);
+            long hiCount = doCount(hi[set]);
+            result = loCount + hiCount;
+            if (result < 0) {
+                result = Long.MAX_VALUE;
+            }
+            counts[set] = result;
+        }
+        return result;
+    }
+
+    private void collect(int set, int[] path, int length,
+                         IntLLStringSet target)
+    {
+        if ((++steps & Checkpoint.CHECK_MASK) == 0) {
+            Checkpoint.checkCurrent();
+        }
+        int node = set;
+        while (node > BASE) {
+            path[length] = type[node];
+            collect(hi[node], path, length + 1, target);
+            node = lo[node];
+        }
+        if (node == BASE) {
+            IntLLString string =
+                new IntLLString(limit, target.getNameProvider());
+            for (int i = 0; i < length; i++) {
+                string.add(path[i]);
+            }
+            target.add(string);
+        }
+    }
+
+    private int compare(int a, int b)
+    {
+        if (position[a] != position[b]) {
+            return position[a] < position[b] ? -1 : 1;
+        }
+        if (type[a] != type[b]) {
+            return type[a] < type[b] ? -1 : 1;
+        }
+        return 0;
+    }
+
+    /*
+     * Finds or creates the node of a variable. A variable
+     * with an empty high branch is suppressed.
+     */
+    private int node(int p, int t, int low, int high)
+    {
+        if (high == EMPTY) {
+            return low;
+        }
+        int bucket = hash(p, t, low, high) & (buckets.length - 1);
+        for (int n = buckets[bucket]; n >= 0; n = next[n]) {
+            if (position[n] == p && type[n] == t && lo[n] == low
+                && hi[n] == high) {
+                return n;
+            }
+        }
+        if (nodes == position.length) {
+            grow();
+            bucket = hash(p, t, low, high) & (buckets.length - 1);
+        }
+        int result = nodes++;
+        position[result] = p;
+        type[result] = t;
+        lo[result] = low;
+        hi[result] = high;
+        lengths[result] = -1;
+        counts[result] = -1;
+        next[result] = buckets[bucket];
+        buckets[bucket] = result;
+        return result;
+    }
+
+    private void grow()
+    {
+        int size = 2 * position.length;
+        position = Arrays.copyOf(position, size);
+        type = Arrays.copyOf(type, size);
+        lo = Arrays.copyOf(lo, size);
+        hi = Arrays.copyOf(hi, size);
+        next = Arrays.copyOf(next, size);
+        lengths = Arrays.copyOf(lengths, size);
+        counts = Arrays.copyOf(counts, size);
+        buckets = new int[size];
+        Arrays.fill(buckets, -1);
+        for (int n = 2; n < nodes; n++) {
+            int bucket = hash(position[n], type[n], lo[n], hi[n]) & (size - 1);
+            next[n] = buckets[bucket];
+            buckets[bucket] = n;
+        }
+    }
+
+    private static int hash(int p, int t, int low, int high)
+    {
+        int h = p;
+        h = 31 * h + t;
+        h = 31 * h + low;
+        h = 31 * h + high;
+        return h ^ (h >>> 16);
+    }
+
+    /*
+     * Looks up an operation in the computed table. Returns
+     * -(slot + 1) on a hit and the slot to store into on a miss.
+     */
+    private int lookup(int op, int a, int b, int c)
+    {
+        int h = hash(op, a, b, c) * 0x9E3779B9;
+        int slot = (h ^ (h >>> 16)) & (CACHE_SIZE - 1);
+        if (cacheOp[slot] == op && cacheA[slot] == a && cacheB[slot] == b
+            && cacheC[slot] == c) {
+            return -slot - 1;
+        }
+        if ((++steps & Checkpoint.CHECK_MASK) == 0) {
+            Checkpoint.checkCurrent();
+        }
+        return slot;
+    }
+
+    /*
+     * Stores the result of an operation in the slot returned
+     * by lookup. Entries are simply overwritten on collision.
+     */
+    private int store(int slot, int op, int a, int b, int c, int result)
+    {
+        cacheOp[slot] = op;
+        cacheA[slot] = a;
+        cacheB[slot] = b;
+        cacheC[slot] = c;
+        cacheResult[slot] = result;
+        return result;
+    }
+
+    private void checkHandle(int set)
+    {
+        if (set < 0 || set >= nodes) {
+            throw new IllegalArgumentException("invalid handle");
+        }
+    }
+}
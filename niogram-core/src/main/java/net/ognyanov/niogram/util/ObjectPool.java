@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.util;
+
+/**
+ * A pool of reusable objects confined to the thread which
+ * created it. Threads running in parallel use separate pools
+ * so no synchronization is needed.<p>
+ *
+ * The number of idle objects kept by the pool adapts to the
+ * observed peak of objects returned to the pool and not taken
+ * again. Objects which are taken and kept by the caller do not
+ * count. The number is never less than a minimum and never more
+ * than a maximum capacity. Objects returned to a full pool are
+ * left to the garbage collector. {@link #trim()} drops the idle
+ * objects which are not needed any more.
+ *
+ * @param <T> the type of the pooled objects
+ *
+ * @author Nikolay Ognyanov
+ */
+public abstract class ObjectPool<T>
+{
+    /**
+     * The default minimum capacity of a pool.
+     */
+    public static final int DEFAULT_MIN_CAPACITY = 16;
+    /**
+     * The default maximum capacity of a pool.
+     */
+    public static final int DEFAULT_MAX_CAPACITY = 1 << 12;
+
+    private final Thread    owner                = Thread.currentThread();
+    private final int       minCapacity;
+    private final int       maxCapacity;
+    private Object[]        idle                 = null;
+    private int             idleCount            = 0;
+    private int             returned             = 0;
+    private int             peakReturned         = 0;
+    private int             hits                 = 0;
+    private int             misses               = 0;
+    private int             discarded            = 0;
+    private int             maxIdle              = 0;
+
+    /**
+     * Statistics of the use of a pool.
+     *
+     * @author Nikolay Ognyanov
+     */
+    public static final class Statistics
+    {
+        private final int hits;
+        private final int misses;
+        private final int discarded;
+        private final int maxIdle;
+
+        private Statistics(int hits, int misses, int discarded, int maxIdle)
+        {
+            this.hits = hits;
+            this.misses = misses;
+            this.discarded = discarded;
+            this.maxIdle = maxIdle;
+        }
+
+        /** @return the number of objects served from the pool */
+        public int getHits()
+        {
+            return hits;
+        }
+
+        /** @return the number of objects created by the pool */
+        public int getMisses()
+        {
+            return misses;
+        }
+
+        /** @return the number of objects dropped by a full pool */
+        public int getDiscarded()
+        {
+            return discarded;
+        }
+
+        /** @return the maximum number of idle objects in the pool */
+        public int getMaxIdle()
+        {
+            return maxIdle;
+        }
+    }
+
+    /**
+     * Creates a pool with the default capacity limits.
+     */
+    protected ObjectPool()
+    {
+        this(DEFAULT_MIN_CAPACITY, DEFAULT_MAX_CAPACITY);
+    }
+
+    /**
+     * Creates a pool.
+     *
+     * @param minCapacity the minimum number of idle objects kept
+     * @param maxCapacity the maximum number of idle objects kept
+     */
+    protected ObjectPool(int minCapacity, int maxCapacity)
+    {
+        if (minCapacity < 0 || maxCapacity < minCapacity) {
+            throw new IllegalArgumentException("invalid capacity");
+        }
+        this.minCapacity = minCapacity;
+        this.maxCapacity = maxCapacity;
+        this.idle = new Object[Math.max(minCapacity, 1)];
+    }
+
+    /**
+     * Creates a new object when the pool has no idle one.
+     *
+     * @return the new object
+     */
+    protected abstract T create();
+
+    /**
+     * Prepares an object returned to the pool for reuse.
+     *
+     * @param object the object
+     */
+    protected abstract void reset(T object);
+
+    /**
+     * Retrieves an idle object from the pool or creates a new one.
+     *
+     * @return the object
+     */
+    @SuppressWarnings("unchecked")
+    public final T get()
+    {
+        checkOwner();
+        T result = null;
+        if (idleCount == 0) {
+            result = create();
+            misses++;
+        }
+        else {
+            result = (T) idle[--idleCount];
+            idle[idleCount] = null;
+            hits++;
+        }
+        if (returned > 0) {
+            returned--;
+        }
+        return result;
+    }
+
+    /**
+     * Returns an object to the pool. The object must not
+     * be used by the caller after it has been returned.
+     *
+     * @param object the object
+     */
+    public final void put(T object)
+    {
+        if (object == null) {
+            throw new IllegalArgumentException("null argument");
+        }
+        checkOwner();
+        if (++returned > peakReturned) {
+            peakReturned = returned;
+        }
+        if (idleCount >= capacity()) {
+            discarded++;
+            return;
+        }
+        reset(object);
+        if (idleCount == idle.length) {
+            Object[] newIdle = new Object[Math.min(2 * idle.length,
+                maxCapacity)];
+            System.arraycopy(idle, 0, newIdle, 0, idleCount);
+            idle = newIdle;
+        }
+        idle[idleCount++] = object;
+        if (idleCount > maxIdle) {
+            maxIdle = idleCount;
+        }
+    }
+
+    /**
+     * Retrieves the current capacity of the pool. That is the
+     * peak number of objects returned and not taken again bounded
+     * by the minimum and the maximum capacity.
+     *
+     * @return the capacity
+     */
+    public final int capacity()
+    {
+        return Math.max(minCapacity, Math.min(peakReturned, maxCapacity));
+    }
+
+    /**
+     * Retrieves a snapshot of the statistics of the pool.
+     *
+     * @return the statistics
+     */
+    public final Statistics getStatistics()
+    {
+        return new Statistics(hits, misses, discarded, maxIdle);
+    }
+
+    /**
+     * Resets the statistics of the pool.
+     */
+    public final void resetStatistics()
+    {
+        hits = 0;
+        misses = 0;
+        discarded = 0;
+        maxIdle = idleCount;
+    }
+
+    /**
+     * Drops the idle objects above the minimum capacity
+     * and restarts the observation of the peak usage.
+     */
+    public final void trim()
+    {
+        checkOwner();
+        int count = Math.min(idleCount, minCapacity);
+        Object[] newIdle = new Object[Math.max(minCapacity, 1)];
+        System.arraycopy(idle, 0, newIdle, 0, count);
+        idle = newIdle;
+        idleCount = count;
+        returned = count;
+        peakReturned = count;
+    }
+
+    /**
+     * Drops all idle objects and resets the statistics
+     * and the observed peak usage.
+     */
+    public final void clear()
+    {
+        checkOwner();
+        idle = new Object[Math.max(minCapacity, 1)];
+        idleCount = 0;
+        returned = 0;
+        peakReturned = 0;
+        resetStatistics();
+    }
+
+    private void checkOwner()
+    {
+        if (Thread.currentThread() != owner) {
+            throw new IllegalStateException("pool used by another thread");
+        }
+    }
+}
@@ -0,0 +1,794 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of limited length strings kept in lexicographic order
+ * (the order of {@link IntLLString#compareTo(IntLLString)}) in
+ * a flat array. Each string occupies a slot of limit + 1 ints:
+ * its length followed by its elements padded with zeroes.
+ * <p>
+ * Union, intersection, inclusion, equality and conflict are
+ * computed by merging the two ordered sequences and membership
+ * and prefix queries by binary search. Iteration and string
+ * representation follow the order of the strings.
+ *
+ * @author Nikolay Ognyanov
+ */
+public final class SortedLLStringSet
+    implements Serializable, Cloneable, Iterable<IntLLString>
+{
+    private static final long   serialVersionUID = 1L;
+    private static final String SET_OPEN         = "{";
+    private static final String SET_CLOSE        = "}";
+    private static final String STRING_SEPARATOR = ".";
+    private static final int    INITIAL_CAPACITY = 4;
+
+    private int[]               data             = null;
+    private int                 size             = 0;
+    private int                 limit            = 0;
+    private int                 stride           = 0;
+    private TypeNameProvider    nameProvider     = null;
+
+    /**
+     * Create a new set.
+     *
+     * @param limit - the length limit for strings contained in the set.
+     */
+    public SortedLLStringSet(int limit)
+    {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("K must be positive");
+        }
+        this.limit = limit;
+        this.stride = limit + 1;
+        this.data = new int[INITIAL_CAPACITY * stride];
+    }
+
+    /**
+     * Create a new set.
+     *
+     * @param limit - the length limit for strings contained in the set.
+     * @param nameProvider a name provider for the set
+     */
+    public SortedLLStringSet(int limit, TypeNameProvider nameProvider)
+    {
+        this(limit);
+        this.nameProvider = nameProvider;
+    }
+
+    /**
+     * Create a new set with the content of an {@link IntLLStringSet}.
+     *
+     * @param other the set to be copied
+     */
+    public SortedLLStringSet(IntLLStringSet other)
+    {
+        this(other.limit(), other.getNameProvider());
+        IntLLString[] strings = other.toArray(new IntLLString[other.size()]);
+        Arrays.sort(strings);
+        ensureCapacity(strings.length);
+        for (IntLLString string : strings) {
+            pack(string, size++);
+        }
+    }
+
+    /**
+     * Create a new set which is a copy of another one.
+     *
+     * @param other the set to be copied
+     */
+    public SortedLLStringSet(SortedLLStringSet other)
+    {
+        if (other == null) {
+            throw new IllegalArgumentException("null argument");
+        }
+        this.limit = other.limit;
+        this.stride = other.stride;
+        this.size = other.size;
+        this.nameProvider = other.nameProvider;
+        this.data = Arrays.copyOf(other.data,
+            Math.max(INITIAL_CAPACITY, other.size) * stride);
+    }
+
+    /**
+     * Retrieves the value of limit as set in the constructor.
+     *
+     * @return the value of limit
+     */
+    public int limit()
+    {
+        return limit;
+    }
+
+    /**
+     * Retrieves the name provider of this object.
+     *
+     * @return the name provider
+     */
+    public TypeNameProvider getNameProvider()
+    {
+        return nameProvider;
+    }
+
+    /**
+     * Retrieves the number of strings in the set.
+     *
+     * @return the size of the set
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Tests whether the set is empty.
+     *
+     * @return true if the set contains no strings; false otherwise
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Removes all strings from the set.
+     */
+    public void clear()
+    {
+        size = 0;
+    }
+
+    /**
+     * Retrieves the string at a specified position in the order
+     * of the set.
+     *
+     * @param index the position
+     * @return a copy of the string at the position
+     */
+    public IntLLString get(int index)
+    {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException();
+        }
+        IntLLString result = new IntLLString(limit, nameProvider);
+        int offset = index * stride;
+        for (int i = 1; i <= data[offset]; i++) {
+            result.add(data[offset + i]);
+        }
+        return result;
+    }
+
+    /**
+     * Tests whether the set contains a string.
+     *
+     * @param llString the string to be looked for
+     * @return true if the string is in the set; false otherwise
+     */
+    public boolean contains(IntLLString llString)
+    {
+        checkString(llString);
+        return search(llString) >= 0;
+    }
+
+    /**
+     * Adds a string to the set.
+     *
+     * @param llString the string to be added
+     * @return true if the set did not contain the string; false otherwise
+     */
+    public boolean add(IntLLString llString)
+    {
+        checkString(llString);
+        int index = search(llString);
+        if (index >= 0) {
+            return false;
+        }
+        index = -index - 1;
+        ensureCapacity(size + 1);
+        System.arraycopy(data, index * stride, data, (index + 1) * stride,
+            (size - index) * stride);
+        pack(llString, index);
+        ++size;
+        return true;
+    }
+
+    /**
+     * Adds to the set all strings of another set.
+     *
+     * @param other the set to be added
+     * @return true if the operation resulted in change of the set;
+     * false otherwise
+     */
+    public boolean addAll(SortedLLStringSet other)
+    {
+        checkSet(other);
+        if (other.isEmpty() || other == this) {
+            return false;
+        }
+        SortedLLStringSet union = union(other);
+        boolean result = union.size != size;
+        data = union.data;
+        size = union.size;
+        return result;
+    }
+
+    /**
+     * Tests whether the set contains all strings of another set.
+     *
+     * @param other the other set
+     * @return true if the other set is a subset of this one;
+     * false otherwise
+     */
+    public boolean containsAll(SortedLLStringSet other)
+    {
+        checkSet(other);
+        if (other.size > size) {
+            return false;
+        }
+        int i = 0;
+        int j = 0;
+        while (j < other.size) {
+            if (size - i < other.size - j) {
+                return false;
+            }
+            int c = compare(data, i, other.data, j);
+            if (c < 0) {
+                ++i;
+            }
+            else if (c > 0) {
+                return false;
+            }
+            else {
+                ++i;
+                ++j;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tests whether this set is less than or equal in relation to
+     * another set in the sense of {@link IntLLStringSet}.
+     *
+     * @param other the set against which this one is tested
+     * @return true if the ordering relation holds; otherwise false
+     */
+    boolean isLE(SortedLLStringSet other)
+    {
+        return other.containsAll(this);
+    }
+
+    /**
+     * Calculates the intersection of this set with another one.
+     *
+     * @param other the other set
+     * @return the intersection
+     */
+    public SortedLLStringSet intersect(SortedLLStringSet other)
+    {
+        checkSet(other);
+        SortedLLStringSet result = new SortedLLStringSet(limit, nameProvider);
+        result.ensureCapacity(Math.min(size, other.size));
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            int c = compare(data, i, other.data, j);
+            if (c < 0) {
+                ++i;
+            }
+            else if (c > 0) {
+                ++j;
+            }
+            else {
+                result.copySlot(data, i++);
+                ++j;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Calculates and returns the conflict set of this
+     * object and the specified other object in the sense
+     * of {@link IntLLStringSet#conflict(IntLLStringSet, int)}.
+     * That is - the set of strings belonging to one of the
+     * two sets for which a string of the same length exists
+     * in the other set which coincides with it up to
+     * position k-1.
+     * <p>
+     * Strings which coincide up to position k-1 are adjacent
+     * in both sets, so the calculation walks the two sets
+     * group by group and matches lengths only within groups
+     * with equal prefixes.
+     *
+     * @param other the second argument of the operation
+     * @param k the length of the compared prefixes
+     * @return the conflict set
+     */
+    public SortedLLStringSet conflict(SortedLLStringSet other, int k)
+    {
+        checkSet(other);
+        boolean[] marked = new boolean[size];
+        boolean[] otherMarked = new boolean[other.size];
+        int i = 0;
+        int j = 0;
+        int steps = 0;
+        while (i < size && j < other.size) {
+            if ((++steps & Checkpoint.CHECK_MASK) == 0) {
+                Checkpoint.checkCurrent();
+            }
+            int c = compareTruncated(data, i, other.data, j, k);
+            if (c < 0) {
+                i = groupEnd(i, k);
+            }
+            else if (c > 0) {
+                j = other.groupEnd(j, k);
+            }
+            else {
+                int iEnd = groupEnd(i, k);
+                int jEnd = other.groupEnd(j, k);
+                for (int a = i; a < iEnd; a++) {
+                    int length = data[a * stride];
+                    for (int b = j; b < jEnd; b++) {
+                        if (other.data[b * stride] == length) {
+                            marked[a] = true;
+                            otherMarked[b] = true;
+                        }
+                    }
+                }
+                i = iEnd;
+                j = jEnd;
+            }
+        }
+        return select(marked).union(other.select(otherMarked));
+    }
+
+    /**
+     * Calculates and returns the conflict set of this
+     * object and the specified other object with k equal
+     * to the limit of the other set.
+     *
+     * @param other the second argument of the operation
+     * @return the conflict set
+     */
+    public SortedLLStringSet conflict(SortedLLStringSet other)
+    {
+        checkSet(other);
+        return conflict(other, other.limit());
+    }
+
+    /**
+     * Tests whether the set contains an empty string.
+     *
+     * @return true if the set contains an empty string; false otherwise
+     */
+    public boolean containsEmpty()
+    {
+        // the empty string precedes all others
+        return size > 0 && data[0] == 0;
+    }
+
+    /**
+     * Tests whether any string in the set contains a
+     * specified value at a specified position.
+     *
+     * @param position the position at which the test is performed
+     * @param value the value for which the test is performed
+     * @return true if the test succeeds; false otherwise
+     */
+    public boolean containsAt(int position, int value)
+    {
+        if (position < 0 || position >= limit) {
+            return false;
+        }
+        if (position == 0) {
+            IntLLString prefix = new IntLLString(limit);
+            prefix.add(value);
+            return matches(prefix);
+        }
+        for (int i = 0; i < size; i++) {
+            int offset = i * stride;
+            if (data[offset] > position
+                && data[offset + 1 + position] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tests whether a specified string is a prefix to
+     * some of the strings in this set.
+     *
+     * @param intLLString the string to be tested
+     * @return true if the string is a prefix to some
+     * string in this set; false otherwise
+     */
+    public boolean matches(IntLLString intLLString)
+    {
+        checkString(intLLString);
+        // strings with a given prefix follow the prefix itself
+        int index = search(intLLString);
+        if (index >= 0) {
+            return true;
+        }
+        index = -index - 1;
+        if (index == size) {
+            return false;
+        }
+        int offset = index * stride;
+        int length = intLLString.length();
+        if (data[offset] < length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (data[offset + 1 + i] != intLLString.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Appends all strings of another set to all strings
+     * of this object. As in {@link IntLLStringSet#append(IntLLStringSet)}
+     * an empty operand is treated as not yet known, so appending an
+     * empty set leaves this one unchanged (and returns true unless this
+     * set is empty too) and appending to an empty set copies the other
+     * one.
+     *
+     * @param other the set to be appended to this one
+     * @return true if the operation resulted in change of the set;
+     * false otherwise
+     */
+    public boolean append(SortedLLStringSet other)
+    {
+        checkSet(other);
+        if (other.isEmpty()) {
+            return !isEmpty();
+        }
+        if (isEmpty()) {
+            return addAll(other);
+        }
+        if (other.size == 1 && other.containsEmpty()) {
+            return false;
+        }
+        // for a fixed head the appended strings come out
+        // in order, so the product is a union of sorted runs
+        SortedLLStringSet[] runs = new SortedLLStringSet[size];
+        int steps = 0;
+        for (int i = 0; i < size; i++) {
+            SortedLLStringSet run = new SortedLLStringSet(limit, nameProvider);
+            int length = data[i * stride];
+            if (length == limit) {
+                run.copySlot(data, i);
+            }
+            else {
+                run.ensureCapacity(other.size);
+                for (int j = 0; j < other.size; j++) {
+                    if ((++steps & Checkpoint.CHECK_MASK) == 0) {
+                        Checkpoint.checkCurrent();
+                    }
+                    run.concatSlot(data, i, other.data, j);
+                }
+            }
+            runs[i] = run;
+        }
+        for (int width = 1; width < runs.length; width *= 2) {
+            for (int i = 0; i + width < runs.length; i += 2 * width) {
+                runs[i] = runs[i].union(runs[i + width]);
+            }
+        }
+        boolean result = !equals(runs[0]);
+        data = runs[0].data;
+        size = runs[0].size;
+        return result;
+    }
+
+    /**
+     * Converts the set to an {@link IntLLStringSet}.
+     *
+     * @return a new set with the same content
+     */
+    public IntLLStringSet toIntLLStringSet()
+    {
+        IntLLStringSet result = new IntLLStringSet(limit, nameProvider);
+        for (int i = 0; i < size; i++) {
+            result.add(get(i));
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<IntLLString> iterator()
+    {
+        return new SetIterator();
+    }
+
+    public String toString(TypeNameProvider nameProvider)
+    {
+        TypeNameProvider theProvider = nameProvider;
+        if (theProvider == null) {
+            theProvider = this.nameProvider;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(SET_OPEN);
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(STRING_SEPARATOR);
+            }
+            sb.append(get(i).toString(theProvider));
+        }
+        sb.append(SET_CLOSE);
+        return sb.toString();
+    }
+
+    @Override
+    public String toString()
+    {
+        return toString(null);
+    }
+
+    @Override
+    public Object clone()
+    {
+        return new SortedLLStringSet(this);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int result = 1;
+        for (int i = 0; i < size * stride; i++) {
+            result = 31 * result + data[i];
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        SortedLLStringSet other = (SortedLLStringSet) obj;
+        if (other.limit != limit || other.size != size)
+            return false;
+        for (int i = 0; i < size * stride; i++) {
+            if (data[i] != other.data[i])
+                return false;
+        }
+        return true;
+    }
+
+    private SortedLLStringSet union(SortedLLStringSet other)
+    {
+        SortedLLStringSet result = new SortedLLStringSet(limit, nameProvider);
+        result.ensureCapacity(size + other.size);
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            int c = compare(data, i, other.data, j);
+            if (c < 0) {
+                result.copySlot(data, i++);
+            }
+            else if (c > 0) {
+                result.copySlot(other.data, j++);
+            }
+            else {
+                result.copySlot(data, i++);
+                ++j;
+            }
+        }
+        while (i < size) {
+            result.copySlot(data, i++);
+        }
+        while (j < other.size) {
+            result.copySlot(other.data, j++);
+        }
+        return result;
+    }
+
+    private SortedLLStringSet select(boolean[] marked)
+    {
+        SortedLLStringSet result = new SortedLLStringSet(limit, nameProvider);
+        result.ensureCapacity(size);
+        for (int i = 0; i < size; i++) {
+            if (marked[i]) {
+                result.copySlot(data, i);
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Index of the first string after index whose prefix
+     * of length k differs from that of the string at index.
+     */
+    private int groupEnd(int index, int k)
+    {
+        int result = index + 1;
+        while (result < size
+            && compareTruncated(data, index, data, result, k) == 0) {
+            ++result;
+        }
+        return result;
+    }
+
+    private int compare(int[] a, int i, int[] b, int j)
+    {
+        return compareTruncated(a, i, b, j, limit);
+    }
+
+    /*
+     * Compares the prefixes of length k of two strings. Truncation
+     * preserves the order, so strings with equal prefixes are adjacent.
+     */
+    private int compareTruncated(int[] a, int i, int[] b, int j, int k)
+    {
+        int aOffset = i * stride;
+        int bOffset = j * stride;
+        int aLength = Math.min(a[aOffset], k);
+        int bLength = Math.min(b[bOffset], k);
+        int cmpLength = Math.min(aLength, bLength);
+        for (int p = 1; p <= cmpLength; p++) {
+            int t = a[aOffset + p];
+            int o = b[bOffset + p];
+            if (t != o) {
+                return t < o ? -1 : 1;
+            }
+        }
+        return aLength < bLength ? -1 : (aLength > bLength ? 1 : 0);
+    }
+
+    /*
+     * Binary search in the manner of Arrays.binarySearch.
+     */
+    private int search(IntLLString llString)
+    {
+        int length = llString.length();
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int offset = mid * stride;
+            int midLength = data[offset];
+            int cmpLength = Math.min(midLength, length);
+            int c = 0;
+            for (int p = 0; p < cmpLength && c == 0; p++) {
+                int t = data[offset + 1 + p];
+                int o = llString.get(p);
+                if (t != o) {
+                    c = t < o ? -1 : 1;
+                }
+            }
+            if (c == 0) {
+                c = midLength < length ? -1 : (midLength > length ? 1 : 0);
+            }
+            if (c < 0) {
+                low = mid + 1;
+            }
+            else if (c > 0) {
+                high = mid - 1;
+            }
+            else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void pack(IntLLString llString, int index)
+    {
+        int offset = index * stride;
+        int length = llString.length();
+        data[offset] = length;
+        for (int i = 0; i < limit; i++) {
+            data[offset + 1 + i] = i < length ? llString.get(i) : 0;
+        }
+    }
+
+    /*
+     * Appends a slot of another array at the end of this set.
+     * The caller is responsible for keeping the order.
+     */
+    private void copySlot(int[] source, int index)
+    {
+        ensureCapacity(size + 1);
+        System.arraycopy(source, index * stride, data, size * stride, stride);
+        ++size;
+    }
+
+    /*
+     * Appends at the end of this set the concatenation of two
+     * slots unless it equals the last string of the set.
+     */
+    private void concatSlot(int[] head, int i, int[] tail, int j)
+    {
+        ensureCapacity(size + 1);
+        int offset = size * stride;
+        int hOffset = i * stride;
+        int tOffset = j * stride;
+        int hLength = head[hOffset];
+        int length = Math.min(hLength + tail[tOffset], limit);
+        System.arraycopy(head, hOffset, data, offset, stride);
+        System.arraycopy(tail, tOffset + 1, data, offset + 1 + hLength,
+            length - hLength);
+        data[offset] = length;
+        if (size == 0 || compare(data, size - 1, data, size) != 0) {
+            ++size;
+        }
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity * stride > data.length) {
+            int newCapacity = Math.max(capacity, 2 * data.length / stride);
+            data = Arrays.copyOf(data, newCapacity * stride);
+        }
+    }
+
+    private void checkString(IntLLString llString)
+    {
+        if (llString == null) {
+            throw new IllegalArgumentException("null argument");
+        }
+        if (llString.limit() != limit) {
+            throw new IllegalArgumentException("limits do not match");
+        }
+    }
+
+    private void checkSet(SortedLLStringSet other)
+    {
+        if (other == null) {
+            throw new IllegalArgumentException("null argument");
+        }
+        if (other.limit != limit) {
+            throw new IllegalArgumentException("limits do not match");
+        }
+    }
+
+    private class SetIterator
+        implements Iterator<IntLLString>
+    {
+        private int position = 0;
+
+        @Override
+        public boolean hasNext()
+        {
+            return position < size;
+        }
+
+        @Override
+        public IntLLString next()
+        {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return get(position++);
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -65,10 +65,29 @@ public final class XmlStringBuilder
         ESCAPE.put("\uffff", EMPTY);
     }
 
+    public XmlStringBuilder()
+    {
+        super();
+    }
+
+    /**
+     * Creates a builder which writes through to a target.
+     * 
+     * @param out the target
+     */
+    public XmlStringBuilder(Appendable out)
+    {
+        super(out);
+    }
+
     @Override
     public XmlStringBuilder appendEscaped(char c)
     {
-        if (!(skip(c) || escapeEntity(c))) {
+        if ('>' < c && c < EntityLow1) {
+            // nothing to escape in this range
+            append(c);
+        }
+        else if (!(skip(c) || escapeEntity(c))) {
             String string = Character.toString(c);
             String escaped = ESCAPE.get(string);
             if (escaped == null) {
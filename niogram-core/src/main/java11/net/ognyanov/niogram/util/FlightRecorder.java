@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A static method facility for emission of Java Flight Recorder
+ * events for analysis phases, fixed-point iterations and parses.<p>
+ *
+ * This is the Java 11 implementation which emits the events
+ * when a recording with the events enabled is in progress.
+ * The begin methods return an opaque event handle (null if no
+ * event is to be recorded) which must be passed to the
+ * matching end method.
+ *
+ * @author Nikolay Ognyanov
+ */
+public final class FlightRecorder
+{
+    private FlightRecorder()
+    {
+    }
+
+    @Name("net.ognyanov.niogram.Phase")
+    @Label("Analysis Phase")
+    @Description("A phase of grammar analysis")
+    @Category("NioGram")
+    @StackTrace(false)
+    static final class PhaseEvent
+        extends Event
+    {
+        @Label("Phase")
+        String phase;
+        @Label("Target")
+        @Description("The grammar or node analyzed")
+        String target;
+        @Label("Iterations")
+        int    iterations;
+        @Label("Changed Nodes")
+        int    changedNodes;
+    }
+
+    @Name("net.ognyanov.niogram.Iteration")
+    @Label("Fixed-Point Iteration")
+    @Description("An iteration of a fixed-point analysis loop")
+    @Category("NioGram")
+    @StackTrace(false)
+    static final class IterationEvent
+        extends Event
+    {
+        @Label("Phase")
+        String phase;
+        @Label("Iteration")
+        int    iteration;
+        @Label("Changed Nodes")
+        int    changedNodes;
+    }
+
+    @Name("net.ognyanov.niogram.Parse")
+    @Label("Grammar Parse")
+    @Description("A parse of a grammar into an AST")
+    @Category("NioGram")
+    @StackTrace(false)
+    static final class ParseEvent
+        extends Event
+    {
+        @Label("Source")
+        String  source;
+        @Label("Grammar")
+        String  grammar;
+        @Label("Rules")
+        int     rules;
+        @Label("Errors")
+        boolean errors;
+    }
+
+    /**
+     * Tests whether flight recorder events are supported.
+     *
+     * @return true if events are supported; false otherwise
+     */
+    public static boolean isSupported()
+    {
+        return true;
+    }
+
+    /**
+     * Begins an analysis phase event.
+     *
+     * @return the event handle or null
+     */
+    public static Object beginPhase()
+    {
+        PhaseEvent event = new PhaseEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends and commits an analysis phase event.
+     *
+     * @param event the event handle returned by {@link #beginPhase()}
+     * @param phase the phase name
+     * @param target the name of the grammar or node analyzed
+     * @param iterations the number of fixed-point iterations
+     * @param changedNodes the number of node set changes
+     */
+    public static void endPhase(Object event, String phase, String target,
+                                int iterations, int changedNodes)
+    {
+        if (event == null) {
+            return;
+        }
+        PhaseEvent phaseEvent = (PhaseEvent) event;
+        phaseEvent.end();
+        if (phaseEvent.shouldCommit()) {
+            phaseEvent.phase = phase;
+            phaseEvent.target = target;
+            phaseEvent.iterations = iterations;
+            phaseEvent.changedNodes = changedNodes;
+            phaseEvent.commit();
+        }
+    }
+
+    /**
+     * Begins a fixed-point iteration event.
+     *
+     * @return the event handle or null
+     */
+    public static Object beginIteration()
+    {
+        IterationEvent event = new IterationEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends and commits a fixed-point iteration event.
+     *
+     * @param event the event handle returned by {@link #beginIteration()}
+     * @param phase the phase name
+     * @param iteration the 1-based number of the iteration
+     * @param changedNodes the number of node set changes
+     */
+    public static void endIteration(Object event, String phase,
+                                    int iteration, int changedNodes)
+    {
+        if (event == null) {
+            return;
+        }
+        IterationEvent iterationEvent = (IterationEvent) event;
+        iterationEvent.end();
+        if (iterationEvent.shouldCommit()) {
+            iterationEvent.phase = phase;
+            iterationEvent.iteration = iteration;
+            iterationEvent.changedNodes = changedNodes;
+            iterationEvent.commit();
+        }
+    }
+
+    /**
+     * Begins a grammar parse event.
+     *
+     * @return the event handle or null
+     */
+    public static Object beginParse()
+    {
+        ParseEvent event = new ParseEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends and commits a grammar parse event.
+     *
+     * @param event the event handle returned by {@link #beginParse()}
+     * @param source the grammar source name; may be null
+     * @param grammar the grammar name; may be null
+     * @param rules the number of nonterminal rules
+     * @param errors whether the parse had errors
+     */
+    public static void endParse(Object event, String source, String grammar,
+                                int rules, boolean errors)
+    {
+        if (event == null) {
+            return;
+        }
+        ParseEvent parseEvent = (ParseEvent) event;
+        parseEvent.end();
+        if (parseEvent.shouldCommit()) {
+            parseEvent.source = source;
+            parseEvent.grammar = grammar;
+            parseEvent.rules = rules;
+            parseEvent.errors = errors;
+            parseEvent.commit();
+        }
+    }
+}
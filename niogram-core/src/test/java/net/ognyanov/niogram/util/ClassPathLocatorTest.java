@@ -0,0 +1,45 @@
+package net.ognyanov.niogram.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class ClassPathLocatorTest
+{
+    @Test
+    public void test()
+    {
+        assertEquals("/grammars/",
+            ClassPathLocator.literalPrefix("/grammars/.*"));
+        assertEquals("/a.b", ClassPathLocator.literalPrefix("/a\\.b[cd]"));
+        assertEquals("/a", ClassPathLocator.literalPrefix("/ab?c"));
+        assertEquals("/ab", ClassPathLocator.literalPrefix("/ab+c"));
+        assertEquals("/g/", ClassPathLocator.literalPrefix("/g/(A|B)\\.g4"));
+        assertEquals("", ClassPathLocator.literalPrefix("/a|/b"));
+        assertEquals("/a", ClassPathLocator.literalPrefix("/a\\d"));
+
+        ClassPathLocator locator = new ClassPathLocator();
+        List<String> all = locator.findResources(".*");
+        String[] patterns = {
+            "/net/ognyanov/niogram/util/Class.*\\.class",
+            "/org/junit/(Test|Assert)\\.class",
+            "/org/junit/.*|/net/ognyanov/niogram/util/Pair\\.class",
+            "/no/such/.*" };
+        for (String pattern : patterns) {
+            Pattern regex = Pattern.compile(pattern);
+            List<String> expected = new ArrayList<String>();
+            for (String resource : all) {
+                if (regex.matcher(resource).matches()) {
+                    expected.add(resource);
+                }
+            }
+            assertEquals(expected, locator.findResources(pattern));
+        }
+        assertTrue(all.contains("/org/junit/Test.class"));
+    }
+}
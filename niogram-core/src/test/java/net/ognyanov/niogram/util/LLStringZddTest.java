@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LLStringZddTest
+{
+    private static int k = 3;
+
+    @Test
+    public void test()
+    {
+        Random random = new Random(11);
+        LLStringZdd zdd = new LLStringZdd(k);
+        for (int i = 0; i < 300; i++) {
+            IntLLStringSet h1 = randomSet(random);
+            IntLLStringSet h2 = randomSet(random);
+            int z1 = zdd.fromSet(h1);
+            int z2 = zdd.fromSet(h2);
+
+            assertEquals(h1, toSet(zdd, z1));
+            assertEquals(h1.size(), zdd.count(z1));
+            assertEquals(h1.containsEmpty(), zdd.containsEmpty(z1));
+            assertEquals(h1.equals(h2), z1 == z2);
+
+            IntLLStringSet union = new IntLLStringSet(h1);
+            union.addAll(h2);
+            assertEquals(zdd.fromSet(union), zdd.union(z1, z2));
+
+            for (int j = 0; j <= k; j++) {
+                assertEquals(zdd.fromSet(h1.conflict(h2, j)),
+                    zdd.conflict(z1, z2, j));
+            }
+
+            IntLLStringSet withoutEmpty = new IntLLStringSet(h1);
+            withoutEmpty.removeEmpty();
+            assertEquals(zdd.fromSet(withoutEmpty), zdd.removeEmpty(z1));
+
+            if (!h1.isEmpty() && !h2.isEmpty()) {
+                IntLLStringSet product = new IntLLStringSet(h1);
+                product.append(h2);
+                assertEquals(zdd.fromSet(product), zdd.concat(z1, z2));
+            }
+        }
+    }
+
+    private static IntLLStringSet toSet(LLStringZdd zdd, int set)
+    {
+        IntLLStringSet result = new IntLLStringSet(k);
+        zdd.toSet(set, result);
+        return result;
+    }
+
+    private static IntLLStringSet randomSet(Random random)
+    {
+        IntLLStringSet result = new IntLLStringSet(k);
+        int size = random.nextInt(10);
+        for (int i = 0; i < size; i++) {
+            IntLLString string = new IntLLString(k);
+            int length = random.nextInt(k + 1);
+            for (int j = 0; j < length; j++) {
+                string.add(random.nextInt(4) - 1);
+            }
+            result.add(string);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ObjectPoolTest
+{
+    private static final class StringPool
+        extends ObjectPool<IntLLString>
+    {
+        private StringPool()
+        {
+            super(2, 4);
+        }
+
+        @Override
+        protected IntLLString create()
+        {
+            return new IntLLString(3);
+        }
+
+        @Override
+        protected void reset(IntLLString string)
+        {
+            string.clear();
+        }
+    }
+
+    @Test
+    public void test()
+        throws InterruptedException
+    {
+        final StringPool pool = new StringPool();
+        IntLLString[] strings = new IntLLString[6];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = pool.get();
+            strings[i].add(i);
+        }
+        // objects which have not been returned do not count
+        assertEquals(2, pool.capacity());
+        for (IntLLString string : strings) {
+            pool.put(string);
+        }
+        assertEquals(4, pool.capacity());
+        ObjectPool.Statistics statistics = pool.getStatistics();
+        assertEquals(0, statistics.getHits());
+        assertEquals(6, statistics.getMisses());
+        assertEquals(2, statistics.getDiscarded());
+        assertEquals(4, statistics.getMaxIdle());
+
+        IntLLString string = pool.get();
+        assertSame(strings[3], string);
+        assertTrue(string.isEmpty());
+        assertEquals(1, pool.getStatistics().getHits());
+
+        pool.trim();
+        assertEquals(2, pool.capacity());
+        assertSame(strings[1], pool.get());
+
+        pool.clear();
+        assertEquals(2, pool.capacity());
+        assertEquals(0, pool.getStatistics().getHits());
+
+        final boolean[] confined = new boolean[1];
+        Thread thread = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try {
+                    pool.get();
+                }
+                catch (IllegalStateException e) {
+                    confined[0] = true;
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+        assertTrue(confined[0]);
+        assertTrue(IntLLStringPool.current(3) == IntLLStringPool.current(3));
+    }
+}
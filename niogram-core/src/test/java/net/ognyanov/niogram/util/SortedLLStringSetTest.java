@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SortedLLStringSetTest
+{
+    private static int k = 3;
+
+    @Test
+    public void test()
+    {
+        testOrder();
+        testMatches();
+        Random random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            testAgainstHashed(random);
+        }
+    }
+
+    private void testOrder()
+    {
+        SortedLLStringSet st = new SortedLLStringSet(k);
+        IntLLString s1 = new IntLLString(k);
+        IntLLString s2 = new IntLLString(k);
+        IntLLString s3 = new IntLLString(k);
+        s2.add(2);
+        s3.add(1, 5);
+        assertTrue(st.add(s2));
+        assertTrue(st.add(s3));
+        assertFalse(st.containsEmpty());
+        assertTrue(st.add(s1));
+        assertFalse(st.add(s3));
+        assertTrue(st.containsEmpty());
+        assertEquals(3, st.size());
+        assertEquals(s1, st.get(0));
+        assertEquals(s3, st.get(1));
+        assertEquals(s2, st.get(2));
+        assertEquals("{[].[1,5].[2]}", st.toString());
+    }
+
+    private void testMatches()
+    {
+        SortedLLStringSet st = new SortedLLStringSet(k);
+        IntLLString s = new IntLLString(k);
+        s.add(1, 2, 3);
+        st.add(s);
+        IntLLString prefix = new IntLLString(k);
+        assertTrue(st.matches(prefix));
+        prefix.add(1, 2);
+        assertTrue(st.matches(prefix));
+        prefix.add(4);
+        assertFalse(st.matches(prefix));
+        assertTrue(st.containsAt(0, 1));
+        assertTrue(st.containsAt(2, 3));
+        assertFalse(st.containsAt(0, 2));
+    }
+
+    private void testAgainstHashed(Random random)
+    {
+        IntLLStringSet h1 = randomSet(random);
+        IntLLStringSet h2 = randomSet(random);
+        SortedLLStringSet s1 = new SortedLLStringSet(h1);
+        SortedLLStringSet s2 = new SortedLLStringSet(h2);
+
+        assertEquals(h1, s1.toIntLLStringSet());
+        assertEquals(h1.toString(), s1.toString());
+        for (IntLLString string : h2) {
+            assertEquals(h1.contains(string), s1.contains(string));
+            assertEquals(h1.matches(string), s1.matches(string));
+        }
+        for (int i = 0; i <= k; i++) {
+            assertEquals(h1.conflict(h2, i), s1.conflict(s2, i)
+                .toIntLLStringSet());
+        }
+        assertEquals(h1.intersect(h2), s1.intersect(s2).toIntLLStringSet());
+        assertEquals(h1.containsAll(h2), s1.containsAll(s2));
+        assertEquals(h2.isLE(h1), s2.isLE(s1));
+
+        SortedLLStringSet union = new SortedLLStringSet(s1);
+        IntLLStringSet hashedUnion = new IntLLStringSet(h1);
+        assertEquals(hashedUnion.addAll(h2), union.addAll(s2));
+        assertEquals(hashedUnion, union.toIntLLStringSet());
+        assertTrue(union.containsAll(s1));
+        assertTrue(union.containsAll(s2));
+
+        assertEquals(h1.append(h2), s1.append(s2));
+        assertEquals(h1, s1.toIntLLStringSet());
+    }
+
+    private IntLLStringSet randomSet(Random random)
+    {
+        IntLLStringSet result = new IntLLStringSet(k);
+        int size = random.nextInt(8);
+        for (int i = 0; i < size; i++) {
+            IntLLString string = new IntLLString(k);
+            int length = random.nextInt(k + 1);
+            for (int j = 0; j < length; j++) {
+                string.add(random.nextInt(3));
+            }
+            result.add(string);
+        }
+        return result;
+    }
+}
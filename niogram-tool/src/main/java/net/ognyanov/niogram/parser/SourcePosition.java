@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.parser;
+
+/**
+ * A compact record of the position of a grammar construct in
+ * its source file. Parsers in lean mode set instances of this
+ * class as source context of the AST nodes instead of references
+ * to their parse trees, so that the parse trees can be released
+ * as soon as the AST is built. The file name instance is shared
+ * by all positions in the same file.
+ *
+ * @author Nikolay Ognyanov
+ */
+public final class SourcePosition
+{
+    private final String fileName;
+    private final int    line;
+    private final int    column;
+    private final int    startOffset;
+    private final int    stopOffset;
+
+    /**
+     * Creates a new source position.
+     *
+     * @param fileName the name of the source file
+     * @param line the line of the first character (1 based)
+     * @param column the column of the first character (0 based)
+     * @param startOffset the offset of the first character
+     * @param stopOffset the offset of the last character
+     */
+    public SourcePosition(String fileName, int line, int column,
+                          int startOffset, int stopOffset)
+    {
+        this.fileName = fileName;
+        this.line = line;
+        this.column = column;
+        this.startOffset = startOffset;
+        this.stopOffset = stopOffset;
+    }
+
+    public String getFileName()
+    {
+        return fileName;
+    }
+
+    public int getLine()
+    {
+        return line;
+    }
+
+    public int getColumn()
+    {
+        return column;
+    }
+
+    public int getStartOffset()
+    {
+        return startOffset;
+    }
+
+    public int getStopOffset()
+    {
+        return stopOffset;
+    }
+
+    @Override
+    public String toString()
+    {
+        return fileName + ":" + line + ":" + column;
+    }
+}
@@ -22,20 +22,29 @@ import static net.ognyanov.niogram.ast.BuiltInTypes.NOT_NAME;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.IntStream;
 import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.atn.ParserATNSimulator;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 
 import net.ognyanov.niogram.ast.Alternative;
 import net.ognyanov.niogram.ast.Block;
@@ -52,18 +61,24 @@ import net.ognyanov.niogram.parser.AstParser;
 import net.ognyanov.niogram.parser.BaseErrorListener;
 import net.ognyanov.niogram.parser.ErrorDispatcher;
 import net.ognyanov.niogram.parser.ErrorListener;
+import net.ognyanov.niogram.parser.SourcePosition;
 import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.AlternativeContext;
 import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.AtomContext;
 import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.BlockContext;
+import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.DelegateGrammarContext;
 import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.EbnfSuffixContext;
 import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.ElementContext;
 import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.GrammarSpecContext;
 import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.LexerRuleSpecContext;
+import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.ModeSpecContext;
 import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.ParserRuleSpecContext;
 import net.ognyanov.niogram.util.BidirectionalMap;
+import net.ognyanov.niogram.util.DotStringBuilder;
 import net.ognyanov.niogram.util.FileSystemLocator;
+import net.ognyanov.niogram.util.FlightRecorder;
 import net.ognyanov.niogram.util.Pair;
 import net.ognyanov.niogram.util.ResourceLocator;
+import net.ognyanov.niogram.util.XmlStringBuilder;
 
 /**
  * The NioGram parser for ANTLR 4 grammars.<p>
@@ -75,7 +90,10 @@ import net.ognyanov.niogram.util.ResourceLocator;
  * errors. Diagnostic information is available in this class.<p>
  * The parser is invoked by a call to the {@link #grammar()} method.
  * This method may be invoked only once and on subsequent call
- * throws IllegalStateException<p>
+ * throws IllegalStateException unless the parser is first
+ * {@link #reset(String) reset} with a new input. Reusing one
+ * parser for a batch of grammars avoids rebuilding the lexer,
+ * the parser and the AST builder state for each of them.<p>
  * Note that the parser uses a {@link ResourceLocator}
  * in order to retrieve the following resources :
  * <ol>
@@ -84,6 +102,16 @@ import net.ognyanov.niogram.util.ResourceLocator;
  * <li> Token vocabulary files.</li>
  * </ol><p>
  * The default locator is a {@link FileSystemLocator}.<p>
+ * Imported grammars are resolved relative to the directory of the
+ * importing grammar and their rules are merged as ANTLR does it:
+ * rules of the importing grammar override imported rules with the
+ * same name. Imported grammars are parsed concurrently and cached
+ * by file name and content for all parsers.<p>
+ * In {@link #setLean(boolean) lean} mode the parser releases the
+ * parse tree and the token stream as soon as the AST is built and
+ * the source context of each AST node is a {@link SourcePosition}
+ * rather than the node of the parse tree it was built from. The
+ * parse tree can then not be printed as XML or DOT.<p>
  * 
  * After parsing a grammar the parser provides the following
  * diagnostic information:
@@ -149,6 +177,8 @@ public class Antlr4ToAstParser
 
     private Mode                                   mode                      =
         Mode.ANTLR;
+    private boolean                                lean                      =
+        false;
     private String                                 fileName                  =
         null;
 
@@ -229,6 +259,20 @@ public class Antlr4ToAstParser
         null;
     private RelayErrorListener                     silentRelayListener       =
         null;
+    private SymbolCollector                        symbolCollector           =
+        null;
+    private ASTBuilder                             astBuilder                =
+        null;
+    private ErrorDispatcher                        dispatcher                =
+        this;
+    private List<DelegateGrammarContext>           delegateContexts          =
+        new ArrayList<DelegateGrammarContext>();
+    private List<DelegateGrammar>                  delegates                 =
+        new ArrayList<DelegateGrammar>();
+    private Map<DelegateGrammar, ErrorDispatcher>  delegateDispatchers       =
+        new IdentityHashMap<DelegateGrammar, ErrorDispatcher>();
+    private Set<ParserRuleContext>                 overriddenRules           =
+        new HashSet<ParserRuleContext>();
 
     // AST Builder data
     private Grammar                                grammar                   =
@@ -263,15 +307,7 @@ public class Antlr4ToAstParser
             this.resourceLocator = resourceLocator;
         }
         this.fileName = fileName;
-        InputStream is = this.resourceLocator.getResourceAsStream(fileName);
-        if (is == null) {
-            throw new IOException("file not found");
-        }
-        CharStream input = null;
-        input = CharStreams.fromStream(is);
-        parseTreeLexer = new ANTLRv4Lexer(input);
-        CommonTokenStream tokens = new CommonTokenStream(parseTreeLexer);
-        parseTreeParser = new ANTLRv4Parser(tokens);
+        setInput(GrammarInput.open(fileName, this.resourceLocator));
         initFlags();
         initErrorListeners();
     }
@@ -305,11 +341,7 @@ public class Antlr4ToAstParser
         if (resourceLocator != null) {
             this.resourceLocator = resourceLocator;
         }
-        CharStream input = null;
-        input = CharStreams.fromStream(inputStream);
-        parseTreeLexer = new ANTLRv4Lexer(input);
-        CommonTokenStream tokens = new CommonTokenStream(parseTreeLexer);
-        parseTreeParser = new ANTLRv4Parser(tokens);
+        setInput(CharStreams.fromStream(inputStream));
         initFlags();
         initErrorListeners();
     }
@@ -326,6 +358,98 @@ public class Antlr4ToAstParser
         this(inputStream, null);
     }
 
+    /**
+     * Prepares the parser for parsing another grammar file. The
+     * lexer, the parser and the scratch collections of the previous
+     * parse are reused and the ANTLR DFA cache, which is shared by
+     * all instances, stays warm. The mode, the lean flag, the
+     * resource locator and the error listeners are retained. All results and
+     * diagnostics of the previous parse are discarded.
+     * 
+     * @param fileName the name of the grammar file
+     * @throws IOException if the parser fails to access the grammar file
+     */
+    public void reset(String fileName)
+        throws IOException
+    {
+        CharStream input = GrammarInput.open(fileName, resourceLocator);
+        clear();
+        this.fileName = fileName;
+        setInput(input);
+    }
+
+    /**
+     * Prepares the parser for parsing another grammar text.
+     * See {@link #reset(String)}.
+     * 
+     * @param inputStream an input stream for the grammar text
+     * @throws IOException if the parser fails to access the stream
+     */
+    public void reset(InputStream inputStream)
+        throws IOException
+    {
+        if (inputStream == null) {
+            throw new IOException("null stream");
+        }
+        clear();
+        this.fileName = null;
+        setInput(CharStreams.fromStream(inputStream));
+    }
+
+    private void setInput(CharStream input)
+    {
+        if (parseTreeLexer == null) {
+            parseTreeLexer = new ANTLRv4Lexer(input);
+            parseTreeParser =
+                new ANTLRv4Parser(new CommonTokenStream(parseTreeLexer));
+        }
+        else {
+            parseTreeLexer.setInputStream(input);
+            parseTreeParser
+                .setTokenStream(new CommonTokenStream(parseTreeLexer));
+        }
+    }
+
+    private void clear()
+    {
+        grammarType = GrammarType.COMBINED;
+        grammarName = null;
+        options.clear();
+        optionK = -1;
+        delegateGrammars.clear();
+        delegateContexts.clear();
+        delegates.clear();
+        delegateDispatchers.clear();
+        overriddenRules.clear();
+        dispatcher = this;
+        errors = false;
+        warnings = false;
+        initFlags();
+        importedTerminalNames.clear();
+        declaredTerminalNames.clear();
+        definedTerminalNames.clear();
+        knownTerminalNames.clear();
+        unknownTerminalNames.clear();
+        usedTerminalNames.clear();
+        duplicateTerminalNames.clear();
+        declaredNonterminalNames.clear();
+        knownNonterminalNames.clear();
+        unknownNonterminalNames.clear();
+        usedNonterminalNames.clear();
+        duplicateNonterminalNames.clear();
+        usedStringLiterals.clear();
+        literalToTerminal.clear();
+        inSyntax = false;
+        parsed = false;
+        parseTree = null;
+        grammar = null;
+        visitedRules.clear();
+        nameToTerminalRule.clear();
+        nameToNonterminalRule.clear();
+        stack.clear();
+        currentType = 0;
+    }
+
     private void initFlags()
     {
         for (ErrorDispatcher.ErrorType errorType : ErrorDispatcher.ErrorType
@@ -382,6 +506,29 @@ public class Antlr4ToAstParser
         this.mode = mode;
     }
 
+    /**
+     * Checks whether the parser is in lean mode.
+     * 
+     * @return true if the parser is in lean mode
+     */
+    public boolean isLean()
+    {
+        return lean;
+    }
+
+    /**
+     * Sets the lean mode of the parser. In lean mode the parse
+     * tree is released after the AST is built and the AST nodes
+     * refer to their source by {@link SourcePosition}. Clients
+     * which need to print the parse tree should not use it.
+     * 
+     * @param lean the lean mode flag
+     */
+    public void setLean(boolean lean)
+    {
+        this.lean = lean;
+    }
+
     /**
      * Retrieves the file name of the grammar.
      * 
@@ -437,15 +584,35 @@ public class Antlr4ToAstParser
             throw new IllegalStateException("already parsed");
         }
         parsed = true;
+        Object event = FlightRecorder.beginParse();
+        Grammar result = null;
+        try {
+            result = parse();
+        }
+        finally {
+            FlightRecorder.endParse(event, fileName, grammarName,
+                result == null ? 0 : result.getNonterminalRules().size(),
+                errors);
+        }
+        return result;
+    }
+
+    private Grammar parse()
+    {
         inSyntax = true;
-        parseTree = parseTreeParser.grammarSpec();
+        parseTree = parseGrammarSpec(parseTreeParser);
         if (parseTree == null || parseTree.identifier() == null) {
             return null;
         }
         inSyntax = false;
 
-        SymbolCollector symbolCollector =
-            new SymbolCollector(Antlr4ToAstParser.this, parseTreeParser);
+        if (symbolCollector == null) {
+            symbolCollector =
+                new SymbolCollector(Antlr4ToAstParser.this, parseTreeParser);
+        }
+        else {
+            symbolCollector.reset();
+        }
         symbolCollector.visit(parseTree);
 
         createGrammar();
@@ -453,8 +620,11 @@ public class Antlr4ToAstParser
         fillUnknown();
         buildRules();
 
-        ASTBuilder builder = new ASTBuilder();
-        Grammar grammar = (Grammar) builder.visit(parseTree);
+        if (astBuilder == null) {
+            astBuilder = new ASTBuilder();
+        }
+        isNioGram = mode == Mode.NioGram;
+        Grammar grammar = (Grammar) astBuilder.visit(parseTree);
 
         NamingVisitor namingVisitor = new NamingVisitor();
         namingVisitor.visitGrammar(grammar);
@@ -462,9 +632,209 @@ public class Antlr4ToAstParser
         ParentSetter parentSetter = new ParentSetter();
         parentSetter.visitGrammar(grammar);
 
+        if (lean) {
+            SourcePositionSetter positionSetter = new SourcePositionSetter();
+            positionSetter.visitGrammar(grammar);
+            release();
+        }
+
         return grammar;
     }
 
+    /*
+     * Drops the references to the parse trees of the grammar and
+     * its delegates and to the token stream. Delegate parse trees
+     * stay in the shared cache only as long as the cache has them.
+     */
+    private void release()
+    {
+        parseTree = null;
+        delegateContexts.clear();
+        delegates.clear();
+        delegateDispatchers.clear();
+        overriddenRules.clear();
+        parseTreeParser.setTokenStream(null);
+        parseTreeLexer.setInputStream(null);
+    }
+
+    /*
+     * Grammar files are almost never ambiguous, so the faster SLL
+     * prediction is tried first with a bail-out error strategy and
+     * the parser error listeners detached. Only if that fails the
+     * input is parsed again with full LL and the default strategy,
+     * which reports syntax errors exactly as a single LL pass does.
+     * Tokens are buffered by the token stream, so lexer errors are
+     * reported once in either case.
+     */
+    static GrammarSpecContext parseGrammarSpec(ANTLRv4Parser parseTreeParser)
+    {
+        List<ANTLRErrorListener> listeners =
+            new ArrayList<ANTLRErrorListener>(
+                parseTreeParser.getErrorListeners());
+        ParserATNSimulator interpreter = parseTreeParser.getInterpreter();
+        parseTreeParser.removeErrorListeners();
+        parseTreeParser.setErrorHandler(new BailErrorStrategy());
+        interpreter.setPredictionMode(PredictionMode.SLL);
+        try {
+            return parseTreeParser.grammarSpec();
+        }
+        catch (ParseCancellationException e) {
+            // fall back to full LL
+        }
+        finally {
+            for (ANTLRErrorListener listener : listeners) {
+                parseTreeParser.addErrorListener(listener);
+            }
+            parseTreeParser.setErrorHandler(new DefaultErrorStrategy());
+            interpreter.setPredictionMode(PredictionMode.LL);
+        }
+        parseTreeParser.reset();
+        return parseTreeParser.grammarSpec();
+    }
+
+    /*
+     * Loads the grammars imported directly or indirectly by this
+     * grammar. Imports are resolved relative to the directory of
+     * the importing grammar. The grammars of each import level are
+     * parsed concurrently. The result is in the order in which
+     * ANTLR merges rules: depth first, in order of declaration.
+     */
+    List<DelegateGrammar> loadDelegateGrammars()
+    {
+        Map<String, DelegateGrammar> loaded =
+            new HashMap<String, DelegateGrammar>();
+        Set<String> requested = new HashSet<String>();
+        if (fileName != null) {
+            requested.add(fileName);
+        }
+        List<String> level = new ArrayList<String>();
+        for (DelegateGrammarContext ctx : delegateContexts) {
+            String name = delegateFileName(fileName, ctx);
+            if (requested.add(name)) {
+                level.add(name);
+            }
+        }
+        while (!level.isEmpty()) {
+            Map<String, DelegateGrammar> parsed =
+                DelegateGrammarLoader.load(level, resourceLocator);
+            loaded.putAll(parsed);
+            level = new ArrayList<String>();
+            for (DelegateGrammar delegate : parsed.values()) {
+                for (DelegateGrammarContext ctx : delegate.getImports()) {
+                    String name =
+                        delegateFileName(delegate.getFileName(), ctx);
+                    if (requested.add(name)) {
+                        level.add(name);
+                    }
+                }
+            }
+        }
+        Set<String> merged = new HashSet<String>();
+        if (fileName != null) {
+            merged.add(fileName);
+        }
+        mergeDelegates(this, fileName, grammarType, delegateContexts,
+            loaded, merged);
+        return delegates;
+    }
+
+    private void mergeDelegates(ErrorDispatcher importer,
+                                String importerFileName,
+                                GrammarType importerType,
+                                List<DelegateGrammarContext> imports,
+                                Map<String, DelegateGrammar> loaded,
+                                Set<String> merged)
+    {
+        for (DelegateGrammarContext ctx : imports) {
+            String name = delegateFileName(importerFileName, ctx);
+            if (!merged.add(name)) {
+                continue;
+            }
+            int line = ctx.start.getLine();
+            int position = ctx.start.getCharPositionInLine();
+            DelegateGrammar delegate = loaded.get(name);
+            if (delegate == null) {
+                importer.notifyErrorListeners(ErrorType.FailedGrammarImports,
+                    line, position, "failed to import grammar " + name);
+                continue;
+            }
+            GrammarType type = delegate.getGrammarType();
+            if (type == GrammarType.COMBINED
+                    || (importerType != GrammarType.COMBINED
+                            && importerType != type)) {
+                importer.notifyErrorListeners(ErrorType.FailedGrammarImports,
+                    line, position, "can not import "
+                            + type.toString().toLowerCase()
+                            + " grammar " + name + " into "
+                            + importerType.toString().toLowerCase()
+                            + " grammar");
+                continue;
+            }
+            DelegateDispatcher delegateDispatcher =
+                new DelegateDispatcher(this, name);
+            for (DelegateGrammar.SyntaxError error : delegate
+                .getSyntaxErrors()) {
+                delegateDispatcher.notifyErrorListeners(ErrorType.SyntaxErrors,
+                    error.getLine(), error.getPosition(), error.getMessage());
+            }
+            if (delegate.getParseTree() == null) {
+                continue;
+            }
+            delegates.add(delegate);
+            delegateDispatchers.put(delegate, delegateDispatcher);
+            mergeDelegates(delegateDispatcher, name, type,
+                delegate.getImports(), loaded, merged);
+        }
+    }
+
+    private static String delegateFileName(String importerFileName,
+                                           DelegateGrammarContext ctx)
+    {
+        String name = DelegateGrammar.importName(ctx) + ".g4";
+        if (importerFileName == null) {
+            return name;
+        }
+        int separator = Math.max(importerFileName.lastIndexOf('/'),
+            importerFileName.lastIndexOf('\\'));
+        return importerFileName.substring(0, separator + 1) + name;
+    }
+
+    List<DelegateGrammarContext> getDelegateContexts()
+    {
+        return delegateContexts;
+    }
+
+    ErrorDispatcher getDelegateDispatcher(DelegateGrammar delegate)
+    {
+        return delegateDispatchers.get(delegate);
+    }
+
+    Set<ParserRuleContext> getOverriddenRules()
+    {
+        return overriddenRules;
+    }
+
+    /**
+     * Discards the imported grammars cached by all parsers.
+     * Imported grammars are cached by file name and content, so
+     * there is no need to call this method when grammar files
+     * change. It only releases the memory held by the cache.
+     */
+    public static void clearDelegateGrammarCache()
+    {
+        DelegateGrammarLoader.clearCache();
+    }
+
+    /**
+     * Discards the token vocabularies cached by all parsers.
+     * Like imported grammars, vocabularies are cached by file
+     * name and content, so this method only releases memory.
+     */
+    public static void clearTokenVocabularyCache()
+    {
+        TokensVocabulary.clearCache();
+    }
+
     private void createGrammar()
     {
         grammar = new Grammar(GRAMMAR);
@@ -888,6 +1258,53 @@ public class Antlr4ToAstParser
         return dotString;
     }
 
+    /**
+     * Writes an XML representation of the parse tree
+     * to a target as it is generated.
+     * 
+     * @param out the target
+     * @throws IOException if writing to the target fails
+     */
+    public void writeXml(Appendable out)
+        throws IOException
+    {
+        if (parseTree == null) {
+            throw new IllegalStateException("no parse tree");
+        }
+        XmlStringVisitor xmlWriter = new XmlStringVisitor(parseTreeParser);
+        try {
+            xmlWriter.write(parseTree, new XmlStringBuilder(out));
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Writes a DOT language representation of the parse tree
+     * to a target as it is generated. For combined grammars
+     * the lexer rules are omitted.
+     * 
+     * @param out the target
+     * @throws IOException if writing to the target fails
+     */
+    public void writeDot(Appendable out)
+        throws IOException
+    {
+        if (parseTree == null) {
+            throw new IllegalStateException("no parse tree");
+        }
+        boolean excludeTerminals = !getGrammarType().equals(GrammarType.LEXER);
+        DotStringVisitor dotWriter = new DotStringVisitor(parseTreeParser);
+        try {
+            dotWriter.write(parseTree, excludeTerminals,
+                new DotStringBuilder(out));
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -1027,6 +1444,11 @@ public class Antlr4ToAstParser
         {
             stack.push(grammar);
             visitChildren(ctx);
+            for (DelegateGrammar delegate : delegates) {
+                dispatcher = delegateDispatchers.get(delegate);
+                visitDelegate(delegate.getParseTree());
+            }
+            dispatcher = Antlr4ToAstParser.this;
             stack.pop();
 
             if (debugMe) {
@@ -1035,9 +1457,22 @@ public class Antlr4ToAstParser
             return grammar;
         }
 
+        private void visitDelegate(GrammarSpecContext ctx)
+        {
+            if (ctx.rules() != null) {
+                visit(ctx.rules());
+            }
+            for (ModeSpecContext modeSpec : ctx.modeSpec()) {
+                visit(modeSpec);
+            }
+        }
+
         @Override
         public GrammarNode visitParserRuleSpec(ParserRuleSpecContext ctx)
         {
+            if (overriddenRules.contains(ctx)) {
+                return null;
+            }
             String ruleName = ctx.RULE_REF().getText();
             if (!visitedRules.contains(ruleName)) {
                 visitedRules.add(ruleName);
@@ -1056,7 +1491,7 @@ public class Antlr4ToAstParser
                                 .getSourceContext()).start
                                     .getCharPositionInLine();
                             String message = "duplicate empty alternative";
-                            notifyErrorListeners(
+                            dispatcher.notifyErrorListeners(
                                 ErrorDispatcher.ErrorType.SyntaxErrors, line,
                                 position, message);
                         }
@@ -1074,6 +1509,9 @@ public class Antlr4ToAstParser
         @Override
         public GrammarNode visitLexerRuleSpec(LexerRuleSpecContext ctx)
         {
+            if (overriddenRules.contains(ctx)) {
+                return null;
+            }
             String ruleName = ctx.TOKEN_REF().getText();
             if (!visitedRules.contains(ruleName)
                     && !duplicateTerminalNames.contains(ruleName)) {
@@ -1237,12 +1675,12 @@ public class Antlr4ToAstParser
                     String message =
                         "not sets are not supported in NioGram";
                     if (isNioGram) {
-                        notifyErrorListeners(ErrorType.NotSets, line, position,
-                            message);
+                        dispatcher.notifyErrorListeners(ErrorType.NotSets,
+                            line, position, message);
                     }
                     else {
-                        warnErrorListeners(ErrorType.NotSets, line, position,
-                            message);
+                        dispatcher.warnErrorListeners(ErrorType.NotSets,
+                            line, position, message);
                     }
                 }
                 else if (atomCtx.DOT() != null) {
@@ -1257,12 +1695,12 @@ public class Antlr4ToAstParser
                     String message =
                         "dot expressions in parser rules are not supported in NioGram";
                     if (isNioGram) {
-                        notifyErrorListeners(ErrorType.DotExpressions, line,
-                            position, message);
+                        dispatcher.notifyErrorListeners(
+                            ErrorType.DotExpressions, line, position, message);
                     }
                     else {
-                        warnErrorListeners(ErrorType.DotExpressions, line,
-                            position, message);
+                        dispatcher.warnErrorListeners(
+                            ErrorType.DotExpressions, line, position, message);
                     }
                 }
                 else {
@@ -1297,12 +1735,12 @@ public class Antlr4ToAstParser
                     String message =
                         "lazy occurrence indicators are not supported in NioGram";
                     if (isNioGram) {
-                        notifyErrorListeners(ErrorType.LazyEBNF, lazyLine,
-                            lazyPosition, message);
+                        dispatcher.notifyErrorListeners(ErrorType.LazyEBNF,
+                            lazyLine, lazyPosition, message);
                     }
                     else {
-                        warnErrorListeners(ErrorType.LazyEBNF, lazyLine,
-                            lazyLine, message);
+                        dispatcher.warnErrorListeners(ErrorType.LazyEBNF,
+                            lazyLine, lazyLine, message);
                     }
                 }
                 ((Alternative) stack.peek()).getTerms().add(term);
@@ -1321,7 +1759,7 @@ public class Antlr4ToAstParser
                                     .getSourceContext()).start
                                         .getCharPositionInLine();
                                 String message = "duplicate empty alternative";
-                                notifyErrorListeners(
+                                dispatcher.notifyErrorListeners(
                                     ErrorDispatcher.ErrorType.SyntaxErrors,
                                     line,
                                     position, message);
@@ -1340,6 +1778,33 @@ public class Antlr4ToAstParser
         }
     }
 
+    private class SourcePositionSetter
+        extends GrammarVisitor
+    {
+        @Override
+        public void preVisit(GrammarNode node)
+        {
+            Object context = node.getSourceContext();
+            if (context instanceof ParserRuleContext) {
+                node.setSourceContext(
+                    sourcePosition((ParserRuleContext) context));
+            }
+        }
+
+        private SourcePosition sourcePosition(ParserRuleContext ctx)
+        {
+            String sourceName = ctx.start.getInputStream().getSourceName();
+            if (IntStream.UNKNOWN_SOURCE_NAME.equals(sourceName)) {
+                sourceName = fileName;
+            }
+            int stopOffset = ctx.stop == null ? ctx.start.getStartIndex() - 1
+                    : ctx.stop.getStopIndex();
+            return new SourcePosition(sourceName, ctx.start.getLine(),
+                ctx.start.getCharPositionInLine(), ctx.start.getStartIndex(),
+                stopOffset);
+        }
+    }
+
     private class ParentSetter
         extends GrammarVisitor
     {
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.parser.antlr4;
+
+import java.util.Set;
+
+import net.ognyanov.niogram.parser.ErrorDispatcher;
+import net.ognyanov.niogram.parser.ErrorListener;
+
+/**
+ * Reports the problems found in a delegate grammar or in
+ * a token vocabulary to the error listeners of the importing
+ * parser under the file name of the delegate or vocabulary
+ * and registers them with that parser.
+ *
+ * @author Nikolay Ognyanov
+ */
+final class DelegateDispatcher
+    implements ErrorDispatcher
+{
+    private final Antlr4ToAstParser parser;
+    private final String            fileName;
+
+    DelegateDispatcher(Antlr4ToAstParser parser, String fileName)
+    {
+        if (parser == null) {
+            throw new IllegalArgumentException("null argument");
+        }
+        this.parser = parser;
+        this.fileName = fileName;
+    }
+
+    @Override
+    public String getFileName()
+    {
+        return fileName;
+    }
+
+    @Override
+    public void addErrorListener(ErrorListener errorListener)
+    {
+        parser.addErrorListener(errorListener);
+    }
+
+    @Override
+    public Set<ErrorListener> getErrorListeners()
+    {
+        return parser.getErrorListeners();
+    }
+
+    @Override
+    public void removeErrorListener(ErrorListener errorListener)
+    {
+        parser.removeErrorListener(errorListener);
+    }
+
+    @Override
+    public void removeErrorListeners()
+    {
+        parser.removeErrorListeners();
+    }
+
+    @Override
+    public void notifyErrorListeners(ErrorType errorType, int line,
+                                     int position, String message)
+    {
+        parser.registerError(errorType);
+        for (ErrorListener errorListener : parser.getErrorListeners()) {
+            errorListener.reportError(this, errorType, line, position,
+                message);
+        }
+    }
+
+    @Override
+    public void warnErrorListeners(ErrorType errorType, int line,
+                                   int position, String message)
+    {
+        parser.registerWarning(errorType);
+        for (ErrorListener errorListener : parser.getErrorListeners()) {
+            errorListener.reportWarning(this, errorType, line, position,
+                message);
+        }
+    }
+
+    @Override
+    public void registerError(ErrorType error)
+    {
+        parser.registerError(error);
+    }
+
+    @Override
+    public void registerWarning(ErrorType warning)
+    {
+        parser.registerWarning(warning);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.parser.antlr4;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.DelegateGrammarContext;
+import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.DelegateGrammarsContext;
+import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.GrammarSpecContext;
+import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.PrequelConstructContext;
+import net.ognyanov.niogram.parser.antlr4.Antlr4ToAstParser.GrammarType;
+
+/**
+ * A parsed grammar imported by another grammar. Instances are
+ * immutable once created and may be shared by the parsers of
+ * all grammars which import the same file with the same content.
+ * Besides the parse tree they hold the symbols collected from it.
+ *
+ * @author Nikolay Ognyanov
+ */
+final class DelegateGrammar
+{
+    /**
+     * A syntax error encountered while parsing a delegate grammar.
+     * Such errors are recorded and reported on behalf of each
+     * importing grammar.
+     */
+    static final class SyntaxError
+    {
+        private final int    line;
+        private final int    position;
+        private final String message;
+
+        SyntaxError(int line, int position, String message)
+        {
+            this.line = line;
+            this.position = position;
+            this.message = message;
+        }
+
+        int getLine()
+        {
+            return line;
+        }
+
+        int getPosition()
+        {
+            return position;
+        }
+
+        String getMessage()
+        {
+            return message;
+        }
+    }
+
+    private final String                       fileName;
+    private final byte[]                       digest;
+    private final GrammarSpecContext           parseTree;
+    private final GrammarType                  grammarType;
+    private final List<DelegateGrammarContext> imports;
+    private final List<SyntaxError>            syntaxErrors;
+    private final DelegateSymbols              symbols;
+
+    DelegateGrammar(String fileName, byte[] digest,
+                    GrammarSpecContext parseTree,
+                    List<SyntaxError> syntaxErrors)
+    {
+        this.fileName = fileName;
+        this.digest = digest;
+        this.parseTree = parseTree;
+        this.grammarType = grammarType(parseTree);
+        this.imports = Collections.unmodifiableList(imports(parseTree));
+        this.syntaxErrors = Collections.unmodifiableList(syntaxErrors);
+        this.symbols = new DelegateSymbols(parseTree);
+    }
+
+    String getFileName()
+    {
+        return fileName;
+    }
+
+    byte[] getDigest()
+    {
+        return digest;
+    }
+
+    GrammarSpecContext getParseTree()
+    {
+        return parseTree;
+    }
+
+    GrammarType getGrammarType()
+    {
+        return grammarType;
+    }
+
+    /**
+     * Retrieves the import declarations of this grammar.
+     *
+     * @return the imports in declaration order
+     */
+    List<DelegateGrammarContext> getImports()
+    {
+        return imports;
+    }
+
+    List<SyntaxError> getSyntaxErrors()
+    {
+        return syntaxErrors;
+    }
+
+    /**
+     * Retrieves the symbols of this grammar. They are collected
+     * once and cached with the grammar.
+     *
+     * @return the symbols of the grammar
+     */
+    DelegateSymbols getSymbols()
+    {
+        return symbols;
+    }
+
+    /**
+     * Retrieves the name of an imported grammar. For
+     * an import of the form "alias = name" this is the name.
+     *
+     * @param ctx the import declaration
+     * @return the name of the imported grammar
+     */
+    static String importName(DelegateGrammarContext ctx)
+    {
+        return ctx.identifier(ctx.identifier().size() - 1).getText();
+    }
+
+    static GrammarType grammarType(GrammarSpecContext parseTree)
+    {
+        if (parseTree != null && parseTree.grammarType() != null) {
+            String type = parseTree.grammarType().getText();
+            if ("lexergrammar".equals(type)) {
+                return GrammarType.LEXER;
+            }
+            else if ("parsergrammar".equals(type)) {
+                return GrammarType.PARSER;
+            }
+        }
+        return GrammarType.COMBINED;
+    }
+
+    private static List<DelegateGrammarContext>
+        imports(GrammarSpecContext parseTree)
+    {
+        List<DelegateGrammarContext> result =
+            new ArrayList<DelegateGrammarContext>();
+        if (parseTree == null) {
+            return result;
+        }
+        for (PrequelConstructContext prequel : parseTree.prequelConstruct()) {
+            DelegateGrammarsContext delegates = prequel.delegateGrammars();
+            if (delegates != null) {
+                for (DelegateGrammarContext delegate : delegates
+                    .delegateGrammar()) {
+                    if (!delegate.identifier().isEmpty()) {
+                        result.add(delegate);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.parser.antlr4;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+
+import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.GrammarSpecContext;
+import net.ognyanov.niogram.util.NioGramException;
+import net.ognyanov.niogram.util.ResourceLocator;
+
+/**
+ * Loads delegate grammars. The grammars requested together are
+ * parsed concurrently and grammars parsed without errors are
+ * cached by file name and content digest, so that a delegate
+ * shared by many grammars is parsed only once as long as its
+ * content does not change. The cache is shared by all parsers
+ * and keeps only the most recently used grammars.
+ *
+ * @author Nikolay Ognyanov
+ */
+final class DelegateGrammarLoader
+{
+    private static final int                          MAX_CACHED = 64;
+
+    private static final Map<String, DelegateGrammar> cache      =
+        Collections.synchronizedMap(new Cache());
+    private static ExecutorService                    executor   = null;
+
+    /*
+     * A map which drops the least recently used
+     * grammar when it grows past its size limit.
+     */
+    private static final class Cache
+        extends LinkedHashMap<String, DelegateGrammar>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private Cache()
+        {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(
+            Map.Entry<String, DelegateGrammar> eldest)
+        {
+            return size() > MAX_CACHED;
+        }
+    }
+
+    private DelegateGrammarLoader()
+    {
+    }
+
+    /**
+     * Loads grammar files. The files are read by the calling
+     * thread, so the resource locator need not be thread safe.
+     *
+     * @param fileNames the names of the grammar files
+     * @param locator the resource locator
+     * @return a map from file names to grammars; files which can
+     *         not be read are absent from the map
+     */
+    static Map<String, DelegateGrammar> load(Collection<String> fileNames,
+                                             ResourceLocator locator)
+    {
+        Map<String, DelegateGrammar> result =
+            new HashMap<String, DelegateGrammar>();
+        final List<String> names = new ArrayList<String>();
+        final List<byte[]> contents = new ArrayList<byte[]>();
+        final List<byte[]> digests = new ArrayList<byte[]>();
+        for (String fileName : fileNames) {
+            byte[] content = GrammarInput.read(fileName, locator);
+            if (content == null) {
+                continue;
+            }
+            byte[] digest = digest(content);
+            DelegateGrammar cached = cache.get(fileName);
+            if (cached != null && Arrays.equals(digest, cached.getDigest())) {
+                result.put(fileName, cached);
+            }
+            else {
+                names.add(fileName);
+                contents.add(content);
+                digests.add(digest);
+            }
+        }
+        if (names.size() == 1) {
+            DelegateGrammar grammar =
+                parse(names.get(0), contents.get(0), digests.get(0));
+            result.put(names.get(0), grammar);
+        }
+        else if (names.size() > 1) {
+            List<Future<DelegateGrammar>> futures =
+                new ArrayList<Future<DelegateGrammar>>();
+            for (int i = 0; i < names.size(); i++) {
+                final int index = i;
+                futures.add(executor().submit(new Callable<DelegateGrammar>()
+                {
+                    @Override
+                    public DelegateGrammar call()
+                    {
+                        return parse(names.get(index), contents.get(index),
+                            digests.get(index));
+                    }
+                }));
+            }
+            for (int i = 0; i < names.size(); i++) {
+                result.put(names.get(i), await(futures.get(i)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Discards all cached grammars.
+     */
+    static void clearCache()
+    {
+        cache.clear();
+    }
+
+    private static DelegateGrammar parse(String fileName, byte[] content,
+                                         byte[] digest)
+    {
+        final List<DelegateGrammar.SyntaxError> errors =
+            new ArrayList<DelegateGrammar.SyntaxError>();
+        BaseErrorListener recorder = new BaseErrorListener()
+        {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer,
+                                    Object offendingSymbol, int line,
+                                    int charPositionInLine, String msg,
+                                    RecognitionException e)
+            {
+                errors.add(new DelegateGrammar.SyntaxError(line,
+                    charPositionInLine, msg));
+            }
+        };
+        ANTLRv4Lexer lexer =
+            new ANTLRv4Lexer(GrammarInput.fromBytes(content, fileName));
+        ANTLRv4Parser parser = new ANTLRv4Parser(new CommonTokenStream(lexer));
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(recorder);
+        parser.removeErrorListeners();
+        parser.addErrorListener(recorder);
+        GrammarSpecContext parseTree =
+            Antlr4ToAstParser.parseGrammarSpec(parser);
+        DelegateGrammar result =
+            new DelegateGrammar(fileName, digest, parseTree, errors);
+        if (errors.isEmpty()) {
+            cache.put(fileName, result);
+        }
+        return result;
+    }
+
+    static byte[] digest(byte[] content)
+    {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new NioGramException(e);
+        }
+    }
+
+    private static DelegateGrammar await(Future<DelegateGrammar> future)
+    {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NioGramException("interrupted", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new NioGramException(e.getCause());
+        }
+    }
+
+    private static synchronized ExecutorService executor()
+    {
+        if (executor == null) {
+            final AtomicInteger count = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(), new ThreadFactory()
+                {
+                    @Override
+                    public Thread newThread(Runnable runnable)
+                    {
+                        Thread thread = new Thread(runnable,
+                            "niogram-import-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        }
+        return executor;
+    }
+}
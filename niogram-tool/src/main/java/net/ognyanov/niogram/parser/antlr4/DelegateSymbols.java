@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.parser.antlr4;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+
+import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.AtomContext;
+import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.GrammarSpecContext;
+import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.IdentifierContext;
+import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.LexerAltContext;
+import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.LexerAltListContext;
+import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.LexerAtomContext;
+import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.LexerElementContext;
+import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.LexerRuleSpecContext;
+import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.ModeSpecContext;
+import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.OptionContext;
+import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.ParserRuleSpecContext;
+import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.PrequelConstructContext;
+import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.TerminalContext;
+import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.TokensSpecContext;
+
+/**
+ * The symbols of a delegate grammar in the order in which the
+ * symbol collector meets them. They do not depend on the importing
+ * grammar, so they are collected once per delegate and replayed
+ * for each grammar which imports it.
+ *
+ * @author Nikolay Ognyanov
+ */
+final class DelegateSymbols
+{
+    /**
+     * The kinds of collected symbols.
+     */
+    enum Kind
+    {
+        /** A terminal declared in a tokens section. */
+        TOKEN,
+        /** The start of a nonterminal rule. */
+        PARSER_RULE,
+        /** The start of a terminal rule. */
+        LEXER_RULE,
+        /** The end of a rule. */
+        RULE_END,
+        /** A literal which defines a terminal rule. */
+        LITERAL_DEFINITION,
+        /** An option of a rule. */
+        OPTION,
+        /** A reference to a nonterminal. */
+        RULE_REF,
+        /** A reference to a terminal. */
+        TOKEN_REF,
+        /** A literal used in a nonterminal rule. */
+        LITERAL
+    }
+
+    /**
+     * A collected symbol.
+     */
+    static final class Symbol
+    {
+        private final Kind              kind;
+        private final String            name;
+        private final String            text;
+        private final ParserRuleContext context;
+        private final int               line;
+        private final int               position;
+
+        private Symbol(Kind kind, String name, String text,
+                       ParserRuleContext context, int line, int position)
+        {
+            this.kind = kind;
+            this.name = name;
+            this.text = text;
+            this.context = context;
+            this.line = line;
+            this.position = position;
+        }
+
+        Kind getKind()
+        {
+            return kind;
+        }
+
+        /**
+         * Retrieves the name of the symbol. For references this
+         * is the referenced name and may be null.
+         *
+         * @return the name of the symbol
+         */
+        String getName()
+        {
+            return name;
+        }
+
+        /**
+         * Retrieves the text of the parse tree node of the symbol.
+         *
+         * @return the text of the node
+         */
+        String getText()
+        {
+            return text;
+        }
+
+        ParserRuleContext getContext()
+        {
+            return context;
+        }
+
+        int getLine()
+        {
+            return line;
+        }
+
+        int getPosition()
+        {
+            return position;
+        }
+    }
+
+    private final List<Symbol> tokens;
+    private final List<Symbol> rules;
+
+    DelegateSymbols(GrammarSpecContext parseTree)
+    {
+        Collector collector = new Collector();
+        if (parseTree != null) {
+            for (PrequelConstructContext prequel : parseTree
+                .prequelConstruct()) {
+                if (prequel.tokensSpec() != null) {
+                    collector.visit(prequel.tokensSpec());
+                }
+            }
+            if (parseTree.rules() != null) {
+                collector.visit(parseTree.rules());
+            }
+            for (ModeSpecContext modeSpec : parseTree.modeSpec()) {
+                collector.visit(modeSpec);
+            }
+        }
+        tokens = Collections.unmodifiableList(collector.tokens);
+        rules = Collections.unmodifiableList(collector.rules);
+    }
+
+    /**
+     * Retrieves the terminals declared in the tokens sections.
+     *
+     * @return the declared terminals
+     */
+    List<Symbol> getTokens()
+    {
+        return tokens;
+    }
+
+    /**
+     * Retrieves the rules with the symbols they define and use.
+     * The symbols of a rule follow its start and precede its end.
+     *
+     * @return the symbols of the rules
+     */
+    List<Symbol> getRules()
+    {
+        return rules;
+    }
+
+    private static final class Collector
+        extends ANTLRv4ParserBaseVisitor<Object>
+    {
+        private final List<Symbol> tokens = new ArrayList<Symbol>();
+        private final List<Symbol> rules  = new ArrayList<Symbol>();
+
+        private void add(Kind kind, String name, String text,
+                         ParserRuleContext context)
+        {
+            rules.add(new Symbol(kind, name, text, context,
+                context.start.getLine(),
+                context.start.getCharPositionInLine()));
+        }
+
+        @Override
+        public Object visitTokensSpec(TokensSpecContext ctx)
+        {
+            if (ctx.idList() != null) {
+                for (IdentifierContext id : ctx.idList().identifier()) {
+                    tokens.add(new Symbol(Kind.TOKEN, id.getText(),
+                        id.getText(), id, id.start.getLine(),
+                        id.start.getCharPositionInLine()));
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Object visitParserRuleSpec(ParserRuleSpecContext ctx)
+        {
+            String name = ctx.RULE_REF().getText();
+            rules.add(new Symbol(Kind.PARSER_RULE, name, name, ctx,
+                ctx.RULE_REF().getSymbol().getLine(),
+                ctx.RULE_REF().getSymbol().getCharPositionInLine()));
+            visitChildren(ctx);
+            add(Kind.RULE_END, name, name, ctx);
+            return null;
+        }
+
+        @Override
+        public Object visitLexerRuleSpec(LexerRuleSpecContext ctx)
+        {
+            String name = ctx.TOKEN_REF().getText();
+            rules.add(new Symbol(Kind.LEXER_RULE, name, name, ctx,
+                ctx.TOKEN_REF().getSymbol().getLine(),
+                ctx.TOKEN_REF().getSymbol().getCharPositionInLine()));
+            visitChildren(ctx);
+            add(Kind.RULE_END, name, name, ctx);
+            return null;
+        }
+
+        @Override
+        public Object visitLexerAltList(LexerAltListContext ctx)
+        {
+            List<LexerAltContext> alts = ctx.lexerAlt();
+            if (alts != null && alts.size() == 1) {
+                LexerAltContext lalt = alts.get(0);
+                if (lalt != null && lalt.lexerElements() != null
+                        && lalt.lexerElements().lexerElement() != null) {
+                    List<LexerElementContext> lels =
+                        lalt.lexerElements().lexerElement();
+                    if (lels != null && lels.size() == 1) {
+                        LexerAtomContext atom = lels.get(0).lexerAtom();
+                        if (atom != null && atom.terminal() != null
+                                && atom.terminal()
+                                    .STRING_LITERAL() != null) {
+                            String literal =
+                                atom.terminal().STRING_LITERAL().getText();
+                            add(Kind.LITERAL_DEFINITION, literal, literal,
+                                ctx);
+                        }
+                    }
+                }
+            }
+            return visitChildren(ctx);
+        }
+
+        @Override
+        public Object visitOption(OptionContext ctx)
+        {
+            add(Kind.OPTION, null, ctx.getText(), ctx);
+            return null;
+        }
+
+        @Override
+        public Object visitAtom(AtomContext ctx)
+        {
+            if (ctx.ruleref() != null) {
+                String ruleRef = null;
+                if (ctx.ruleref().RULE_REF() != null) {
+                    ruleRef = ctx.ruleref().RULE_REF().getText();
+                }
+                add(Kind.RULE_REF, ruleRef, ctx.getText(), ctx);
+            }
+            else if (ctx.terminal() != null) {
+                TerminalContext tctx = ctx.terminal();
+                if (tctx.TOKEN_REF() != null) {
+                    add(Kind.TOKEN_REF, tctx.TOKEN_REF().getText(),
+                        ctx.getText(), ctx);
+                }
+                else if (tctx.STRING_LITERAL() != null) {
+                    add(Kind.LITERAL, tctx.STRING_LITERAL().getText(),
+                        ctx.getText(), ctx);
+                }
+            }
+            return visitChildren(ctx);
+        }
+    }
+}
@@ -38,16 +38,22 @@ class DotStringVisitor
     }
 
     public String toDotString(ParseTree tree, boolean excludeTerminals)
+    {
+        DotStringBuilder result = new DotStringBuilder();
+        write(tree, excludeTerminals, result);
+        return result.toString();
+    }
+
+    public void write(ParseTree tree, boolean excludeTerminals,
+                      DotStringBuilder target)
     {
         this.excludeTerminals = excludeTerminals;
-        sb = new DotStringBuilder();
+        sb = target;
         firstPass = true;
         visit(tree);
         firstPass = false;
         visit(tree);
-        String result = sb.toString();
         sb = null;
-        return result;
     }
 
     @Override
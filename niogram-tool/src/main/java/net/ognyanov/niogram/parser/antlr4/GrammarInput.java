@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.parser.antlr4;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CodePointBuffer;
+import org.antlr.v4.runtime.CodePointCharStream;
+
+import net.ognyanov.niogram.util.FileSystemLocator;
+import net.ognyanov.niogram.util.NioGramException;
+import net.ognyanov.niogram.util.ResourceLocator;
+
+/**
+ * Reads grammar and token files into ANTLR character streams.<p>
+ * Files located by a {@link FileSystemLocator} are read in one call
+ * instead of through an input stream. Content which is pure ASCII,
+ * as most grammars are, is wrapped in an 8 bit code point buffer
+ * without being decoded or copied. Other content is decoded as UTF-8.
+ *
+ * @author Nikolay Ognyanov
+ */
+final class GrammarInput
+{
+    private static final long ASCII_MASK = 0x8080808080808080L;
+
+    private GrammarInput()
+    {
+    }
+
+    /**
+     * Opens a file as a character stream named after the file.
+     *
+     * @param fileName the name of the file
+     * @param locator the resource locator
+     * @return the character stream
+     * @throws IOException if the file can not be read
+     */
+    static CharStream open(String fileName, ResourceLocator locator)
+        throws IOException
+    {
+        if (locator instanceof FileSystemLocator) {
+            byte[] content =
+                ((FileSystemLocator) locator).getResourceAsBytes(fileName);
+            if (content == null) {
+                throw new IOException("file not found");
+            }
+            return fromBytes(content, fileName);
+        }
+        InputStream is = locator.getResourceAsStream(fileName);
+        if (is == null) {
+            throw new IOException("file not found");
+        }
+        return fromBytes(read(is), fileName);
+    }
+
+    /**
+     * Reads the content of a file.
+     *
+     * @param fileName the name of the file
+     * @param locator the resource locator
+     * @return the content or null if the file can not be read
+     */
+    static byte[] read(String fileName, ResourceLocator locator)
+    {
+        if (locator instanceof FileSystemLocator) {
+            return ((FileSystemLocator) locator).getResourceAsBytes(fileName);
+        }
+        InputStream is = locator.getResourceAsStream(fileName);
+        if (is == null) {
+            return null;
+        }
+        try {
+            return read(is);
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates a character stream over UTF-8 encoded content.
+     *
+     * @param content the content
+     * @param name the name of the stream
+     * @return the character stream
+     */
+    static CharStream fromBytes(byte[] content, String name)
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        if (isAscii(buffer)) {
+            return CodePointCharStream
+                .fromBuffer(CodePointBuffer.withBytes(buffer), name);
+        }
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars;
+        try {
+            chars = decoder.decode(buffer);
+        }
+        catch (CharacterCodingException e) {
+            // can not happen with CodingErrorAction.REPLACE
+            throw new NioGramException(e);
+        }
+        CodePointBuffer.Builder builder =
+            CodePointBuffer.builder(chars.remaining());
+        builder.append(chars);
+        return CodePointCharStream.fromBuffer(builder.build(), name);
+    }
+
+    private static boolean isAscii(ByteBuffer buffer)
+    {
+        ByteBuffer view = buffer.duplicate().order(ByteOrder.nativeOrder());
+        int i = view.position();
+        int limit = view.limit();
+        for (; i + 8 <= limit; i += 8) {
+            if ((view.getLong(i) & ASCII_MASK) != 0) {
+                return false;
+            }
+        }
+        for (; i < limit; i++) {
+            if (view.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] read(InputStream is)
+        throws IOException
+    {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = is.read(buffer)) >= 0) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        }
+        finally {
+            is.close();
+        }
+    }
+}
@@ -38,6 +38,13 @@ abstract class LexerAdaptor
         this._currentRuleType = ruleType;
     }
 
+    @Override
+    public void reset()
+    {
+        super.reset();
+        _currentRuleType = Token.INVALID_TYPE;
+    }
+
     protected void handleBeginArgument()
     {
         if (inLexerRule()) {
@@ -6,9 +6,11 @@
  */
 package net.ognyanov.niogram.parser.antlr4;
 
-import java.io.IOException;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.Vocabulary;
 import org.antlr.v4.runtime.tree.ErrorNode;
 import org.antlr.v4.runtime.tree.TerminalNode;
@@ -26,8 +28,10 @@ import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.LexerAltListContext;
 import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.LexerAtomContext;
 import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.LexerElementContext;
 import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.LexerRuleSpecContext;
+import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.ModeSpecContext;
 import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.OptionContext;
 import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.ParserRuleSpecContext;
+import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.PrequelConstructContext;
 import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.TerminalContext;
 import net.ognyanov.niogram.parser.antlr4.ANTLRv4Parser.TokensSpecContext;
 import net.ognyanov.niogram.util.Pair;
@@ -51,15 +55,34 @@ class SymbolCollector
     private int                 vocabularyLine    = 0;
     private int                 vocabularyPos     = 0;
 
+    private ErrorDispatcher     dispatcher        = null;
+    private boolean             inDelegate        = false;
+    private Set<String>         delegateRuleNames = new HashSet<String>();
+
     public SymbolCollector(Antlr4ToAstParser parser,
                            ANTLRv4Parser parseTreeParser)
     {
         this.parser = parser;
         this.parseTreeParser = parseTreeParser;
+        this.dispatcher = parser;
         vocabulary = parseTreeParser.getVocabulary();
         isNioGram = parser.getMode() == Antlr4ToAstParser.Mode.NioGram;
     }
 
+    void reset()
+    {
+        isNioGram = parser.getMode() == Antlr4ToAstParser.Mode.NioGram;
+        firstPass = false;
+        inNonterminalRule = false;
+        inTerminalRule = false;
+        ruleName = null;
+        vocabularyLine = 0;
+        vocabularyPos = 0;
+        dispatcher = parser;
+        inDelegate = false;
+        delegateRuleNames.clear();
+    }
+
     @Override
     public Object visitGrammarSpec(GrammarSpecContext ctx)
     {
@@ -79,12 +102,120 @@ class SymbolCollector
         // collect symbols
         firstPass = true;
         visitChildren(ctx);
+        List<DelegateGrammar> delegates = parser.loadDelegateGrammars();
+        for (DelegateGrammar delegate : delegates) {
+            visitDelegate(delegate);
+        }
         firstPass = false;
         // check for unknown terminals and nonterminals
         visitChildren(ctx);
+        for (DelegateGrammar delegate : delegates) {
+            visitDelegate(delegate);
+        }
         return null;
     }
 
+    /*
+     * Replays the rules and the token declarations of an imported
+     * grammar from its collected symbols. Its options and imports
+     * are not visited. Rules already defined by the importing
+     * grammars are overridden and skipped by all further processing.
+     */
+    private void visitDelegate(DelegateGrammar delegate)
+    {
+        DelegateSymbols symbols = delegate.getSymbols();
+        dispatcher = parser.getDelegateDispatcher(delegate);
+        inDelegate = true;
+        delegateRuleNames.clear();
+        if (firstPass) {
+            for (DelegateSymbols.Symbol token : symbols.getTokens()) {
+                declareTerminal(token.getName(), token.getLine(),
+                    token.getPosition());
+            }
+        }
+        boolean skipped = false;
+        for (DelegateSymbols.Symbol symbol : symbols.getRules()) {
+            switch (symbol.getKind()) {
+            case PARSER_RULE:
+                if (firstPass) {
+                    skipped = !startNonterminalRule(symbol.getName(),
+                        symbol.getContext(), symbol.getLine(),
+                        symbol.getPosition());
+                }
+                else {
+                    skipped = parser.getOverriddenRules()
+                        .contains(symbol.getContext());
+                }
+                break;
+            case LEXER_RULE:
+                if (firstPass) {
+                    skipped = !startTerminalRule(symbol.getName(),
+                        symbol.getContext(), symbol.getLine(),
+                        symbol.getPosition());
+                }
+                else {
+                    skipped = true;
+                }
+                break;
+            case RULE_END:
+                if (firstPass && !skipped) {
+                    endRule();
+                }
+                skipped = false;
+                break;
+            default:
+                if (!skipped) {
+                    replay(symbol);
+                }
+            }
+        }
+        inDelegate = false;
+        dispatcher = parser;
+    }
+
+    private void replay(DelegateSymbols.Symbol symbol)
+    {
+        int line = symbol.getLine();
+        int position = symbol.getPosition();
+        if (firstPass) {
+            switch (symbol.getKind()) {
+            case LITERAL_DEFINITION:
+                defineLiteral(symbol.getName());
+                break;
+            case OPTION:
+                visitOption((OptionContext) symbol.getContext());
+                break;
+            case RULE_REF:
+                useNonterminal(symbol.getName());
+                break;
+            case TOKEN_REF:
+                parser.getUsedTerminalNames().add(symbol.getName());
+                break;
+            case LITERAL:
+                useLiteral(symbol.getName(), line, position);
+                break;
+            default:
+            }
+        }
+        else {
+            switch (symbol.getKind()) {
+            case RULE_REF:
+                checkNonterminal(symbol.getName(), line, position);
+                break;
+            case TOKEN_REF:
+                checkTerminal(symbol.getText(), line, position);
+                break;
+            default:
+            }
+        }
+    }
+
+    private boolean isOverridden(String name, Set<String> knownNames)
+    {
+        return inDelegate && knownNames.contains(name)
+                && !delegateRuleNames.contains(name);
+    }
+
     @Override
     public Object visitOption(OptionContext ctx)
     {
@@ -121,7 +252,7 @@ class SymbolCollector
                         int position = ctx.start.getCharPositionInLine();
                         String message =
                             "Invalid value for option k : " + optionValue;
-                        parser.notifyErrorListeners(
+                        dispatcher.notifyErrorListeners(
                             ErrorType.IvalidOptionValue, line,
                             position, message);
 
@@ -144,25 +275,18 @@ class SymbolCollector
     @Override
     public Object visitDelegateGrammars(ANTLRv4Parser.DelegateGrammarsContext ctx)
     {
-        if (firstPass) {
-            int line = ctx.start.getLine();
-            int position = ctx.start.getCharPositionInLine();
-            String message = "NioGram does not support delegate grammars";
-            parser.notifyErrorListeners(ErrorType.FailedGrammarImports, line,
-                position, message);
-            return visitChildren(ctx);
-        }
-        else {
-            return visitChildren(ctx);
-        }
+        return visitChildren(ctx);
     }
 
     @Override
     public Object visitDelegateGrammar(DelegateGrammarContext ctx)
     {
         if (firstPass) {
-            String delegateGrammar = ctx.identifier(0).getText();
-            parser.getDelegateGrammars().add(delegateGrammar);
+            if (!ctx.identifier().isEmpty()) {
+                parser.getDelegateGrammars()
+                    .add(DelegateGrammar.importName(ctx));
+                parser.getDelegateContexts().add(ctx);
+            }
             return visitChildren(ctx);
         }
         else {
@@ -177,30 +301,8 @@ class SymbolCollector
             IdListContext idList = ctx.idList();
             if (idList != null) {
                 for (IdentifierContext id : idList.identifier()) {
-                    String idName = id.getText();
-                    int line = id.start.getLine();
-                    int position = id.start.getCharPositionInLine();
-                    if (!Character.isUpperCase(idName.charAt(0))) {
-                        String message =
-                            "terminal name starting with a lower case letter ignored : "
-                                    + idName;
-                        parser.notifyErrorListeners(ErrorType.SyntaxErrors,
-                            line,
-                            position, message);
-                    }
-                    else {
-                        if (parser.getKnownTerminalNames().contains(idName)) {
-                            parser.getDuplicateTerminalNames().add(idName);
-                            String message = "duplicate terminal " + idName;
-                            parser.notifyErrorListeners(
-                                ErrorType.DuplicateTerminals, line, position,
-                                message);
-                        }
-                        else {
-                            parser.getDeclaredTerminalNames().add(idName);
-                            parser.getKnownTerminalNames().add(idName);
-                        }
-                    }
+                    declareTerminal(id.getText(), id.start.getLine(),
+                        id.start.getCharPositionInLine());
                 }
             }
             return null;
@@ -210,30 +312,48 @@ class SymbolCollector
         }
     }
 
+    private void declareTerminal(String idName, int line, int position)
+    {
+        if (!Character.isUpperCase(idName.charAt(0))) {
+            String message =
+                "terminal name starting with a lower case letter ignored : "
+                        + idName;
+            dispatcher.notifyErrorListeners(ErrorType.SyntaxErrors,
+                line,
+                position, message);
+        }
+        else if (isOverridden(idName,
+            parser.getKnownTerminalNames())) {
+            return;
+        }
+        else {
+            if (parser.getKnownTerminalNames().contains(idName)) {
+                parser.getDuplicateTerminalNames().add(idName);
+                String message = "duplicate terminal " + idName;
+                dispatcher.notifyErrorListeners(
+                    ErrorType.DuplicateTerminals, line, position,
+                    message);
+            }
+            else {
+                parser.getDeclaredTerminalNames().add(idName);
+                parser.getKnownTerminalNames().add(idName);
+            }
+        }
+    }
+
     @Override
     public Object visitParserRuleSpec(ParserRuleSpecContext ctx)
     {
         if (firstPass) {
-            ruleName = ctx.RULE_REF().getText();
-            if (parser.getKnownNonterminalNames().contains(ruleName)) {
-                parser.getDuplicateNonterminalNames().add(ruleName);
-                int line = ctx.RULE_REF().getSymbol().getLine();
-                int position =
-                    ctx.RULE_REF().getSymbol().getCharPositionInLine();
-                String message =
-                    "duplicate nonterminal rule " + ruleName + " ignored.";
-                parser.notifyErrorListeners(ErrorType.DuplicateNonterminals,
-                    line,
-                    position, message);
-            }
-            else {
-                parser.getKnownNonterminalNames().add(ruleName);
-                parser.getDeclaredNonterminalNames().add(ruleName);
+            if (startNonterminalRule(ctx.RULE_REF().getText(), ctx,
+                ctx.RULE_REF().getSymbol().getLine(),
+                ctx.RULE_REF().getSymbol().getCharPositionInLine())) {
+                visitChildren(ctx);
+                endRule();
             }
-            inNonterminalRule = true;
-            visitChildren(ctx);
-            inNonterminalRule = false;
-            ruleName = null;
+            return null;
+        }
+        else if (parser.getOverriddenRules().contains(ctx)) {
             return null;
         }
         else {
@@ -241,29 +361,47 @@ class SymbolCollector
         }
     }
 
+    /*
+     * Returns false if the rule is overridden and must be skipped.
+     */
+    private boolean startNonterminalRule(String name, ParserRuleContext ctx,
+                                         int line, int position)
+    {
+        ruleName = name;
+        if (isOverridden(ruleName, parser.getKnownNonterminalNames())) {
+            parser.getOverriddenRules().add(ctx);
+            ruleName = null;
+            return false;
+        }
+        if (inDelegate) {
+            delegateRuleNames.add(ruleName);
+        }
+        if (parser.getKnownNonterminalNames().contains(ruleName)) {
+            parser.getDuplicateNonterminalNames().add(ruleName);
+            String message =
+                "duplicate nonterminal rule " + ruleName + " ignored.";
+            dispatcher.notifyErrorListeners(ErrorType.DuplicateNonterminals,
+                line,
+                position, message);
+        }
+        else {
+            parser.getKnownNonterminalNames().add(ruleName);
+            parser.getDeclaredNonterminalNames().add(ruleName);
+        }
+        inNonterminalRule = true;
+        return true;
+    }
+
     @Override
     public Object visitLexerRuleSpec(LexerRuleSpecContext ctx)
     {
         if (firstPass) {
-            inTerminalRule = true;
-            ruleName = ctx.TOKEN_REF().getText();
-            if (parser.getKnownTerminalNames().contains(ruleName)) {
-                parser.getDuplicateTerminalNames().add(ruleName);
-                int line = ctx.TOKEN_REF().getSymbol().getLine();
-                int position =
-                    ctx.TOKEN_REF().getSymbol().getCharPositionInLine();
-                String message = "duplicate terminal " + ruleName;
-                parser.notifyErrorListeners(ErrorType.DuplicateTerminals, line,
-                    position, message);
-            }
-            else {
-                parser.getKnownTerminalNames().add(ruleName);
-                parser.getDefinedTerminalNames().add(ruleName);
+            if (startTerminalRule(ctx.TOKEN_REF().getText(), ctx,
+                ctx.TOKEN_REF().getSymbol().getLine(),
+                ctx.TOKEN_REF().getSymbol().getCharPositionInLine())) {
+                visitChildren(ctx);
+                endRule();
             }
-
-            visitChildren(ctx);
-            inTerminalRule = false;
-            ruleName = null;
             return null;
         }
         else {
@@ -271,6 +409,42 @@ class SymbolCollector
         }
     }
 
+    /*
+     * Returns false if the rule is overridden and must be skipped.
+     */
+    private boolean startTerminalRule(String name, ParserRuleContext ctx,
+                                      int line, int position)
+    {
+        ruleName = name;
+        if (isOverridden(ruleName, parser.getKnownTerminalNames())) {
+            parser.getOverriddenRules().add(ctx);
+            ruleName = null;
+            return false;
+        }
+        if (inDelegate) {
+            delegateRuleNames.add(ruleName);
+        }
+        inTerminalRule = true;
+        if (parser.getKnownTerminalNames().contains(ruleName)) {
+            parser.getDuplicateTerminalNames().add(ruleName);
+            String message = "duplicate terminal " + ruleName;
+            dispatcher.notifyErrorListeners(ErrorType.DuplicateTerminals,
+                line, position, message);
+        }
+        else {
+            parser.getKnownTerminalNames().add(ruleName);
+            parser.getDefinedTerminalNames().add(ruleName);
+        }
+        return true;
+    }
+
+    private void endRule()
+    {
+        inNonterminalRule = false;
+        inTerminalRule = false;
+        ruleName = null;
+    }
+
     @Override
     public Object visitLexerAltList(LexerAltListContext ctx)
     {
@@ -289,8 +463,7 @@ class SymbolCollector
                                     .STRING_LITERAL() != null) {
                             String literal =
                                 atom.terminal().STRING_LITERAL().getText();
-                            parser.getLiteralToTerminal().put(literal,
-                                ruleName);
+                            defineLiteral(literal);
                         }
                     }
                 }
@@ -302,109 +475,127 @@ class SymbolCollector
         }
     }
 
+    private void defineLiteral(String literal)
+    {
+        parser.getLiteralToTerminal().put(literal, ruleName);
+    }
+
     @Override
     public Object visitAtom(AtomContext ctx)
     {
+        int line = ctx.start.getLine();
+        int position = ctx.start.getCharPositionInLine();
         if (firstPass) {
             if (ctx.ruleref() != null) {
                 String ruleRef = null;
                 if (ctx.ruleref().RULE_REF() != null) {
                     ruleRef = ctx.ruleref().RULE_REF().getText();
                 }
-                if (ruleRef != null) {
-                    parser.getUsedNonterminalNames().add(ruleRef);
-                }
+                useNonterminal(ruleRef);
             }
             else if (ctx.terminal() != null) {
                 TerminalContext tctx = ctx.terminal();
-                String literal = null;
                 if (tctx.TOKEN_REF() != null) {
-                    String tokenRef = null;
-                    tokenRef = tctx.TOKEN_REF().getText();
-                    if (tokenRef != null) {
-                        parser.getUsedTerminalNames().add(tokenRef);
-                    }
+                    parser.getUsedTerminalNames()
+                        .add(tctx.TOKEN_REF().getText());
                 }
                 else if (tctx.STRING_LITERAL() != null) {
-                    literal = tctx.STRING_LITERAL().getText();
-                }
-                if (inNonterminalRule && literal != null) {
-                    parser.getUsedStringLiterals().add(literal);
-                    int line = ctx.start.getLine();
-                    int position = ctx.start.getCharPositionInLine();
-                    boolean unknownLiteral =
-                        parser.getLiteralToTerminal()
-                            .getSecond(literal) == null;
-                    if (unknownLiteral) {
-                        if (isNioGram) {
-                            String message =
-                                "literals are not allowed in nonterminal rules";
-                            parser.notifyErrorListeners(
-                                ErrorType.NonterminalLiterals,
-                                line,
-                                position, message);
-                        }
-                        else {
-                            if (!(Antlr4ToAstParser.GrammarType.COMBINED == parser
-                                .getGrammarType())) {
-                                String message =
-                                    "literals are not allowed in nonterminal rules";
-                                parser.notifyErrorListeners(
-                                    ErrorType.NonterminalLiterals,
-                                    line,
-                                    position, message);
-
-                            }
-                            else {
-                                /*
-                                Seems overly irritating.
-                                String message =
-                                "NioGram discourages use of literals in nonterminal rules";
-                                parser.warnErrorListeners(ErrorType.NonterminalLiterals,
-                                line,
-                                position, message);
-                                */
-                            }
-                        }
-                    }
+                    useLiteral(tctx.STRING_LITERAL().getText(), line,
+                        position);
                 }
             }
             return visitChildren(ctx);
         }
         else {
-            int line = ctx.start.getLine();
-            int position = ctx.start.getCharPositionInLine();
             if (ctx.ruleref() != null) {
                 String ruleRef = null;
                 if (ctx.ruleref().RULE_REF() != null) {
                     ruleRef = ctx.ruleref().RULE_REF().getText();
                 }
-                if (!parser.getKnownNonterminalNames()
-                    .contains(ruleRef)) {
-                    String message = "undefined nonterminal " + ruleRef;
-                    parser.notifyErrorListeners(
-                        ErrorDispatcher.ErrorType.UnknownNonterminals,
-                        line,
-                        position, message);
-                }
-
+                checkNonterminal(ruleRef, line, position);
             }
             else if (ctx.terminal() != null
                     && ctx.terminal().TOKEN_REF() != null) {
-                String terminalName = ctx.getText();
-                if (!parser.getKnownTerminalNames().contains(terminalName) &&
-                        !"EOF".equals(terminalName)) {
+                checkTerminal(ctx.getText(), line, position);
+            }
+            return visitChildren(ctx);
+        }
+
+    }
+
+    private void useNonterminal(String ruleRef)
+    {
+        if (ruleRef != null) {
+            parser.getUsedNonterminalNames().add(ruleRef);
+        }
+    }
+
+    private void useLiteral(String literal, int line, int position)
+    {
+        if (!inNonterminalRule) {
+            return;
+        }
+        parser.getUsedStringLiterals().add(literal);
+        boolean unknownLiteral =
+            parser.getLiteralToTerminal()
+                .getSecond(literal) == null;
+        if (unknownLiteral) {
+            if (isNioGram) {
+                String message =
+                    "literals are not allowed in nonterminal rules";
+                dispatcher.notifyErrorListeners(
+                    ErrorType.NonterminalLiterals,
+                    line,
+                    position, message);
+            }
+            else {
+                if (!(Antlr4ToAstParser.GrammarType.COMBINED == parser
+                    .getGrammarType())) {
                     String message =
-                        "undefined terminal " + terminalName;
-                    parser.notifyErrorListeners(
-                        ErrorDispatcher.ErrorType.UnknownTerminals,
+                        "literals are not allowed in nonterminal rules";
+                    dispatcher.notifyErrorListeners(
+                        ErrorType.NonterminalLiterals,
                         line,
                         position, message);
+
+                }
+                else {
+                    /*
+                    Seems overly irritating.
+                    String message =
+                    "NioGram discourages use of literals in nonterminal rules";
+                    parser.warnErrorListeners(ErrorType.NonterminalLiterals,
+                    line,
+                    position, message);
+                    */
                 }
             }
-            return visitChildren(ctx);
         }
+    }
+
+    private void checkNonterminal(String ruleRef, int line, int position)
+    {
+        if (!parser.getKnownNonterminalNames()
+            .contains(ruleRef)) {
+            String message = "undefined nonterminal " + ruleRef;
+            dispatcher.notifyErrorListeners(
+                ErrorDispatcher.ErrorType.UnknownNonterminals,
+                line,
+                position, message);
+        }
+    }
 
+    private void checkTerminal(String terminalName, int line, int position)
+    {
+        if (!parser.getKnownTerminalNames().contains(terminalName) &&
+                !"EOF".equals(terminalName)) {
+            String message =
+                "undefined terminal " + terminalName;
+            dispatcher.notifyErrorListeners(
+                ErrorDispatcher.ErrorType.UnknownTerminals,
+                line,
+                position, message);
+        }
     }
 
     @Override
@@ -422,7 +613,7 @@ class SymbolCollector
                 if (!parser.getKnownTerminalNames().contains(terminalName) &&
                         !"EOF".equals(terminalName)) {
                     String message = "undefined terminal " + terminalName;
-                    parser.notifyErrorListeners(
+                    dispatcher.notifyErrorListeners(
                         ErrorDispatcher.ErrorType.UnknownTerminals, line,
                         position, message);
                 }
@@ -471,23 +662,27 @@ class SymbolCollector
 
     private void loadVocabulary(String vocabularyFile)
     {
-        TokensParser tokenParser = null;
         String fullName = vocabularyFile + ".tokens";
-        try {
-            tokenParser =
-                new TokensParser(fullName, parser);
-        }
-        catch (IOException e) {
-            parser.notifyErrorListeners(ErrorType.FailedTokenImports,
+        byte[] content =
+            GrammarInput.read(fullName, parser.getResourceLocator());
+        if (content == null) {
+            dispatcher.notifyErrorListeners(ErrorType.FailedTokenImports,
                 vocabularyLine, vocabularyPos,
                 "failed to open token vocabulary " + fullName);
+            return;
         }
-        if (tokenParser != null) {
-            tokenParser.removeErrorListeners();
-            for (ErrorListener el : parser.getErrorListeners()) {
-                tokenParser.addErrorListener(el);
-            }
-            tokenParser.parse();
+        TokensVocabulary vocabulary =
+            TokensVocabulary.load(fullName, content);
+        if (vocabulary != null) {
+            vocabulary.apply(parser, new DelegateDispatcher(parser, fullName));
+            return;
+        }
+        TokensParser tokenParser = new TokensParser(
+            GrammarInput.fromBytes(content, fullName), fullName, parser);
+        tokenParser.removeErrorListeners();
+        for (ErrorListener el : parser.getErrorListeners()) {
+            tokenParser.addErrorListener(el);
         }
+        tokenParser.parse();
     }
 }
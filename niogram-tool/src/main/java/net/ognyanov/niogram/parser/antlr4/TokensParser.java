@@ -7,24 +7,23 @@
 package net.ognyanov.niogram.parser.antlr4;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.antlr.v4.runtime.CharStream;
-import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
 
 import net.ognyanov.niogram.parser.BaseErrorListener;
 import net.ognyanov.niogram.parser.ErrorDispatcher;
 import net.ognyanov.niogram.parser.ErrorListener;
 import net.ognyanov.niogram.parser.antlr4.ANTLRv4TokensParser.LineContext;
 import net.ognyanov.niogram.parser.antlr4.ANTLRv4TokensParser.TokenSpecsContext;
-import net.ognyanov.niogram.util.BidirectionalMap;
-import net.ognyanov.niogram.util.Pair;
 
 class TokensParser
     extends ANTLRv4TokensBaseVisitor<Object>
@@ -44,20 +43,27 @@ class TokensParser
     private ANTLRv4TokensParser                    tokenParser         = null;
     private ANTLRv4TokensLexer                     tokenLexer          = null;
 
-    private BidirectionalMap<String, Integer>      nameToType          =
-        new BidirectionalMap<String, Integer>();
+    private List<String>                           names               =
+        new ArrayList<String>();
+    private List<Integer>                          types               =
+        new ArrayList<Integer>();
+    private List<Integer>                          lines               =
+        new ArrayList<Integer>();
+    private List<Integer>                          positions           =
+        new ArrayList<Integer>();
 
     public TokensParser(String fileName, Antlr4ToAstParser grammarParser)
         throws IOException
+    {
+        this(GrammarInput.open(fileName, grammarParser.getResourceLocator()),
+            fileName, grammarParser);
+    }
+
+    public TokensParser(CharStream input, String fileName,
+                        Antlr4ToAstParser grammarParser)
     {
         this.fileName = fileName;
         this.grammarParser = grammarParser;
-        InputStream is =
-            grammarParser.getResourceLocator().getResourceAsStream(fileName);
-        if (is == null) {
-            throw new IOException("file not found");
-        }
-        CharStream input = CharStreams.fromStream(is);
         tokenLexer = new ANTLRv4TokensLexer(input);
         CommonTokenStream tokens = new CommonTokenStream(tokenLexer);
         tokenParser = new ANTLRv4TokensParser(tokens);
@@ -73,84 +79,35 @@ class TokensParser
     {
         ParseTree parseTree = tokenParser.tokenSpecs();
         visitTokenSpecs((TokenSpecsContext) parseTree);
+        int size = names.size();
+        int[] typeArray = new int[size];
+        int[] lineArray = new int[size];
+        int[] positionArray = new int[size];
+        for (int i = 0; i < size; i++) {
+            typeArray[i] = types.get(i);
+            lineArray[i] = lines.get(i);
+            positionArray[i] = positions.get(i);
+        }
+        TokensVocabulary vocabulary =
+            new TokensVocabulary(null, names.toArray(new String[size]),
+                typeArray, lineArray, positionArray);
+        vocabulary.apply(grammarParser, this);
     }
 
     @Override
     public Object visitLine(LineContext ctx)
     {
-        String name = null;
-        String intText = null;
         if (ctx.name() != null &&
                 ctx.INTEGER() != null &&
                 (ctx.name().IDENTIFIER() != null
                         || ctx.name().STRING_LITERAL() != null)) {
-            int line = 0;
-            int position = 0;
-            boolean isIdentifier = false;
-            if (ctx.name().IDENTIFIER() != null) {
-                name = ctx.name().IDENTIFIER().getText();
-                isIdentifier = true;
-                line = ctx.name().IDENTIFIER().getSymbol().getLine();
-                position = ctx.name().IDENTIFIER().getSymbol()
-                    .getCharPositionInLine();
-            }
-            else if (ctx.name().STRING_LITERAL() != null) {
-                name = ctx.name().STRING_LITERAL().getText();
-                line = ctx.name().STRING_LITERAL().getSymbol().getLine();
-                position = ctx.name().STRING_LITERAL().getSymbol()
-                    .getCharPositionInLine();
-            }
-            else {
-                // must be syntax error
-                // already reported by the parse tree parser
-            }
-            intText = ctx.INTEGER().getText();
-            int intValue = Integer.valueOf(intText);
-            char c = name.charAt(0);
-            if (c != '\'' && !Character.isUpperCase(c)) {
-                String message =
-                    "terminal name starting with a lower case letter ignored : "
-                            + name + "=" + intValue;
-                notifyErrorListeners(ErrorType.SyntaxErrors, line, position,
-                    message);
-            }
-            else {
-                if (nameToType.containsFirst(name)) {
-                    grammarParser.getDuplicateTerminalNames().add(name);
-                    String message =
-                        "duplicate terminal name ignored : " + name + "="
-                                + intValue;
-                    notifyErrorListeners(ErrorType.DuplicateTerminals, line,
-                        position, message);
-                }
-                else if (isIdentifier && nameToType.containsSecond(intValue)) {
-                    String message =
-                        "duplicate terminal type ignored : " + name + "="
-                                + intValue;
-                    notifyErrorListeners(ErrorType.SyntaxErrors, line, position,
-                        message);
-                }
-                else if (isIdentifier) {
-                    grammarParser.getImportedTerminalNames()
-                        .add(new Pair<String, Integer>(name, intValue));
-                    grammarParser.getKnownTerminalNames().add(name);
-                    nameToType.put(name, intValue);
-                }
-                else {
-                    // literal
-                    String idName = nameToType.getFirst(intValue);
-                    if (idName == null) {
-                        String message =
-                            "invalid literal type ignored : " + name + "="
-                                    + intValue;
-                        notifyErrorListeners(ErrorType.SyntaxErrors, line,
-                            position, message);
-                    }
-                    else {
-                        grammarParser.getLiteralToTerminal().put(name, idName);
-                    }
-                }
-            }
+            TerminalNode name = ctx.name().IDENTIFIER() != null
+                    ? ctx.name().IDENTIFIER()
+                    : ctx.name().STRING_LITERAL();
+            names.add(name.getText());
+            types.add(Integer.valueOf(ctx.INTEGER().getText()));
+            lines.add(name.getSymbol().getLine());
+            positions.add(name.getSymbol().getCharPositionInLine());
         }
         /*
         else {
@@ -261,13 +218,12 @@ class TokensParser
     @Override
     public void registerError(ErrorType error)
     {
-        // never called - listeners report to GrammarParser
-
+        grammarParser.registerError(error);
     }
 
     @Override
     public void registerWarning(ErrorType warning)
     {
-        // never called - listeners report to GramamrParser
+        grammarParser.registerWarning(warning);
     }
 }
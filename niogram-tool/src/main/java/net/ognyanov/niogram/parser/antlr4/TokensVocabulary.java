@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.parser.antlr4;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.ognyanov.niogram.parser.ErrorDispatcher;
+import net.ognyanov.niogram.parser.ErrorDispatcher.ErrorType;
+import net.ognyanov.niogram.util.BidirectionalMap;
+import net.ognyanov.niogram.util.Pair;
+
+/**
+ * The content of an ANTLR .tokens file. Instances are immutable.
+ * The entries are validated once when the vocabulary is created
+ * and the outcome is stored with each entry, so applying a
+ * vocabulary to a grammar parser is a single pass over arrays.<p>
+ * Well formed files are read by a single pass reader and the
+ * resulting vocabularies are cached by file name and content
+ * for all parsers, keeping only the most recently used ones.
+ * Files which the reader does not accept are left to the ANTLR
+ * generated {@link TokensParser}, which reports the syntax errors.
+ *
+ * @author Nikolay Ognyanov
+ */
+final class TokensVocabulary
+{
+    private static final int                           TERMINAL        = 0;
+    private static final int                           LITERAL         = 1;
+    private static final int                           LOWER_CASE      = 2;
+    private static final int                           DUPLICATE_NAME  = 3;
+    private static final int                           DUPLICATE_TYPE  = 4;
+    private static final int                           INVALID_LITERAL = 5;
+    private static final int                           MAX_CACHED      = 64;
+
+    private static final Map<String, TokensVocabulary> cache           =
+        Collections.synchronizedMap(new Cache());
+
+    private final byte[]                               digest;
+    private final String[]                             names;
+    private final int[]                                types;
+    private final int[]                                lines;
+    private final int[]                                positions;
+    private final int[]                                kinds;
+    private final String[]                             terminals;
+
+    /*
+     * A map which drops the least recently used
+     * vocabulary when it grows past its size limit.
+     */
+    private static final class Cache
+        extends LinkedHashMap<String, TokensVocabulary>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private Cache()
+        {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(
+            Map.Entry<String, TokensVocabulary> eldest)
+        {
+            return size() > MAX_CACHED;
+        }
+    }
+
+    TokensVocabulary(byte[] digest, String[] names, int[] types,
+                     int[] lines, int[] positions)
+    {
+        this.digest = digest;
+        this.names = names;
+        this.types = types;
+        this.lines = lines;
+        this.positions = positions;
+        this.kinds = new int[names.length];
+        this.terminals = new String[names.length];
+        BidirectionalMap<String, Integer> nameToType =
+            new BidirectionalMap<String, Integer>();
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i];
+            boolean isIdentifier = name.charAt(0) != '\'';
+            if (isIdentifier && !Character.isUpperCase(name.charAt(0))) {
+                kinds[i] = LOWER_CASE;
+            }
+            else if (nameToType.containsFirst(name)) {
+                kinds[i] = DUPLICATE_NAME;
+            }
+            else if (isIdentifier && nameToType.containsSecond(types[i])) {
+                kinds[i] = DUPLICATE_TYPE;
+            }
+            else if (isIdentifier) {
+                kinds[i] = TERMINAL;
+                nameToType.put(name, types[i]);
+            }
+            else {
+                terminals[i] = nameToType.getFirst(types[i]);
+                kinds[i] = terminals[i] == null ? INVALID_LITERAL : LITERAL;
+            }
+        }
+    }
+
+    /**
+     * Retrieves the vocabulary of a .tokens file.
+     *
+     * @param fileName the name of the file
+     * @param content the content of the file
+     * @return the vocabulary or null if the file is not well formed
+     */
+    static TokensVocabulary load(String fileName, byte[] content)
+    {
+        byte[] digest = DelegateGrammarLoader.digest(content);
+        TokensVocabulary result = cache.get(fileName);
+        if (result != null && Arrays.equals(digest, result.digest)) {
+            return result;
+        }
+        result = read(digest, content);
+        if (result != null) {
+            cache.put(fileName, result);
+        }
+        return result;
+    }
+
+    /**
+     * Discards all cached vocabularies.
+     */
+    static void clearCache()
+    {
+        cache.clear();
+    }
+
+    int size()
+    {
+        return names.length;
+    }
+
+    String getName(int index)
+    {
+        return names[index];
+    }
+
+    int getType(int index)
+    {
+        return types[index];
+    }
+
+    /**
+     * Registers the terminals and literals of the vocabulary
+     * with a grammar parser and reports the ignored entries.
+     *
+     * @param parser the grammar parser
+     * @param dispatcher the dispatcher for the problems found
+     */
+    void apply(Antlr4ToAstParser parser, ErrorDispatcher dispatcher)
+    {
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i];
+            String entry = name + "=" + types[i];
+            switch (kinds[i]) {
+            case TERMINAL:
+                parser.getImportedTerminalNames()
+                    .add(new Pair<String, Integer>(name, types[i]));
+                parser.getKnownTerminalNames().add(name);
+                break;
+            case LITERAL:
+                parser.getLiteralToTerminal().put(name, terminals[i]);
+                break;
+            case LOWER_CASE:
+                dispatcher.notifyErrorListeners(ErrorType.SyntaxErrors,
+                    lines[i], positions[i],
+                    "terminal name starting with a lower case letter ignored : "
+                            + entry);
+                break;
+            case DUPLICATE_NAME:
+                parser.getDuplicateTerminalNames().add(name);
+                dispatcher.notifyErrorListeners(ErrorType.DuplicateTerminals,
+                    lines[i], positions[i],
+                    "duplicate terminal name ignored : " + entry);
+                break;
+            case DUPLICATE_TYPE:
+                dispatcher.notifyErrorListeners(ErrorType.SyntaxErrors,
+                    lines[i], positions[i],
+                    "duplicate terminal type ignored : " + entry);
+                break;
+            default:
+                dispatcher.notifyErrorListeners(ErrorType.SyntaxErrors,
+                    lines[i], positions[i],
+                    "invalid literal type ignored : " + entry);
+                break;
+            }
+        }
+    }
+
+    /*
+     * Reads lines of the form NAME=type or 'literal'=type, each
+     * terminated by a line feed. Returns null on anything else,
+     * including constructs which ANTLR accepts but which are rare
+     * in generated files, such as non ASCII names or other line
+     * terminators.
+     */
+    private static TokensVocabulary read(byte[] digest, byte[] content)
+    {
+        int capacity = 16;
+        String[] names = new String[capacity];
+        int[] types = new int[capacity];
+        int count = 0;
+        int length = content.length;
+        int i = 0;
+        while (i < length) {
+            int start = i;
+            byte b = content[i];
+            if (b == '\'') {
+                i++;
+                while (i < length && content[i] != '\'') {
+                    if (content[i] == '\r' || content[i] == '\n') {
+                        return null;
+                    }
+                    if (content[i] == '\\') {
+                        i++;
+                    }
+                    i++;
+                }
+                if (i >= length) {
+                    return null;
+                }
+                i++;
+            }
+            else if (b >= 'A' && b <= 'Z') {
+                i++;
+                while (i < length && isNameChar(content[i])) {
+                    i++;
+                }
+            }
+            else {
+                return null;
+            }
+            String name =
+                new String(content, start, i - start, StandardCharsets.UTF_8);
+            if (i >= length || content[i] != '=') {
+                return null;
+            }
+            i++;
+            int digits = i;
+            long type = 0;
+            while (i < length && content[i] >= '0' && content[i] <= '9') {
+                type = type * 10 + (content[i] - '0');
+                if (type > Integer.MAX_VALUE) {
+                    return null;
+                }
+                i++;
+            }
+            if (i == digits || i >= length || content[i] != '\n') {
+                return null;
+            }
+            i++;
+            if (count == capacity) {
+                capacity *= 2;
+                names = Arrays.copyOf(names, capacity);
+                types = Arrays.copyOf(types, capacity);
+            }
+            names[count] = name;
+            types[count] = (int) type;
+            count++;
+        }
+        if (count == 0) {
+            return null;
+        }
+        int[] lines = new int[count];
+        for (int line = 0; line < count; line++) {
+            lines[line] = line + 1;
+        }
+        return new TokensVocabulary(digest, Arrays.copyOf(names, count),
+            Arrays.copyOf(types, count), lines, new int[count]);
+    }
+
+    private static boolean isNameChar(byte b)
+    {
+        return (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z')
+                || (b >= '0' && b <= '9') || b == '_';
+    }
+}
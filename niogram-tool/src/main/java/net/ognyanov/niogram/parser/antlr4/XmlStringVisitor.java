@@ -32,12 +32,17 @@ class XmlStringVisitor
 
     public String toXmlString(ParseTree tree)
     {
-        builder = new XmlStringBuilder();
+        XmlStringBuilder result = new XmlStringBuilder();
+        write(tree, result);
+        return result.toString();
+    }
+
+    public void write(ParseTree tree, XmlStringBuilder target)
+    {
+        builder = target;
         builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
         visit(tree);
-        String result = builder.toString();
         builder = null;
-        return result;
     }
 
     @Override
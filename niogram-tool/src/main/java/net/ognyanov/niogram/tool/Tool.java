@@ -6,29 +6,40 @@
  */
 package net.ognyanov.niogram.tool;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
 import java.util.List;
 
 import org.jgrapht.Graph;
 import org.jgrapht.graph.DefaultEdge;
 
+import net.ognyanov.niogram.analysis.AnalysisBudget;
+import net.ognyanov.niogram.analysis.AnalysisMetrics;
+import net.ognyanov.niogram.analysis.DecisionTableWriter;
 import net.ognyanov.niogram.analysis.FirstFollowCalculator;
 import net.ognyanov.niogram.analysis.FirstKFollowKCalculator;
 import net.ognyanov.niogram.analysis.FirstKLFollowKLCalculator;
 import net.ognyanov.niogram.analysis.FlagsCalculator;
+import net.ognyanov.niogram.analysis.FullLLKAnalysis;
 import net.ognyanov.niogram.analysis.GraphAnalysis;
+import net.ognyanov.niogram.analysis.JsonReportWriter;
 import net.ognyanov.niogram.analysis.TerminalTrace;
 import net.ognyanov.niogram.analysis.TerminalTraceFactory;
+import net.ognyanov.niogram.analysis.TerminalTraceIndex;
 import net.ognyanov.niogram.ast.Alternative;
 import net.ognyanov.niogram.ast.Block;
 import net.ognyanov.niogram.ast.BuiltInTypes;
 import net.ognyanov.niogram.ast.Grammar;
 import net.ognyanov.niogram.ast.GrammarNode;
+import net.ognyanov.niogram.ast.GrammarSnapshot;
 import net.ognyanov.niogram.ast.Multiplex;
 import net.ognyanov.niogram.ast.Multiplex.Conflict;
 import net.ognyanov.niogram.ast.Multiplex.ConflictK;
@@ -40,6 +51,7 @@ import net.ognyanov.niogram.util.BiasedBitSet;
 import net.ognyanov.niogram.util.BitSetLLString;
 import net.ognyanov.niogram.util.IntLLString;
 import net.ognyanov.niogram.util.IntLLStringSet;
+import net.ognyanov.niogram.util.LLStringZdd;
 
 /**
  * The main class of the NioGram command line tool.
@@ -53,6 +65,7 @@ public class Tool
                 + "        -q     quiet mode - do not print error messages\n"
                 + "        -nm    parse the grammar in NioGram mode\n"
                 + "        -sg    store the grammar serialized object\n"
+                + "        -ss    store the grammar binary snapshot\n"
                 + "        -pd    print the parsing diagnostic information\n"
                 + "        -pb    print the grammar basic information\n"
                 + "        -psx   print the grammar AST in XML\n"
@@ -64,17 +77,26 @@ public class Tool
                 + "        -ppd   print the grammar parse tree in DOT\n"
                 + "        -pff   print the firstX/followX sets\n"
                 + "        -pffc  print the LL(k) conflict information\n"
+                + "        -pfll  print the full LL(k) check of the conflicts\n"
                 + "        -pct   print the conflict traces in DOT\n"
+                + "        -pcp=n print up to n shortest paths per conflict trace\n"
+                + "        -pj    print the analysis report in JSON\n"
+                + "        -pja   print the JSON report with lookahead automata\n"
+                + "        -pdt   print the LL(k) decision tables in Java\n"
+                + "        -pm    print the analysis metrics\n"
                 + "        -ff    calculate the first   / follow   sets\n"
                 + "        -ffk   calculate the firstK  / followK  sets\n"
                 + "        -ffkl  calculate the firstKL / followKL sets\n"
                 + "        -ffall calculate all firstX  / followX  sets\n"
+                + "        -zdd   calculate the firstK  / followK  sets symbolically\n"
                 //+ "      -ffc   compare the calculated first/follow sets\n"
-                + "        -k=n   set the k parameter for the LL(k) analysis";
+                + "        -k=n   set the k parameter for the LL(k) analysis\n"
+                + "        -t=n   set a time budget of n ms for the analysis";
     private static boolean      doNioGram         = false;
     private static boolean      doQuiet           = false;
     private static boolean      printBasic        = false;
     private static boolean      storeGrammar      = false;
+    private static boolean      storeSnapshot     = false;
     private static boolean      printDiagnostic   = false;
     private static boolean      printASTXML       = false;
     private static boolean      printASTDOT       = false;
@@ -84,13 +106,23 @@ public class Tool
     private static boolean      printLrDgDOT      = false;
     private static boolean      printSets         = false;
     private static boolean      printConflicts    = false;
+    private static boolean      printFullLLK      = false;
     private static boolean      printTraces;
+    private static int          tracePaths        = 0;
+    private static boolean      printJson         = false;
+    private static boolean      printAutomata     = false;
+    private static boolean      printTables       = false;
+    private static boolean      printMetrics      = false;
+    private static AnalysisMetrics metrics        = null;
     private static boolean      doFF              = false;
     private static boolean      doFFKL            = false;
     private static boolean      doFFK             = false;
     private static boolean      doFFALL           = false;
     private static boolean      doFFCMP           = false;
+    private static boolean      symbolic          = false;
     private static int          llK               = -1;
+    private static long         timeout           = 0;
+    private static AnalysisBudget budget          = null;
 
     private static String       fileName          = null;
     private static boolean      argOK             = true;
@@ -98,6 +130,9 @@ public class Tool
     private static long         end               = 0;
     private static boolean      printRAIL;
 
+    private static final int    OUTPUT_BUFFER_SIZE = 1 << 16;
+    private static Writer       stdout            = null;
+
     public static void main(String args[])
     {
         processArgs(args);
@@ -120,6 +155,8 @@ public class Tool
         if (doQuiet) {
             grammarParser.removeErrorListeners();
         }
+        // the parse tree is kept only if it is to be printed
+        grammarParser.setLean(!printParseTreeXML && !printParseTreeDOT);
 
         start = System.currentTimeMillis();
         Grammar grammar = grammarParser.grammar();
@@ -144,8 +181,17 @@ public class Tool
                     + "ms.");
         }
 
+        if (printMetrics) {
+            metrics = new AnalysisMetrics();
+        }
+        if (timeout > 0) {
+            budget = new AnalysisBudget();
+            budget.setTimeout(timeout);
+        }
         start = System.currentTimeMillis();
-        new FlagsCalculator().calculate(grammar);
+        FlagsCalculator flagsCalculator = new FlagsCalculator();
+        flagsCalculator.setAnalysisListener(metrics);
+        flagsCalculator.calculate(grammar);
         end = System.currentTimeMillis();
         if (printBasic) {
             System.out.println("Flags computation duration      : "
@@ -159,32 +205,45 @@ public class Tool
         if (printBasic) {
             printBasic(grammar);
         }
-        if (printParseTreeXML) {
-            System.out.println(grammarParser.toXmlString());
-        }
-        if (printParseTreeDOT) {
-            System.out.println(grammarParser.toDotString());
-        }
-        if (printASTXML) {
-            System.out.println(grammar.toXmlString());
-        }
-        if (printASTDOT) {
-            System.out.println(grammar.toDotString());
-        }
-        if (printRAIL) {
-            System.out.println(grammar.toRailRoadDot());
-        }
-        if (printDgDOT) {
-            System.out.println(GraphAnalysis
-                .toDotString(GraphAnalysis.toGraph(grammar)));
+        try {
+            if (printParseTreeXML) {
+                grammarParser.writeXml(stdout());
+                endOutput();
+            }
+            if (printParseTreeDOT) {
+                grammarParser.writeDot(stdout());
+                endOutput();
+            }
+            if (printASTXML) {
+                grammar.writeXml(stdout());
+                endOutput();
+            }
+            if (printASTDOT) {
+                grammar.writeDot(stdout());
+                endOutput();
+            }
+            if (printRAIL) {
+                grammar.writeRailRoadDot(stdout());
+                endOutput();
+            }
+            if (printDgDOT) {
+                GraphAnalysis.writeDot(GraphAnalysis.toGraph(grammar),
+                    stdout());
+                endOutput();
+            }
+            if (printLrDgDOT) {
+                GraphAnalysis.writeDot(GraphAnalysis.toReducedGraph(grammar),
+                    stdout());
+                endOutput();
+            }
         }
-        if (printLrDgDOT) {
-            System.out.println(GraphAnalysis
-                .toDotString(GraphAnalysis.toReducedGraph(grammar)));
+        catch (IOException e) {
+            System.out.println("Error: failed to write the output");
+            System.exit(255);
         }
         if (doFF) {
             start = System.currentTimeMillis();
-            new FirstFollowCalculator().calculate(grammar);
+            firstFollow(grammar);
             end = System.currentTimeMillis();
             if (printBasic) {
                 System.out.println("First/Follow duration           : "
@@ -194,7 +253,7 @@ public class Tool
         }
         if (doFFK) {
             start = System.currentTimeMillis();
-            new FirstKFollowKCalculator().calculate(grammar);
+            firstKFollowK(grammar);
             end = System.currentTimeMillis();
             if (printBasic) {
                 System.out.println("FirstK/FollowK duration         : "
@@ -204,7 +263,7 @@ public class Tool
         }
         if (doFFKL) {
             start = System.currentTimeMillis();
-            new FirstKLFollowKLCalculator().calculate(grammar);
+            firstKLFollowKL(grammar);
             end = System.currentTimeMillis();
             if (printBasic) {
                 System.out.println("FirstKL/FollowKL duration       : "
@@ -214,9 +273,9 @@ public class Tool
         }
         if (doFFALL) {
             start = System.currentTimeMillis();
-            new FirstFollowCalculator().calculate(grammar);
-            new FirstKFollowKCalculator().calculate(grammar);
-            new FirstKLFollowKLCalculator().calculate(grammar);
+            firstFollow(grammar);
+            firstKFollowK(grammar);
+            firstKLFollowKL(grammar);
             end = System.currentTimeMillis();
             if (printBasic) {
                 System.out.println("FirstX/FollowX duration         : "
@@ -230,9 +289,21 @@ public class Tool
         if (printConflicts) {
             printConflicts(grammar);
         }
+        if (printFullLLK) {
+            printFullLLK(grammar);
+        }
         if (printTraces) {
             printTraces(grammar);
         }
+        if (printJson) {
+            printJson(grammar);
+        }
+        if (printTables) {
+            printTables(grammar);
+        }
+        if (printMetrics) {
+            System.out.print(metrics.getReport());
+        }
         if (doFFCMP) {
             new FirstFollowComparator().compare(grammar);
         }
@@ -241,6 +312,9 @@ public class Tool
             // analysis data is stored
             storeGrammar(grammar, fileName);
         }
+        if (storeSnapshot) {
+            storeSnapshot(grammar, fileName);
+        }
     }
 
     private static void processArgs(String[] args)
@@ -283,15 +357,34 @@ public class Tool
             else if ("-sg".equals(arg)) {
                 storeGrammar = true;
             }
+            else if ("-ss".equals(arg)) {
+                storeSnapshot = true;
+            }
             else if ("-pff".equals(arg)) {
                 printSets = true;
             }
             else if ("-pffc".equals(arg)) {
                 printConflicts = true;
             }
+            else if ("-pfll".equals(arg)) {
+                printFullLLK = true;
+            }
             else if ("-pct".equals(arg)) {
                 printTraces = true;
             }
+            else if ("-pj".equals(arg)) {
+                printJson = true;
+            }
+            else if ("-pja".equals(arg)) {
+                printJson = true;
+                printAutomata = true;
+            }
+            else if ("-pdt".equals(arg)) {
+                printTables = true;
+            }
+            else if ("-pm".equals(arg)) {
+                printMetrics = true;
+            }
             else if ("-ff".equals(arg)) {
                 doFF = true;
             }
@@ -307,6 +400,9 @@ public class Tool
             else if ("-ffc".equals(arg)) {
                 doFFCMP = true;
             }
+            else if ("-zdd".equals(arg)) {
+                symbolic = true;
+            }
             else if (arg.startsWith("-k=")) {
                 if (arg.length() > 3) {
                     String ks = arg.substring(3);
@@ -320,6 +416,25 @@ public class Tool
                     }
                 }
             }
+            else if (arg.startsWith("-pcp=")) {
+                try {
+                    tracePaths = Integer.parseInt(arg.substring(5));
+                    printTraces = true;
+                    argOK &= tracePaths > 0;
+                }
+                catch (NumberFormatException e) {
+                    argOK = false;
+                }
+            }
+            else if (arg.startsWith("-t=")) {
+                try {
+                    timeout = Long.parseLong(arg.substring(3));
+                    argOK &= timeout > 0;
+                }
+                catch (NumberFormatException e) {
+                    argOK = false;
+                }
+            }
             else {
                 fileName = arg;
             }
@@ -327,6 +442,49 @@ public class Tool
 
     }
 
+    private static void firstFollow(Grammar grammar)
+    {
+        FirstFollowCalculator calculator = new FirstFollowCalculator();
+        calculator.setAnalysisListener(metrics);
+        calculator.setBudget(budget);
+        calculator.calculate(grammar);
+        printIncomplete(grammar.getIncompleteFF(), "First/Follow");
+    }
+
+    private static void firstKFollowK(Grammar grammar)
+    {
+        FirstKFollowKCalculator calculator = new FirstKFollowKCalculator();
+        calculator.setAnalysisListener(metrics);
+        calculator.setBudget(budget);
+        calculator.setSymbolic(symbolic);
+        if (symbolic && grammar.getK() > LLStringZdd.MAX_LIMIT) {
+            System.out.println("Warning: -zdd supports K up to "
+                    + LLStringZdd.MAX_LIMIT + ", explicit sets are used");
+        }
+        calculator.calculate(grammar);
+        printIncomplete(grammar.getIncompleteFFK(), "FirstK/FollowK");
+    }
+
+    private static void firstKLFollowKL(Grammar grammar)
+    {
+        FirstKLFollowKLCalculator calculator =
+            new FirstKLFollowKLCalculator();
+        calculator.setAnalysisListener(metrics);
+        calculator.setBudget(budget);
+        calculator.calculate(grammar);
+        printIncomplete(grammar.getIncompleteFFKL(), "FirstKL/FollowKL");
+    }
+
+    private static void printIncomplete(List<NonterminalRule> incomplete,
+                                        String analysis)
+    {
+        if (!incomplete.isEmpty()) {
+            System.out.println("Warning: analysis budget exceeded, "
+                    + analysis + " data is incomplete for "
+                    + incomplete.size() + " rules.");
+        }
+    }
+
     @SuppressWarnings("unused")
     private static void storeGrammar(Grammar grammar, String fileName)
     {
@@ -369,6 +527,25 @@ public class Tool
         }
     }
 
+    private static void storeSnapshot(Grammar grammar, String fileName)
+    {
+        String snapFileName = null;
+        int extIdx = fileName.lastIndexOf('.');
+        if (extIdx > 0) {
+            snapFileName = fileName.substring(0, extIdx + 1) + "snap";
+        }
+        else {
+            snapFileName = fileName + ".snap";
+        }
+        try {
+            GrammarSnapshot.write(grammar, new File(snapFileName));
+        }
+        catch (IOException e) {
+            System.out.println("Error: failed to store the grammar snapshot");
+            System.out.println(e);
+        }
+    }
+
     private static void printDiagnostic(Antlr4ToAstParser astParser)
     {
         int width = 22;
@@ -683,22 +860,58 @@ public class Tool
         }
     }
 
+    private static void printFullLLK(Grammar grammar)
+    {
+        if (!grammar.hasFFK()) {
+            return;
+        }
+        FullLLKAnalysis analysis = new FullLLKAnalysis(grammar);
+        System.out.println("========================");
+        System.out.println("  Full LL(k) Conflicts  ");
+        System.out.println("========================");
+        for (Multiplex mux : analysis.getDecisions()) {
+            System.out.println(((GrammarNode) mux).getDisplayName() + " : "
+                    + analysis.getContextCount(mux) + " contexts, "
+                    + (analysis.isResolved(mux) ? "resolved" : "conflicts"));
+            for (FullLLKAnalysis.ContextConflict conflict
+                    : analysis.getConflicts(mux)) {
+                System.out.print("   ");
+                System.out.println(conflict);
+            }
+        }
+    }
+
     private static void printTraces(Grammar grammar)
     {
         System.out.println("//=============");
         System.out.println("//   Traces    ");
         System.out.println("//=============");
         System.out.println();
+        TerminalTraceIndex index = null;
+        TerminalTraceIndex indexK = null;
+        TerminalTraceIndex indexKL = null;
+        if (grammar.hasFF()) {
+            index = TerminalTraceFactory.buildTraceIndex(grammar);
+        }
+        if (grammar.hasFFK()) {
+            indexK = TerminalTraceFactory.buildTraceIndexK(grammar);
+        }
+        if (grammar.hasFFKL()) {
+            indexKL = TerminalTraceFactory.buildTraceIndexKL(grammar);
+        }
         for (NonterminalRule rule : grammar.getNonterminalRules()) {
-            printMultiplexTraces(grammar, rule);
+            printMultiplexTraces(grammar, rule, index, indexK, indexKL);
         }
         for (Block block : grammar.getBlocks()) {
-            printMultiplexTraces(grammar, block);
+            printMultiplexTraces(grammar, block, index, indexK, indexKL);
         }
     }
 
     private static void printMultiplexTraces(Grammar grammar,
-                                             Multiplex multiplex)
+                                             Multiplex multiplex,
+                                             TerminalTraceIndex index,
+                                             TerminalTraceIndex indexK,
+                                             TerminalTraceIndex indexKL)
     {
         BiasedBitSet conflict = null;
         IntLLStringSet conflictK = null;
@@ -731,11 +944,9 @@ public class Tool
             int current = conflict.getStart();
             while ((current = conflict.nextSetBit(current)) != conflict
                 .getNone()) {
-                TerminalTrace trace = TerminalTraceFactory
-                    .buildFirstTrace((GrammarNode) multiplex, current);
                 System.out.println(
                     "// First/First on " + grammar.getTypeName(current));
-                System.out.println(trace.toDotString());
+                printTrace(index, multiplex, current, false);
                 ++current;
                 break; //  too much data
             }
@@ -744,18 +955,14 @@ public class Tool
             int current = conflictFF.getStart();
             while ((current = conflictFF.nextSetBit(current)) != conflictFF
                 .getNone()) {
-                TerminalTrace firstTrace = TerminalTraceFactory
-                    .buildFirstTrace((GrammarNode) multiplex, current);
                 System.out.println(
                     "// First/Follow on " + grammar.getTypeName(current)
                             + " - FIRST");
-                System.out.println(firstTrace.toDotString());
-                TerminalTrace followTrace = TerminalTraceFactory
-                    .buildFollowTrace((GrammarNode) multiplex, current);
+                printTrace(index, multiplex, current, false);
                 System.out.println(
                     "// First/Follow on " + grammar.getTypeName(current)
                             + " - FOLLOW");
-                System.out.println(followTrace.toDotString());
+                printTrace(index, multiplex, current, true);
                 ++current;
                 break; //  too much data
             }
@@ -765,17 +972,13 @@ public class Tool
                 new BiasedBitSet(BuiltInTypes.MIN_TYPE, grammar);
             for (IntLLString string : conflictK) {
                 if (string.length() > 0) {
-                    TerminalTrace trace = null;
                     int type = string.get(0);
                     if (!printed.get(type)) {
                         printed.set(type);
-                        trace =
-                            TerminalTraceFactory.buildFirstTraceK(
-                                (GrammarNode) multiplex, type);
                         System.out.println(
                             "// FirstK/FirstK on "
                                     + grammar.getTypeName(type));
-                        System.out.println(trace.toDotString());
+                        printTrace(indexK, multiplex, type, false);
                         break;
                     }
                     break; // too much data
@@ -791,18 +994,14 @@ public class Tool
                     int type = string.get(0);
                     if (!printed.get(type)) {
                         printed.set(type);
-                        TerminalTrace firstTrace = TerminalTraceFactory
-                            .buildFirstTraceK((GrammarNode) multiplex, type);
                         System.out.println(
                             "// FirstK/KFollowK on " + grammar.getTypeName(type)
                                     + " - FIRST");
-                        System.out.println(firstTrace.toDotString());
-                        TerminalTrace followTrace = TerminalTraceFactory
-                            .buildFollowTraceK((GrammarNode) multiplex, type);
+                        printTrace(indexK, multiplex, type, false);
                         System.out.println(
                             "// FirstK/FollowK on " + grammar.getTypeName(type)
                                     + " - FOLLOW");
-                        System.out.println(followTrace.toDotString());
+                        printTrace(indexK, multiplex, type, true);
                     }
                     break; // too much data
                 }
@@ -812,14 +1011,11 @@ public class Tool
         if (conflictKL != null && conflictKL.length() > 0) {
             BiasedBitSet set = conflictKL.get(0);
             int current = set.getStart();
-            TerminalTrace trace = null;
             while ((current = set.nextSetBit(current)) != set.getNone()) {
-                trace = TerminalTraceFactory.buildFirstTraceKL(
-                    (GrammarNode) multiplex, current);
                 System.out.println(
                     "// FirstKL/FirstKL on "
                             + grammar.getTypeName(current));
-                System.out.println(trace.toDotString());
+                printTrace(indexKL, multiplex, current, false);
                 ++current;
                 break; //  too much data
             }
@@ -830,24 +1026,100 @@ public class Tool
             BiasedBitSet set = conflictKLFF.get(0);
             int current = set.getStart();
             while ((current = set.nextSetBit(current)) != set.getNone()) {
-                TerminalTrace firstTrace = TerminalTraceFactory
-                    .buildFirstTraceKL((GrammarNode) multiplex, current);
                 System.out.println(
                     "// FirstKL/FollowKL on " + grammar.getTypeName(current)
                             + " - FIRST");
-                System.out.println(firstTrace.toDotString());
-                TerminalTrace followTrace = TerminalTraceFactory
-                    .buildFollowTraceKL((GrammarNode) multiplex, current);
+                printTrace(indexKL, multiplex, current, false);
                 System.out.println(
                     "// FirstKL/FollowKL on " + grammar.getTypeName(current)
                             + " - FOLLOW");
-                System.out.println(followTrace.toDotString());
+                printTrace(indexKL, multiplex, current, true);
                 ++current;
                 break; //  too much data
             }
         }
     }
 
+    private static void printJson(Grammar grammar)
+    {
+        JsonReportWriter writer = new JsonReportWriter(stdout());
+        writer.setTraces(printTraces);
+        writer.setAutomata(printAutomata);
+        try {
+            writer.write(grammar);
+        }
+        catch (IOException e) {
+            System.out.println("Error: failed to write the output");
+        }
+    }
+
+    private static void printTables(Grammar grammar)
+    {
+        if (!grammar.hasFFK()) {
+            return;
+        }
+        try {
+            new DecisionTableWriter(stdout()).write(grammar);
+            stdout().flush();
+        }
+        catch (IOException e) {
+            System.out.println("Error: failed to write the output");
+        }
+    }
+
+    private static void printTrace(TerminalTraceIndex index,
+                                   Multiplex multiplex, int type,
+                                   boolean follow)
+    {
+        GrammarNode node = (GrammarNode) multiplex;
+        if (tracePaths > 0) {
+            Iterator<TerminalTrace> paths = follow
+                    ? index.followPaths(node, type, tracePaths)
+                    : index.firstPaths(node, type, tracePaths);
+            while (paths.hasNext()) {
+                printDot(paths.next());
+            }
+        }
+        else if (follow) {
+            printDot(index.buildFollowTrace(node, type));
+        }
+        else {
+            printDot(index.buildFirstTrace(node, type));
+        }
+    }
+
+    private static void printDot(TerminalTrace trace)
+    {
+        try {
+            trace.writeDot(stdout());
+            endOutput();
+        }
+        catch (IOException e) {
+            System.out.println("Error: failed to write the output");
+        }
+    }
+
+    /*
+     * Large outputs are streamed through a buffer instead of being
+     * built as strings. The buffer is flushed after each output so
+     * that it interleaves correctly with System.out.
+     */
+    private static Writer stdout()
+    {
+        if (stdout == null) {
+            stdout = new BufferedWriter(new OutputStreamWriter(System.out),
+                OUTPUT_BUFFER_SIZE);
+        }
+        return stdout;
+    }
+
+    private static void endOutput()
+        throws IOException
+    {
+        stdout.write(System.lineSeparator());
+        stdout.flush();
+    }
+
     private static void printFlag(ErrorType errorType, int width,
                                   Antlr4ToAstParser parser)
     {
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import net.ognyanov.niogram.ast.Grammar;
+
+public class AnalysisBudgetTest
+{
+    @Test
+    public void test()
+        throws IOException
+    {
+        Grammar grammar = TestGrammars.parse("/grammars/traces.g4", 2);
+        FirstKFollowKCalculator calculator = new FirstKFollowKCalculator();
+        calculator.calculate(grammar);
+        assertTrue(grammar.hasFFK());
+        assertTrue(grammar.getIncompleteFFK().isEmpty());
+
+        AnalysisBudget budget = new AnalysisBudget();
+        budget.setMaxLookaheadStrings(5);
+        calculator.setBudget(budget);
+        calculator.calculate(grammar);
+        assertTrue(grammar.hasFFK());
+        assertFalse(grammar.getIncompleteFFK().isEmpty());
+
+        budget = new AnalysisBudget();
+        budget.setDeadline(1);
+        calculator.setBudget(budget);
+        calculator.calculate(grammar);
+        assertTrue(grammar.hasFFK());
+        assertTrue(grammar.getIncompleteFFK().size() ==
+                grammar.getNonterminalRules().size());
+
+        calculator.setBudget(null);
+        calculator.calculate(grammar);
+        assertTrue(grammar.getIncompleteFFK().isEmpty());
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import net.ognyanov.niogram.ast.BuiltInTypes;
+import net.ognyanov.niogram.ast.Grammar;
+import net.ognyanov.niogram.ast.GrammarNode;
+import net.ognyanov.niogram.ast.Multiplex;
+import net.ognyanov.niogram.ast.NonterminalRule;
+import net.ognyanov.niogram.util.IntLLString;
+import net.ognyanov.niogram.util.IntLLStringSet;
+
+public class DecisionTableTest
+{
+    @Test
+    public void test()
+        throws IOException
+    {
+        Grammar grammar = check("/grammars/traces.g4", 2);
+        for (NonterminalRule rule : grammar.getNonterminalRules()) {
+            DecisionTable table = DecisionTable.build(
+                new LookaheadIndex(grammar).getTrie(rule));
+            if ("a".equals(rule.getDisplayName())) {
+                assertNull(table);
+            }
+            else if ("c".equals(rule.getDisplayName())) {
+                assertEquals(2, table.getDepth());
+            }
+        }
+        check("/grammars/logo.g4", 2);
+
+        StringBuilder source = new StringBuilder();
+        new DecisionTableWriter(source).write(grammar);
+        assertTrue(source.indexOf("public final class TracesDecisions") >= 0);
+        assertTrue(source.indexOf("public static final int C = ") >= 0);
+        assertTrue(source.indexOf("public static final int[][] c = {") >= 0);
+    }
+
+    /*
+     * Checks that each lookahead string of each decision
+     * which has tables predicts its own alternative.
+     */
+    private static Grammar check(String path, int k)
+        throws IOException
+    {
+        Grammar grammar = TestGrammars.parseFFK(path, k);
+        LookaheadIndex index = new LookaheadIndex(grammar);
+        int tables = 0;
+        for (Multiplex multiplex : TestGrammars.decisions(grammar)) {
+            DecisionTable table = DecisionTable.build(index.getTrie(multiplex));
+            if (table == null) {
+                continue;
+            }
+            tables++;
+            assertTrue(table.getDepth() <= k);
+            Set<Integer> viable = new HashSet<Integer>();
+            for (int i = 0; i < multiplex.getAlternatives().size(); i++) {
+                IntLLStringSet lookahead = new IntLLStringSet(
+                    multiplex.getAlternatives().get(i).getFirstK());
+                lookahead.append(((GrammarNode) multiplex).getFollowK());
+                for (IntLLString string : lookahead) {
+                    if (string.length() > 0) {
+                        viable.add(string.get(0));
+                    }
+                    int[] symbols = new int[string.length()];
+                    for (int j = 0; j < symbols.length; j++) {
+                        symbols[j] = string.get(j);
+                    }
+                    assertEquals(i,
+                        table.predict(symbols, 0, symbols.length));
+                }
+            }
+            // tokens in the range of the root table which
+            // no alternative is viable for are errors
+            int[] root = table.getTable(0);
+            for (int j = 2; j < root.length; j++) {
+                int symbol = root[1] + j - 2;
+                if (!viable.contains(symbol)) {
+                    assertEquals(LookaheadTrie.NONE,
+                        table.predict(new int[] { symbol }, 0, 1));
+                }
+            }
+            // so are the tokens out of the range, while an EOF
+            // token is the end of the input
+            int above = root[1] + root.length - 2;
+            assertEquals(LookaheadTrie.NONE,
+                table.predict(new int[] { above }, 0, 1));
+            if (root[1] - 1 != BuiltInTypes.EOF) {
+                assertEquals(LookaheadTrie.NONE,
+                    table.predict(new int[] { root[1] - 1 }, 0, 1));
+            }
+            assertEquals(table.predict(new int[0], 0, 0),
+                table.predict(new int[] { BuiltInTypes.EOF }, 0, 1));
+        }
+        assertTrue(tables > 0);
+        return grammar;
+    }
+}
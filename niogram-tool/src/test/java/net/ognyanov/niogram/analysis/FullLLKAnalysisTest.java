@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import net.ognyanov.niogram.analysis.FullLLKAnalysis.ContextConflict;
+import net.ognyanov.niogram.ast.Grammar;
+import net.ognyanov.niogram.ast.Multiplex;
+import net.ognyanov.niogram.ast.Nonterminal;
+import net.ognyanov.niogram.ast.NonterminalRule;
+import net.ognyanov.niogram.util.IntLLStringSet;
+
+public class FullLLKAnalysisTest
+{
+    @Test
+    public void test()
+        throws IOException
+    {
+        Grammar grammar = TestGrammars.parseFFK("/grammars/strong.g4", 2);
+        FullLLKAnalysis analysis = new FullLLKAnalysis(grammar);
+        // x : 'b' | ; and y : 'c' | ; are strong LL(2) only
+        assertEquals(2, analysis.getDecisions().size());
+        for (Multiplex multiplex : analysis.getDecisions()) {
+            NonterminalRule rule = (NonterminalRule) multiplex;
+            assertTrue(analysis.isResolved(rule));
+            assertTrue(analysis.getConflicts(rule).isEmpty());
+            List<Nonterminal> callSites = analysis.getCallSites(rule);
+            assertEquals(rule.getReferences(), callSites);
+            Set<IntLLStringSet> follows = new HashSet<IntLLStringSet>();
+            IntLLStringSet union = new IntLLStringSet(2, grammar);
+            for (Nonterminal callSite : callSites) {
+                IntLLStringSet followK = analysis.getFollowK(rule, callSite);
+                assertTrue(rule.getFollowK().containsAll(followK));
+                follows.add(followK);
+                union.addAll(followK);
+            }
+            assertEquals(2, follows.size());
+            assertEquals(rule.getFollowK(), union);
+        }
+
+        grammar = TestGrammars.parseFFK("/grammars/traces.g4", 2);
+        analysis = new FullLLKAnalysis(grammar);
+        for (Multiplex multiplex : analysis.getDecisions()) {
+            assertFalse(analysis.isResolved(multiplex));
+            assertFalse(analysis.getConflicts(multiplex).isEmpty());
+        }
+        assertFalse(analysis.getDecisions().isEmpty());
+    }
+
+    /*
+     * The contexts of a0 are reached along 2^20 call paths
+     * but only a few of them are distinct, so a few visits
+     * per rule suffice.
+     */
+    @Test
+    public void testChain()
+        throws IOException
+    {
+        Grammar grammar = TestGrammars.parseFFK("/grammars/chain.g4", 2);
+        FullLLKAnalysis analysis = new FullLLKAnalysis(grammar);
+        List<NonterminalRule> rules = grammar.getNonterminalRules();
+        NonterminalRule a0 = rules.get(rules.size() - 1);
+        assertEquals("a0", a0.getDisplayName());
+        assertEquals(Collections.singletonList(a0), analysis.getDecisions());
+        assertFalse(analysis.isResolved(a0));
+        assertEquals(3, analysis.getContextCount(a0));
+        // the work grows with the rules and not with the call paths
+        assertTrue(analysis.getVisitCount(a0) <= 8 * rules.size());
+
+        ContextConflict conflict = analysis.getConflicts(a0).get(0);
+        assertSame(a0.getReferences().get(0), conflict.getCallSite());
+        assertSame(rules.get(rules.size() - 2).getAlternatives().get(0),
+            conflict.getCallSite().getParent());
+        assertEquals(1, conflict.getLookahead().length());
+        assertEquals("'x'",
+            grammar.getTypeName(conflict.getLookahead().get(0)));
+        assertEquals(a0.getAlternatives(), conflict.getAlternatives());
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import net.ognyanov.niogram.ast.Grammar;
+import net.ognyanov.niogram.ast.GrammarNode;
+import net.ognyanov.niogram.util.BaseInterruptable;
+import net.ognyanov.niogram.util.ObjectPool;
+
+public class InterruptTest
+{
+    /*
+     * The checkpoint tests the interrupted status at least
+     * once per this many visited nodes.
+     */
+    private static final int MAX_LATENCY = 16;
+
+    @Test
+    public void test()
+        throws IOException
+    {
+        Grammar grammar = TestGrammars.parse("/grammars/logo.g4", 2);
+        Interrupter interrupter = new Interrupter();
+
+        FirstFollowCalculator ff = new FirstFollowCalculator();
+        ff.setAnalysisListener(interrupter);
+        check(grammar, ff, interrupter);
+
+        FirstKFollowKCalculator ffk = new FirstKFollowKCalculator();
+        ffk.setAnalysisListener(interrupter);
+        check(grammar, ffk, interrupter);
+
+        FirstKLFollowKLCalculator ffkl = new FirstKLFollowKLCalculator();
+        ffkl.setAnalysisListener(interrupter);
+        check(grammar, ffkl, interrupter);
+    }
+
+    /*
+     * Interrupts a calculator during its first pass and before a
+     * call and checks that it stops within the pass, clears its data
+     * and can be used again.
+     */
+    private static void check(Grammar grammar, BaseInterruptable calculator,
+                              Interrupter interrupter)
+    {
+        AttributeCalculator attributes = (AttributeCalculator) calculator;
+        interrupter.reset(null);
+        attributes.calculate(grammar);
+        assertTrue(hasData(grammar, calculator));
+        int total = interrupter.changes;
+        assertTrue(total > MAX_LATENCY);
+
+        interrupter.reset(calculator);
+        attributes.calculate(grammar);
+        assertFalse(hasData(grammar, calculator));
+        assertFalse(calculator.isInterrupted());
+        assertEquals(1, interrupter.phases);
+        assertEquals(0, interrupter.iterations);
+        assertTrue(interrupter.changesAfter <= MAX_LATENCY);
+
+        interrupter.reset(null);
+        attributes.calculate(grammar);
+        assertTrue(hasData(grammar, calculator));
+        assertEquals(total, interrupter.changes);
+
+        calculator.interrupt();
+        attributes.calculate(grammar);
+        assertFalse(hasData(grammar, calculator));
+        assertFalse(calculator.isInterrupted());
+        attributes.calculate(grammar);
+        assertTrue(hasData(grammar, calculator));
+    }
+
+    private static boolean hasData(Grammar grammar, Object calculator)
+    {
+        if (calculator instanceof FirstFollowCalculator) {
+            return grammar.hasFF();
+        }
+        else if (calculator instanceof FirstKFollowKCalculator) {
+            return grammar.hasFFK();
+        }
+        else {
+            return grammar.hasFFKL();
+        }
+    }
+
+    /*
+     * Interrupts a calculator upon the first change of a set
+     * and counts the work done afterwards.
+     */
+    private static final class Interrupter
+        implements AnalysisListener
+    {
+        private BaseInterruptable target       = null;
+        private boolean           interrupted  = false;
+        private int               phases       = 0;
+        private int               iterations   = 0;
+        private int               changes      = 0;
+        private int               changesAfter = 0;
+
+        void reset(BaseInterruptable target)
+        {
+            this.target = target;
+            interrupted = false;
+            phases = 0;
+            iterations = 0;
+            changes = 0;
+            changesAfter = 0;
+        }
+
+        @Override
+        public void phaseStarted(Phase phase, Grammar grammar)
+        {
+            phases++;
+        }
+
+        @Override
+        public void phaseEnded(Phase phase, Grammar grammar, long nanos)
+        {
+        }
+
+        @Override
+        public void iterationCompleted(Phase phase, int iteration,
+                                       int changedNodes)
+        {
+            iterations++;
+        }
+
+        @Override
+        public void nodeChanged(Phase phase, GrammarNode node, int setSize)
+        {
+            changes++;
+            if (interrupted) {
+                changesAfter++;
+            }
+            else if (target != null) {
+                interrupted = true;
+                target.interrupt();
+            }
+        }
+
+        @Override
+        public void poolStatistics(Phase phase, PoolType pool,
+                                   ObjectPool.Statistics statistics)
+        {
+        }
+    }
+}
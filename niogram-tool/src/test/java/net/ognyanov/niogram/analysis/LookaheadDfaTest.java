@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import net.ognyanov.niogram.ast.BuiltInTypes;
+import net.ognyanov.niogram.ast.Grammar;
+import net.ognyanov.niogram.ast.GrammarNode;
+import net.ognyanov.niogram.ast.Multiplex;
+import net.ognyanov.niogram.util.IntLLString;
+import net.ognyanov.niogram.util.IntLLStringSet;
+
+public class LookaheadDfaTest
+{
+    /*
+     * A token type which no grammar of the tests has.
+     */
+    private static final int NO_TOKEN = 1 << 20;
+
+    @Test
+    public void test()
+        throws IOException
+    {
+        check("/grammars/traces.g4", 2);
+        check("/grammars/logo.g4", 2);
+    }
+
+    /*
+     * Compares the automata of a grammar with the decision
+     * tables and with their own serialized copies.
+     */
+    private static void check(String path, int k)
+        throws IOException
+    {
+        Grammar grammar = TestGrammars.parseFFK(path, k);
+        LookaheadIndex index = new LookaheadIndex(grammar);
+        for (Multiplex multiplex : TestGrammars.decisions(grammar)) {
+            LookaheadTrie trie = index.getTrie(multiplex);
+            LookaheadDfa dfa = LookaheadDfa.build(multiplex, k);
+            assertTrue(dfa.getStateCount() <= trie.getNodeCount());
+            boolean conflict = false;
+            for (int state = 0; state < dfa.getStateCount(); state++) {
+                conflict |= dfa.isConflict(state);
+                for (int i = 0; i < dfa.getSymbolCount(state); i++) {
+                    assertTrue(dfa.getTarget(state, i) > state);
+                }
+            }
+            DecisionTable table = DecisionTable.build(trie);
+            assertEquals(table == null,
+                conflict || trie.getViableCount(0) == 0);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            dfa.write(new DataOutputStream(bytes));
+            LookaheadDfa copy = LookaheadDfa.read(new DataInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())));
+            assertEquals(dfa.getStateCount(), copy.getStateCount());
+            assertArrayEquals(dfa.getDepths(), copy.getDepths());
+
+            for (int i = 0; i < multiplex.getAlternatives().size(); i++) {
+                IntLLStringSet lookahead = new IntLLStringSet(
+                    multiplex.getAlternatives().get(i).getFirstK());
+                lookahead.append(((GrammarNode) multiplex).getFollowK());
+                for (IntLLString string : lookahead) {
+                    int[] symbols = new int[string.length()];
+                    for (int j = 0; j < symbols.length; j++) {
+                        symbols[j] = string.get(j);
+                    }
+                    int predicted = dfa.predict(symbols, 0, symbols.length);
+                    assertEquals(predicted,
+                        copy.predict(symbols, 0, symbols.length));
+                    if (table != null) {
+                        assertEquals(i, predicted);
+                    }
+                    else {
+                        assertTrue(predicted == i
+                                || predicted == LookaheadDfa.NONE);
+                    }
+                    if (table != null) {
+                        checkErrors(dfa, table, symbols);
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Checks that the automaton and the tables agree on the prefixes
+     * of a lookahead string followed by a token which no alternative
+     * is viable for and by the end of the input.
+     */
+    private static void checkErrors(LookaheadDfa dfa, DecisionTable table,
+                                    int[] symbols)
+    {
+        for (int length = 0; length < symbols.length; length++) {
+            int[] probe = Arrays.copyOf(symbols, length + 1);
+            probe[length] = NO_TOKEN;
+            assertEquals(table.predict(probe, 0, probe.length),
+                dfa.predict(probe, 0, probe.length));
+            probe[length] = BuiltInTypes.EOF;
+            assertEquals(table.predict(probe, 0, probe.length),
+                dfa.predict(probe, 0, probe.length));
+            assertEquals(dfa.predict(probe, 0, length),
+                dfa.predict(probe, 0, probe.length));
+        }
+        if (dfa.getSymbolCount(0) > 0) {
+            assertEquals(LookaheadDfa.NONE,
+                dfa.predict(new int[] { NO_TOKEN }, 0, 1));
+        }
+    }
+}
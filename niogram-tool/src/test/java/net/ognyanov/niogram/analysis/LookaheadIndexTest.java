@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.ognyanov.niogram.ast.Grammar;
+import net.ognyanov.niogram.ast.GrammarNode;
+import net.ognyanov.niogram.ast.Multiplex;
+import net.ognyanov.niogram.util.IntLLString;
+import net.ognyanov.niogram.util.IntLLStringSet;
+
+public class LookaheadIndexTest
+{
+    @Test
+    public void test()
+        throws IOException
+    {
+        check("/grammars/traces.g4", 2);
+        check("/grammars/logo.g4", 2);
+    }
+
+    private static void check(String path, int k)
+        throws IOException
+    {
+        Grammar grammar = TestGrammars.parseFFK(path, k);
+        LookaheadIndex index = new LookaheadIndex(grammar);
+        for (Multiplex multiplex : TestGrammars.decisions(grammar)) {
+            LookaheadTrie trie = index.getTrie(multiplex);
+            assertNotNull(trie);
+            List<IntLLStringSet> lookaheads = new ArrayList<IntLLStringSet>();
+            for (int i = 0; i < trie.getAlternativeCount(); i++) {
+                IntLLStringSet lookahead = new IntLLStringSet(
+                    multiplex.getAlternatives().get(i).getFirstK());
+                lookahead.append(((GrammarNode) multiplex).getFollowK());
+                lookaheads.add(lookahead);
+            }
+            int nodes = walk(trie, 0, new int[k], lookaheads);
+            assertEquals(trie.getNodeCount(), nodes);
+        }
+    }
+
+    /*
+     * Checks the viable alternatives of a node and of all nodes
+     * below it against the lookahead sets and counts the nodes.
+     */
+    private static int walk(LookaheadTrie trie, int node, int[] prefix,
+                            List<IntLLStringSet> lookaheads)
+    {
+        int depth = trie.getDepth(node);
+        assertEquals(node, trie.find(prefix, 0, depth));
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < lookaheads.size(); i++) {
+            boolean viable = startsWith(lookaheads.get(i), prefix, depth);
+            assertEquals(viable, trie.isViable(node, i));
+            assertEquals(contains(lookaheads.get(i), prefix, depth),
+                trie.isEnding(node, i));
+            if (viable) {
+                expected.add(i);
+            }
+        }
+        List<Integer> actual = new ArrayList<Integer>();
+        for (int i = trie.nextViable(node, 0); i != LookaheadTrie.NONE;
+             i = trie.nextViable(node, i + 1)) {
+            actual.add(i);
+        }
+        assertEquals(expected, actual);
+        assertEquals(expected.size(), trie.getViableCount(node));
+        assertEquals(expected.size() == 1 ? expected.get(0)
+                : LookaheadTrie.NONE, trie.predict(node));
+        assertTrue(!expected.isEmpty() || node == 0);
+        int nodes = 1;
+        for (int i = 0; i < trie.getSymbolCount(node); i++) {
+            int symbol = trie.getSymbol(node, i);
+            prefix[depth] = symbol;
+            nodes += walk(trie, trie.getChild(node, symbol), prefix,
+                lookaheads);
+        }
+        assertEquals(LookaheadTrie.NONE, trie.getChild(node, -2));
+        return nodes;
+    }
+
+    private static boolean contains(IntLLStringSet set, int[] prefix,
+                                    int length)
+    {
+        for (IntLLString string : set) {
+            if (string.length() == length
+                    && startsWith(string, prefix, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(IntLLString string, int[] prefix,
+                                      int length)
+    {
+        for (int i = 0; i < length; i++) {
+            if (string.get(i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWith(IntLLStringSet set, int[] prefix,
+                                      int length)
+    {
+        for (IntLLString string : set) {
+            if (string.length() >= length
+                    && startsWith(string, prefix, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.ognyanov.niogram.ast.Grammar;
+import net.ognyanov.niogram.ast.GrammarNode;
+import net.ognyanov.niogram.ast.GrammarVisitor;
+import net.ognyanov.niogram.ast.Multiplex;
+import net.ognyanov.niogram.ast.Term;
+
+public class SymbolicFFKTest
+{
+    @Test
+    public void test()
+        throws IOException
+    {
+        compare("/grammars/traces.g4", 3);
+        compare("/grammars/logo.g4", 2);
+    }
+
+    private static void compare(String path, int k)
+        throws IOException
+    {
+        Grammar explicit = TestGrammars.parse(path, k);
+        Grammar symbolic = TestGrammars.parse(path, k);
+        new FirstKFollowKCalculator().calculate(explicit);
+        FirstKFollowKCalculator calculator = new FirstKFollowKCalculator();
+        calculator.setSymbolic(true);
+        calculator.calculate(symbolic);
+
+        List<GrammarNode> expected = nodes(explicit);
+        List<GrammarNode> actual = nodes(symbolic);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            GrammarNode e = expected.get(i);
+            GrammarNode a = actual.get(i);
+            assertEquals(e.getFirstK(), a.getFirstK());
+            assertEquals(e.getFollowK(), a.getFollowK());
+            if (e instanceof Term) {
+                assertEquals(((Term) e).getSuffixFirstK(),
+                    ((Term) a).getSuffixFirstK());
+            }
+            if (e instanceof Multiplex) {
+                Multiplex me = (Multiplex) e;
+                Multiplex ma = (Multiplex) a;
+                assertEquals(me.getMinK(), ma.getMinK());
+                assertEquals(me.getMinFfK(), ma.getMinFfK());
+                assertEquals(me.getConflictsK().toString(),
+                    ma.getConflictsK().toString());
+            }
+        }
+    }
+
+    private static List<GrammarNode> nodes(Grammar grammar)
+    {
+        final List<GrammarNode> result = new ArrayList<GrammarNode>();
+        new GrammarVisitor()
+        {
+            @Override
+            public void preVisit(GrammarNode node)
+            {
+                result.add(node);
+            }
+        }.visitGrammar(grammar);
+        return result;
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import net.ognyanov.niogram.analysis.TerminalTrace.TraceType;
+import net.ognyanov.niogram.ast.Grammar;
+import net.ognyanov.niogram.ast.GrammarNode;
+import net.ognyanov.niogram.ast.Multiplex;
+import net.ognyanov.niogram.ast.NonterminalRule;
+import net.ognyanov.niogram.ast.Term;
+import net.ognyanov.niogram.ast.Terminal;
+import net.ognyanov.niogram.ast.TerminalRule;
+import net.ognyanov.niogram.parser.antlr4.Antlr4ToAstParser;
+
+public class TerminalTraceIndexTest
+{
+    private static final int DEPTH = 2000;
+
+    @Test
+    public void test()
+        throws IOException
+    {
+        Grammar grammar = parse();
+        TerminalTraceIndex index =
+            TerminalTraceFactory.buildTraceIndex(grammar);
+        TerminalTraceIndex indexK =
+            TerminalTraceFactory.buildTraceIndexK(grammar);
+        TerminalTraceIndex indexKL =
+            TerminalTraceFactory.buildTraceIndexKL(grammar);
+        int traces = 0;
+        for (Multiplex multiplex : TestGrammars.decisions(grammar)) {
+            GrammarNode node = (GrammarNode) multiplex;
+            for (TerminalRule rule : grammar.getTerminalRules()) {
+                int type = rule.getType();
+                TerminalTrace trace =
+                    TerminalTraceFactory.buildFirstTrace(node, type);
+                assertEqualTraces(trace, index.buildFirstTrace(node, type));
+                assertEqualTraces(TerminalTraceFactory.buildFollowTrace(node, type),
+                    index.buildFollowTrace(node, type));
+                assertEqualTraces(TerminalTraceFactory.buildFirstTraceK(node, type),
+                    indexK.buildFirstTrace(node, type));
+                assertEqualTraces(TerminalTraceFactory.buildFollowTraceK(node, type),
+                    indexK.buildFollowTrace(node, type));
+                assertEqualTraces(TerminalTraceFactory.buildFirstTraceKL(node, type),
+                    indexKL.buildFirstTrace(node, type));
+                assertEqualTraces(TerminalTraceFactory.buildFollowTraceKL(node, type),
+                    indexKL.buildFollowTrace(node, type));
+                if (trace != null) {
+                    checkGraph(trace, new HashSet<TerminalTrace>(),
+                        new HashSet<TerminalTrace>(), new HashSet<String>());
+                    ++traces;
+                }
+            }
+        }
+        assertTrue(traces > 0);
+    }
+
+    private static void assertEqualTraces(TerminalTrace expected,
+                                          TerminalTrace actual)
+    {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertNotNull(actual);
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getTerminalType(), actual.getTerminalType());
+        assertEquals(expected.getStart(), actual.getStart());
+        assertEquals(expected.getChildren().size(),
+            actual.getChildren().size());
+        for (int i = 0; i < expected.getChildren().size(); i++) {
+            assertEqualTraces(expected.getChildren().get(i),
+                actual.getChildren().get(i));
+        }
+    }
+
+    @Test
+    public void golden()
+        throws IOException
+    {
+        Grammar grammar = parse();
+        NonterminalRule a = grammar.getNonterminalRules().get(0);
+        TerminalTraceIndex index = new TerminalTraceIndex(grammar,
+            TerminalTraceIndex.SetType.SET);
+        int type = grammar.getTypeToName().getFirst("A");
+        List<String> edges = new ArrayList<String>();
+        Set<TerminalTrace> vertices = new HashSet<TerminalTrace>();
+        edges(index.buildFirstTrace(a, type), vertices, edges);
+        // rule d is shared by both of its references
+        assertEquals(Arrays.asList(
+            "a -> a/a1",
+            "a/a1 -> b in a/a1",
+            "b in a/a1 -> b",
+            "b -> b/a2",
+            "b/a2 -> A in b/a2",
+            "a -> a/a2",
+            "a/a2 -> c in a/a2",
+            "c in a/a2 -> c",
+            "c -> c/a2",
+            "c/a2 -> c/a2.b1 in c/a2",
+            "c/a2.b1 in c/a2 -> d in c/a2",
+            "d in c/a2 -> d",
+            "d -> d/a2",
+            "d/a2 -> A in d/a2",
+            "a -> a/a3",
+            "a/a3 -> d in a/a3",
+            "d in a/a3 -> d"), edges);
+        assertEquals(17, vertices.size());
+    }
+
+    /*
+     * Builds a trace through a chain of rules in a thread whose stack
+     * is too small for one call per grammar level.
+     */
+    @Test
+    public void deep()
+        throws Exception
+    {
+        StringBuilder source = new StringBuilder("grammar deep;\n");
+        for (int i = 0; i < DEPTH; i++) {
+            source.append("r").append(i).append(" : r").append(i + 1)
+                .append(" ;\n");
+        }
+        source.append("r").append(DEPTH).append(" : 'x' ;\n");
+        final Grammar grammar = new Antlr4ToAstParser(
+            new ByteArrayInputStream(source.toString().getBytes("UTF-8")))
+                .grammar();
+        new FlagsCalculator().calculate(grammar);
+        new FirstFollowCalculator().calculate(grammar);
+        final TerminalTrace[] result = new TerminalTrace[1];
+        final Throwable[] failure = new Throwable[1];
+        Thread thread = new Thread(null, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try {
+                    TerminalTraceIndex index =
+                        TerminalTraceFactory.buildTraceIndex(grammar);
+                    result[0] = index.buildFirstTrace(
+                        grammar.getNonterminalRules().get(0),
+                        grammar.getTypeToName().getFirst("'x'"));
+                }
+                catch (Throwable e) {
+                    failure[0] = e;
+                }
+            }
+        }, "deep", 256 * 1024);
+        thread.start();
+        thread.join();
+        assertNull(failure[0]);
+        int length = 1;
+        for (TerminalTrace trace = result[0]; !trace.getChildren().isEmpty();
+             trace = trace.getChildren().get(0)) {
+            assertEquals(1, trace.getChildren().size());
+            ++length;
+        }
+        // a rule, its alternative and a term per level
+        assertEquals(3 * (DEPTH + 1), length);
+    }
+
+    /*
+     * Lists the edges of a trace as "parent -> child"
+     * and collects its distinct elements.
+     */
+    private static void edges(TerminalTrace trace,
+                              Set<TerminalTrace> vertices,
+                              List<String> edges)
+    {
+        if (!vertices.add(trace)) {
+            return;
+        }
+        for (TerminalTrace child : trace.getChildren()) {
+            edges.add(label(trace) + " -> " + label(child));
+            edges(child, vertices, edges);
+        }
+    }
+
+    private static String label(TerminalTrace trace)
+    {
+        GrammarNode node = trace.getStart();
+        String result = node.getDisplayName();
+        if (node instanceof Term) {
+            result += " in " + node.getParent().getDisplayName();
+        }
+        if (trace.getType() == TraceType.FOLLOW) {
+            result += " follow";
+        }
+        return result;
+    }
+
+    @Test
+    public void paths()
+        throws IOException
+    {
+        Grammar grammar = parse();
+        TerminalTraceIndex index =
+            TerminalTraceFactory.buildTraceIndexK(grammar);
+        int paths = 0;
+        for (NonterminalRule node : grammar.getNonterminalRules()) {
+            for (TerminalRule rule : grammar.getTerminalRules()) {
+                int type = rule.getType();
+                Iterator<TerminalTrace> it = index.firstPaths(node, type, 3);
+                assertEquals(index.buildFirstTrace(node, type) != null,
+                    it.hasNext());
+                int count = 0;
+                int length = 0;
+                while (it.hasNext()) {
+                    TerminalTrace trace = it.next();
+                    assertEquals(node, trace.getStart());
+                    int pathLength = 1;
+                    while (!trace.getChildren().isEmpty()) {
+                        assertEquals(1, trace.getChildren().size());
+                        trace = trace.getChildren().get(0);
+                        ++pathLength;
+                    }
+                    assertTrue(trace.getStart() instanceof Terminal);
+                    assertEquals(type, trace.getStart().getType());
+                    assertTrue(pathLength >= length);
+                    length = pathLength;
+                    ++count;
+                }
+                assertTrue(count <= 3);
+                paths += count;
+            }
+        }
+        assertTrue(paths > 0);
+    }
+
+    /*
+     * A trace must be acyclic, must contain each (node, type)
+     * pair once and must end in occurrences of the terminal.
+     */
+    private static void checkGraph(TerminalTrace trace,
+                                   Set<TerminalTrace> path,
+                                   Set<TerminalTrace> done,
+                                   Set<String> pairs)
+    {
+        assertFalse(path.contains(trace));
+        if (done.contains(trace)) {
+            return;
+        }
+        assertTrue(pairs.add(trace.getStart().getId() + trace.getType()
+                .toString()));
+        if (trace.getChildren().isEmpty()) {
+            assertTrue(trace.getStart() instanceof Terminal);
+            assertEquals(TraceType.FIRST, trace.getType());
+            assertEquals(trace.getTerminalType(),
+                trace.getStart().getType());
+        }
+        path.add(trace);
+        for (TerminalTrace child : trace.getChildren()) {
+            checkGraph(child, path, done, pairs);
+        }
+        path.remove(trace);
+        done.add(trace);
+    }
+
+    private static Grammar parse()
+        throws IOException
+    {
+        Grammar grammar = TestGrammars.parse("/grammars/traces.g4", 2);
+        new FirstFollowCalculator().calculate(grammar);
+        new FirstKFollowKCalculator().calculate(grammar);
+        new FirstKLFollowKLCalculator().calculate(grammar);
+        return grammar;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.analysis;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.ognyanov.niogram.ast.Grammar;
+import net.ognyanov.niogram.ast.Multiplex;
+import net.ognyanov.niogram.parser.antlr4.Antlr4ToAstParser;
+import net.ognyanov.niogram.util.ClassPathLocator;
+
+/**
+ * The grammar fixtures of the analysis tests.
+ *
+ * @author Nikolay Ognyanov
+ */
+final class TestGrammars
+{
+    private TestGrammars()
+    {
+    }
+
+    /**
+     * Parses a grammar from the class path, sets its K and KL
+     * and calculates its flags.
+     *
+     * @param path the class path of the grammar file
+     * @param k the K and KL of the analysis
+     * @return the grammar
+     * @throws IOException if the grammar can not be read
+     */
+    static Grammar parse(String path, int k)
+        throws IOException
+    {
+        ClassPathLocator locator = new ClassPathLocator();
+        Grammar grammar = new Antlr4ToAstParser(path, locator).grammar();
+        grammar.setK(k);
+        grammar.setKL(k);
+        new FlagsCalculator().calculate(grammar);
+        return grammar;
+    }
+
+    /**
+     * Parses a grammar and calculates its FirstK/FollowK sets.
+     *
+     * @param path the class path of the grammar file
+     * @param k the K of the analysis
+     * @return the grammar
+     * @throws IOException if the grammar can not be read
+     */
+    static Grammar parseFFK(String path, int k)
+        throws IOException
+    {
+        Grammar grammar = parse(path, k);
+        new FirstKFollowKCalculator().calculate(grammar);
+        return grammar;
+    }
+
+    /**
+     * Retrieves the decisions of a grammar.
+     *
+     * @param grammar the grammar
+     * @return the nonterminal rules followed by the blocks
+     */
+    static List<Multiplex> decisions(Grammar grammar)
+    {
+        List<Multiplex> multiplexes = new ArrayList<Multiplex>();
+        multiplexes.addAll(grammar.getNonterminalRules());
+        multiplexes.addAll(grammar.getBlocks());
+        return multiplexes;
+    }
+}
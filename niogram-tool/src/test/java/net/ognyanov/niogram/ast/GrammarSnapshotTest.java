@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.ast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.ognyanov.niogram.analysis.AnalysisBudget;
+import net.ognyanov.niogram.analysis.FirstFollowCalculator;
+import net.ognyanov.niogram.analysis.FirstKFollowKCalculator;
+import net.ognyanov.niogram.analysis.FirstKLFollowKLCalculator;
+import net.ognyanov.niogram.analysis.FlagsCalculator;
+import net.ognyanov.niogram.parser.antlr4.Antlr4ToAstParser;
+import net.ognyanov.niogram.util.ClassPathLocator;
+
+public class GrammarSnapshotTest
+{
+    @Test
+    public void test()
+        throws IOException
+    {
+        ClassPathLocator locator = new ClassPathLocator();
+        List<String> testGrammars = locator
+            .findResources("/grammars/(Hello|logo|test|traces)\\.g4");
+        assertTrue(!testGrammars.isEmpty());
+        for (String grammarFile : testGrammars) {
+            Grammar grammar =
+                new Antlr4ToAstParser(grammarFile, locator).grammar();
+            grammar.setK(2);
+            grammar.setKL(2);
+            new FlagsCalculator().calculate(grammar);
+            new FirstFollowCalculator().calculate(grammar);
+            new FirstKFollowKCalculator().calculate(grammar);
+            new FirstKLFollowKLCalculator().calculate(grammar);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            GrammarSnapshot.write(grammar, out);
+            GrammarSnapshot snapshot =
+                GrammarSnapshot.open(ByteBuffer.wrap(out.toByteArray()));
+            Grammar restored = snapshot.getGrammar();
+
+            assertEquals(grammar.getK(), restored.getK());
+            assertEquals(grammar.hasFFKL(), restored.hasFFKL());
+            assertEquals(grammar.getTypeToName().size(),
+                restored.getTypeToName().size());
+            assertEquals(describe(grammar), describe(restored));
+        }
+    }
+
+    @Test
+    public void testIncomplete()
+        throws IOException
+    {
+        ClassPathLocator locator = new ClassPathLocator();
+        Grammar grammar =
+            new Antlr4ToAstParser("/grammars/traces.g4", locator).grammar();
+        grammar.setK(2);
+        grammar.setKL(2);
+        new FlagsCalculator().calculate(grammar);
+        AnalysisBudget budget = new AnalysisBudget();
+        budget.setMaxLookaheadStrings(5);
+        FirstKFollowKCalculator calculator = new FirstKFollowKCalculator();
+        calculator.setBudget(budget);
+        calculator.calculate(grammar);
+        assertTrue(grammar.hasFFK());
+        assertFalse(grammar.getIncompleteFFK().isEmpty());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GrammarSnapshot.write(grammar, out);
+        Grammar restored = GrammarSnapshot
+            .open(ByteBuffer.wrap(out.toByteArray())).getGrammar();
+        assertTrue(restored.hasFFK());
+        assertEquals(names(grammar.getIncompleteFF()),
+            names(restored.getIncompleteFF()));
+        assertEquals(names(grammar.getIncompleteFFK()),
+            names(restored.getIncompleteFFK()));
+        assertEquals(names(grammar.getIncompleteFFKL()),
+            names(restored.getIncompleteFFKL()));
+        assertEquals(describe(grammar), describe(restored));
+    }
+
+    private static List<String> names(List<NonterminalRule> rules)
+    {
+        List<String> result = new ArrayList<String>();
+        for (NonterminalRule rule : rules) {
+            result.add(rule.getDisplayName());
+        }
+        return result;
+    }
+
+    private static List<String> describe(Grammar grammar)
+    {
+        final List<String> result = new ArrayList<String>();
+        new GrammarVisitor()
+        {
+            @Override
+            public void preVisit(GrammarNode node)
+            {
+                StringBuilder sb = new StringBuilder();
+                sb.append(node.getDisplayName()).append(' ')
+                    .append(node.getType()).append(' ')
+                    .append(node.isNullable()).append(' ')
+                    .append(node.getFirst()).append(' ')
+                    .append(node.getFollow()).append(' ')
+                    .append(node.getFirstK()).append(' ')
+                    .append(node.getFollowK()).append(' ')
+                    .append(node.getFirstKL()).append(' ')
+                    .append(node.getFollowKL());
+                if (node instanceof Term) {
+                    Term term = (Term) node;
+                    sb.append(' ').append(term.getSuffixFirst())
+                        .append(' ').append(term.getSuffixFirstK())
+                        .append(' ').append(term.getSuffixFirstKL());
+                }
+                if (node instanceof Multiplex) {
+                    Multiplex multiplex = (Multiplex) node;
+                    sb.append(' ').append(multiplex.getConflicts())
+                        .append(' ').append(multiplex.getConflictsK())
+                        .append(' ').append(multiplex.getConflictsKL())
+                        .append(' ').append(multiplex.getFfConflictSetK())
+                        .append(' ').append(multiplex.getMinK());
+                }
+                result.add(sb.toString());
+            }
+        }.visitGrammar(grammar);
+        return result;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.parser.antlr4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import net.ognyanov.niogram.ast.Grammar;
+import net.ognyanov.niogram.ast.NonterminalRule;
+import net.ognyanov.niogram.parser.ErrorDispatcher.ErrorType;
+import net.ognyanov.niogram.util.ClassPathLocator;
+
+public class GrammarImportTest
+{
+    @Test
+    public void test()
+        throws IOException
+    {
+        ClassPathLocator locator = new ClassPathLocator();
+        Antlr4ToAstParser.clearDelegateGrammarCache();
+
+        Antlr4ToAstParser parser =
+            new Antlr4ToAstParser("/imports/Main.g4", locator);
+        Grammar grammar = parser.grammar();
+        assertFalse(parser.hasErrors());
+        assertEquals(Arrays.asList("Expr", "CommonLexer"),
+            parser.getDelegateGrammars());
+        Map<String, NonterminalRule> rules = rules(grammar);
+        assertEquals(5, rules.size());
+        assertTrue(rules.keySet()
+            .containsAll(Arrays.asList("prog", "stat", "expr", "term", "atom")));
+        // the rule of the importing grammar overrides the imported one
+        assertEquals(2, rules.get("expr").getAlternatives().get(0).getTerms()
+            .size());
+        assertTrue(grammar.getTypeToName().containsSecond("LPAREN"));
+
+        List<String> files =
+            Arrays.asList("/imports/Expr.g4", "/imports/CommonLexer.g4");
+        Map<String, DelegateGrammar> first =
+            DelegateGrammarLoader.load(files, locator);
+        Map<String, DelegateGrammar> second =
+            DelegateGrammarLoader.load(files, locator);
+        for (String file : files) {
+            assertSame(first.get(file), second.get(file));
+        }
+        // the symbols of a delegate are collected once with its tree
+        List<String> symbols = new ArrayList<String>();
+        for (DelegateSymbols.Symbol symbol : first.get("/imports/Expr.g4")
+            .getSymbols().getRules()) {
+            symbols.add(symbol.getKind() + " " + symbol.getName());
+        }
+        assertEquals(Arrays.asList("PARSER_RULE expr", "RULE_REF term",
+            "RULE_END expr", "PARSER_RULE term", "RULE_REF atom",
+            "TOKEN_REF LPAREN", "RULE_REF expr", "TOKEN_REF RPAREN",
+            "RULE_END term"), symbols);
+
+        parser.reset("/imports/Calc.g4");
+        grammar = parser.grammar();
+        assertFalse(parser.hasErrors());
+        assertEquals(1, rules(grammar).get("expr").getAlternatives().get(0)
+            .getTerms().size());
+
+        parser.reset("/imports/Broken.g4");
+        parser.grammar();
+        assertTrue(parser.hasErrors());
+        assertTrue(parser.getErrors().get(ErrorType.FailedGrammarImports));
+    }
+
+    private static Map<String, NonterminalRule> rules(Grammar grammar)
+    {
+        Map<String, NonterminalRule> result =
+            new HashMap<String, NonterminalRule>();
+        for (NonterminalRule rule : grammar.getNonterminalRules()) {
+            result.put(rule.getSymbolicName(), rule);
+        }
+        return result;
+    }
+}
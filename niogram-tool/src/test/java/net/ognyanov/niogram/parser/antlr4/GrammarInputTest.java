@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.parser.antlr4;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.misc.Interval;
+import org.junit.Test;
+
+import net.ognyanov.niogram.util.FileSystemLocator;
+
+public class GrammarInputTest
+{
+    @Test
+    public void test()
+        throws IOException
+    {
+        check("grammar G;\nr : 'a' ;\n");
+        check("grammar G;\n// é中😀\nr : 'é' ;\n");
+        check("");
+    }
+
+    private static void check(String text)
+        throws IOException
+    {
+        byte[] content = text.getBytes(StandardCharsets.UTF_8);
+        File file = File.createTempFile("niogram", ".g4");
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                out.write(content);
+            }
+            finally {
+                out.close();
+            }
+            FileSystemLocator locator = new FileSystemLocator();
+            String fileName = file.getPath();
+            CharStream expected =
+                CharStreams.fromStream(new ByteArrayInputStream(content));
+            CharStream opened = GrammarInput.open(fileName, locator);
+            assertEquals(fileName, opened.getSourceName());
+            assertEquals(text(expected), text(opened));
+            assertEquals(text(expected),
+                text(GrammarInput.fromBytes(content, fileName)));
+            assertArrayEquals(content, GrammarInput.read(fileName, locator));
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    private static String text(CharStream stream)
+    {
+        return stream.size() + ":"
+                + stream.getText(Interval.of(0, stream.size() - 1));
+    }
+}
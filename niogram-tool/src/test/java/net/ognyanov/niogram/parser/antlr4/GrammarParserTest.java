@@ -6,15 +6,22 @@
  */
 package net.ognyanov.niogram.parser.antlr4;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
 import org.junit.Test;
 
 import net.ognyanov.niogram.ast.Grammar;
+import net.ognyanov.niogram.ast.GrammarNode;
+import net.ognyanov.niogram.ast.GrammarVisitor;
+import net.ognyanov.niogram.parser.SourcePosition;
 import net.ognyanov.niogram.util.ClassPathLocator;
 
 public class GrammarParserTest
@@ -38,5 +45,70 @@ public class GrammarParserTest
             Grammar grammar = parser.grammar();
             assertFalse(parser.hasErrors());
         }
+        testReuse(locator, testGrammars);
+    }
+
+    private void testReuse(ClassPathLocator locator, List<String> grammars)
+    {
+        Antlr4ToAstParser reused = null;
+        for (String grammarFile : grammars) {
+            try {
+                Antlr4ToAstParser parser =
+                    new Antlr4ToAstParser(grammarFile, locator);
+                if (reused == null) {
+                    reused = new Antlr4ToAstParser(grammarFile, locator);
+                    reused.setLean(true);
+                }
+                else {
+                    reused.reset(grammarFile);
+                }
+                Grammar expected = parser.grammar();
+                Grammar actual = reused.grammar();
+                assertFalse(reused.hasErrors());
+                assertEquals(parser.getGrammarName(), reused.getGrammarName());
+                assertEquals(expected.getTypeToName(), actual.getTypeToName());
+                assertEquals(expected.getNonterminalRules().size(),
+                    actual.getNonterminalRules().size());
+                assertEquals(positions(expected, grammarFile),
+                    positions(actual, grammarFile));
+            }
+            catch (IOException e) {
+                // should never happen
+                assertTrue(false);
+            }
+        }
+        try {
+            reused.toXmlString();
+            assertTrue(false);
+        }
+        catch (IllegalStateException e) {
+        }
+    }
+
+    private static List<String> positions(Grammar grammar,
+                                          final String fileName)
+    {
+        final List<String> result = new ArrayList<String>();
+        new GrammarVisitor()
+        {
+            @Override
+            public void preVisit(GrammarNode node)
+            {
+                Object context = node.getSourceContext();
+                if (context instanceof ParserRuleContext) {
+                    Token start = ((ParserRuleContext) context).start;
+                    context = new SourcePosition(fileName, start.getLine(),
+                        start.getCharPositionInLine(), start.getStartIndex(),
+                        0);
+                }
+                if (context instanceof SourcePosition) {
+                    SourcePosition position = (SourcePosition) context;
+                    result.add(position.getFileName() + ":"
+                            + position.getLine() + ":" + position.getColumn()
+                            + ":" + position.getStartOffset());
+                }
+            }
+        }.visitGrammar(grammar);
+        return result;
     }
 }
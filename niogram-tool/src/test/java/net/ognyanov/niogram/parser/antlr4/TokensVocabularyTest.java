@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2018 by Nikolay Ognyanov. All rights reserved.
+ *
+ * Use of this file is governed by the licensing conditions
+ * in the LICENSE.txt file in the root folder of the project.
+ */
+package net.ognyanov.niogram.parser.antlr4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import net.ognyanov.niogram.parser.ErrorDispatcher.ErrorType;
+import net.ognyanov.niogram.util.ClassPathLocator;
+
+public class TokensVocabularyTest
+{
+    private static final String[] files =
+        { "Hello", "HelloLexer", "JavaLexer", "JavaParser", "PhpLexer" };
+
+    @Test
+    public void test()
+        throws IOException
+    {
+        ClassPathLocator locator = new ClassPathLocator();
+        Antlr4ToAstParser.clearTokenVocabularyCache();
+        for (String file : files) {
+            String fileName = "/tokens/" + file + ".tokens";
+            byte[] content = GrammarInput.read(fileName, locator);
+            TokensVocabulary vocabulary =
+                TokensVocabulary.load(fileName, content);
+            assertNotNull(vocabulary);
+            assertSame(vocabulary, TokensVocabulary.load(fileName, content));
+
+            Antlr4ToAstParser fast = parser(locator);
+            vocabulary.apply(fast, fast);
+            Antlr4ToAstParser slow = parser(locator);
+            TokensParser tokensParser = new TokensParser(
+                GrammarInput.fromBytes(content, fileName), fileName, slow);
+            tokensParser.parse();
+            assertEquals(slow.getImportedTerminalNames(),
+                fast.getImportedTerminalNames());
+            assertEquals(slow.getKnownTerminalNames(),
+                fast.getKnownTerminalNames());
+            assertEquals(slow.getLiteralToTerminal(),
+                fast.getLiteralToTerminal());
+        }
+
+        byte[] malformed = "A=1\r\nb = 2\n".getBytes(StandardCharsets.UTF_8);
+        assertNull(TokensVocabulary.load("/malformed.tokens", malformed));
+
+        byte[] duplicates =
+            "A=1\nA=2\nB=1\n'x'=3\n".getBytes(StandardCharsets.UTF_8);
+        Antlr4ToAstParser parser = parser(locator);
+        parser.removeErrorListeners();
+        TokensVocabulary.load("/duplicates.tokens", duplicates)
+            .apply(parser, new DelegateDispatcher(parser, "duplicates"));
+        assertEquals(1, parser.getImportedTerminalNames().size());
+        assertTrue(parser.getDuplicateTerminalNames().contains("A"));
+        assertTrue(parser.getErrors().get(ErrorType.DuplicateTerminals));
+        assertTrue(parser.getErrors().get(ErrorType.SyntaxErrors));
+        assertFalse(parser.getLiteralToTerminal().containsFirst("'x'"));
+
+        // the cache keeps only the most recently used vocabularies
+        byte[] small = "A=1\n".getBytes(StandardCharsets.UTF_8);
+        TokensVocabulary eldest = TokensVocabulary.load("/0.tokens", small);
+        TokensVocabulary recent = TokensVocabulary.load("/1.tokens", small);
+        for (int i = 2; i < 100; i++) {
+            TokensVocabulary.load("/" + i + ".tokens", small);
+            assertSame(recent, TokensVocabulary.load("/1.tokens", small));
+        }
+        assertNotSame(eldest, TokensVocabulary.load("/0.tokens", small));
+    }
+
+    private static Antlr4ToAstParser parser(ClassPathLocator locator)
+        throws IOException
+    {
+        Antlr4ToAstParser parser =
+            new Antlr4ToAstParser("/imports/Calc.g4", locator);
+        parser.removeErrorListeners();
+        return parser;
+    }
+}
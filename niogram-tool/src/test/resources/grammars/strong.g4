@@ -0,0 +1,5 @@
+grammar strong;
+
+s : 'a' x 'a' 'a' | 'b' x 'b' 'a' | 'c' y 'c' | 'd' y 'd' ;
+x : 'b' | ;
+y : 'c' | ;
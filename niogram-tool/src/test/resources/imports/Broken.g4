@@ -0,0 +1,5 @@
+grammar Broken;
+
+import Missing, CommonLexer;
+
+start : ID EOF ;
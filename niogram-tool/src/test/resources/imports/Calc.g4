@@ -0,0 +1,5 @@
+grammar Calc;
+
+import Expr, CommonLexer;
+
+calc : expr EOF ;
@@ -0,0 +1,9 @@
+lexer grammar CommonLexer;
+
+ID     : [a-z]+ ;
+INT    : [0-9]+ ;
+PLUS   : '+' ;
+SEMI   : ';' ;
+LPAREN : '(' ;
+RPAREN : ')' ;
+WS     : [ \t\r\n]+ -> skip ;
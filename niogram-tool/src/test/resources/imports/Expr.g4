@@ -0,0 +1,6 @@
+parser grammar Expr;
+
+import Atom;
+
+expr : term ;
+term : atom | LPAREN expr RPAREN ;
@@ -0,0 +1,7 @@
+grammar Main;
+
+import Expr, CommonLexer;
+
+prog : stat+ EOF ;
+stat : expr SEMI ;
+expr : term (PLUS term)* ;